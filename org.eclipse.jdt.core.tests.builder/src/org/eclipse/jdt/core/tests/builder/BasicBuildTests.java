@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,11 +10,18 @@
  *******************************************************************************/
 package org.eclipse.jdt.core.tests.builder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Hashtable;
 
 import junit.framework.*;
 
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
@@ -22,8 +29,16 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.tests.util.Util;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblem;
+import org.eclipse.jdt.internal.compiler.problem.ProblemSeverities;
+import org.eclipse.jdt.internal.compiler.util.SimpleLookupTable;
 import org.eclipse.jdt.internal.core.JavaModelManager;
+import org.eclipse.jdt.internal.core.builder.BuildNotifier;
+import org.eclipse.jdt.internal.core.builder.JavaBuilder;
+import org.eclipse.jdt.internal.core.builder.ReferenceCollection;
+import org.eclipse.jdt.internal.core.builder.State;
 
 /**
  * Basic tests of the image builder.
@@ -514,4 +529,122 @@ public class BasicBuildTests extends BuilderTests {
 		JavaCore.setOptions(options);
 	}
 
+	/*
+	 * Ensures that a saved build state can be read back, and that a state whose tables
+	 * have not been used since it was read is saved back identically.
+	 */
+	public void testSavedState() throws JavaModelException, IOException {
+		IPath projectPath = env.addProject("Project"); //$NON-NLS-1$
+		env.addExternalJars(projectPath, Util.getJavaClassLibs());
+		env.removePackageFragmentRoot(projectPath, ""); //$NON-NLS-1$
+		IPath root = env.addPackageFragmentRoot(projectPath, "src"); //$NON-NLS-1$
+		env.setOutputFolder(projectPath, "bin"); //$NON-NLS-1$
+
+		env.addClass(root, "p", "A", //$NON-NLS-1$ //$NON-NLS-2$
+			"package p;\n" + //$NON-NLS-1$
+			"public class A extends q.B {\n" + //$NON-NLS-1$
+			"	class Member {}\n" + //$NON-NLS-1$
+			"}" //$NON-NLS-1$
+		);
+		env.addClass(root, "q", "B", //$NON-NLS-1$ //$NON-NLS-2$
+			"package q;\n" + //$NON-NLS-1$
+			"public class B {\n" + //$NON-NLS-1$
+			"}" //$NON-NLS-1$
+		);
+		fullBuild(projectPath);
+		expectingNoProblems();
+
+		IProject project = env.getProject(projectPath);
+		State state = (State) JavaModelManager.getJavaModelManager().getLastBuiltState(project, null);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		JavaBuilder.writeState(state, out);
+		out.close();
+		byte[] saved = bytes.toByteArray();
+
+		// an unused state is written back as it was read
+		State readState = JavaBuilder.readState(project, new DataInputStream(new ByteArrayInputStream(saved)));
+		bytes = new ByteArrayOutputStream();
+		out = new DataOutputStream(bytes);
+		JavaBuilder.writeState(readState, out);
+		out.close();
+		assertTrue("Unused state should be saved unchanged", Arrays.equals(saved, bytes.toByteArray())); //$NON-NLS-1$
+
+		readState = JavaBuilder.readState(project, new DataInputStream(new ByteArrayInputStream(saved)));
+		assertTrue("p/A should be known", readState.isKnownType("p/A")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("p/A$Member should be known", readState.isKnownType("p/A$Member")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("q should be known", readState.isKnownPackage("q")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// the decoded tables hold the same entries as the tables of the original state
+		SimpleLookupTable references = state.getReferences();
+		SimpleLookupTable readReferences = readState.getReferences();
+		assertEquals("Wrong number of references", references.elementSize, readReferences.elementSize); //$NON-NLS-1$
+		Object[] keyTable = references.keyTable;
+		for (int i = 0, l = keyTable.length; i < l; i++) {
+			String typeLocator = (String) keyTable[i];
+			if (typeLocator == null) continue;
+			Object collection = readReferences.get(typeLocator);
+			assertNotNull("Missing references of " + typeLocator, collection); //$NON-NLS-1$
+			assertEquals("Wrong references of " + typeLocator, references.get(typeLocator).getClass(), collection.getClass()); //$NON-NLS-1$
+			assertEquals("Wrong defined types of " + typeLocator, //$NON-NLS-1$
+				CharOperation.toString(state.getDefinedTypeNamesFor(typeLocator)),
+				CharOperation.toString(readState.getDefinedTypeNamesFor(typeLocator)));
+		}
+		ReferenceCollection referencesOfA = (ReferenceCollection) readReferences.get("src/p/A.java"); //$NON-NLS-1$
+		char[][] simpleNames = ReferenceCollection.internSimpleNames(new char[][] {"B".toCharArray()}, false); //$NON-NLS-1$
+		char[][][] qualifiedNames = ReferenceCollection.internQualifiedNames(new char[][][] {CharOperation.splitOn('.', "q.B".toCharArray())}); //$NON-NLS-1$
+		assertTrue("p/A should reference B", referencesOfA.includes(simpleNames[0])); //$NON-NLS-1$
+		assertTrue("p/A should reference q.B", referencesOfA.includes(qualifiedNames[0])); //$NON-NLS-1$
+		assertEquals("Wrong number of type locators", state.typeLocators.elementSize, readState.typeLocators.elementSize); //$NON-NLS-1$
+		keyTable = state.typeLocators.keyTable;
+		for (int i = 0, l = keyTable.length; i < l; i++)
+			if (keyTable[i] != null)
+				assertEquals("Wrong type locator of " + keyTable[i], state.typeLocators.get(keyTable[i]), readState.typeLocators.get(keyTable[i])); //$NON-NLS-1$
+	}
+
+	/*
+	 * Ensures that builds which overlap (e.g. projects built in parallel) all add their problems
+	 * to the problem counters of the build cycle.
+	 */
+	public void testProblemCounters() {
+		class Notifier extends BuildNotifier {
+			Notifier() {
+				super(null, null);
+			}
+			void problems(CategorizedProblem[] problems) {
+				updateProblemCounts(problems);
+			}
+		}
+		CategorizedProblem error = new DefaultProblem(null, "error", 0, null, ProblemSeverities.Error, 0, 0, 1, 1); //$NON-NLS-1$
+		CategorizedProblem warning = new DefaultProblem(null, "warning", 0, null, ProblemSeverities.Warning, 0, 0, 1, 1); //$NON-NLS-1$
+		BuildNotifier.resetProblemCounters();
+		try {
+			Notifier first = new Notifier();
+			Notifier second = new Notifier();
+			first.problems(new CategorizedProblem[] {error});
+			second.problems(new CategorizedProblem[] {warning, warning});
+			first.done();
+			second.done();
+			second.done();
+			assertEquals("Wrong number of new errors", 1, BuildNotifier.NewErrorCount); //$NON-NLS-1$
+			assertEquals("Wrong number of new warnings", 2, BuildNotifier.NewWarningCount); //$NON-NLS-1$
+
+			// a later build of the cycle starts from the counters of the cycle
+			Notifier third = new Notifier();
+			third.problems(new CategorizedProblem[] {error});
+			third.done();
+			assertEquals("Wrong number of new errors", 2, BuildNotifier.NewErrorCount); //$NON-NLS-1$
+			assertEquals("Wrong number of new warnings", 2, BuildNotifier.NewWarningCount); //$NON-NLS-1$
+		} finally {
+			BuildNotifier.resetProblemCounters();
+		}
+	}
+
+	/*
+	 * Ensures that the builder only locks its project when the resources plug-in can build projects concurrently.
+	 */
+	public void testParallelBuildRequiresProjectRules() {
+		if (!JavaBuilder.supportsProjectRules())
+			assertFalse("Should not build in parallel", JavaBuilder.PARALLEL_BUILD); //$NON-NLS-1$
+	}
 }
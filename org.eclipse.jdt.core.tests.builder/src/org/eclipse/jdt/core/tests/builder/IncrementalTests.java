@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,10 +10,14 @@
  *******************************************************************************/
 package org.eclipse.jdt.core.tests.builder;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Hashtable;
 
 import junit.framework.Test;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
@@ -1086,4 +1090,65 @@ public class IncrementalTests extends BuilderTests {
 		incrementalBuild(projectPath);
 		expectingSpecificProblemFor(aPath, new Problem("A", "The import w.I cannot be resolved", aPath, 18, 21, CategorizedProblem.CAT_IMPORT, IMarker.SEVERITY_ERROR)); //$NON-NLS-1$ //$NON-NLS-2$
 	}
+
+	/*
+	 * Ensures that a class file whose contents don't change is not rewritten by an incremental build,
+	 * and that it is rewritten as soon as its contents change.
+	 */
+	public void testUnchangedClassFile() throws JavaModelException, IOException {
+		IPath projectPath = env.addProject("Project"); //$NON-NLS-1$
+		env.addExternalJars(projectPath, Util.getJavaClassLibs());
+		env.setOutputFolder(projectPath, "bin"); //$NON-NLS-1$
+
+		env.addClass(projectPath, "p", "A", //$NON-NLS-1$ //$NON-NLS-2$
+			"package p;\n" +
+			"public class A {\n" +
+			"	int foo() { return 1; }\n" +
+			"}"); //$NON-NLS-1$
+
+		fullBuild(projectPath);
+		expectingNoProblems();
+		IFile classFile = env.getWorkspace().getRoot().getFile(projectPath.append("bin/p/A.class")); //$NON-NLS-1$
+		long stamp = classFile.getModificationStamp();
+
+		// same class file contents
+		env.addClass(projectPath, "p", "A", //$NON-NLS-1$ //$NON-NLS-2$
+			"package p;\n" +
+			"public class A {\n" +
+			"	int foo() { return 1; }\n" +
+			"} // comment"); //$NON-NLS-1$
+		incrementalBuild(projectPath);
+		expectingNoProblems();
+		assertEquals("Class file should not be rewritten", stamp, classFile.getModificationStamp()); //$NON-NLS-1$
+
+		// same class file contents, but the class file was overwritten on disk
+		File file = classFile.getLocation().toFile();
+		long lastModified = file.lastModified();
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(new byte[] {1, 2, 3});
+		} finally {
+			output.close();
+		}
+		file.setLastModified(lastModified + 10000);
+		env.addClass(projectPath, "p", "A", //$NON-NLS-1$ //$NON-NLS-2$
+			"package p;\n" +
+			"public class A {\n" +
+			"	int foo() { return 1; }\n" +
+			"}"); //$NON-NLS-1$
+		incrementalBuild(projectPath);
+		expectingNoProblems();
+		assertTrue("Class file should be rewritten", file.length() > 3); //$NON-NLS-1$
+		stamp = classFile.getModificationStamp();
+
+		// different class file contents
+		env.addClass(projectPath, "p", "A", //$NON-NLS-1$ //$NON-NLS-2$
+			"package p;\n" +
+			"public class A {\n" +
+			"	int foo() { return 2; }\n" +
+			"}"); //$NON-NLS-1$
+		incrementalBuild(projectPath);
+		expectingNoProblems();
+		assertTrue("Class file should be rewritten", stamp != classFile.getModificationStamp()); //$NON-NLS-1$
+	}
 }
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.core.tests.compiler.benchmark;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
+import org.eclipse.jdt.internal.compiler.problem.ProblemReporter;
+
+/**
+ * A compiler micro-benchmark run by the {@link BenchmarkRunner}.
+ * <p>
+ * The runner calls {@link #setUp(BenchmarkCorpus)} once, then {@link #run()} repeatedly
+ * while measuring, and finally {@link #tearDown()}. {@link #run()} performs one operation
+ * over the whole corpus and answers a checksum of the work it did (e.g. the number of tokens
+ * scanned), which must be the same for every operation. The checksum prevents the VM
+ * from optimizing the work away and detects benchmarks that do not repeat the same work.
+ * </p>
+ */
+public abstract class Benchmark {
+
+	protected BenchmarkCorpus corpus;
+	protected CompilerOptions options;
+
+/**
+ * Answers the compiler options used by the benchmarks: 1.5 source and target levels,
+ * everything else being the compiler defaults.
+ */
+public static CompilerOptions getCompilerOptions() {
+	Map settings = new HashMap();
+	settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_1_5);
+	settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_5);
+	settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_5);
+	return new CompilerOptions(settings);
+}
+
+protected Compiler newCompiler(INameEnvironment environment, ICompilerRequestor requestor) {
+	return new Compiler(
+		environment,
+		DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+		this.options,
+		requestor,
+		new DefaultProblemFactory(Locale.getDefault()));
+}
+
+protected ProblemReporter getProblemReporter() {
+	return new ProblemReporter(
+		DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+		this.options,
+		new DefaultProblemFactory(Locale.getDefault()));
+}
+
+/**
+ * Answers the name used to report and select this benchmark.
+ */
+public abstract String getName();
+
+/**
+ * Performs one operation over the corpus and answers its checksum.
+ */
+public abstract long run();
+
+/**
+ * Prepares the benchmark for the given corpus. Anything which is not part of the measured
+ * operation (reading files, compiling the inputs of the operation...) should be done here.
+ */
+public void setUp(BenchmarkCorpus benchmarkCorpus) throws Exception {
+	this.corpus = benchmarkCorpus;
+	this.options = getCompilerOptions();
+}
+
+/**
+ * Releases the resources acquired in {@link #setUp(BenchmarkCorpus)}.
+ */
+public void tearDown() {
+	this.corpus = null;
+}
+
+public String toString() {
+	return getName();
+}
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.core.tests.compiler.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.eclipse.jdt.core.tests.util.Util;
+import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
+import org.eclipse.jdt.internal.compiler.batch.FileSystem;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+
+/**
+ * The source files the benchmarks operate on, and the class path needed to compile them.
+ * <p>
+ * The default corpus is generated by {@link #generate(int)} and thus does not depend on
+ * anything but the running JRE. It mixes the constructs the compiler spends most of its time
+ * on: generic types and methods, enhanced for loops, anonymous and member types, switch
+ * and try statements, string concatenations. A corpus can also be read from existing source
+ * folders with {@link #read(String[], String[])}, e.g. to benchmark the compiler on its
+ * own sources.
+ * </p>
+ */
+public class BenchmarkCorpus {
+
+	private final String name;
+	private final ICompilationUnit[] units;
+	private final String[] classpath;
+
+public BenchmarkCorpus(String name, ICompilationUnit[] units, String[] classpath) {
+	this.name = name;
+	this.units = units;
+	this.classpath = classpath;
+}
+
+/**
+ * Answers a corpus of the given number of generated compilation units, spread over a few
+ * packages. Each unit extends the previous one, so that compiling a unit requires
+ * the lookup of the types it depends upon.
+ */
+public static BenchmarkCorpus generate(int unitCount) {
+	ICompilationUnit[] units = new ICompilationUnit[unitCount];
+	for (int i = 0; i < unitCount; i++) {
+		String packageName = "corpus.p" + (i % 5); //$NON-NLS-1$
+		String fileName = packageName.replace('.', '/') + "/Unit" + i + ".java"; //$NON-NLS-1$ //$NON-NLS-2$
+		units[i] = new CompilationUnit(generateUnit(i, packageName).toCharArray(), fileName, null);
+	}
+	return new BenchmarkCorpus("generated(" + unitCount + ")", units, Util.getJavaClassLibs()); //$NON-NLS-1$ //$NON-NLS-2$
+}
+
+private static String generateUnit(int index, String packageName) {
+	String typeName = "Unit" + index; //$NON-NLS-1$
+	String superclass = index == 0
+		? "Object" //$NON-NLS-1$
+		: "corpus.p" + ((index - 1) % 5) + ".Unit" + (index - 1) + "<T>"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	StringBuffer buffer = new StringBuffer();
+	buffer
+		.append("package ").append(packageName).append(";\n") //$NON-NLS-1$ //$NON-NLS-2$
+		.append("\n") //$NON-NLS-1$
+		.append("import java.util.*;\n") //$NON-NLS-1$
+		.append("\n") //$NON-NLS-1$
+		.append("/**\n") //$NON-NLS-1$
+		.append(" * Generated benchmark unit ").append(index).append(".\n") //$NON-NLS-1$ //$NON-NLS-2$
+		.append(" */\n") //$NON-NLS-1$
+		.append("public class ").append(typeName).append("<T extends Comparable<T>> extends ").append(superclass).append(" implements Iterable<T> {\n") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		.append("	static final String[] NAMES = { \"alpha\", \"beta\", \"gamma\", \"delta\" };\n") //$NON-NLS-1$
+		.append("	private final List<T> elements = new ArrayList<T>();\n") //$NON-NLS-1$
+		.append("	private final Map<String, List<T>> index = new HashMap<String, List<T>>();\n") //$NON-NLS-1$
+		.append("	private int count").append(index).append(";\n") //$NON-NLS-1$ //$NON-NLS-2$
+		.append("\n") //$NON-NLS-1$
+		.append("	public void add(T element) {\n") //$NON-NLS-1$
+		.append("		this.elements.add(element);\n") //$NON-NLS-1$
+		.append("		String key = String.valueOf(element);\n") //$NON-NLS-1$
+		.append("		List<T> bucket = this.index.get(key);\n") //$NON-NLS-1$
+		.append("		if (bucket == null) {\n") //$NON-NLS-1$
+		.append("			bucket = new ArrayList<T>();\n") //$NON-NLS-1$
+		.append("			this.index.put(key, bucket);\n") //$NON-NLS-1$
+		.append("		}\n") //$NON-NLS-1$
+		.append("		bucket.add(element);\n") //$NON-NLS-1$
+		.append("		this.count").append(index).append("++;\n") //$NON-NLS-1$ //$NON-NLS-2$
+		.append("	}\n") //$NON-NLS-1$
+		.append("\n") //$NON-NLS-1$
+		.append("	public T max() {\n") //$NON-NLS-1$
+		.append("		T result = null;\n") //$NON-NLS-1$
+		.append("		for (T element : this.elements) {\n") //$NON-NLS-1$
+		.append("			if (result == null || element.compareTo(result) > 0)\n") //$NON-NLS-1$
+		.append("				result = element;\n") //$NON-NLS-1$
+		.append("		}\n") //$NON-NLS-1$
+		.append("		return result;\n") //$NON-NLS-1$
+		.append("	}\n"); //$NON-NLS-1$
+	for (int i = 0; i < 3; i++) {
+		buffer
+			.append("\n") //$NON-NLS-1$
+			.append("	public int sum").append(i).append("(int[] values) {\n") //$NON-NLS-1$ //$NON-NLS-2$
+			.append("		int total = ").append(i).append(";\n") //$NON-NLS-1$ //$NON-NLS-2$
+			.append("		for (int i = 0; i < values.length; i++) {\n") //$NON-NLS-1$
+			.append("			switch (values[i] % 4) {\n") //$NON-NLS-1$
+			.append("				case 0 :\n") //$NON-NLS-1$
+			.append("					total += values[i];\n") //$NON-NLS-1$
+			.append("					break;\n") //$NON-NLS-1$
+			.append("				case 1 :\n") //$NON-NLS-1$
+			.append("					total -= values[i] * ").append(i + 1).append(";\n") //$NON-NLS-1$ //$NON-NLS-2$
+			.append("					break;\n") //$NON-NLS-1$
+			.append("				case 2 :\n") //$NON-NLS-1$
+			.append("					total <<= 1;\n") //$NON-NLS-1$
+			.append("					break;\n") //$NON-NLS-1$
+			.append("				default :\n") //$NON-NLS-1$
+			.append("					total ^= values[i];\n") //$NON-NLS-1$
+			.append("			}\n") //$NON-NLS-1$
+			.append("		}\n") //$NON-NLS-1$
+			.append("		return total;\n") //$NON-NLS-1$
+			.append("	}\n") //$NON-NLS-1$
+			.append("\n") //$NON-NLS-1$
+			.append("	public String describe").append(i).append("(int depth) {\n") //$NON-NLS-1$ //$NON-NLS-2$
+			.append("		StringBuffer buffer = new StringBuffer();\n") //$NON-NLS-1$
+			.append("		try {\n") //$NON-NLS-1$
+			.append("			for (int i = 0; i < depth; i++)\n") //$NON-NLS-1$
+			.append("				buffer.append(NAMES[i % NAMES.length]).append('-').append(i);\n") //$NON-NLS-1$
+			.append("		} catch (IndexOutOfBoundsException e) {\n") //$NON-NLS-1$
+			.append("			buffer.append(e.getMessage());\n") //$NON-NLS-1$
+			.append("		} finally {\n") //$NON-NLS-1$
+			.append("			buffer.append(';');\n") //$NON-NLS-1$
+			.append("		}\n") //$NON-NLS-1$
+			.append("		return \"").append(typeName).append("[\" + this.count").append(index).append(" + \"] \" + buffer + ").append(i).append(";\n") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			.append("	}\n"); //$NON-NLS-1$
+	}
+	buffer
+		.append("\n") //$NON-NLS-1$
+		.append("	public Iterator<T> iterator() {\n") //$NON-NLS-1$
+		.append("		return new Iterator<T>() {\n") //$NON-NLS-1$
+		.append("			private int position;\n") //$NON-NLS-1$
+		.append("			public boolean hasNext() {\n") //$NON-NLS-1$
+		.append("				return this.position < ").append(typeName).append(".this.elements.size();\n") //$NON-NLS-1$ //$NON-NLS-2$
+		.append("			}\n") //$NON-NLS-1$
+		.append("			public T next() {\n") //$NON-NLS-1$
+		.append("				return ").append(typeName).append(".this.elements.get(this.position++);\n") //$NON-NLS-1$ //$NON-NLS-2$
+		.append("			}\n") //$NON-NLS-1$
+		.append("			public void remove() {\n") //$NON-NLS-1$
+		.append("				throw new UnsupportedOperationException();\n") //$NON-NLS-1$
+		.append("			}\n") //$NON-NLS-1$
+		.append("		};\n") //$NON-NLS-1$
+		.append("	}\n") //$NON-NLS-1$
+		.append("\n") //$NON-NLS-1$
+		.append("	static class Entry<K, V extends Number> implements Comparable<Entry<K, V>> {\n") //$NON-NLS-1$
+		.append("		final K key;\n") //$NON-NLS-1$
+		.append("		final V value;\n") //$NON-NLS-1$
+		.append("		Entry(K key, V value) {\n") //$NON-NLS-1$
+		.append("			this.key = key;\n") //$NON-NLS-1$
+		.append("			this.value = value;\n") //$NON-NLS-1$
+		.append("		}\n") //$NON-NLS-1$
+		.append("		public int compareTo(Entry<K, V> other) {\n") //$NON-NLS-1$
+		.append("			return Double.compare(this.value.doubleValue(), other.value.doubleValue());\n") //$NON-NLS-1$
+		.append("		}\n") //$NON-NLS-1$
+		.append("	}\n") //$NON-NLS-1$
+		.append("\n") //$NON-NLS-1$
+		.append("	public <K> List<Entry<K, Integer>> entries").append(index).append("(Collection<? extends K> keys) {\n") //$NON-NLS-1$ //$NON-NLS-2$
+		.append("		List<Entry<K, Integer>> result = new ArrayList<Entry<K, Integer>>(keys.size());\n") //$NON-NLS-1$
+		.append("		int i = 0;\n") //$NON-NLS-1$
+		.append("		for (K key : keys)\n") //$NON-NLS-1$
+		.append("			result.add(new Entry<K, Integer>(key, new Integer(i++)));\n") //$NON-NLS-1$
+		.append("		Collections.sort(result);\n") //$NON-NLS-1$
+		.append("		return result;\n") //$NON-NLS-1$
+		.append("	}\n") //$NON-NLS-1$
+		.append("}\n"); //$NON-NLS-1$
+	return buffer.toString();
+}
+
+/**
+ * Answers a corpus made of all the .java files found under the given source folders,
+ * compiled against the running JRE and the given class path entries.
+ */
+public static BenchmarkCorpus read(String[] sourceFolders, String[] classpathEntries) throws IOException {
+	ArrayList units = new ArrayList();
+	for (int i = 0, length = sourceFolders.length; i < length; i++) {
+		File folder = new File(sourceFolders[i]);
+		if (!folder.isDirectory())
+			throw new IOException("Not a source folder: " + folder); //$NON-NLS-1$
+		collectUnits(folder, units);
+	}
+	String[] classLibs = Util.getJavaClassLibs();
+	String[] classpath = new String[classLibs.length + classpathEntries.length];
+	System.arraycopy(classLibs, 0, classpath, 0, classLibs.length);
+	System.arraycopy(classpathEntries, 0, classpath, classLibs.length, classpathEntries.length);
+	StringBuffer name = new StringBuffer();
+	for (int i = 0, length = sourceFolders.length; i < length; i++) {
+		if (i > 0) name.append(File.pathSeparatorChar);
+		name.append(sourceFolders[i]);
+	}
+	ICompilationUnit[] result = new ICompilationUnit[units.size()];
+	units.toArray(result);
+	return new BenchmarkCorpus(name.toString(), result, classpath);
+}
+
+private static void collectUnits(File folder, ArrayList units) throws IOException {
+	File[] files = folder.listFiles();
+	if (files == null) return;
+	Arrays.sort(files); // same order on every run
+	for (int i = 0, length = files.length; i < length; i++) {
+		File file = files[i];
+		if (file.isDirectory()) {
+			collectUnits(file, units);
+		} else if (file.getName().endsWith(".java")) { //$NON-NLS-1$
+			char[] contents = org.eclipse.jdt.internal.compiler.util.Util.getFileCharContent(file, null);
+			units.add(new CompilationUnit(contents, file.getPath(), null));
+		}
+	}
+}
+
+/**
+ * Answers the contents of all the units, in the order of {@link #getUnits()}.
+ */
+public char[][] getContents() {
+	char[][] contents = new char[this.units.length][];
+	for (int i = 0, length = this.units.length; i < length; i++)
+		contents[i] = this.units[i].getContents();
+	return contents;
+}
+
+public String getName() {
+	return this.name;
+}
+
+/**
+ * Answers a new name environment to compile the corpus, which the caller is responsible to clean up.
+ */
+public INameEnvironment getNameEnvironment() {
+	return new FileSystem(this.classpath, new String[0], null);
+}
+
+/**
+ * Answers a copy of the units of the corpus, since the compiler forgets the units it is given.
+ */
+public ICompilationUnit[] getUnits() {
+	return (ICompilationUnit[]) this.units.clone();
+}
+
+public String toString() {
+	return this.name + ": " + this.units.length + " units"; //$NON-NLS-1$ //$NON-NLS-2$
+}
+}
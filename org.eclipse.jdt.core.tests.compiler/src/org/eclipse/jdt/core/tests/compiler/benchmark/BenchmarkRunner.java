@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.core.tests.compiler.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.StringTokenizer;
+
+/**
+ * Runs the compiler benchmarks from the command line, with no other requirement than the
+ * JDT Core and the JDT Core compiler tests on the class path:
+ * <pre>
+ * java -cp &lt;jdt core&gt;:&lt;jdt core compiler tests&gt; org.eclipse.jdt.core.tests.compiler.benchmark.BenchmarkRunner [options]
+ *
+ *  -corpus &lt;folders&gt;    compile the .java files of the given source folders (separated by
+ *                       the platform path separator) instead of the generated corpus
+ *  -classpath &lt;entries&gt; additional class path entries needed to compile the corpus folders
+ *  -units &lt;n&gt;           number of units of the generated corpus (default 50)
+ *  -benchmark &lt;names&gt;   only run the benchmarks whose name contains one of the given
+ *                       comma separated strings
+ *  -warmup &lt;n&gt;          number of warm up iterations (default 5)
+ *  -iterations &lt;n&gt;      number of measured iterations (default 10)
+ *  -time &lt;ms&gt;           minimum duration of an iteration (default 1000)
+ *  -output &lt;file&gt;       write the results to the given file
+ *  -baseline &lt;file&gt;     compare the results with those of a previous run written with -output,
+ *                       and exit with status 1 if a benchmark got slower by more than the threshold
+ *  -threshold &lt;percent&gt; allowed slow down when comparing with a baseline (default 10)
+ * </pre>
+ * An iteration runs the operation of a benchmark as many times as possible during the iteration
+ * time. The time per operation of a benchmark is the mean of its measured iterations.
+ */
+public class BenchmarkRunner {
+
+	int unitCount = 50;
+	String[] corpusFolders;
+	String[] classpath = new String[0];
+	String[] filters;
+	int warmupIterations = 5;
+	int measuredIterations = 10;
+	long iterationTime = 1000;
+	String outputFile;
+	String baselineFile;
+	double threshold = 10;
+
+	PrintWriter out = new PrintWriter(System.out, true);
+
+/**
+ * Answers all the benchmarks, in the order they are run.
+ */
+public static Benchmark[] getBenchmarks() {
+	return new Benchmark[] {
+		new ScannerBenchmark(),
+		new ParserBenchmark(),
+		new ClassFileReaderBenchmark(),
+		new CodeStreamBenchmark(),
+		new ParameterizedTypeBenchmark(),
+		new CompileBenchmark(),
+	};
+}
+
+public static void main(String[] args) {
+	BenchmarkRunner runner = new BenchmarkRunner();
+	try {
+		runner.configure(args);
+	} catch (IllegalArgumentException e) {
+		System.err.println(e.getMessage());
+		System.exit(2);
+	}
+	try {
+		System.exit(runner.run() ? 0 : 1);
+	} catch (Exception e) {
+		e.printStackTrace();
+		System.exit(2);
+	}
+}
+
+private static String[] split(String list, String separators) {
+	StringTokenizer tokenizer = new StringTokenizer(list, separators);
+	String[] result = new String[tokenizer.countTokens()];
+	for (int i = 0; tokenizer.hasMoreTokens(); i++)
+		result[i] = tokenizer.nextToken();
+	return result;
+}
+
+void configure(String[] args) {
+	for (int i = 0, length = args.length; i < length; i++) {
+		String arg = args[i];
+		if (i + 1 == length)
+			throw new IllegalArgumentException("Missing value for " + arg); //$NON-NLS-1$
+		String value = args[++i];
+		try {
+			if ("-corpus".equals(arg)) { //$NON-NLS-1$
+				this.corpusFolders = split(value, File.pathSeparator);
+			} else if ("-classpath".equals(arg)) { //$NON-NLS-1$
+				this.classpath = split(value, File.pathSeparator);
+			} else if ("-units".equals(arg)) { //$NON-NLS-1$
+				this.unitCount = Integer.parseInt(value);
+			} else if ("-benchmark".equals(arg)) { //$NON-NLS-1$
+				this.filters = split(value, ","); //$NON-NLS-1$
+			} else if ("-warmup".equals(arg)) { //$NON-NLS-1$
+				this.warmupIterations = Integer.parseInt(value);
+			} else if ("-iterations".equals(arg)) { //$NON-NLS-1$
+				this.measuredIterations = Math.max(1, Integer.parseInt(value));
+			} else if ("-time".equals(arg)) { //$NON-NLS-1$
+				this.iterationTime = Long.parseLong(value);
+			} else if ("-output".equals(arg)) { //$NON-NLS-1$
+				this.outputFile = value;
+			} else if ("-baseline".equals(arg)) { //$NON-NLS-1$
+				this.baselineFile = value;
+			} else if ("-threshold".equals(arg)) { //$NON-NLS-1$
+				this.threshold = Double.parseDouble(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + arg); //$NON-NLS-1$
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + arg + ": " + value); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+}
+
+boolean isSelected(Benchmark benchmark) {
+	if (this.filters == null) return true;
+	for (int i = 0, length = this.filters.length; i < length; i++)
+		if (benchmark.getName().indexOf(this.filters[i]) != -1)
+			return true;
+	return false;
+}
+
+/**
+ * Measures the given benchmark and answers the time of each measured iteration, in milliseconds per operation.
+ */
+double[] measure(Benchmark benchmark) {
+	long checksum = benchmark.run();
+	for (int i = 0; i < this.warmupIterations; i++)
+		iterate(benchmark, checksum);
+	double[] times = new double[this.measuredIterations];
+	for (int i = 0; i < this.measuredIterations; i++)
+		times[i] = iterate(benchmark, checksum);
+	return times;
+}
+
+private double iterate(Benchmark benchmark, long checksum) {
+	int operations = 0;
+	long start = System.currentTimeMillis();
+	long elapsed;
+	do {
+		if (benchmark.run() != checksum)
+			throw new IllegalStateException(benchmark.getName() + " does not perform the same work on each operation"); //$NON-NLS-1$
+		operations++;
+	} while ((elapsed = System.currentTimeMillis() - start) < this.iterationTime);
+	return (double) elapsed / operations;
+}
+
+/**
+ * Runs the selected benchmarks and answers whether none of them regressed compared to the baseline.
+ */
+public boolean run() throws Exception {
+	BenchmarkCorpus corpus = this.corpusFolders == null
+		? BenchmarkCorpus.generate(this.unitCount)
+		: BenchmarkCorpus.read(this.corpusFolders, this.classpath);
+	HashMap baseline = this.baselineFile == null ? null : readResults(this.baselineFile);
+	this.out.println("Corpus " + corpus); //$NON-NLS-1$
+	this.out.println("Java " + System.getProperty("java.version") + ", " + System.getProperty("java.vm.name")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	this.out.println();
+
+	ArrayList results = new ArrayList();
+	boolean passed = true;
+	Benchmark[] benchmarks = getBenchmarks();
+	for (int i = 0, length = benchmarks.length; i < length; i++) {
+		Benchmark benchmark = benchmarks[i];
+		if (!isSelected(benchmark)) continue;
+		System.gc();
+		benchmark.setUp(corpus);
+		double[] times;
+		try {
+			times = measure(benchmark);
+		} finally {
+			benchmark.tearDown();
+		}
+		double mean = 0, min = Double.MAX_VALUE;
+		for (int j = 0; j < times.length; j++) {
+			mean += times[j];
+			min = Math.min(min, times[j]);
+		}
+		mean /= times.length;
+		double variance = 0;
+		for (int j = 0; j < times.length; j++)
+			variance += (times[j] - mean) * (times[j] - mean);
+		double deviation = Math.sqrt(variance / times.length);
+
+		StringBuffer line = new StringBuffer();
+		line.append(pad(benchmark.getName(), 45))
+			.append(pad(format(mean), 12)).append(" ms/op  +/- ").append(pad(format(deviation), 10)) //$NON-NLS-1$
+			.append("  min ").append(format(min)); //$NON-NLS-1$
+		if (baseline != null) {
+			Double previous = (Double) baseline.get(benchmark.getName());
+			if (previous != null) {
+				double change = (mean - previous.doubleValue()) * 100 / previous.doubleValue();
+				line.append("  ").append(change >= 0 ? "+" : "").append(format(change)).append('%'); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				if (change > this.threshold) {
+					line.append("  REGRESSION"); //$NON-NLS-1$
+					passed = false;
+				}
+			}
+		}
+		this.out.println(line);
+		results.add(benchmark.getName() + '\t' + mean + '\t' + deviation + '\t' + min);
+	}
+
+	if (this.outputFile != null) {
+		PrintWriter writer = new PrintWriter(new FileWriter(this.outputFile));
+		try {
+			for (int i = 0, size = results.size(); i < size; i++)
+				writer.println(results.get(i));
+		} finally {
+			writer.close();
+		}
+	}
+	return passed;
+}
+
+private static String format(double value) {
+	return String.valueOf(Math.round(value * 1000) / 1000.0);
+}
+
+private static String pad(String value, int length) {
+	StringBuffer buffer = new StringBuffer(value);
+	while (buffer.length() < length)
+		buffer.append(' ');
+	return buffer.toString();
+}
+
+/*
+ * Reads the mean times per benchmark name of a file written with -output.
+ */
+private static HashMap readResults(String fileName) throws IOException {
+	HashMap results = new HashMap();
+	BufferedReader reader = new BufferedReader(new FileReader(fileName));
+	try {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String[] values = split(line, "\t"); //$NON-NLS-1$
+			if (values.length < 2) continue;
+			try {
+				results.put(values[0], Double.valueOf(values[1]));
+			} catch (NumberFormatException e) {
+				// ignore malformed line
+			}
+		}
+	} finally {
+		reader.close();
+	}
+	return results;
+}
+}
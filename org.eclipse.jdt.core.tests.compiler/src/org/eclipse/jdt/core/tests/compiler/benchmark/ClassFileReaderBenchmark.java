@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.core.tests.compiler.benchmark;
+
+import java.util.ArrayList;
+
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+
+/**
+ * Measures the construction of a fully initialized {@link ClassFileReader} over the class files
+ * produced from the corpus. The corpus is compiled once, when the benchmark is set up.
+ */
+public class ClassFileReaderBenchmark extends Benchmark {
+
+	private byte[][] classFiles;
+	private char[][] fileNames;
+
+public String getName() {
+	return "ClassFileReader"; //$NON-NLS-1$
+}
+
+public long run() {
+	long members = 0;
+	try {
+		for (int i = 0, length = this.classFiles.length; i < length; i++) {
+			ClassFileReader reader = new ClassFileReader(this.classFiles[i], this.fileNames[i], true /*fully initialize*/);
+			members++;
+			if (reader.getFields() != null)
+				members += reader.getFields().length;
+			if (reader.getMethods() != null)
+				members += reader.getMethods().length;
+		}
+	} catch (ClassFormatException e) {
+		throw new IllegalStateException(e.toString());
+	}
+	return members;
+}
+
+public void setUp(BenchmarkCorpus benchmarkCorpus) throws Exception {
+	super.setUp(benchmarkCorpus);
+	final ArrayList bytes = new ArrayList();
+	final ArrayList names = new ArrayList();
+	INameEnvironment environment = benchmarkCorpus.getNameEnvironment();
+	try {
+		final Compiler[] compiler = new Compiler[1];
+		compiler[0] = newCompiler(environment, new ICompilerRequestor() {
+			public void acceptResult(CompilationResult result) {
+				ClassFile[] files = result.getClassFiles();
+				for (int i = 0, length = files.length; i < length; i++) {
+					bytes.add(files[i].getBytes());
+					names.add(files[i].fileName());
+				}
+				compiler[0].lookupEnvironment.releaseClassFiles(files);
+			}
+		});
+		compiler[0].compile(benchmarkCorpus.getUnits());
+	} finally {
+		environment.cleanup();
+	}
+	this.classFiles = new byte[bytes.size()][];
+	bytes.toArray(this.classFiles);
+	this.fileNames = new char[names.size()][];
+	names.toArray(this.fileNames);
+}
+
+public void tearDown() {
+	this.classFiles = null;
+	this.fileNames = null;
+	super.tearDown();
+}
+}
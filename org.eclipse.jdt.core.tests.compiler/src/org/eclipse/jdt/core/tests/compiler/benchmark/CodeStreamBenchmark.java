@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.core.tests.compiler.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+import org.eclipse.jdt.internal.compiler.ASTVisitor;
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.ast.ASTNode;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
+import org.eclipse.jdt.internal.compiler.codegen.CodeStream;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.lookup.BlockScope;
+import org.eclipse.jdt.internal.compiler.lookup.ClassScope;
+import org.eclipse.jdt.internal.compiler.lookup.CompilationUnitScope;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
+
+/**
+ * Measures the code generation phase, i.e. the {@link CodeStream} and {@link ClassFile} work
+ * done by {@link CompilationUnitDeclaration#generateCode()}. The units of the corpus are parsed,
+ * resolved and analyzed once, when the benchmark is set up, and their code is then generated
+ * again by each operation.
+ */
+public class CodeStreamBenchmark extends Benchmark {
+
+	/*
+	 * A compiler which keeps the processed units instead of cleaning them up,
+	 * so that their code can be generated again.
+	 */
+	static class ResolvingCompiler extends Compiler {
+		ResolvingCompiler(INameEnvironment environment, CompilerOptions options) {
+			super(
+				environment,
+				DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+				options,
+				new ICompilerRequestor() {
+					public void acceptResult(CompilationResult result) {
+						// units are not accepted
+					}
+				},
+				new DefaultProblemFactory(Locale.getDefault()));
+		}
+		CompilationUnitDeclaration[] resolve(ICompilationUnit[] sourceUnits) {
+			beginToCompile(sourceUnits);
+			CompilationUnitDeclaration[] units = new CompilationUnitDeclaration[this.totalUnits];
+			for (int i = 0; i < this.totalUnits; i++) {
+				units[i] = this.unitsToProcess[i];
+				process(units[i], i);
+				this.unitsToProcess[i] = null;
+			}
+			return units;
+		}
+	}
+
+	/*
+	 * Forgets that the code of types has been generated, including member, local and anonymous types.
+	 */
+	static final ASTVisitor RESET_VISITOR = new ASTVisitor() {
+		public boolean visit(TypeDeclaration localTypeDeclaration, BlockScope scope) {
+			localTypeDeclaration.bits &= ~ASTNode.HasBeenGenerated;
+			return true;
+		}
+		public boolean visit(TypeDeclaration memberTypeDeclaration, ClassScope scope) {
+			memberTypeDeclaration.bits &= ~ASTNode.HasBeenGenerated;
+			return true;
+		}
+		public boolean visit(TypeDeclaration typeDeclaration, CompilationUnitScope scope) {
+			typeDeclaration.bits &= ~ASTNode.HasBeenGenerated;
+			return true;
+		}
+	};
+
+	private INameEnvironment environment;
+	private ResolvingCompiler compiler;
+	private CompilationUnitDeclaration[] units;
+
+public String getName() {
+	return "CodeStream"; //$NON-NLS-1$
+}
+
+public long run() {
+	long size = 0;
+	for (int i = 0, length = this.units.length; i < length; i++) {
+		CompilationUnitDeclaration unit = this.units[i];
+		unit.traverse(RESET_VISITOR, unit.scope);
+		unit.generateCode();
+		ClassFile[] classFiles = unit.compilationResult.getClassFiles();
+		for (int j = 0, max = classFiles.length; j < max; j++)
+			size += classFiles[j].headerOffset + classFiles[j].contentsOffset;
+		this.compiler.lookupEnvironment.releaseClassFiles(classFiles);
+	}
+	return size;
+}
+
+public void setUp(BenchmarkCorpus benchmarkCorpus) throws Exception {
+	super.setUp(benchmarkCorpus);
+	this.environment = benchmarkCorpus.getNameEnvironment();
+	this.compiler = new ResolvingCompiler(this.environment, this.options);
+	this.units = this.compiler.resolve(benchmarkCorpus.getUnits());
+
+	// check that generating the code again produces the same class files
+	ArrayList units = new ArrayList();
+	for (int i = 0, length = this.units.length; i < length; i++) {
+		CompilationUnitDeclaration unit = this.units[i];
+		if (unit.scope == null || unit.ignoreFurtherInvestigation) continue; // no code to generate
+		byte[][] expected = getBytes(unit);
+		this.compiler.lookupEnvironment.releaseClassFiles(unit.compilationResult.getClassFiles());
+		unit.traverse(RESET_VISITOR, unit.scope);
+		unit.generateCode();
+		byte[][] actual = getBytes(unit);
+		this.compiler.lookupEnvironment.releaseClassFiles(unit.compilationResult.getClassFiles());
+		if (expected.length != actual.length)
+			throw new IllegalStateException("Different class files generated for " + new String(unit.getFileName())); //$NON-NLS-1$
+		for (int j = 0, max = expected.length; j < max; j++)
+			if (!Arrays.equals(expected[j], actual[j]))
+				throw new IllegalStateException("Different code generated for " + new String(unit.getFileName())); //$NON-NLS-1$
+		units.add(unit);
+	}
+	this.units = new CompilationUnitDeclaration[units.size()];
+	units.toArray(this.units);
+}
+
+private byte[][] getBytes(CompilationUnitDeclaration unit) {
+	ClassFile[] classFiles = unit.compilationResult.getClassFiles();
+	Arrays.sort(classFiles, new Comparator() {
+		public int compare(Object o1, Object o2) {
+			return new String(((ClassFile) o1).fileName()).compareTo(new String(((ClassFile) o2).fileName()));
+		}
+	});
+	byte[][] bytes = new byte[classFiles.length][];
+	for (int i = 0, length = classFiles.length; i < length; i++)
+		bytes[i] = classFiles[i].getBytes();
+	return bytes;
+}
+
+public void tearDown() {
+	this.units = null;
+	this.compiler = null;
+	this.environment.cleanup();
+	this.environment = null;
+	super.tearDown();
+}
+}
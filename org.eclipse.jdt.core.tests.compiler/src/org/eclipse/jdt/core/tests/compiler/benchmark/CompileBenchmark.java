@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.core.tests.compiler.benchmark;
+
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+
+/**
+ * Measures {@link Compiler#compile(org.eclipse.jdt.internal.compiler.env.ICompilationUnit[])}
+ * of the whole corpus, from parsing to the production of the class file bytes. A new compiler
+ * is used by each operation, but the name environment is shared, as the batch compiler
+ * would do for a single invocation.
+ */
+public class CompileBenchmark extends Benchmark implements ICompilerRequestor {
+
+	private INameEnvironment environment;
+	private Compiler compiler;
+	private long classFileBytes;
+
+public void acceptResult(CompilationResult result) {
+	ClassFile[] classFiles = result.getClassFiles();
+	for (int i = 0, length = classFiles.length; i < length; i++)
+		this.classFileBytes += classFiles[i].getBytes().length;
+	this.compiler.lookupEnvironment.releaseClassFiles(classFiles);
+}
+
+public String getName() {
+	return "Compiler.compile"; //$NON-NLS-1$
+}
+
+public long run() {
+	this.classFileBytes = 0;
+	this.compiler = newCompiler(this.environment, this);
+	this.compiler.compile(this.corpus.getUnits());
+	this.compiler = null;
+	return this.classFileBytes;
+}
+
+public void setUp(BenchmarkCorpus benchmarkCorpus) throws Exception {
+	super.setUp(benchmarkCorpus);
+	this.environment = benchmarkCorpus.getNameEnvironment();
+}
+
+public void tearDown() {
+	this.environment.cleanup();
+	this.environment = null;
+	super.tearDown();
+}
+}
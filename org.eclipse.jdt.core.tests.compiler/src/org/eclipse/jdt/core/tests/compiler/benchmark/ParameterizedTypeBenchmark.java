@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.core.tests.compiler.benchmark;
+
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.lookup.LookupEnvironment;
+import org.eclipse.jdt.internal.compiler.lookup.ParameterizedTypeBinding;
+import org.eclipse.jdt.internal.compiler.lookup.ReferenceBinding;
+import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
+
+/**
+ * Measures {@link LookupEnvironment#createParameterizedType(ReferenceBinding, TypeBinding[], ReferenceBinding)}
+ * by parameterizing the common generic collection types of the JRE with many combinations of
+ * type arguments, some of them being parameterized types themselves. All the parameterizations
+ * are created by the first operation, the next ones retrieve them from the environment caches,
+ * which is what happens most of the time when compiling generic code.
+ * <p>
+ * This benchmark does not depend on the corpus.
+ * </p>
+ */
+public class ParameterizedTypeBenchmark extends Benchmark {
+
+	static final String[] GENERIC_TYPES = {
+		"java.util.Collection", //$NON-NLS-1$
+		"java.util.List", //$NON-NLS-1$
+		"java.util.ArrayList", //$NON-NLS-1$
+		"java.util.Set", //$NON-NLS-1$
+		"java.util.Iterator", //$NON-NLS-1$
+		"java.lang.Comparable", //$NON-NLS-1$
+		"java.util.Map", //$NON-NLS-1$
+		"java.util.HashMap", //$NON-NLS-1$
+	};
+	static final String[] ARGUMENT_TYPES = {
+		"java.lang.Object", //$NON-NLS-1$
+		"java.lang.String", //$NON-NLS-1$
+		"java.lang.Number", //$NON-NLS-1$
+		"java.lang.Integer", //$NON-NLS-1$
+		"java.lang.Long", //$NON-NLS-1$
+		"java.lang.Double", //$NON-NLS-1$
+		"java.lang.Boolean", //$NON-NLS-1$
+		"java.lang.Character", //$NON-NLS-1$
+	};
+
+	private INameEnvironment environment;
+	private LookupEnvironment lookupEnvironment;
+	private ReferenceBinding[] genericTypes;
+	private ReferenceBinding[] argumentTypes;
+
+public String getName() {
+	return "LookupEnvironment.createParameterizedType"; //$NON-NLS-1$
+}
+
+private ReferenceBinding getType(String qualifiedName) {
+	ReferenceBinding type = this.lookupEnvironment.getType(CharOperation.splitOn('.', qualifiedName.toCharArray()));
+	if (type == null)
+		throw new IllegalStateException("Missing type " + qualifiedName); //$NON-NLS-1$
+	return type;
+}
+
+public long run() {
+	long arguments = 0;
+	for (int i = 0, length = this.genericTypes.length; i < length; i++) {
+		ReferenceBinding genericType = this.genericTypes[i];
+		boolean isMap = genericType.typeVariables().length == 2;
+		for (int j = 0, max = this.argumentTypes.length; j < max; j++) {
+			ReferenceBinding argument = this.argumentTypes[j];
+			if (isMap) {
+				for (int k = 0; k < max; k++) {
+					ParameterizedTypeBinding type = this.lookupEnvironment.createParameterizedType(genericType, new TypeBinding[] { argument, this.argumentTypes[k] }, null);
+					arguments += type.arguments.length;
+				}
+			} else {
+				ParameterizedTypeBinding type = this.lookupEnvironment.createParameterizedType(genericType, new TypeBinding[] { argument }, null);
+				arguments += type.arguments.length;
+				// nested parameterization, e.g. Map<String, List<Integer>>
+				for (int k = 0, count = this.genericTypes.length; k < count; k++) {
+					ReferenceBinding outerType = this.genericTypes[k];
+					if (outerType.typeVariables().length != 2) continue;
+					ParameterizedTypeBinding outer = this.lookupEnvironment.createParameterizedType(outerType, new TypeBinding[] { this.argumentTypes[1], type }, null);
+					arguments += outer.arguments.length;
+				}
+			}
+		}
+	}
+	return arguments;
+}
+
+public void setUp(BenchmarkCorpus benchmarkCorpus) throws Exception {
+	super.setUp(benchmarkCorpus);
+	this.environment = benchmarkCorpus.getNameEnvironment();
+	this.lookupEnvironment = newCompiler(this.environment, new ICompilerRequestor() {
+		public void acceptResult(CompilationResult result) {
+			// nothing is compiled
+		}
+	}).lookupEnvironment;
+	this.genericTypes = new ReferenceBinding[GENERIC_TYPES.length];
+	for (int i = 0, length = GENERIC_TYPES.length; i < length; i++)
+		this.genericTypes[i] = getType(GENERIC_TYPES[i]);
+	this.argumentTypes = new ReferenceBinding[ARGUMENT_TYPES.length];
+	for (int i = 0, length = ARGUMENT_TYPES.length; i < length; i++)
+		this.argumentTypes[i] = getType(ARGUMENT_TYPES[i]);
+}
+
+public void tearDown() {
+	this.genericTypes = null;
+	this.argumentTypes = null;
+	this.lookupEnvironment = null;
+	this.environment.cleanup();
+	this.environment = null;
+	super.tearDown();
+}
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.core.tests.compiler.benchmark;
+
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+import org.eclipse.jdt.internal.compiler.parser.Parser;
+
+/**
+ * Measures a full {@link Parser#parse(ICompilationUnit, CompilationResult)} (method bodies
+ * included) of every unit of the corpus.
+ */
+public class ParserBenchmark extends Benchmark {
+
+	private ICompilationUnit[] units;
+	private Parser parser;
+
+public String getName() {
+	return "Parser.parse"; //$NON-NLS-1$
+}
+
+public long run() {
+	long nodes = 0;
+	for (int i = 0, length = this.units.length; i < length; i++) {
+		CompilationResult result = new CompilationResult(this.units[i], i, length, this.options.maxProblemsPerUnit);
+		CompilationUnitDeclaration unit = this.parser.parse(this.units[i], result);
+		nodes += unit.sourceEnd;
+		if (unit.types != null)
+			nodes += unit.types.length;
+	}
+	return nodes;
+}
+
+public void setUp(BenchmarkCorpus benchmarkCorpus) throws Exception {
+	super.setUp(benchmarkCorpus);
+	this.units = benchmarkCorpus.getUnits();
+	this.parser = new Parser(getProblemReporter(), this.options.parseLiteralExpressionsAsConstants);
+}
+
+public void tearDown() {
+	this.units = null;
+	this.parser = null;
+	super.tearDown();
+}
+}
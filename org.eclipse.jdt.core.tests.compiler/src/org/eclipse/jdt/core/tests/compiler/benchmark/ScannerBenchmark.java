@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.core.tests.compiler.benchmark;
+
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+import org.eclipse.jdt.internal.compiler.parser.Scanner;
+import org.eclipse.jdt.internal.compiler.parser.TerminalTokens;
+
+/**
+ * Measures {@link Scanner#getNextToken()} by tokenizing every unit of the corpus.
+ */
+public class ScannerBenchmark extends Benchmark {
+
+	private char[][] contents;
+	private Scanner scanner;
+
+public String getName() {
+	return "Scanner.getNextToken"; //$NON-NLS-1$
+}
+
+public long run() {
+	long tokens = 0;
+	for (int i = 0, length = this.contents.length; i < length; i++) {
+		this.scanner.setSource(this.contents[i]);
+		try {
+			while (this.scanner.getNextToken() != TerminalTokens.TokenNameEOF)
+				tokens++;
+		} catch (InvalidInputException e) {
+			tokens++; // count the invalid token and skip the rest of the unit
+		}
+	}
+	return tokens;
+}
+
+public void setUp(BenchmarkCorpus benchmarkCorpus) throws Exception {
+	super.setUp(benchmarkCorpus);
+	this.contents = benchmarkCorpus.getContents();
+	this.scanner = new Scanner(
+		false /*comment*/,
+		false /*whitespace*/,
+		false /*nls*/,
+		this.options.sourceLevel,
+		null /*taskTags*/,
+		null /*taskPriorities*/,
+		true /*taskCaseSensitive*/);
+}
+
+public void tearDown() {
+	this.contents = null;
+	this.scanner = null;
+	super.tearDown();
+}
+}
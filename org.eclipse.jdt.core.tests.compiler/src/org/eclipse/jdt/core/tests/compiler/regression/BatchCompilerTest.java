@@ -20,6 +20,7 @@ package org.eclipse.jdt.core.tests.compiler.regression;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -27,6 +28,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -39,8 +41,11 @@ import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.compiler.CompilationProgress;
 import org.eclipse.jdt.core.compiler.batch.BatchCompiler;
 import org.eclipse.jdt.core.tests.util.Util;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
 import org.eclipse.jdt.internal.compiler.batch.ClasspathJar;
 import org.eclipse.jdt.internal.compiler.batch.ClasspathLocation;
+import org.eclipse.jdt.internal.compiler.batch.CompilerDaemon;
 import org.eclipse.jdt.internal.compiler.batch.Main;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
 import org.eclipse.jdt.internal.compiler.util.ManifestAnalyzer;
@@ -1607,6 +1612,8 @@ public void test012(){
         "    -referenceInfo     compute reference info\n" +
         "    -progress          show progress (only in -log mode)\n" +
         "    -time              display speed information \n" +
+        "    -stats <file>      write the statistics of each compilation unit (phase\n" +
+        "                       times, bindings, class file bytes) to a JSON file\n" +
         "    -noExit            do not call System.exit(n) at end of compilation (n==0\n" +
         "                       if no error)\n" +
         "    -repeat <n>        repeat compilation process <n> times for perf analysis\n" +
@@ -12352,4 +12359,600 @@ public void test310b_warn_options() {
 		"1 problem (1 warning)", 
 		true);
 }
+
+// parsing method bodies on several threads must report the same problems in the same order
+public void test311_parse_threads() {
+	String setting = System.getProperty("jdt.compiler.parseThreads");
+	try {
+		System.setProperty("jdt.compiler.parseThreads", "3");
+		this.runNegativeTest(
+			new String[] {
+				"X.java",
+				"public class X {\n" +
+				"	void foo() { int i = ; }\n" +
+				"	Y y = new Y();\n" +
+				"}",
+				"Y.java",
+				"public class Y {\n" +
+				"	void bar() { new Z().baz(); }\n" +
+				"}",
+				"Z.java",
+				"public class Z {\n" +
+				"	void baz() { unknown(); }\n" +
+				"}"
+			},
+			"\"" + OUTPUT_DIR +  File.separator + "X.java\""
+			+ " \"" + OUTPUT_DIR +  File.separator + "Y.java\""
+			+ " \"" + OUTPUT_DIR +  File.separator + "Z.java\""
+			+ " -1.5 -proc:none -d \"" + OUTPUT_DIR + "\"",
+			"",
+			"----------\n" +
+			"1. ERROR in ---OUTPUT_DIR_PLACEHOLDER---/X.java (at line 2)\n" +
+			"	void foo() { int i = ; }\n" +
+			"	                   ^\n" +
+			"Syntax error on token \"=\", VariableInitializer expected after this token\n" +
+			"----------\n" +
+			"----------\n" +
+			"2. ERROR in ---OUTPUT_DIR_PLACEHOLDER---/Z.java (at line 2)\n" +
+			"	void baz() { unknown(); }\n" +
+			"	             ^^^^^^^\n" +
+			"The method unknown() is undefined for the type Z\n" +
+			"----------\n" +
+			"2 problems (2 errors)",
+			true);
+	} finally {
+		if (setting == null)
+			System.getProperties().remove("jdt.compiler.parseThreads");
+		else
+			System.setProperty("jdt.compiler.parseThreads", setting);
+	}
+}
+// the method bodies are parsed by the parsing threads, which are reported in the statistics of the units
+public void test311b_parse_threads() {
+	String setting = System.getProperty("jdt.compiler.parseThreads");
+	try {
+		System.setProperty("jdt.compiler.parseThreads", "3");
+		int unitCount = 40;
+		String[] testFiles = new String[unitCount * 2];
+		StringBuffer commandLine = new StringBuffer();
+		for (int i = 0; i < unitCount; i++) {
+			StringBuffer source = new StringBuffer("public class X" + i + " {\n");
+			for (int j = 0; j < 20; j++) {
+				source.append("	int foo" + j + "(int i) {\n");
+				for (int k = 0; k < 20; k++)
+					source.append("		if (i > " + k + ") i = i * " + j + " + foo" + k + "(i - 1);\n");
+				source.append("		return i;\n	}\n");
+			}
+			source.append("}");
+			testFiles[i * 2] = "X" + i + ".java";
+			testFiles[i * 2 + 1] = source.toString();
+			commandLine.append("\"" + OUTPUT_DIR +  File.separator + "X" + i + ".java\" ");
+		}
+		String statsFileName = OUTPUT_DIR + File.separator + "stats.json";
+		commandLine.append("-1.5 -proc:none -d \"" + OUTPUT_DIR + "\" -stats \"" + statsFileName + "\"");
+		this.runConformTest(testFiles, commandLine.toString(), "", "", true);
+		String stats = Util.fileContent(statsFileName);
+		assertTrue("Missing totals: " + stats, stats.indexOf("\"unitCount\": " + unitCount + ",") != -1);
+		assertTrue("No unit parsed by a parsing thread: " + stats, stats.indexOf("\"parseThread\": \"Compiler Parsing Task #") != -1);
+	} finally {
+		if (setting == null)
+			System.getProperties().remove("jdt.compiler.parseThreads");
+		else
+			System.setProperty("jdt.compiler.parseThreads", setting);
+	}
+}
+// -stats writes the statistics of each compiled unit as a JSON document
+public void test312_stats() {
+	String statsFileName = OUTPUT_DIR + File.separator + "stats.json";
+	this.runConformTest(
+		new String[] {
+			"X.java",
+			"public class X {\n" +
+			"	Y y = new Y();\n" +
+			"	class Member {}\n" +
+			"}",
+			"Y.java",
+			"public class Y {}",
+		},
+		"\"" + OUTPUT_DIR +  File.separator + "X.java\""
+		+ " \"" + OUTPUT_DIR +  File.separator + "Y.java\""
+		+ " -1.5 -proc:none -d \"" + OUTPUT_DIR + "\""
+		+ " -stats \"" + statsFileName + "\"",
+		"",
+		"",
+		true);
+	String stats = Util.fileContent(statsFileName);
+	assertTrue("Missing totals: " + stats, stats.indexOf("\"compilations\": 1, ") != -1);
+	assertTrue("Missing totals: " + stats, stats.indexOf("\"unitCount\": 2,") != -1);
+	assertTrue("Missing totals: " + stats, stats.indexOf("\"classFileCount\": 3, ") != -1);
+	assertTrue("Missing X.java: " + stats, stats.indexOf("X.java\", \"lineCount\": 3, ") != -1);
+	assertTrue("Missing Y.java: " + stats, stats.indexOf("Y.java\", \"lineCount\": 0, ") != -1);
+	assertTrue("Missing class files of X.java: " + stats, stats.indexOf("\"classFileCount\": 2, ") != -1);
+}
+private static void writeBytes(File file, byte[] bytes) throws IOException {
+	FileOutputStream output = new FileOutputStream(file);
+	try {
+		output.write(bytes);
+	} finally {
+		output.close();
+	}
+}
+// binary cache: the jars of the classpath are answered from the cache by later compilations
+public void test313_binary_cache() throws IOException {
+	createCascadedJars();
+	String cacheLocation = OUTPUT_DIR + File.separator + "cache";
+	Util.delete(cacheLocation);
+	String setting = System.getProperty("jdt.compiler.binaryCache");
+	File[] jars = new File(LIB_DIR).listFiles(new java.io.FileFilter() {
+		public boolean accept(File file) {
+			return file.isFile() && file.getName().endsWith(".jar");
+		}
+	});
+	byte[][] jarContents = new byte[jars.length][];
+	long[] jarTimes = new long[jars.length];
+	try {
+		System.setProperty("jdt.compiler.binaryCache", cacheLocation);
+		String[] testFiles = new String[] {
+			"src/p/X.java",
+			"package p;\n" +
+			"/** */\n" +
+			"public class X {\n" +
+			"  A a;\n" +
+			"  B b;\n" +
+			"}",
+		};
+		String commandLine =
+			"\"" + OUTPUT_DIR +  File.separator + "src/p/X.java\""
+			+ " -cp \"" + LIB_DIR + File.separator + "lib1.jar\""
+			+ " -sourcepath \"" + OUTPUT_DIR +  File.separator + "src\""
+			+ " -1.5 -proc:none"
+			+ " -d \"" + OUTPUT_DIR + File.separator + "bin\" ";
+		this.runConformTest(testFiles, commandLine, "", "", true);
+		File[] cacheFiles = new File(cacheLocation).listFiles();
+		assertNotNull("Missing cache", cacheFiles);
+		int indexCount = 0, dataCount = 0;
+		for (int i = 0; i < cacheFiles.length; i++) {
+			String name = cacheFiles[i].getName();
+			if (name.endsWith(".cache"))
+				indexCount++;
+			else if (name.endsWith(".data"))
+				dataCount++;
+			else
+				fail("Unexpected file: " + cacheFiles[i]);
+		}
+		assertTrue("Missing cache of lib1.jar and lib2.jar", indexCount >= 2);
+		assertTrue("Missing class files of lib1.jar and lib2.jar", dataCount >= 2);
+
+		// the jars are not read any more: the same compilation succeeds after the jars are
+		// overwritten, as long as they keep the same size and modification time
+		for (int i = 0; i < jars.length; i++) {
+			jarContents[i] = org.eclipse.jdt.internal.compiler.util.Util.getFileByteContent(jars[i]);
+			jarTimes[i] = jars[i].lastModified();
+			writeBytes(jars[i], new byte[jarContents[i].length]);
+			jars[i].setLastModified(jarTimes[i]);
+		}
+		this.runConformTest(testFiles, commandLine, "", "", false);
+		assertEquals("Unexpected cache files", cacheFiles.length, new File(cacheLocation).listFiles().length);
+	} finally {
+		for (int i = 0; i < jars.length; i++) {
+			if (jarContents[i] != null) {
+				writeBytes(jars[i], jarContents[i]);
+				jars[i].setLastModified(jarTimes[i]);
+			}
+		}
+		if (setting == null)
+			System.getProperties().remove("jdt.compiler.binaryCache");
+		else
+			System.setProperty("jdt.compiler.binaryCache", setting);
+	}
+}
+// binary cache: the class files cached for a jar are limited by jdt.compiler.binaryCache.maxSize
+public void test313b_binary_cache_limit() throws IOException {
+	createCascadedJars();
+	String cacheLocation = OUTPUT_DIR + File.separator + "cache";
+	Util.delete(cacheLocation);
+	String setting = System.getProperty("jdt.compiler.binaryCache");
+	String maxSizeSetting = System.getProperty("jdt.compiler.binaryCache.maxSize");
+	try {
+		System.setProperty("jdt.compiler.binaryCache", cacheLocation);
+		System.setProperty("jdt.compiler.binaryCache.maxSize", "0");
+		this.runConformTest(
+			new String[] {
+				"src/p/X.java",
+				"package p;\n" +
+				"public class X {\n" +
+				"  A a;\n" +
+				"  B b;\n" +
+				"}",
+			},
+			"\"" + OUTPUT_DIR +  File.separator + "src/p/X.java\""
+			+ " -cp \"" + LIB_DIR + File.separator + "lib1.jar\""
+			+ " -1.5 -proc:none"
+			+ " -d \"" + OUTPUT_DIR + File.separator + "bin\" ",
+			"", "", true);
+		// data files only hold their header: signature, version, jar path, jar size and modification time
+		File[] cacheFiles = new File(cacheLocation).listFiles();
+		assertNotNull("Missing cache", cacheFiles);
+		for (int i = 0; i < cacheFiles.length; i++) {
+			if (!cacheFiles[i].getName().endsWith(".data")) continue;
+			java.io.DataInputStream input = new java.io.DataInputStream(new java.io.FileInputStream(cacheFiles[i]));
+			try {
+				input.readInt();
+				input.readInt();
+				String jarPath = input.readUTF();
+				int headerLength = 4 + 4 + 2 + jarPath.getBytes("UTF-8").length + 8 + 8;
+				assertEquals("Unexpected cached class files for " + jarPath, headerLength, cacheFiles[i].length());
+			} finally {
+				input.close();
+			}
+		}
+	} finally {
+		if (setting == null)
+			System.getProperties().remove("jdt.compiler.binaryCache");
+		else
+			System.setProperty("jdt.compiler.binaryCache", setting);
+		if (maxSizeSetting == null)
+			System.getProperties().remove("jdt.compiler.binaryCache.maxSize");
+		else
+			System.setProperty("jdt.compiler.binaryCache.maxSize", maxSizeSetting);
+	}
+}
+// binary cache: the class files are read from the jar when another compilation rewrote the data file
+// after its records were listed
+public void test313c_binary_cache_rewritten() throws IOException {
+	createCascadedJars();
+	final String cacheLocation = OUTPUT_DIR + File.separator + "cache";
+	Util.delete(cacheLocation);
+	String setting = System.getProperty("jdt.compiler.binaryCache");
+	try {
+		System.setProperty("jdt.compiler.binaryCache", cacheLocation);
+		String[] testFiles = new String[] {
+			"src/p/X.java",
+			"package p;\n" +
+			"public class X {\n" +
+			"  A a;\n" +
+			"  B b;\n" +
+			"}",
+		};
+		String commandLine =
+			"\"" + OUTPUT_DIR +  File.separator + "src/p/X.java\""
+			+ " -cp \"" + LIB_DIR + File.separator + "lib1.jar\""
+			+ " -1.5 -proc:none"
+			+ " -d \"" + OUTPUT_DIR + File.separator + "bin\" ";
+		this.runConformTest(testFiles, commandLine, "", "", true);
+
+		// the records move once the next compilation has listed them
+		StringWriter errWriter = new StringWriter();
+		Main main = new Main(new PrintWriter(new StringWriter()), new PrintWriter(errWriter), false/*systemExit*/, null/*options*/, null/*progress*/) {
+			public org.eclipse.jdt.internal.compiler.batch.FileSystem getLibraryAccess() {
+				org.eclipse.jdt.internal.compiler.batch.FileSystem environment = super.getLibraryAccess();
+				File[] cacheFiles = new File(cacheLocation).listFiles();
+				for (int i = 0; i < cacheFiles.length; i++) {
+					if (cacheFiles[i].getName().endsWith(".data"))
+						insertRecord(cacheFiles[i]);
+				}
+				return environment;
+			}
+		};
+		assertTrue("Compilation failed", main.compile(Main.tokenize(commandLine)));
+		assertEquals("Unexpected errors", "", errWriter.toString());
+	} finally {
+		if (setting == null)
+			System.getProperties().remove("jdt.compiler.binaryCache");
+		else
+			System.setProperty("jdt.compiler.binaryCache", setting);
+	}
+}
+// inserts a record of another class file before the records of the given data file of the binary cache
+static void insertRecord(File dataFile) {
+	try {
+		byte[] contents = org.eclipse.jdt.internal.compiler.util.Util.getFileByteContent(dataFile);
+		java.io.DataInputStream input = new java.io.DataInputStream(new ByteArrayInputStream(contents));
+		input.readInt();
+		input.readInt();
+		String jarPath = input.readUTF();
+		int headerLength = 4 + 4 + 2 + jarPath.getBytes("UTF-8").length + 8 + 8;
+		ByteArrayOutputStream newContents = new ByteArrayOutputStream();
+		java.io.DataOutputStream output = new java.io.DataOutputStream(newContents);
+		output.write(contents, 0, headerLength);
+		byte[] name = "p/Other.class".getBytes("UTF-8");
+		output.writeInt(0x4A434352); // record signature
+		output.writeShort(name.length);
+		output.write(name);
+		output.writeInt(7);
+		output.write(new byte[7]);
+		output.write(contents, headerLength, contents.length - headerLength);
+		output.close();
+		writeBytes(dataFile, newContents.toByteArray());
+	} catch (IOException e) {
+		fail("Cannot rewrite " + dataFile + ": " + e);
+	}
+}
+// compiler daemon: jars are kept across requests until they change
+public void test314_daemon() throws IOException {
+	String libPath = OUTPUT_DIR + File.separator + "daemon" + File.separator + "lib.jar";
+	new File(libPath).getParentFile().mkdirs();
+	Util.createJar(
+		new String[] {
+			"p/A.java",
+			"package p;\n" +
+			"public class A {\n" +
+			"}",
+		},
+		libPath,
+		JavaCore.VERSION_1_4);
+	Util.writeToFile(
+		"public class X {\n" +
+		"	void foo(p.A a) {\n" +
+		"		a.bar();\n" +
+		"	}\n" +
+		"}",
+		OUTPUT_DIR + File.separator + "X.java");
+	String request =
+		"\"" + OUTPUT_DIR +  File.separator + "X.java\""
+		+ " -cp \"" + libPath + "\""
+		+ " -1.5 -proc:none -nowarn"
+		+ " -d \"" + OUTPUT_DIR + File.separator + "bin\"";
+	CompilerDaemon daemon = new CompilerDaemon();
+	try {
+		String answer = daemon.compile(request);
+		assertTrue("Unexpected answer: " + answer, answer.endsWith("exit:1\n"));
+		assertTrue("Unexpected answer: " + answer, answer.indexOf("err:The method bar() is undefined for the type A") != -1);
+
+		// change the jar, the daemon should not answer the previous A
+		long lastModified = new File(libPath).lastModified();
+		Util.createJar(
+			new String[] {
+				"p/A.java",
+				"package p;\n" +
+				"public class A {\n" +
+				"	public void bar() {}\n" +
+				"}",
+			},
+			libPath,
+			JavaCore.VERSION_1_4);
+		new File(libPath).setLastModified(lastModified + 2000);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		daemon.serve(new ByteArrayInputStream((request + "\n" + request + "\nshutdown\n").getBytes("UTF-8")), output);
+		assertEquals("Unexpected answer", "exit:0\nexit:0\n", output.toString("UTF-8"));
+	} finally {
+		daemon.shutdown();
+	}
+}
+// compiler daemon: the jars and class files kept across requests are bounded
+public void test314b_daemon_limits() throws IOException {
+	String libPath = OUTPUT_DIR + File.separator + "daemon" + File.separator + "lib.jar";
+	new File(libPath).getParentFile().mkdirs();
+	Util.createJar(
+		new String[] {
+			"p/A.java",
+			"package p;\n" +
+			"public class A {\n" +
+			"	public void bar() {}\n" +
+			"}",
+		},
+		libPath,
+		JavaCore.VERSION_1_4);
+	Util.writeToFile(
+		"public class X {\n" +
+		"	void foo(p.A a) {\n" +
+		"		a.bar();\n" +
+		"	}\n" +
+		"}",
+		OUTPUT_DIR + File.separator + "X.java");
+	String request =
+		"\"" + OUTPUT_DIR +  File.separator + "X.java\""
+		+ " -cp \"" + libPath + "\""
+		+ " -1.5 -proc:none -nowarn"
+		+ " -d \"" + OUTPUT_DIR + File.separator + "bin\"";
+	String maxJars = System.getProperty("jdt.compiler.daemon.maxJars");
+	String maxReadersSize = System.getProperty("jdt.compiler.daemon.maxReadersSize");
+	CompilerDaemon daemon = null;
+	try {
+		// no limit on the jars, class files are kept
+		System.getProperties().remove("jdt.compiler.daemon.maxJars");
+		System.getProperties().remove("jdt.compiler.daemon.maxReadersSize");
+		daemon = new CompilerDaemon();
+		assertEquals("Unexpected answer", "exit:0\n", daemon.compile(request));
+		assertTrue("Should keep more than one jar", daemon.getSharedJarCount() > 1);
+		assertTrue("Should keep class files", daemon.getSharedClassFilesSize() > 0);
+		daemon.shutdown();
+		assertEquals("Should close the jars", 0, daemon.getSharedJarCount());
+		assertEquals("Should drop the class files", 0, daemon.getSharedClassFilesSize());
+
+		// at most one jar, no class file
+		System.setProperty("jdt.compiler.daemon.maxJars", "1");
+		System.setProperty("jdt.compiler.daemon.maxReadersSize", "0");
+		daemon = new CompilerDaemon();
+		assertEquals("Unexpected answer", "exit:0\n", daemon.compile(request));
+		assertEquals("Unexpected number of jars", 1, daemon.getSharedJarCount());
+		assertEquals("Should not keep class files", 0, daemon.getSharedClassFilesSize());
+		// evicted jars are reopened
+		assertEquals("Unexpected answer", "exit:0\n", daemon.compile(request));
+		assertEquals("Unexpected number of jars", 1, daemon.getSharedJarCount());
+
+		// a compilation outside of the daemon does not share its jars
+		assertTrue(new Main(new PrintWriter(new StringWriter()), new PrintWriter(new StringWriter()), false, null, null).compile(Main.tokenize(request)));
+		assertEquals("Unexpected number of jars", 1, daemon.getSharedJarCount());
+	} finally {
+		if (daemon != null)
+			daemon.shutdown();
+		if (maxJars == null)
+			System.getProperties().remove("jdt.compiler.daemon.maxJars");
+		else
+			System.setProperty("jdt.compiler.daemon.maxJars", maxJars);
+		if (maxReadersSize == null)
+			System.getProperties().remove("jdt.compiler.daemon.maxReadersSize");
+		else
+			System.setProperty("jdt.compiler.daemon.maxReadersSize", maxReadersSize);
+	}
+}
+// the processed units waiting to be accepted are bounded by the processed queue size and memory
+public void test315_process_queue_limits() {
+	Util.flushDirectoryContent(new File(OUTPUT_DIR));
+	new File(OUTPUT_DIR).mkdirs();
+	int unitCount = 8;
+	StringBuffer commandLine = new StringBuffer();
+	for (int i = 0; i < unitCount; i++) {
+		Util.writeToFile(
+			"public class X" + i + " {\n" +
+			"	int foo() { return " + i + "; }\n" +
+			"}",
+			OUTPUT_DIR + File.separator + "X" + i + ".java");
+		commandLine.append("\"" + OUTPUT_DIR +  File.separator + "X" + i + ".java\" ");
+	}
+	commandLine.append("-1.5 -proc:none -d \"" + OUTPUT_DIR + File.separator + "bin\"");
+	String queueSize = System.getProperty("jdt.compiler.processQueueSize");
+	String queueMemory = System.getProperty("jdt.compiler.processQueueMemory");
+	try {
+		System.getProperties().remove("jdt.compiler.processQueueSize");
+		System.getProperties().remove("jdt.compiler.processQueueMemory");
+		assertEquals("All units should be processed ahead", unitCount, processedBeforeFirstAccept(commandLine.toString()));
+
+		// the accepted unit, 2 queued units and one unit waiting for room in the queue
+		System.setProperty("jdt.compiler.processQueueSize", "2");
+		assertEquals("Unexpected number of processed units", 4, processedBeforeFirstAccept(commandLine.toString()));
+
+		// the accepted unit, 1 queued unit since the queue always accepts a unit when empty,
+		// and one unit waiting for room in the queue
+		System.getProperties().remove("jdt.compiler.processQueueSize");
+		System.setProperty("jdt.compiler.processQueueMemory", "1");
+		assertEquals("Unexpected number of processed units", 3, processedBeforeFirstAccept(commandLine.toString()));
+	} finally {
+		if (queueSize == null)
+			System.getProperties().remove("jdt.compiler.processQueueSize");
+		else
+			System.setProperty("jdt.compiler.processQueueSize", queueSize);
+		if (queueMemory == null)
+			System.getProperties().remove("jdt.compiler.processQueueMemory");
+		else
+			System.setProperty("jdt.compiler.processQueueMemory", queueMemory);
+	}
+}
+/*
+ * Compiles with the given command line, holds the first result until the processing thread
+ * stops processing units, and answers the number of units processed by then.
+ */
+private int processedBeforeFirstAccept(String commandLine) {
+	final int[] processed = new int[2]; // processed units, processed units at first accept
+	CompilationProgress progress = new TestCompilationProgress() {
+		public void setTaskName(String name) {
+			if (name.startsWith("Processing ")) {
+				synchronized (processed) {
+					processed[0]++;
+				}
+			}
+		}
+	};
+	Main main = new Main(new PrintWriter(new StringWriter()), new PrintWriter(new StringWriter()), false/*systemExit*/, null/*options*/, progress) {
+		public ICompilerRequestor getBatchRequestor() {
+			final ICompilerRequestor requestor = super.getBatchRequestor();
+			return new ICompilerRequestor() {
+				boolean first = true;
+				public void acceptResult(CompilationResult result) {
+					if (this.first) {
+						this.first = false;
+						// wait until no unit was processed for half a second
+						int last = -1, stable = 0;
+						for (int i = 0; i < 100 && stable < 5; i++) {
+							try {
+								Thread.sleep(100);
+							} catch (InterruptedException e) {
+								// ignore
+							}
+							synchronized (processed) {
+								if (processed[0] == last) {
+									stable++;
+								} else {
+									last = processed[0];
+									stable = 0;
+								}
+							}
+						}
+						processed[1] = last;
+					}
+					requestor.acceptResult(result);
+				}
+			};
+		}
+	};
+	assertTrue("Compilation failed", main.compile(Main.tokenize(commandLine)));
+	return processed[1];
+}
+// class files written on writing threads are logged and counted once written
+public void test316_output_threads() {
+	Util.flushDirectoryContent(new File(OUTPUT_DIR));
+	new File(OUTPUT_DIR).mkdirs();
+	Util.writeToFile("public class X {}", OUTPUT_DIR + File.separator + "X.java");
+	Util.writeToFile("public class Y {}", OUTPUT_DIR + File.separator + "Y.java");
+	String outputDir = OUTPUT_DIR + File.separator + "bin";
+	// X.class cannot be written
+	new File(outputDir + File.separator + "X.class").mkdirs();
+	String setting = System.getProperty("jdt.compiler.outputThreads");
+	try {
+		System.setProperty("jdt.compiler.outputThreads", "2");
+		StringWriter outWriter = new StringWriter();
+		StringWriter errWriter = new StringWriter();
+		Main main = new Main(new PrintWriter(outWriter), new PrintWriter(errWriter), false/*systemExit*/, null/*options*/, null/*progress*/);
+		main.compile(Main.tokenize(
+			"\"" + OUTPUT_DIR +  File.separator + "X.java\""
+			+ " \"" + OUTPUT_DIR +  File.separator + "Y.java\""
+			+ " -1.5 -proc:none -verbose -d \"" + outputDir + "\""));
+		assertEquals("Unexpected number of class files", 1, main.exportedClassFilesCounter);
+		assertTrue("Missing failure: " + errWriter, errWriter.toString().indexOf("No .class file created for file X.class") != -1);
+		assertTrue("Missing write: " + outWriter, outWriter.toString().indexOf("[writing    Y.class - #1]") != -1);
+		assertTrue("Unexpected write: " + outWriter, outWriter.toString().indexOf("[writing    X.class") == -1);
+		assertTrue("Missing class file", new File(outputDir + File.separator + "Y.class").exists());
+	} finally {
+		if (setting == null)
+			System.getProperties().remove("jdt.compiler.outputThreads");
+		else
+			System.setProperty("jdt.compiler.outputThreads", setting);
+	}
+}
+// the class files of the output directory are stored in the output jar, which cannot hold several output directories
+public void test317_output_jar() throws IOException {
+	Util.flushDirectoryContent(new File(OUTPUT_DIR));
+	new File(OUTPUT_DIR + File.separator + "p").mkdirs();
+	new File(OUTPUT_DIR + File.separator + "src").mkdirs();
+	Util.writeToFile("package p;\npublic class X {}", OUTPUT_DIR + File.separator + "p" + File.separator + "X.java");
+	Util.writeToFile("public class Y {}", OUTPUT_DIR + File.separator + "Y.java");
+	Util.writeToFile("public class Z {}", OUTPUT_DIR + File.separator + "src" + File.separator + "Z.java");
+	String outputDir = OUTPUT_DIR + File.separator + "bin";
+	String jarPath = OUTPUT_DIR + File.separator + "out.jar";
+	String setting = System.getProperty("jdt.compiler.outputJar");
+	try {
+		System.setProperty("jdt.compiler.outputJar", jarPath);
+		Main main = new Main(new PrintWriter(new StringWriter()), new PrintWriter(new StringWriter()), false/*systemExit*/, null/*options*/, null/*progress*/);
+		assertTrue("Compilation failed", main.compile(Main.tokenize(
+			"\"" + OUTPUT_DIR +  File.separator + "p" + File.separator + "X.java\""
+			+ " \"" + OUTPUT_DIR +  File.separator + "Y.java\""
+			+ " -1.5 -proc:none -d \"" + outputDir + "\"")));
+		assertEquals("Unexpected number of class files", 2, main.exportedClassFilesCounter);
+		assertFalse("Unexpected class file", new File(outputDir + File.separator + "Y.class").exists());
+		java.util.zip.ZipFile jar = new java.util.zip.ZipFile(jarPath);
+		try {
+			assertNotNull("Missing p/X.class", jar.getEntry("p/X.class"));
+			assertNotNull("Missing Y.class", jar.getEntry("Y.class"));
+		} finally {
+			jar.close();
+		}
+
+		// a source folder with its own output directory
+		StringWriter errWriter = new StringWriter();
+		main = new Main(new PrintWriter(new StringWriter()), new PrintWriter(errWriter), false/*systemExit*/, null/*options*/, null/*progress*/);
+		assertFalse("Compilation should fail", main.compile(Main.tokenize(
+			"\"" + OUTPUT_DIR +  File.separator + "Y.java\""
+			+ " \"" + OUTPUT_DIR +  File.separator + "src\""
+			+ "[-d \"" + OUTPUT_DIR + File.separator + "other\"]"
+			+ " -1.5 -proc:none -d \"" + outputDir + "\"")));
+		assertTrue("Missing error: " + errWriter, errWriter.toString().indexOf("the output jar " + jarPath + " cannot hold the class files of the output directory") != -1);
+		assertFalse("Unexpected class file", new File(OUTPUT_DIR + File.separator + "other" + File.separator + "Z.class").exists());
+	} finally {
+		if (setting == null)
+			System.getProperties().remove("jdt.compiler.outputJar");
+		else
+			System.setProperty("jdt.compiler.outputJar", setting);
+	}
+}
 }
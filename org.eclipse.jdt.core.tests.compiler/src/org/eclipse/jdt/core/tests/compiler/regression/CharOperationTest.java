@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2011 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.jdt.core.tests.compiler.regression;
 
 import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.util.CharArrayInterningSet;
 
 import junit.framework.Test;
 
@@ -167,4 +168,38 @@ public void test012() {
 			4,
 			true));
 }
+// interned names are shared, also when looked up from a range of another array
+public void test013() {
+	CharArrayInterningSet names = new CharArrayInterningSet(3);
+	char[] name = "identifier".toCharArray();
+	assertSame("Should answer the first name", name, names.intern(name));
+	assertSame("Should answer the equal interned name", name, names.intern("identifier".toCharArray()));
+	char[] source = "int identifier = 0;".toCharArray();
+	assertSame("Should answer the interned name for a range", name, names.intern(source, 4, 10));
+	char[] other = names.intern(source, 0, 3);
+	assertTrue("Should copy a new name", CharOperation.equals("int".toCharArray(), other) && other != source);
+	for (int i = 0; i < 100; i++)
+		names.intern(("name" + i).toCharArray());
+	assertEquals("Unexpected size", 102, names.size());
+	assertSame("Should still find the first name after growing", name, names.intern(source, 4, 10));
+	char[][] compoundName = new char[][] {"int".toCharArray(), "name7".toCharArray()};
+	names.intern(compoundName);
+	assertSame("Should intern the segments", other, compoundName[0]);
+}
+// a local set answers the names of its shared set, and only interns its new names in the shared set
+public void test014() {
+	CharArrayInterningSet shared = new CharArrayInterningSet(3);
+	char[] binaryName = "Object".toCharArray();
+	shared.intern(binaryName);
+	CharArrayInterningSet local1 = new CharArrayInterningSet(shared);
+	CharArrayInterningSet local2 = new CharArrayInterningSet(shared);
+	char[] source = "Object identifier;".toCharArray();
+	assertSame("Should answer the shared name", binaryName, local1.intern(source, 0, 6));
+	char[] name = local1.intern(source, 7, 10);
+	assertEquals("Unexpected shared size", 2, shared.size());
+	assertSame("Should answer the name interned by another local set", name, local2.intern("identifier".toCharArray()));
+	assertSame("Should answer the local name", name, local1.intern(source, 7, 10));
+	assertEquals("Unexpected local size", 2, local1.size());
+	assertEquals("Unexpected shared size", 2, shared.size());
+}
 }
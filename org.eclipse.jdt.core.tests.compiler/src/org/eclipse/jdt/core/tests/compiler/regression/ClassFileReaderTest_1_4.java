@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,11 +10,15 @@
  *******************************************************************************/
 package org.eclipse.jdt.core.tests.compiler.regression;
 
+import java.io.File;
+
 import junit.framework.Test;
 
 import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.util.ClassFileBytesDisassembler;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
 import org.eclipse.jdt.internal.compiler.env.IBinaryMethod;
 
 public class ClassFileReaderTest_1_4 extends AbstractRegressionTest {
@@ -2871,4 +2875,93 @@ public class ClassFileReaderTest_1_4 extends AbstractRegressionTest {
 		}
 	}
 
+	/*
+	 * Returns the bytes of the class file X compiled from the given source.
+	 */
+	private byte[] getClassFileBytes(String source) throws Exception {
+		compileAndDeploy(source, "", "X");
+		try {
+			return org.eclipse.jdt.internal.compiler.util.Util.getFileByteContent(new File(EVAL_DIRECTORY, "X.class"));
+		} finally {
+			removeTempClass("X");
+		}
+	}
+	/*
+	 * Returns the index of the first constant pool entry with the given tag, and the given value if it is a Utf8 entry.
+	 */
+	private int getConstantPoolIndex(ClassFileReader reader, byte[] bytes, int tag, String utf8) {
+		int[] offsets = reader.getConstantPoolOffsets();
+		for (int i = 1, length = offsets.length; i < length; i++) {
+			int offset = offsets[i];
+			if (offset == 0 || bytes[offset] != tag) continue;
+			if (utf8 == null || new String(reader.utf8At(offset + 3, reader.u2At(offset + 1))).equals(utf8))
+				return i;
+		}
+		return -1;
+	}
+	/*
+	 * Ensures that the members of a class file, which are decoded lazily, are still checked when the reader is created.
+	 */
+	public void test081() throws Exception {
+		byte[] bytes = getClassFileBytes(
+			"public class X {\n" +
+			"	void foo() {}\n" +
+			"}");
+		ClassFileReader reader = new ClassFileReader(bytes, "X.class".toCharArray());
+		int nameIndex = getConstantPoolIndex(reader, bytes, ClassFileConstants.Utf8Tag, "foo");
+		int descriptorIndex = getConstantPoolIndex(reader, bytes, ClassFileConstants.Utf8Tag, "()V");
+		int classIndex = getConstantPoolIndex(reader, bytes, ClassFileConstants.ClassTag, null);
+		assertTrue("Missing constant pool entries", nameIndex > 0 && descriptorIndex > 0 && classIndex > 0);
+
+		// make the name of foo() refer to a class constant
+		int methodOffset = -1;
+		for (int i = bytes.length - 4; i > 0; i--) {
+			if (((bytes[i] & 0xFF) << 8 | (bytes[i + 1] & 0xFF)) == nameIndex
+					&& ((bytes[i + 2] & 0xFF) << 8 | (bytes[i + 3] & 0xFF)) == descriptorIndex) {
+				methodOffset = i - 2;
+				break;
+			}
+		}
+		assertTrue("Method foo() not found", methodOffset > 0);
+		bytes[methodOffset + 2] = (byte) (classIndex >> 8);
+		bytes[methodOffset + 3] = (byte) classIndex;
+		try {
+			new ClassFileReader(bytes, "X.class".toCharArray());
+			fail("Should report the bad method name when the reader is created");
+		} catch (ClassFormatException e) {
+			assertEquals("Wrong error", ClassFormatException.ErrBadConstantPoolIndex, e.getErrorCode());
+		}
+	}
+	/*
+	 * Ensures that the members of a reader shared by several threads are decoded only once.
+	 */
+	public void test082() throws Exception {
+		byte[] bytes = getClassFileBytes(
+			"public class X {\n" +
+			"	int f1, f2, f3;\n" +
+			"	void foo() {}\n" +
+			"	void bar(int i) {}\n" +
+			"}");
+		final ClassFileReader reader = new ClassFileReader(bytes, "X.class".toCharArray());
+		final Object[][] members = new Object[8][];
+		Thread[] threads = new Thread[members.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					members[index] = index % 2 == 0 ? (Object[]) reader.getMethods() : (Object[]) reader.getFields();
+				}
+			};
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].start();
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		for (int i = 0; i < members.length; i++) {
+			assertNotNull("No members", members[i]);
+			assertSame("Members decoded more than once", members[i % 2], members[i]);
+		}
+		assertEquals("Wrong number of fields", 3, reader.getFields().length);
+		assertEquals("Wrong number of methods", 3, reader.getMethods().length);
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2010 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,8 +15,10 @@ import java.util.ArrayList;
 
 import junit.framework.Test;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.BindingKey;
+import org.eclipse.jdt.core.IBuffer;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IProblemRequestor;
@@ -35,6 +37,7 @@ import org.eclipse.jdt.core.dom.IVariableBinding;
 import org.eclipse.jdt.core.dom.Type;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 import org.eclipse.jdt.core.tests.util.Util;
+import org.eclipse.jdt.internal.core.Buffer;
 
 public class BatchASTCreationTests extends AbstractASTTests {
 
@@ -2275,4 +2278,125 @@ public void test082() throws CoreException, IOException {
 					requestor.asts
 				);
 	}
+
+	/*
+	 * Ensures that method bodies parsed on other threads give the same ASTs and bindings,
+	 * and that the requestor is called on the calling thread in the order of the units.
+	 */
+	public void testParseThreads() throws CoreException {
+		final Thread callingThread = Thread.currentThread();
+		final ArrayList parsingThreads = new ArrayList(); // names of the parsing threads which read the sources
+		this.owner = new WorkingCopyOwner() {
+			public IBuffer createBuffer(ICompilationUnit workingCopy) {
+				return new Buffer((IFile) workingCopy.getResource(), workingCopy, false) {
+					public char[] getCharacters() {
+						Thread current = Thread.currentThread();
+						if (current.getName().startsWith("Compiler Parsing Task")) {
+							synchronized (parsingThreads) {
+								parsingThreads.add(current.getName());
+								parsingThreads.notifyAll();
+							}
+						} else if (current == callingThread && areParsingThreadsRunning()) {
+							// leave the method bodies of the other units to the parsing threads
+							synchronized (parsingThreads) {
+								long end = System.currentTimeMillis() + 10000;
+								long remaining;
+								while (parsingThreads.isEmpty() && (remaining = end - System.currentTimeMillis()) > 0) {
+									try {
+										parsingThreads.wait(remaining);
+									} catch (InterruptedException e) {
+										// ignore
+									}
+								}
+							}
+						}
+						return super.getCharacters();
+					}
+				};
+			}
+		};
+		MarkerInfo[] markerInfos = createMarkerInfos(new String[] {
+			"/P/p1/X.java",
+			"package p1;\n" +
+			"public class X {\n" +
+			"  void foo(Y y) {\n" +
+			"    // comment in X\n" +
+			"    y./*start*/bar/*end*/(new Z());\n" +
+			"  }\n" +
+			"}",
+			"/P/p1/Y.java",
+			"package p1;\n" +
+			"public class Y {\n" +
+			"  void bar(Z z) {\n" +
+			"    /*start*/z/*end*/.toString();\n" +
+			"  }\n" +
+			"}",
+			"/P/p1/Z.java",
+			"package p1;\n" +
+			"public class Z {\n" +
+			"  /*start*/int baz() {\n" +
+			"    return 1;\n" +
+			"  }/*end*/\n" +
+			"}",
+		});
+		this.workingCopies = createWorkingCopies(markerInfos, this.owner);
+		final ArrayList threads = new ArrayList();
+		BindingResolver requestor = new BindingResolver(markerInfos) {
+			public void acceptAST(ICompilationUnit source, CompilationUnit cu) {
+				threads.add(Thread.currentThread());
+				super.acceptAST(source, cu);
+			}
+		};
+		String setting = System.getProperty("jdt.compiler.parseThreads");
+		try {
+			System.setProperty("jdt.compiler.parseThreads", "3");
+			resolveASTs(this.workingCopies, requestor);
+		} finally {
+			if (setting == null)
+				System.getProperties().remove("jdt.compiler.parseThreads");
+			else
+				System.setProperty("jdt.compiler.parseThreads", setting);
+		}
+		assertASTNodesEqual(
+			"package p1;\n" +
+			"public class X {\n" +
+			"  void foo(  Y y){\n" +
+			"    y.bar(new Z());\n" +
+			"  }\n" +
+			"}\n" +
+			"\n" +
+			"package p1;\n" +
+			"public class Y {\n" +
+			"  void bar(  Z z){\n" +
+			"    z.toString();\n" +
+			"  }\n" +
+			"}\n" +
+			"\n" +
+			"package p1;\n" +
+			"public class Z {\n" +
+			"  int baz(){\n" +
+			"    return 1;\n" +
+			"  }\n" +
+			"}\n" +
+			"\n",
+			requestor.asts
+		);
+		assertStringsEqual(
+			"Unexpected bindings",
+			"Lp1/Y;.bar(Lp1/Z;)V\n" +
+			"Lp1/Y;.bar(Lp1/Z;)V#z\n" +
+			"Lp1/Z;.baz()I\n",
+			requestor.getBindingKeys());
+		assertEquals("Unexpected comments", 1, ((CompilationUnit) requestor.asts.get(0)).getCommentList().size());
+		for (int i = 0, size = threads.size(); i < size; i++)
+			assertSame("Unexpected thread", callingThread, threads.get(i));
+		assertFalse("Method bodies should be parsed on the parsing threads", parsingThreads.isEmpty());
+	}
+	static boolean areParsingThreadsRunning() {
+		Thread[] threads = new Thread[Thread.activeCount() + 10];
+		for (int i = 0, count = Thread.enumerate(threads); i < count; i++)
+			if (threads[i].getName().startsWith("Compiler Parsing Task"))
+				return true;
+		return false;
+	}
 }
@@ -19,6 +19,7 @@ import junit.framework.Test;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
@@ -30,9 +31,13 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.index.*;
 import org.eclipse.jdt.core.search.SearchEngine;
+import org.eclipse.jdt.core.search.SearchPattern;
 import org.eclipse.jdt.core.tests.util.Util;
 import org.eclipse.jdt.internal.core.JavaModelManager;
 import org.eclipse.jdt.internal.core.UserLibraryClasspathContainer;
+import org.eclipse.jdt.internal.core.search.indexing.IndexManager;
+import org.eclipse.jdt.internal.core.search.processing.IJob;
+import org.eclipse.jdt.internal.core.search.processing.JobManager;
 import org.osgi.service.prefs.BackingStoreException;
 
 public class JavaIndexTests extends AbstractJavaSearchTests  {
@@ -126,6 +131,57 @@ public class JavaIndexTests extends AbstractJavaSearchTests  {
 		}
 	}
 	
+	// Test that exact and prefix searches answer the same types from a saved index file
+	public void testPrefixSearchWithIndex() throws CoreException, IOException {
+		String indexFilePath = getExternalResourcePath("Test.index");
+		String jarFilePath = getExternalResourcePath("Test.jar");
+		try {
+			createJar(new String[] {
+					"pkg/Test.java",
+					"package pkg;\n" +
+					"public class Test {}",
+					"pkg/TestA.java",
+					"package pkg;\n" +
+					"public class TestA {}",
+					"pkg/TestB.java",
+					"package pkg;\n" +
+					"public class TestB {}",
+					"pkg/Tester.java",
+					"package pkg;\n" +
+					"public class Tester {}",
+					"pkg/Other.java",
+					"package pkg;\n" +
+					"public class Other {}"}, jarFilePath);
+			JavaIndexer.generateIndexForJar(jarFilePath, indexFilePath);
+
+			IJavaProject p = createJavaProject("P");
+			Path libPath = new Path(jarFilePath);
+			IClasspathAttribute attribute = JavaCore.newClasspathAttribute(IClasspathAttribute.INDEX_LOCATION_ATTRIBUTE_NAME, "file:///"+indexFilePath);
+			IClasspathEntry entry = JavaCore.newLibraryEntry(libPath, null, null, null, new IClasspathAttribute[]{attribute}, false);
+			setClasspath(p, new IClasspathEntry[] {entry});
+			waitUntilIndexesReady();
+
+			search("TestB", TYPE, DECLARATIONS, EXACT_RULE, SearchEngine.createJavaSearchScope(new IJavaElement[]{p}));
+			assertSearchResults(getExternalPath() + "Test.jar pkg.TestB");
+
+			this.resultCollector = new JavaSearchResultCollector();
+			search("Test", TYPE, DECLARATIONS, SearchPattern.R_PREFIX_MATCH | SearchPattern.R_CASE_SENSITIVE, SearchEngine.createJavaSearchScope(new IJavaElement[]{p}));
+			assertSearchResults(
+				getExternalPath() + "Test.jar pkg.Test\n" +
+				getExternalPath() + "Test.jar pkg.TestA\n" +
+				getExternalPath() + "Test.jar pkg.TestB\n" +
+				getExternalPath() + "Test.jar pkg.Tester");
+
+			this.resultCollector = new JavaSearchResultCollector();
+			search("Tests", TYPE, DECLARATIONS, SearchPattern.R_PREFIX_MATCH | SearchPattern.R_CASE_SENSITIVE, SearchEngine.createJavaSearchScope(new IJavaElement[]{p}));
+			assertSearchResults("");
+		} finally {
+			deleteProject("P");
+			new File(indexFilePath).delete();
+			new File(jarFilePath).delete();
+		}
+	}
+
 	// Test that the same index file is used even after restarting
 	public void testUseIndexAfterRestart() throws IOException, CoreException {
 		String indexFilePath = getExternalResourcePath("Test.index");
@@ -863,4 +919,214 @@ public class JavaIndexTests extends AbstractJavaSearchTests  {
 			deleteProject("ForIndex");
 		}
 	}
+
+	// Test that identical jars at different locations share the same index from the shared index location
+	public void testSharedIndex() throws CoreException, IOException {
+		String jarFilePath = getExternalResourcePath("Test.jar");
+		File copyDirectory = new File(getExternalResourcePath("copy"));
+		String copyFilePath = new File(copyDirectory, "Test.jar").getPath();
+		File sharedDirectory = new File(getExternalResourcePath("SharedIndexes"));
+		String previousLocation = System.getProperty(IndexManager.SHARED_INDEX_LOCATION_PROPERTY);
+		try {
+			System.setProperty(IndexManager.SHARED_INDEX_LOCATION_PROPERTY, sharedDirectory.getPath());
+			createJar(new String[] {
+					"pkg/Test.java",
+					"package pkg;\n" +
+					"public class Test {\n" +
+					"  protected Test(int i) {}\n" +
+					"}"}, jarFilePath);
+			copyDirectory.mkdirs();
+			Util.copy(jarFilePath, copyDirectory.getPath());
+
+			IJavaProject p = createJavaProject("P");
+			setClasspath(p, new IClasspathEntry[] {JavaCore.newLibraryEntry(new Path(jarFilePath), null, null)});
+			waitUntilIndexesReady();
+
+			search("Test", TYPE, DECLARATIONS, EXACT_RULE, SearchEngine.createJavaSearchScope(new IJavaElement[]{p}));
+			assertSearchResults(getExternalPath() + "Test.jar pkg.Test");
+			File[] sharedFiles = sharedDirectory.listFiles();
+			assertEquals("Unexpected shared index files", 1, sharedFiles.length);
+
+			IJavaProject q = createJavaProject("Q");
+			setClasspath(q, new IClasspathEntry[] {JavaCore.newLibraryEntry(new Path(copyFilePath), null, null)});
+			waitUntilIndexesReady();
+
+			// the copy is not indexed again but gets its own copy of the shared index
+			IndexManager indexManager = JavaModelManager.getIndexManager();
+			File indexFile = indexManager.getIndex(new Path(copyFilePath), false, false).getIndexFile();
+			assertFalse("Shared index file should not be used directly", sharedFiles[0].equals(indexFile));
+			assertEquals("Shared index file is not being used", sharedFiles[0].length(), indexFile.length());
+			assertEquals("Unexpected shared index files", 1, sharedDirectory.listFiles().length);
+
+			this.resultCollector = new JavaSearchResultCollector();
+			search("Test", TYPE, DECLARATIONS, EXACT_RULE, SearchEngine.createJavaSearchScope(new IJavaElement[]{q}));
+			assertSearchResults(getExternalPath() + "copy/Test.jar pkg.Test");
+
+			// each match is reported against its own jar
+			this.resultCollector = new JavaSearchResultCollector();
+			search("Test", TYPE, DECLARATIONS, EXACT_RULE, SearchEngine.createJavaSearchScope(new IJavaElement[]{p, q}));
+			assertSearchResults(
+				getExternalPath() + "Test.jar pkg.Test\n" +
+				getExternalPath() + "copy/Test.jar pkg.Test");
+
+			// removing the index of the copy keeps the shared index and the index of the original jar
+			indexManager.removeIndex(new Path(copyFilePath));
+			assertTrue("Shared index file should not be deleted", sharedFiles[0].exists());
+			this.resultCollector = new JavaSearchResultCollector();
+			search("Test", TYPE, DECLARATIONS, EXACT_RULE, SearchEngine.createJavaSearchScope(new IJavaElement[]{p}));
+			assertSearchResults(getExternalPath() + "Test.jar pkg.Test");
+		} finally {
+			if (previousLocation == null)
+				System.getProperties().remove(IndexManager.SHARED_INDEX_LOCATION_PROPERTY);
+			else
+				System.setProperty(IndexManager.SHARED_INDEX_LOCATION_PROPERTY, previousLocation);
+			deleteProject("P");
+			deleteProject("Q");
+			new File(jarFilePath).delete();
+			Util.delete(copyDirectory);
+			Util.delete(sharedDirectory);
+		}
+	}
+
+	/*
+	 * Job manager executing its jobs with several threads, the key of each job being given by the job itself.
+	 */
+	static class TestJobManager extends JobManager {
+		int threadsCount;
+		TestJobManager(int threadsCount) {
+			this.threadsCount = threadsCount;
+		}
+		protected Object jobKey(IJob job) {
+			return ((TestJob) job).key;
+		}
+		protected int processingThreadsCount() {
+			return this.threadsCount;
+		}
+		public String processName() {
+			return "Test Job Manager";
+		}
+		void waitUntilDone() {
+			long start = System.currentTimeMillis();
+			while (awaitingJobsCount() > 0) {
+				if (System.currentTimeMillis() - start > 30000)
+					fail("Jobs still running: " + this);
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}
+		}
+	}
+	static class TestJob implements IJob {
+		String key;
+		StringBuffer log;
+		Object lock;
+		TestJob waitFor; // job to wait for before completing, if any
+		boolean executed, cancelled, crash;
+		TestJob(String key, StringBuffer log, Object lock) {
+			this.key = key;
+			this.log = log;
+			this.lock = lock;
+		}
+		public boolean belongsTo(String jobFamily) {
+			return true;
+		}
+		public void cancel() {
+			synchronized (this.lock) {
+				this.cancelled = true;
+				this.lock.notifyAll();
+			}
+		}
+		public void ensureReadyToRun() {
+			// nothing to do
+		}
+		public boolean execute(IProgressMonitor progress) {
+			synchronized (this.lock) {
+				this.executed = true;
+				this.log.append(this).append(" started\n");
+				this.lock.notifyAll();
+				long start = System.currentTimeMillis();
+				while (this.waitFor != null && !this.waitFor.executed && !this.waitFor.cancelled && System.currentTimeMillis() - start < 10000) {
+					try {
+						this.lock.wait(100);
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+				if (this.crash)
+					throw new RuntimeException("Crash of " + this);
+				this.log.append(this).append(" done\n");
+			}
+			return true;
+		}
+		public String getJobFamily() {
+			return "test";
+		}
+		public String toString() {
+			return "Job on " + this.key;
+		}
+	}
+	/*
+	 * Ensures that jobs on different indexes are executed at the same time,
+	 * while the jobs on the same index are executed in the order they were requested.
+	 */
+	public void testParallelIndexJobs() {
+		TestJobManager manager = new TestJobManager(3);
+		StringBuffer log = new StringBuffer();
+		Object lock = new Object();
+		TestJob a1 = new TestJob("A", log, lock);
+		TestJob a2 = new TestJob("A", log, lock);
+		TestJob b1 = new TestJob("B", log, lock);
+		// a1 and b1 can only complete if they are executed at the same time
+		a1.waitFor = b1;
+		b1.waitFor = a1;
+		manager.request(a1);
+		manager.request(a2);
+		manager.request(b1);
+		manager.reset();
+		try {
+			manager.waitUntilDone();
+		} finally {
+			manager.shutdown();
+		}
+		String events = log.toString();
+		assertTrue("Jobs on different indexes should run at the same time:\n" + events,
+			events.indexOf("Job on B started") < events.indexOf("Job on A done") && events.indexOf("Job on A started") < events.indexOf("Job on B done"));
+		assertTrue("Jobs on the same index should run in order:\n" + events,
+			events.indexOf("Job on A done") < events.lastIndexOf("Job on A started"));
+		assertTrue("Second job on A should have run", a2.executed);
+	}
+	/*
+	 * Ensures that a job which crashes in a processing thread only discards this job,
+	 * and not the jobs waiting for the other threads.
+	 */
+	public void testParallelIndexJobCrash() {
+		TestJobManager manager = new TestJobManager(2);
+		StringBuffer log = new StringBuffer();
+		Object lock = new Object();
+		TestJob a1 = new TestJob("A", log, lock);
+		TestJob a2 = new TestJob("A", log, lock);
+		TestJob b1 = new TestJob("B", log, lock);
+		TestJob b2 = new TestJob("B", log, lock);
+		a1.crash = true;
+		b1.waitFor = a1;
+		a1.waitFor = b1;
+		manager.request(a1);
+		manager.request(b1);
+		manager.request(b2);
+		manager.request(a2);
+		startLogListening();
+		manager.reset();
+		try {
+			manager.waitUntilDone();
+		} finally {
+			manager.shutdown();
+			stopLogListening();
+		}
+		assertTrue("Crashed job should be cancelled", a1.cancelled);
+		assertTrue("Jobs on other indexes should not be discarded:\n" + log, b1.executed && b2.executed);
+		assertTrue("Later jobs on the same index should not be discarded:\n" + log, a2.executed);
+		assertFalse("Other jobs should not be cancelled", b1.cancelled || b2.cancelled || a2.cancelled);
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,6 +28,8 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.jdt.core.*;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
+import org.eclipse.jdt.internal.core.JarPackageFragmentRoot;
+import org.eclipse.jdt.internal.core.JarPackageIndex;
 import org.eclipse.jdt.internal.core.JavaModelManager;
 import org.eclipse.jdt.internal.core.PackageFragmentRoot;
 import org.eclipse.jdt.internal.core.util.Util;
@@ -645,6 +647,77 @@ public void testChangeZIPArchive3() throws CoreException, IOException {
 	}
 }
 
+/*
+ * Ensures that projects referencing the same external ZIP archive with different compliance levels
+ * see the packages valid for their own level (the package tables of an archive are shared per level)
+ */
+public void testSharedZIPArchiveWithDifferentCompliances() throws CoreException, IOException {
+	try {
+		org.eclipse.jdt.core.tests.util.Util.createJar(
+			null,
+			new String[] {
+				"enum/readme.txt",
+				"enum is a keyword since 1.5"
+			},
+			getExternalResourcePath("externalLib.abc"),
+			JavaCore.VERSION_1_4);
+		IJavaProject p1 = createJavaProject("P1", new String[0], new String[] {getExternalResourcePath("externalLib.abc")}, "bin", "1.4");
+		IJavaProject p2 = createJavaProject("P2", new String[0], new String[] {getExternalResourcePath("externalLib.abc")}, "bin", "1.5");
+		IJavaProject p3 = createJavaProject("P3", new String[0], new String[] {getExternalResourcePath("externalLib.abc")}, "bin", "1.4");
+		refreshExternalArchives(p1);
+		IPackageFragmentRoot root1 = p1.getPackageFragmentRoot(getExternalResourcePath("externalLib.abc"));
+		IPackageFragmentRoot root2 = p2.getPackageFragmentRoot(getExternalResourcePath("externalLib.abc"));
+		IPackageFragmentRoot root3 = p3.getPackageFragmentRoot(getExternalResourcePath("externalLib.abc"));
+		assertTrue("enum should be a package in 1.4", root1.getPackageFragment("enum").exists());
+		root1.close();
+		assertFalse("enum should not be a package in 1.5", root2.getPackageFragment("enum").exists());
+		root2.close();
+		assertTrue("enum should still be a package in 1.4", root1.getPackageFragment("enum").exists());
+		assertTrue("enum should be a package in 1.4", root3.getPackageFragment("enum").exists());
+
+		JavaModelManager manager = JavaModelManager.getJavaModelManager();
+		JarPackageIndex index1 = manager.getJarPackageIndex((JarPackageFragmentRoot) root1);
+		assertSame("Roots with the same compliance should share the package table", index1, manager.getJarPackageIndex((JarPackageFragmentRoot) root3));
+		assertNotSame("Roots with different compliances should not share the package table", index1, manager.getJarPackageIndex((JarPackageFragmentRoot) root2));
+	} finally {
+		deleteExternalResource("externalLib.abc");
+		deleteProject("P1");
+		deleteProject("P2");
+		deleteProject("P3");
+	}
+}
+/*
+ * Ensures that rewriting an internal ZIP archive with the same size and modification time updates the model
+ * (the package table of the archive must not be reused)
+ */
+public void testChangeZIPArchiveWithSameStamps() throws CoreException, IOException {
+	try {
+		final IJavaProject p = createJavaProject("P", new String[0], new String[] {"/P/lib.jar"}, "bin");
+		org.eclipse.jdt.core.tests.util.Util.createJar(null, new String[] {"p1/readme.txt", "contents"}, getExternalResourcePath("lib1.jar"), JavaCore.VERSION_1_4);
+		org.eclipse.jdt.core.tests.util.Util.createJar(null, new String[] {"p2/readme.txt", "contents"}, getExternalResourcePath("lib2.jar"), JavaCore.VERSION_1_4);
+		final byte[] contents1 = org.eclipse.jdt.internal.compiler.util.Util.getFileByteContent(new File(getExternalResourcePath("lib1.jar")));
+		final byte[] contents2 = org.eclipse.jdt.internal.compiler.util.Util.getFileByteContent(new File(getExternalResourcePath("lib2.jar")));
+		assertEquals("Archives should have the same size", contents1.length, contents2.length);
+		final IFile jar = createFile("/P/lib.jar", contents1);
+		IPackageFragmentRoot root = p.getPackageFragmentRoot(jar);
+		assertTrue("p1 should be a package", root.getPackageFragment("p1").exists());
+
+		getWorkspace().run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				long timeStamp = jar.getLocalTimeStamp();
+				jar.setContents(new java.io.ByteArrayInputStream(contents2), IResource.FORCE, null);
+				jar.setLocalTimeStamp(timeStamp);
+			}
+		}, null);
+		assertFalse("p1 should no longer be a package", root.getPackageFragment("p1").exists());
+		assertTrue("p2 should be a package", root.getPackageFragment("p2").exists());
+	} finally {
+		deleteExternalResource("lib1.jar");
+		deleteExternalResource("lib2.jar");
+		deleteProject("P");
+	}
+}
+
 /**
  * When the output location is changed, package fragments can be added/removed
  */
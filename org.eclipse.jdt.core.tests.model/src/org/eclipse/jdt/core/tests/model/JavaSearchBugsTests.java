@@ -13,8 +13,10 @@ package org.eclipse.jdt.core.tests.model;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.StringTokenizer;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -30,6 +32,7 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.content.IContentType;
@@ -73,6 +76,8 @@ import org.eclipse.jdt.internal.core.ClassFile;
 import org.eclipse.jdt.internal.core.JavaModelManager;
 import org.eclipse.jdt.internal.core.SourceMethod;
 import org.eclipse.jdt.internal.core.index.DiskIndex;
+import org.eclipse.jdt.internal.core.index.EntryResult;
+import org.eclipse.jdt.internal.core.index.FileIndexLocation;
 import org.eclipse.jdt.internal.core.index.Index;
 import org.eclipse.jdt.internal.core.search.AbstractSearchScope;
 import org.eclipse.jdt.internal.core.search.BasicSearchEngine;
@@ -13743,4 +13748,481 @@ public void testBug241834() throws CoreException {
 		
 	}
 }
-}
\ No newline at end of file
+/*
+ * Ensures that locating the matches on several threads finds the same matches, reported in the same order,
+ * as locating them on the searching thread.
+ */
+public void testParallelMatchLocating() throws CoreException {
+	int threads = MatchLocator.LOCATOR_THREADS;
+	try {
+		IJavaProject project = createJavaProject("P");
+		createFile("/P/X.java",
+			"public class X {\n" +
+			"	public static void foo() {}\n" +
+			"}\n");
+		for (int i = 0; i < 20; i++) {
+			createFile("/P/Y" + i + ".java",
+				"public class Y" + i + " {\n" +
+				"	void bar() {\n" +
+				"		X.foo();\n" +
+				"	}\n" +
+				"}\n");
+		}
+		waitUntilIndexesReady();
+		IMethod method = getCompilationUnit("/P/X.java").getType("X").getMethod("foo", new String[0]);
+		IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { project });
+		search(method, REFERENCES, EXACT_RULE, scope, this.resultCollector);
+		String expected = this.resultCollector.toString();
+		assertEquals("Unexpected number of matches", 20, this.resultCollector.count);
+
+		MatchLocator.LOCATOR_THREADS = 4;
+		this.resultCollector = new JavaSearchResultCollector();
+		search(method, REFERENCES, EXACT_RULE, scope, this.resultCollector);
+		assertSearchResults(expected, this.resultCollector);
+	} finally {
+		MatchLocator.LOCATOR_THREADS = threads;
+		deleteProject("P");
+	}
+}
+
+/**
+ * Ensures that the matches located while the indexes are queried are the same as when
+ * all the index matches are collected first.
+ */
+public void testStreamingSearch() throws CoreException {
+	boolean streaming = BasicSearchEngine.STREAMING;
+	try {
+		IJavaProject project = createJavaProject("P");
+		createFile("/P/X.java",
+			"public class X {\n" +
+			"	public static void foo() {}\n" +
+			"}\n");
+		for (int i = 0; i < 20; i++) {
+			createFile("/P/Y" + i + ".java",
+				"public class Y" + i + " {\n" +
+				"	void bar() {\n" +
+				"		X.foo();\n" +
+				"	}\n" +
+				"}\n");
+		}
+		waitUntilIndexesReady();
+		IMethod method = getCompilationUnit("/P/X.java").getType("X").getMethod("foo", new String[0]);
+		IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { project });
+		search(method, REFERENCES, EXACT_RULE, scope, this.resultCollector);
+		String[] expected = sortedLines(this.resultCollector.toString());
+		assertEquals("Unexpected number of matches", 20, this.resultCollector.count);
+
+		// the matches may come in another order, since they are located in groups
+		BasicSearchEngine.STREAMING = true;
+		this.resultCollector = new JavaSearchResultCollector();
+		search(method, REFERENCES, EXACT_RULE, scope, this.resultCollector);
+		assertStringsEqual("Unexpected matches", expected, sortedLines(this.resultCollector.toString()));
+	} finally {
+		BasicSearchEngine.STREAMING = streaming;
+		deleteProject("P");
+	}
+}
+private static String[] sortedLines(String string) {
+	StringTokenizer tokenizer = new StringTokenizer(string, "\n");
+	String[] lines = new String[tokenizer.countTokens()];
+	for (int i = 0; tokenizer.hasMoreTokens(); i++)
+		lines[i] = tokenizer.nextToken();
+	org.eclipse.jdt.internal.core.util.Util.sort(lines);
+	return lines;
+}
+
+/**
+ * Ensures that the results of the queries cached by an index are flushed when the index changes.
+ */
+public void testIndexQueryCache() throws CoreException {
+	try {
+		IJavaProject project = createJavaProject("P");
+		createFile("/P/Cached1.java", "public class Cached1 {}\n");
+		waitUntilIndexesReady();
+		IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { project });
+		search("Cached*", TYPE, DECLARATIONS, scope, this.resultCollector);
+		assertSearchResults("Cached1.java Cached1 [Cached1] EXACT_MATCH", this.resultCollector);
+
+		// same query, answered by the cache
+		this.resultCollector = new JavaSearchResultCollector();
+		search("Cached*", TYPE, DECLARATIONS, scope, this.resultCollector);
+		assertSearchResults("Cached1.java Cached1 [Cached1] EXACT_MATCH", this.resultCollector);
+
+		createFile("/P/Cached2.java", "public class Cached2 {}\n");
+		deleteFile("/P/Cached1.java");
+		waitUntilIndexesReady();
+		this.resultCollector = new JavaSearchResultCollector();
+		search("Cached*", TYPE, DECLARATIONS, scope, this.resultCollector);
+		assertSearchResults("Cached2.java Cached2 [Cached2] EXACT_MATCH", this.resultCollector);
+	} finally {
+		deleteProject("P");
+	}
+}
+
+/**
+ * Ensures that the query results cached for several indexes are kept apart, and that the
+ * results of an index are dropped when the index is removed.
+ */
+public void testIndexQueryCacheShared() throws CoreException, IOException {
+	try {
+		IJavaProject project1 = createJavaProject("P1");
+		IJavaProject project2 = createJavaProject("P2");
+		createFile("/P1/Shared1.java", "public class Shared1 {}\n");
+		createFile("/P2/Shared2.java", "public class Shared2 {}\n");
+		waitUntilIndexesReady();
+		IndexManager indexManager = JavaModelManager.getIndexManager();
+		Index index1 = indexManager.getIndex(project1.getPath(), true /*reuse index file*/, false /*don't create if none*/);
+		Index index2 = indexManager.getIndex(project2.getPath(), true /*reuse index file*/, false /*don't create if none*/);
+		char[][] categories = new char[][] {IIndexConstants.TYPE_DECL};
+		char[] key = "Shared".toCharArray();
+		EntryResult[] results1 = queryIndex(index1, categories, key);
+		EntryResult[] results2 = queryIndex(index2, categories, key);
+		assertEquals("Unexpected results of P1", 1, results1.length);
+		assertTrue("Unexpected type of P1", CharOperation.prefixEquals("Shared1".toCharArray(), results1[0].getWord()));
+		assertEquals("Unexpected results of P2", 1, results2.length);
+		assertTrue("Unexpected type of P2", CharOperation.prefixEquals("Shared2".toCharArray(), results2[0].getWord()));
+
+		// same queries, answered by the cache
+		assertSame("Should be cached for P1", results1, queryIndex(index1, categories, key));
+		assertSame("Should be cached for P2", results2, queryIndex(index2, categories, key));
+
+		indexManager.removeIndex(project2.getPath());
+		assertTrue("Unexpected cache of P2: " + index2.getCacheStatistics(), index2.getCacheStatistics().indexOf(" 0 results") != -1);
+		assertSame("Should still be cached for P1", results1, queryIndex(index1, categories, key));
+	} finally {
+		deleteProject("P1");
+		deleteProject("P2");
+	}
+}
+private EntryResult[] queryIndex(Index index, char[][] categories, char[] key) throws IOException {
+	index.monitor.enterRead();
+	try {
+		return index.query(categories, key, SearchPattern.R_PREFIX_MATCH | SearchPattern.R_CASE_SENSITIVE);
+	} finally {
+		index.monitor.exitRead();
+	}
+}
+
+/**
+ * Ensures that camel case, prefix and pattern type searches find the same types when the
+ * index has name tables for its type declarations, and that these searches use the name tables.
+ */
+public void testTypeNameTables() throws CoreException {
+	if (!DiskIndex.MAP_FILES) return; // the name tables are only read from mapped index files
+	int maxDeltaSegments = Index.MAX_DELTA_SEGMENTS;
+	Index.MAX_DELTA_SEGMENTS = 0; // rewrite the index file with its name tables when saving
+	IndexManager indexManager = JavaModelManager.getIndexManager();
+	try {
+		IJavaProject project = createJavaProject("P");
+		for (int i = 0; i < 80; i++)
+			createFile("/P/Generated" + i + "Type.java", "public class Generated" + i + "Type {}\n");
+		createFile("/P/NullPointerHandler.java", "public class NullPointerHandler {}\n");
+		createFile("/P/nullPointerHelper.java", "public class nullPointerHelper {}\n");
+		waitUntilIndexesReady();
+		indexManager.saveIndexes();
+		Index index = indexManager.getIndex(project.getPath(), true /*reuse index file*/, false /*don't create if none*/);
+		assertFalse("Should not have delta segments", index.hasDeltaSegments());
+		int nameTableQueries = getNameTableQueries(index);
+		IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { project });
+		search("NPH", TYPE, DECLARATIONS, SearchPattern.R_CAMELCASE_MATCH, scope);
+		assertSearchResults("NullPointerHandler.java NullPointerHandler [NullPointerHandler] EXACT_MATCH");
+		assertTrue("Camel case search should use the name tables", getNameTableQueries(index) > nameTableQueries);
+		nameTableQueries = getNameTableQueries(index);
+		this.resultCollector = new JavaSearchResultCollector();
+		search("nullp", TYPE, DECLARATIONS, SearchPattern.R_CAMELCASE_MATCH, scope);
+		assertSearchResults(
+			"NullPointerHandler.java NullPointerHandler [NullPointerHandler] EXACT_MATCH\n" +
+			"nullPointerHelper.java nullPointerHelper [nullPointerHelper] EXACT_MATCH"
+		);
+		assertTrue("Lower case camel case search should use the name tables", getNameTableQueries(index) > nameTableQueries);
+		nameTableQueries = getNameTableQueries(index);
+		this.resultCollector = new JavaSearchResultCollector();
+		search("Gen*7T*", TYPE, DECLARATIONS, SearchPattern.R_PATTERN_MATCH, scope);
+		assertSearchResults(
+			"Generated17Type.java Generated17Type [Generated17Type] EXACT_MATCH\n" +
+			"Generated27Type.java Generated27Type [Generated27Type] EXACT_MATCH\n" +
+			"Generated37Type.java Generated37Type [Generated37Type] EXACT_MATCH\n" +
+			"Generated47Type.java Generated47Type [Generated47Type] EXACT_MATCH\n" +
+			"Generated57Type.java Generated57Type [Generated57Type] EXACT_MATCH\n" +
+			"Generated67Type.java Generated67Type [Generated67Type] EXACT_MATCH\n" +
+			"Generated77Type.java Generated77Type [Generated77Type] EXACT_MATCH\n" +
+			"Generated7Type.java Generated7Type [Generated7Type] EXACT_MATCH"
+		);
+		assertTrue("Pattern search should use the name tables", getNameTableQueries(index) > nameTableQueries);
+	} finally {
+		Index.MAX_DELTA_SEGMENTS = maxDeltaSegments;
+		deleteProject("P");
+	}
+}
+private int getNameTableQueries(Index index) {
+	// see Index#getCacheStatistics()
+	String statistics = index.getCacheStatistics();
+	int start = statistics.indexOf("name tables: ");
+	assertTrue("Missing name tables statistics: " + statistics, start != -1);
+	start += "name tables: ".length();
+	return Integer.parseInt(statistics.substring(start, statistics.indexOf(' ', start)));
+}
+
+/**
+ * Ensures that the changes saved in the delta segments of an index are found by searches,
+ * before and after the segments are merged into the index file.
+ */
+public void testIndexDeltaSegments() throws CoreException {
+	int maxDeltaSegments = Index.MAX_DELTA_SEGMENTS;
+	int minSegmentedIndexSize = Index.MIN_SEGMENTED_INDEX_SIZE;
+	Index.MAX_DELTA_SEGMENTS = 2;
+	Index.MIN_SEGMENTED_INDEX_SIZE = 0;
+	IndexManager indexManager = JavaModelManager.getIndexManager();
+	try {
+		IJavaProject project = createJavaProject("P");
+		createFile("/P/Segment1.java", "public class Segment1 {}\n");
+		createFile("/P/Segment2.java", "public class Segment2 {}\n");
+		waitUntilIndexesReady();
+		indexManager.saveIndexes();
+
+		// each save writes the changes in a new delta segment
+		createFile("/P/Segment3.java", "public class Segment3 {}\n");
+		waitUntilIndexesReady();
+		indexManager.saveIndexes();
+		deleteFile("/P/Segment1.java");
+		waitUntilIndexesReady();
+		indexManager.saveIndexes();
+		IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { project });
+		search("Segment*", TYPE, DECLARATIONS, scope, this.resultCollector);
+		assertSearchResults(
+			"Segment2.java Segment2 [Segment2] EXACT_MATCH\n" +
+			"Segment3.java Segment3 [Segment3] EXACT_MATCH",
+			this.resultCollector);
+
+		indexManager.compactIndexes();
+		Index index = indexManager.getIndex(project.getPath(), true /*reuse index file*/, false /*don't create if none*/);
+		assertFalse("Should not have delta segments", index.hasDeltaSegments());
+		this.resultCollector = new JavaSearchResultCollector();
+		search("Segment*", TYPE, DECLARATIONS, scope, this.resultCollector);
+		assertSearchResults(
+			"Segment2.java Segment2 [Segment2] EXACT_MATCH\n" +
+			"Segment3.java Segment3 [Segment3] EXACT_MATCH",
+			this.resultCollector);
+	} finally {
+		Index.MAX_DELTA_SEGMENTS = maxDeltaSegments;
+		Index.MIN_SEGMENTED_INDEX_SIZE = minSegmentedIndexSize;
+		deleteProject("P");
+	}
+}
+
+/**
+ * Ensures that a delta segment which cannot be written leaves the memory index unchanged, and that
+ * the last modification time of an index with delta segments is the one of its segments file.
+ */
+public void testIndexDeltaSegmentsSave() throws IOException {
+	int minSegmentedIndexSize = Index.MIN_SEGMENTED_INDEX_SIZE;
+	Index.MIN_SEGMENTED_INDEX_SIZE = 0;
+	File indexFile = File.createTempFile("segments", ".index");
+	File deltaDirectory = new File(indexFile.getPath() + ".delta2");
+	File deltaContent = new File(deltaDirectory, "content");
+	try {
+		Index index = new Index(new FileIndexLocation(indexFile), "/P", false /*don't reuse the index file*/);
+		char[][] categories = new char[][] {IIndexConstants.TYPE_DECL};
+		index.addIndexEntry(IIndexConstants.TYPE_DECL, "A/".toCharArray(), "A.java");
+		index.addIndexEntry(IIndexConstants.TYPE_DECL, "B/".toCharArray(), "B.java");
+		index.save();
+		assertTrue("Should have a delta segment", index.hasDeltaSegments());
+
+		// the next segment cannot be written over a directory
+		index.remove("A.java");
+		deltaDirectory.mkdir();
+		deltaContent.createNewFile();
+		try {
+			index.save();
+			assertTrue("Should not save the delta segment", false);
+		} catch (IOException e) {
+			// expected
+		}
+		assertNull("Should not record the deleted documents in the memory index",
+			index.query(new char[][] {"deletedDocuments".toCharArray()}, null, SearchPattern.R_PREFIX_MATCH));
+
+		deltaContent.delete();
+		deltaDirectory.delete();
+		index.save();
+		EntryResult[] results = index.query(categories, null, SearchPattern.R_PREFIX_MATCH);
+		assertEquals("Unexpected types", 1, results.length);
+		assertEquals("Unexpected type", "B/", new String(results[0].getWord()));
+		assertEquals("Unexpected last modification time",
+			new File(indexFile.getPath() + ".deltas").lastModified(),
+			index.getIndexLastModified());
+	} finally {
+		Index.MIN_SEGMENTED_INDEX_SIZE = minSegmentedIndexSize;
+		deltaContent.delete();
+		deltaDirectory.delete();
+		Index.deleteSegments(indexFile);
+		indexFile.delete();
+	}
+}
+
+/**
+ * Ensures that the document names of an entry found in the disk index, in the delta segments and in
+ * the memory index skip the documents which were changed or removed afterwards.
+ */
+public void testIndexDeltaSegmentsDocumentNames() throws IOException {
+	int minSegmentedIndexSize = Index.MIN_SEGMENTED_INDEX_SIZE;
+	Index.MIN_SEGMENTED_INDEX_SIZE = 0;
+	File indexFile = File.createTempFile("segments", ".index");
+	try {
+		Index index = new Index(new FileIndexLocation(indexFile), "/P", false /*don't reuse the index file*/);
+		char[] key = "A/".toCharArray();
+		for (int i = 0; i < 5; i++)
+			index.addIndexEntry(IIndexConstants.TYPE_DECL, key, "A" + i + ".java");
+		index.save();
+		index.remove("A1.java");
+		index.addIndexEntry(IIndexConstants.TYPE_DECL, key, "B.java");
+		index.save();
+		index.addIndexEntry(IIndexConstants.TYPE_DECL, "C/".toCharArray(), "C.java");
+		index.save();
+		assertTrue("Should have delta segments", index.hasDeltaSegments());
+		assertEquals("Unexpected documents in the segments",
+			"A0.java, A2.java, A3.java, A4.java, B.java",
+			getDocumentNames(index, key));
+
+		index.remove("A2.java");
+		index.addIndexEntry(IIndexConstants.TYPE_DECL, key, "D.java");
+		assertEquals("Unexpected documents in the segments and the memory index",
+			"A0.java, A3.java, A4.java, B.java, D.java",
+			getDocumentNames(index, key));
+		assertEquals("Unexpected documents of the cached query",
+			"A0.java, A3.java, A4.java, B.java, D.java",
+			getDocumentNames(index, key));
+	} finally {
+		Index.MIN_SEGMENTED_INDEX_SIZE = minSegmentedIndexSize;
+		Index.deleteSegments(indexFile);
+		indexFile.delete();
+	}
+}
+private String getDocumentNames(Index index, char[] key) throws IOException {
+	String[] names;
+	index.startQuery();
+	try {
+		EntryResult[] results = index.query(new char[][] {IIndexConstants.TYPE_DECL}, key, SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE);
+		assertEquals("Unexpected entries", 1, results.length);
+		names = results[0].getDocumentNames(index);
+	} finally {
+		index.stopQuery();
+	}
+	Arrays.sort(names);
+	StringBuffer buffer = new StringBuffer();
+	for (int i = 0; i < names.length; i++) {
+		if (i > 0)
+			buffer.append(", ");
+		buffer.append(names[i]);
+	}
+	return buffer.toString();
+}
+
+/**
+ * Ensures that the package declarations are reported once by a streaming search, although the
+ * working copies and the index matches are located in different groups.
+ */
+public void testStreamingSearchPackageDeclarations() throws CoreException {
+	boolean streaming = BasicSearchEngine.STREAMING;
+	ICompilationUnit workingCopy = null;
+	try {
+		IJavaProject project = createJavaProject("P");
+		createFolder("/P/p");
+		createFile("/P/p/X.java",
+			"package p;\n" +
+			"public class X {}\n");
+		createFile("/P/p/Y.java",
+			"package p;\n" +
+			"public class Y {}\n");
+		waitUntilIndexesReady();
+		// the working copy is located first, in a group of its own, then the index match of X
+		workingCopy = getWorkingCopy("/P/p/Y.java",
+			"package p;\n" +
+			"public class Y {}\n");
+		SearchPattern pattern = SearchPattern.createOrPattern(
+			SearchPattern.createPattern("p", PACKAGE, DECLARATIONS, EXACT_RULE),
+			SearchPattern.createPattern("X", TYPE, DECLARATIONS, EXACT_RULE));
+		IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { project });
+		final List elements = new ArrayList();
+		SearchRequestor requestor = new SearchRequestor() {
+			public void acceptSearchMatch(SearchMatch match) {
+				elements.add(match.getElement());
+			}
+		};
+		BasicSearchEngine.STREAMING = true;
+		new SearchEngine(new ICompilationUnit[] {workingCopy}).search(
+			pattern,
+			new SearchParticipant[] {SearchEngine.getDefaultSearchParticipant()},
+			scope,
+			requestor,
+			null);
+		IPackageFragment packageFragment = project.getPackageFragmentRoot(project.getProject()).getPackageFragment("p");
+		IType type = getCompilationUnit("/P/p/X.java").getType("X");
+		assertEquals("Unexpected matches " + elements, 2, elements.size());
+		assertTrue("Missing package " + elements, elements.contains(packageFragment));
+		assertTrue("Missing type " + elements, elements.contains(type));
+	} finally {
+		BasicSearchEngine.STREAMING = streaming;
+		if (workingCopy != null)
+			workingCopy.discardWorkingCopy();
+		deleteProject("P");
+	}
+}
+
+/**
+ * Ensures that a streaming search reports the progress of the index query and of the location of the matches
+ * to the progress monitor of the search, on the searching thread.
+ */
+public void testStreamingSearchProgress() throws CoreException {
+	boolean streaming = BasicSearchEngine.STREAMING;
+	try {
+		IJavaProject project = createJavaProject("P");
+		createFolder("/P/p");
+		createFile("/P/p/X.java",
+			"package p;\n" +
+			"public class X {}\n");
+		waitUntilIndexesReady();
+		final Thread searchingThread = Thread.currentThread();
+		final int[] totalWork = new int[1];
+		final double[] worked = new double[1];
+		final int[] workedCalls = new int[1];
+		final List wrongThreads = new ArrayList();
+		IProgressMonitor monitor = new NullProgressMonitor() {
+			public void beginTask(String name, int work) {
+				totalWork[0] = work;
+			}
+			public void internalWorked(double work) {
+				if (Thread.currentThread() != searchingThread)
+					wrongThreads.add(Thread.currentThread().getName());
+				if (work > 0) {
+					worked[0] += work;
+					workedCalls[0]++;
+				}
+			}
+			public void worked(int work) {
+				internalWorked(work);
+			}
+		};
+		final List elements = new ArrayList();
+		SearchRequestor requestor = new SearchRequestor() {
+			public void acceptSearchMatch(SearchMatch match) {
+				elements.add(match.getElement());
+			}
+		};
+		BasicSearchEngine.STREAMING = true;
+		new SearchEngine().search(
+			SearchPattern.createPattern("X", TYPE, DECLARATIONS, EXACT_RULE),
+			new SearchParticipant[] {SearchEngine.getDefaultSearchParticipant()},
+			SearchEngine.createJavaSearchScope(new IJavaElement[] { project }),
+			requestor,
+			monitor);
+		assertEquals("Unexpected matches " + elements, 1, elements.size());
+		assertEquals("Unexpected threads", "[]", wrongThreads.toString());
+		assertEquals("Unexpected total work", 100, totalWork[0]);
+		assertEquals("Unexpected work", 100, Math.round(worked[0]));
+		assertTrue("Should report the index query and the location separately", workedCalls[0] > 1);
+	} finally {
+		BasicSearchEngine.STREAMING = streaming;
+		deleteProject("P");
+	}
+}
+}
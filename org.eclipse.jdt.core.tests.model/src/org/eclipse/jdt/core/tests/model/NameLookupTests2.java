@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,6 +19,10 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jdt.core.*;
 import org.eclipse.jdt.internal.core.DefaultWorkingCopyOwner;
+import org.eclipse.jdt.internal.core.JarPackageFragmentRoot;
+import org.eclipse.jdt.internal.core.JarPackageIndex;
+import org.eclipse.jdt.internal.core.JavaElementRequestor;
+import org.eclipse.jdt.internal.core.JavaModelManager;
 import org.eclipse.jdt.internal.core.JavaProject;
 import org.eclipse.jdt.internal.core.NameLookup;
 
@@ -345,5 +349,101 @@ public void testFindTypeWithUnrelatedWorkingCopy() throws Exception {
 		deleteProject("P2");
 	}
 }
+/*
+ * Ensures that the types of a jar are found using the package index shared by the projects
+ * referencing the jar, without opening the package fragments of the jar.
+ */
+public void testFindBinaryTypeWithJarIndex() throws CoreException, IOException {
+	boolean useJarIndex = NameLookup.USE_JAR_INDEX;
+	try {
+		NameLookup.USE_JAR_INDEX = true;
+		IJavaProject p1 = createJavaProject("P1");
+		addLibrary(p1, "lib.jar", "libsrc.zip",
+			new String[] {
+				"p/X.java",
+				"package p;\n" +
+				"public class X {\n" +
+				"  public class Member {\n" +
+				"  }\n" +
+				"}",
+				"p/XY.java",
+				"package p;\n" +
+				"public class XY {\n" +
+				"}",
+				"p/Z.java",
+				"package p;\n" +
+				"public class Z {\n" +
+				"}"
+			},
+			"1.4");
+		IJavaProject p2 = createJavaProject("P2", new String[] {}, new String[] {"/P1/lib.jar"}, "");
+		NameLookup nameLookup = getNameLookup((JavaProject) p2);
+		assertTrue("p should be a package", nameLookup.isPackage(new String[] {"p"}));
+		IType type = nameLookup.findType("p.X", false, NameLookup.ACCEPT_ALL);
+		assertTypesEqual(
+			"Unexpected type",
+			"p.X\n",
+			new IType[] {type});
+		assertFalse("Package should not be opened", type.getPackageFragment().isOpen());
+		assertNull("Should not find p.W", nameLookup.findType("p.W", false, NameLookup.ACCEPT_ALL));
+		type = nameLookup.findType("p.X.Member", false, NameLookup.ACCEPT_ALL);
+		assertTypesEqual(
+			"Unexpected member type",
+			"p.X$Member\n",
+			new IType[] {type});
+
+		JavaElementRequestor requestor = new JavaElementRequestor();
+		nameLookup.seekTypes("X", type.getPackageFragment(), true/*partial match*/, NameLookup.ACCEPT_ALL, requestor);
+		assertTypesEqual(
+			"Unexpected types",
+			"p.X\n" +
+			"p.XY\n",
+			requestor.getTypes());
+	} finally {
+		NameLookup.USE_JAR_INDEX = useJarIndex;
+		deleteProject("P1");
+		deleteProject("P2");
+	}
 }
+/*
+ * Ensures that the projects referencing the same jar with the same levels share its package index,
+ * and that a corrupt class file found in the index is not answered.
+ */
+public void testSharedJarIndex() throws CoreException, IOException {
+	boolean useJarIndex = NameLookup.USE_JAR_INDEX;
+	try {
+		NameLookup.USE_JAR_INDEX = true;
+		IJavaProject p1 = createJavaProject("P1");
+		addLibrary(p1, "lib.jar", "libsrc.zip",
+			new String[] {
+				"p/X.java",
+				"package p;\n" +
+				"public class X {\n" +
+				"}"
+			},
+			new String[] {
+				"p/Bad.class",
+				"not a class file"
+			},
+			"1.4");
+		IJavaProject p2 = createJavaProject("P2", new String[] {}, new String[] {"/P1/lib.jar"}, "");
+		IJavaProject p3 = createJavaProject("P3", new String[] {}, new String[] {"/P1/lib.jar"}, "");
+		JavaModelManager manager = JavaModelManager.getJavaModelManager();
+		JarPackageIndex index2 = manager.getJarPackageIndex((JarPackageFragmentRoot) p2.getPackageFragmentRoot(getFile("/P1/lib.jar")));
+		JarPackageIndex index3 = manager.getJarPackageIndex((JarPackageFragmentRoot) p3.getPackageFragmentRoot(getFile("/P1/lib.jar")));
+		assertSame("Projects should share the index", index2, index3);
 
+		NameLookup nameLookup = getNameLookup((JavaProject) p3);
+		assertTypesEqual(
+			"Unexpected type",
+			"p.X\n",
+			new IType[] {nameLookup.findType("p.X", false, NameLookup.ACCEPT_ALL)});
+		assertNull("Should not find the corrupt p.Bad", nameLookup.findType("p.Bad", false, NameLookup.ACCEPT_ALL));
+	} finally {
+		NameLookup.USE_JAR_INDEX = useJarIndex;
+		deleteProject("P1");
+		deleteProject("P2");
+		deleteProject("P3");
+	}
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -35,6 +35,7 @@ import org.eclipse.jdt.core.compiler.ReconcileContext;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.tests.util.Util;
 import org.eclipse.jdt.internal.core.CompilationUnit;
+import org.eclipse.jdt.internal.core.IncrementalReconcileState;
 import org.eclipse.jdt.internal.core.JavaModelManager;
 import org.eclipse.jdt.internal.core.search.indexing.IndexManager;
 
@@ -5298,4 +5299,218 @@ public void testGenericAPIUsageFromA14Project9() throws CoreException {
 			deleteProject(project15);
 	}
 }
+/*
+ * Ensures that edits inside method bodies that are reconciled incrementally report the problems
+ * of the edited method, and the problems of the other methods at their new positions.
+ */
+public void testIncrementalReconcile() throws CoreException {
+	boolean enabled = IncrementalReconcileState.ENABLED;
+	try {
+		IncrementalReconcileState.ENABLED = true;
+		setWorkingCopyContents(
+			"package p1;\n" +
+			"import p2.*;\n" +
+			"public class X {\n" +
+			"  public void foo() {\n" +
+			"    Zork z1;\n" +
+			"  }\n" +
+			"  public void bar() {\n" +
+			"  }\n" +
+			"}");
+		this.workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+		assertProblems(
+			"Unexpected problems after full reconcile",
+			"----------\n" +
+			"1. WARNING in /Reconciler/src/p1/X.java (at line 2)\n" +
+			"	import p2.*;\n" +
+			"	       ^^\n" +
+			"The import p2 is never used\n" +
+			"----------\n" +
+			"2. ERROR in /Reconciler/src/p1/X.java (at line 5)\n" +
+			"	Zork z1;\n" +
+			"	^^^^\n" +
+			"Zork cannot be resolved to a type\n" +
+			"----------\n"
+		);
+
+		// edit the body of bar(): the new type reference may use the import
+		int incrementalReconciles = IncrementalReconcileState.IncrementalReconcileCount;
+		setWorkingCopyContents(
+			"package p1;\n" +
+			"import p2.*;\n" +
+			"public class X {\n" +
+			"  public void foo() {\n" +
+			"    Zork z1;\n" +
+			"  }\n" +
+			"  public void bar() {\n" +
+			"    Zork z2;\n" +
+			"  }\n" +
+			"}");
+		this.workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+		assertProblems(
+			"Unexpected problems after editing bar()",
+			"----------\n" +
+			"1. WARNING in /Reconciler/src/p1/X.java (at line 2)\n" +
+			"	import p2.*;\n" +
+			"	       ^^\n" +
+			"The import p2 is never used\n" +
+			"----------\n" +
+			"2. ERROR in /Reconciler/src/p1/X.java (at line 5)\n" +
+			"	Zork z1;\n" +
+			"	^^^^\n" +
+			"Zork cannot be resolved to a type\n" +
+			"----------\n" +
+			"3. ERROR in /Reconciler/src/p1/X.java (at line 8)\n" +
+			"	Zork z2;\n" +
+			"	^^^^\n" +
+			"Zork cannot be resolved to a type\n" +
+			"----------\n"
+		);
+		assertEquals("Should reconcile fully when references change", incrementalReconciles, IncrementalReconcileState.IncrementalReconcileCount);
+
+		// edit the body of foo(): the problem in bar() moves down
+		setWorkingCopyContents(
+			"package p1;\n" +
+			"import p2.*;\n" +
+			"public class X {\n" +
+			"  public void foo() {\n" +
+			"    // comment\n" +
+			"    Zork z1;\n" +
+			"  }\n" +
+			"  public void bar() {\n" +
+			"    Zork z2;\n" +
+			"  }\n" +
+			"}");
+		this.workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+		assertProblems(
+			"Unexpected problems after editing foo()",
+			"----------\n" +
+			"1. WARNING in /Reconciler/src/p1/X.java (at line 2)\n" +
+			"	import p2.*;\n" +
+			"	       ^^\n" +
+			"The import p2 is never used\n" +
+			"----------\n" +
+			"2. ERROR in /Reconciler/src/p1/X.java (at line 6)\n" +
+			"	Zork z1;\n" +
+			"	^^^^\n" +
+			"Zork cannot be resolved to a type\n" +
+			"----------\n" +
+			"3. ERROR in /Reconciler/src/p1/X.java (at line 9)\n" +
+			"	Zork z2;\n" +
+			"	^^^^\n" +
+			"Zork cannot be resolved to a type\n" +
+			"----------\n"
+		);
+		assertEquals("Should only resolve foo()", incrementalReconciles + 1, IncrementalReconcileState.IncrementalReconcileCount);
+	} finally {
+		IncrementalReconcileState.ENABLED = enabled;
+	}
+}
+/*
+ * Ensures that the unused private members found by an incremental reconcile are the ones of a full reconcile.
+ */
+public void testIncrementalReconcileUsage() throws CoreException {
+	boolean enabled = IncrementalReconcileState.ENABLED;
+	try {
+		IncrementalReconcileState.ENABLED = true;
+		setWorkingCopyContents(
+			"package p1;\n" +
+			"public class X {\n" +
+			"  private int unused;\n" +
+			"  public void foo() {\n" +
+			"    System.out.println(0);\n" +
+			"  }\n" +
+			"}");
+		this.workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+		String unusedField =
+			"----------\n" +
+			"1. WARNING in /Reconciler/src/p1/X.java (at line 3)\n" +
+			"	private int unused;\n" +
+			"	            ^^^^^^\n" +
+			"The value of the field X.unused is not used\n" +
+			"----------\n";
+		assertProblems("Unexpected problems after full reconcile", unusedField);
+
+		// the references of foo() do not change
+		int incrementalReconciles = IncrementalReconcileState.IncrementalReconcileCount;
+		setWorkingCopyContents(
+			"package p1;\n" +
+			"public class X {\n" +
+			"  private int unused;\n" +
+			"  public void foo() {\n" +
+			"    System.out.println(1);\n" +
+			"  }\n" +
+			"}");
+		this.workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+		assertProblems("Unexpected problems after editing a literal", unusedField);
+		assertEquals("Should only resolve foo()", incrementalReconciles + 1, IncrementalReconcileState.IncrementalReconcileCount);
+
+		// foo() now uses the field
+		setWorkingCopyContents(
+			"package p1;\n" +
+			"public class X {\n" +
+			"  private int unused;\n" +
+			"  public void foo() {\n" +
+			"    System.out.println(this.unused);\n" +
+			"  }\n" +
+			"}");
+		this.workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+		assertProblems("Unexpected problems after using the field", "----------\n----------\n");
+		assertEquals("Should reconcile fully when references change", incrementalReconciles + 1, IncrementalReconcileState.IncrementalReconcileCount);
+
+		// foo() no longer uses the field
+		setWorkingCopyContents(
+			"package p1;\n" +
+			"public class X {\n" +
+			"  private int unused;\n" +
+			"  public void foo() {\n" +
+			"    System.out.println(1);\n" +
+			"  }\n" +
+			"}");
+		this.workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+		assertProblems("Unexpected problems after removing the reference", unusedField);
+		assertEquals("Should reconcile fully when references change", incrementalReconciles + 1, IncrementalReconcileState.IncrementalReconcileCount);
+	} finally {
+		IncrementalReconcileState.ENABLED = enabled;
+	}
+}
+/*
+ * Ensures that editing a private method which is only used by another method does not report it as unused.
+ */
+public void testIncrementalReconcilePrivateMethod() throws CoreException {
+	boolean enabled = IncrementalReconcileState.ENABLED;
+	try {
+		IncrementalReconcileState.ENABLED = true;
+		setWorkingCopyContents(
+			"package p1;\n" +
+			"public class X {\n" +
+			"  private void helper() {\n" +
+			"    System.out.println(0);\n" +
+			"  }\n" +
+			"  public void foo() {\n" +
+			"    helper();\n" +
+			"  }\n" +
+			"}");
+		this.workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+		assertProblems("Unexpected problems after full reconcile", "----------\n----------\n");
+
+		// edit the body of helper(), which is only called by foo()
+		int incrementalReconciles = IncrementalReconcileState.IncrementalReconcileCount;
+		setWorkingCopyContents(
+			"package p1;\n" +
+			"public class X {\n" +
+			"  private void helper() {\n" +
+			"    System.out.println(1);\n" +
+			"  }\n" +
+			"  public void foo() {\n" +
+			"    helper();\n" +
+			"  }\n" +
+			"}");
+		this.workingCopy.reconcile(ICompilationUnit.NO_AST, false, null, null);
+		assertProblems("Unexpected problems after editing helper()", "----------\n----------\n");
+		assertEquals("Should reconcile fully when editing a private method", incrementalReconciles, IncrementalReconcileState.IncrementalReconcileCount);
+	} finally {
+		IncrementalReconcileState.ENABLED = enabled;
+	}
+}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -115,4 +115,58 @@ public void testDeadlock01() throws CoreException {
 		this.deleteProject("P");
 	}
 }
+/*
+ * Ensures that threads reading the Java model concurrently with a thread closing and reopening
+ * its elements always see a consistent structure.
+ */
+public void testConcurrentReads() throws Exception {
+	try {
+		createJavaProject("P", new String[] {""}, "");
+		createFile(
+			"/P/X.java",
+			"public class X {\n" +
+			"  int field;\n" +
+			"  void foo() {}\n" +
+			"  class Member {}\n" +
+			"}"
+		);
+		final ICompilationUnit unit = getCompilationUnit("/P/X.java");
+		final int iterations = 2000;
+		final Throwable[] failure = new Throwable[1];
+		Thread[] readers = new Thread[4];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int j = 0; j < iterations && failure[0] == null; j++) {
+							IType type = unit.getType("X");
+							assertEquals("Unexpected number of children", 3, type.getChildren().length);
+							assertEquals("Unexpected field", "field", type.getFields()[0].getElementName());
+							assertTrue("Member should exist", type.getType("Member").exists());
+						}
+					} catch (Throwable t) {
+						synchronized (failure) {
+							if (failure[0] == null)
+								failure[0] = t;
+						}
+					}
+				}
+			}, "Reader " + i);
+			readers[i].setDaemon(true);
+			readers[i].start();
+		}
+		for (int j = 0; j < iterations / 10 && failure[0] == null; j++) {
+			unit.close();
+			unit.open(null);
+		}
+		for (int i = 0; i < readers.length; i++)
+			readers[i].join();
+		if (failure[0] instanceof Error)
+			throw (Error) failure[0];
+		if (failure[0] != null)
+			throw (Exception) failure[0];
+	} finally {
+		deleteProject("P");
+	}
+}
 }
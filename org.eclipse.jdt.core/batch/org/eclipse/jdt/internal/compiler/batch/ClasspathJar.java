@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,14 +10,18 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.compiler.batch;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -31,10 +35,169 @@ import org.eclipse.jdt.internal.compiler.util.Util;
 
 public class ClasspathJar extends ClasspathLocation {
 
+/*
+ * State of a jar which is kept across compilations, as long as the jar does not change.
+ */
+static class SharedJar {
+	long length;
+	long lastModified;
+	ZipFile zipFile;
+	ClasspathJarCache cache;
+	Hashtable packageCache;
+
+	SharedJar(File file) {
+		this.length = file.length();
+		this.lastModified = file.lastModified();
+	}
+	boolean isUpToDate(File file) {
+		return this.length == file.length() && this.lastModified == file.lastModified();
+	}
+	void close() {
+		if (this.cache != null) {
+			this.cache.save();
+			this.cache.close();
+			this.cache = null;
+		}
+		if (this.zipFile != null) {
+			try {
+				this.zipFile.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			this.zipFile = null;
+		}
+	}
+}
+/*
+ * Key of a class file reader kept for a shared jar.
+ */
+static class SharedReaderKey {
+	SharedJar jar;
+	String qualifiedBinaryFileName;
+
+	SharedReaderKey(SharedJar jar, String qualifiedBinaryFileName) {
+		this.jar = jar;
+		this.qualifiedBinaryFileName = qualifiedBinaryFileName;
+	}
+	public boolean equals(Object o) {
+		if (!(o instanceof SharedReaderKey)) return false;
+		SharedReaderKey other = (SharedReaderKey) o;
+		return this.jar == other.jar && this.qualifiedBinaryFileName.equals(other.qualifiedBinaryFileName);
+	}
+	public int hashCode() {
+		return System.identityHashCode(this.jar) * 31 + this.qualifiedBinaryFileName.hashCode();
+	}
+}
+/*
+ * The jars a compiler daemon keeps across its compilations (see CompilerDaemon), together with
+ * the class file readers read from them.
+ * Both are evicted least recently used first: the jars once a compilation is done and more than
+ * jdt.compiler.daemon.maxJars (default 256) are open, the readers as soon as the size of their class
+ * files exceeds jdt.compiler.daemon.maxReadersSize bytes (default 32MB).
+ */
+static class SharedJarTable {
+	static final int DEFAULT_MAX_JARS = 256;
+	static final long DEFAULT_MAX_READERS_SIZE = 32 * 1024 * 1024;
+
+	int maxJars;
+	long maxReadersSize;
+	LinkedHashMap jars = new LinkedHashMap(16, 0.75f, true); // jar path -> SharedJar, least recently used first
+	LinkedHashMap readers = new LinkedHashMap(16, 0.75f, true); // SharedReaderKey -> ClassFileReader, least recently used first
+	HashMap readerSizes = new HashMap(); // SharedReaderKey -> Integer
+	long readersSize;
+
+	SharedJarTable() {
+		this.maxJars = getIntProperty("jdt.compiler.daemon.maxJars", DEFAULT_MAX_JARS); //$NON-NLS-1$
+		this.maxReadersSize = getLongProperty("jdt.compiler.daemon.maxReadersSize", DEFAULT_MAX_READERS_SIZE); //$NON-NLS-1$
+	}
+	private static long getLongProperty(String name, long defaultValue) {
+		String setting = System.getProperty(name);
+		if (setting != null) {
+			try {
+				long value = Long.parseLong(setting.trim());
+				if (value >= 0)
+					return value;
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return defaultValue;
+	}
+	private static int getIntProperty(String name, int defaultValue) {
+		return (int) Math.min(getLongProperty(name, defaultValue), Integer.MAX_VALUE);
+	}
+	synchronized SharedJar getJar(String jarPath) {
+		return (SharedJar) this.jars.get(jarPath);
+	}
+	synchronized void putJar(String jarPath, SharedJar jar) {
+		SharedJar previous = (SharedJar) this.jars.put(jarPath, jar);
+		if (previous != null && previous != jar)
+			close(previous);
+	}
+	synchronized void removeJar(String jarPath) {
+		SharedJar jar = (SharedJar) this.jars.remove(jarPath);
+		if (jar != null)
+			close(jar);
+	}
+	synchronized ClassFileReader getReader(SharedJar jar, String qualifiedBinaryFileName) {
+		return (ClassFileReader) this.readers.get(new SharedReaderKey(jar, qualifiedBinaryFileName));
+	}
+	synchronized void putReader(SharedJar jar, String qualifiedBinaryFileName, ClassFileReader reader, int size) {
+		if (size > this.maxReadersSize) return;
+		SharedReaderKey key = new SharedReaderKey(jar, qualifiedBinaryFileName);
+		if (this.readers.put(key, reader) != null)
+			this.readersSize -= ((Integer) this.readerSizes.get(key)).intValue();
+		this.readerSizes.put(key, new Integer(size));
+		this.readersSize += size;
+		Iterator iterator = this.readers.keySet().iterator();
+		while (this.readersSize > this.maxReadersSize && iterator.hasNext()) {
+			Object eldest = iterator.next();
+			iterator.remove();
+			this.readersSize -= ((Integer) this.readerSizes.remove(eldest)).intValue();
+		}
+	}
+	/*
+	 * Closes the least recently used jars which exceed the limit.
+	 * Must not be called while a compilation uses the jars.
+	 */
+	synchronized void trim() {
+		Iterator iterator = this.jars.values().iterator();
+		int size = this.jars.size();
+		while (size-- > this.maxJars && iterator.hasNext()) {
+			SharedJar jar = (SharedJar) iterator.next();
+			iterator.remove();
+			close(jar);
+		}
+	}
+	synchronized void closeAll() {
+		for (Iterator iterator = this.jars.values().iterator(); iterator.hasNext(); )
+			((SharedJar) iterator.next()).close();
+		this.jars.clear();
+		this.readers.clear();
+		this.readerSizes.clear();
+		this.readersSize = 0;
+	}
+	private void close(SharedJar jar) {
+		jar.close();
+		for (Iterator iterator = this.readerSizes.entrySet().iterator(); iterator.hasNext(); ) {
+			Map.Entry entry = (Map.Entry) iterator.next();
+			SharedReaderKey key = (SharedReaderKey) entry.getKey();
+			if (key.jar == jar) {
+				iterator.remove();
+				this.readers.remove(key);
+				this.readersSize -= ((Integer) entry.getValue()).intValue();
+			}
+		}
+	}
+}
+
 protected File file;
 protected ZipFile zipFile;
 protected boolean closeZipFileAtEnd;
 protected Hashtable packageCache;
+ClasspathJarCache cache; // non null when the contents of the jar are cached on disk
+SharedJarTable sharedJars; // non null when the jar may be shared across the compilations of a compiler daemon
+SharedJar shared; // non null when the jar is shared across compilations
 
 public ClasspathJar(File file, boolean closeZipFileAtEnd,
 		AccessRuleSet accessRuleSet, String destinationPath) {
@@ -50,9 +213,15 @@ public List fetchLinkedJars(FileSystem.ClasspathSectionProblemReporter problemRe
 	try {
 		initialize();
 		ArrayList result = new ArrayList();
-		ZipEntry manifest = this.zipFile.getEntry("META-INF/MANIFEST.MF"); //$NON-NLS-1$
-		if (manifest != null) { // non-null implies regular file
-			inputStream = this.zipFile.getInputStream(manifest);
+		if (this.cache != null) {
+			if (this.cache.manifest != null)
+				inputStream = new ByteArrayInputStream(this.cache.manifest);
+		} else {
+			ZipEntry manifest = this.zipFile.getEntry("META-INF/MANIFEST.MF"); //$NON-NLS-1$
+			if (manifest != null) // non-null implies regular file
+				inputStream = this.zipFile.getInputStream(manifest);
+		}
+		if (inputStream != null) {
 			ManifestAnalyzer analyzer = new ManifestAnalyzer();
 			boolean success = analyzer.analyzeManifestContents(inputStream);
 			List calledFileNames = analyzer.getCalledFileNames();
@@ -94,7 +263,20 @@ public NameEnvironmentAnswer findClass(char[] typeName, String qualifiedPackageN
 		return null; // most common case
 
 	try {
-		ClassFileReader reader = ClassFileReader.read(this.zipFile, qualifiedBinaryFileName);
+		ClassFileReader reader;
+		if (this.shared != null) {
+			reader = this.sharedJars.getReader(this.shared, qualifiedBinaryFileName);
+			if (reader == null) {
+				byte[] classFileBytes = readClassFileBytes(qualifiedBinaryFileName);
+				if (classFileBytes != null) {
+					reader = new ClassFileReader(classFileBytes, qualifiedBinaryFileName.toCharArray());
+					this.sharedJars.putReader(this.shared, qualifiedBinaryFileName, reader, classFileBytes.length);
+				}
+			}
+		} else {
+			byte[] classFileBytes = readClassFileBytes(qualifiedBinaryFileName);
+			reader = classFileBytes == null ? null : new ClassFileReader(classFileBytes, qualifiedBinaryFileName.toCharArray());
+		}
 		if (reader != null)
 			return new NameEnvironmentAnswer(reader, fetchAccessRestriction(qualifiedBinaryFileName));
 	} catch(ClassFormatException e) {
@@ -104,12 +286,37 @@ public NameEnvironmentAnswer findClass(char[] typeName, String qualifiedPackageN
 	}
 	return null;
 }
+private byte[] readClassFileBytes(String qualifiedBinaryFileName) throws IOException {
+	if (this.cache != null) {
+		if (!this.cache.containsClassFile(qualifiedBinaryFileName))
+			return null;
+		byte[] classFileBytes = this.cache.getClassFileBytes(qualifiedBinaryFileName);
+		if (classFileBytes == null) {
+			ZipEntry entry = getZipFile().getEntry(qualifiedBinaryFileName);
+			if (entry == null)
+				return null;
+			classFileBytes = Util.getZipEntryByteContent(entry, this.zipFile);
+			this.cache.putClassFileBytes(qualifiedBinaryFileName, classFileBytes);
+		}
+		return classFileBytes;
+	}
+	ZipEntry entry = this.zipFile.getEntry(qualifiedBinaryFileName);
+	if (entry == null)
+		return null;
+	return Util.getZipEntryByteContent(entry, this.zipFile);
+}
 public char[][][] findTypeNames(String qualifiedPackageName) {
 	if (!isPackage(qualifiedPackageName))
 		return null; // most common case
 
+	ZipFile zip;
+	try {
+		zip = getZipFile();
+	} catch (IOException e) {
+		return null;
+	}
 	ArrayList answers = new ArrayList();
-	nextEntry : for (Enumeration e = this.zipFile.entries(); e.hasMoreElements(); ) {
+	nextEntry : for (Enumeration e = zip.entries(); e.hasMoreElements(); ) {
 		String fileName = ((ZipEntry) e.nextElement()).getName();
 
 		// add the package name & all of its parent packages
@@ -139,13 +346,65 @@ public char[][][] findTypeNames(String qualifiedPackageName) {
 	return null;
 }
 public void initialize() throws IOException {
+	if (this.zipFile == null && this.cache == null) {
+		if (this.sharedJars != null && getMode() == BINARY) {
+			String jarPath = getPath();
+			SharedJar sharedJar = this.sharedJars.getJar(jarPath);
+			if (sharedJar != null && !sharedJar.isUpToDate(this.file)) {
+				this.sharedJars.removeJar(jarPath);
+				sharedJar = null;
+			}
+			if (sharedJar == null) {
+				sharedJar = new SharedJar(this.file);
+				open();
+				sharedJar.zipFile = this.zipFile;
+				sharedJar.cache = this.cache;
+				this.sharedJars.putJar(jarPath, sharedJar);
+			} else {
+				this.zipFile = sharedJar.zipFile;
+				this.cache = sharedJar.cache;
+				this.packageCache = sharedJar.packageCache;
+			}
+			this.shared = sharedJar;
+			return;
+		}
+		open();
+	}
+}
+private void open() throws IOException {
+	if (getMode() == BINARY) {
+		ClasspathJarCache jarCache = ClasspathJarCache.forJar(this.file, getPath());
+		if (jarCache != null) {
+			if (!jarCache.read())
+				jarCache.fill(getZipFile());
+			this.cache = jarCache;
+			return;
+		}
+	}
+	this.zipFile = new ZipFile(this.file);
+}
+/*
+ * Answers the zip file, opening it if only the cache was used so far.
+ */
+ZipFile getZipFile() throws IOException {
 	if (this.zipFile == null) {
-		this.zipFile = new ZipFile(this.file);
+		if (this.shared != null && this.shared.zipFile != null) {
+			this.zipFile = this.shared.zipFile;
+		} else {
+			this.zipFile = new ZipFile(this.file);
+			if (this.shared != null)
+				this.shared.zipFile = this.zipFile;
+		}
 	}
+	return this.zipFile;
 }
 public boolean isPackage(String qualifiedPackageName) {
 	if (this.packageCache != null)
 		return this.packageCache.containsKey(qualifiedPackageName);
+	if (this.cache != null) {
+		this.packageCache = this.cache.packages;
+		return this.packageCache.containsKey(qualifiedPackageName);
+	}
 
 	this.packageCache = new Hashtable(41);
 	this.packageCache.put(Util.EMPTY_STRING, Util.EMPTY_STRING);
@@ -164,9 +423,28 @@ public boolean isPackage(String qualifiedPackageName) {
 			last = packageName.lastIndexOf('/');
 		}
 	}
+	if (this.shared != null)
+		this.shared.packageCache = this.packageCache;
 	return this.packageCache.containsKey(qualifiedPackageName);
 }
 public void reset() {
+	if (this.shared != null) {
+		// keep the zip file open and the caches for the next compilation
+		if (this.cache != null)
+			this.cache.save();
+		this.shared = null;
+		this.cache = null;
+		this.zipFile = null;
+		this.packageCache = null;
+		return;
+	}
+	if (this.cache != null) {
+		this.cache.save();
+		if (this.closeZipFileAtEnd) {
+			this.cache.close();
+			this.cache = null;
+		}
+	}
 	if (this.zipFile != null && this.closeZipFileAtEnd) {
 		try {
 			this.zipFile.close();
@@ -0,0 +1,562 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.compiler.batch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.jdt.internal.compiler.util.SuffixConstants;
+import org.eclipse.jdt.internal.compiler.util.Util;
+
+/**
+ * On-disk cache of the contents of a jar used by the batch compiler, enabled by
+ * setting the <code>jdt.compiler.binaryCache</code> system property to a directory.
+ * <p>
+ * The cache of a jar remembers its packages, the names of its class files and its manifest
+ * in an index file, which is written once. The uncompressed bytes of the class files read from
+ * the jar are appended to a separate data file, and are only read back from this file when a
+ * later compilation asks for them. The cache is discarded as soon as the path, size or modification
+ * time of the jar change.
+ * </p><p>
+ * The data file of a jar is limited to <code>jdt.compiler.binaryCache.maxSize</code> bytes
+ * (32MB by default). Once it grows beyond this size, it is rewritten with only the class files
+ * used by the current compilation.
+ * </p><p>
+ * Another compilation may rewrite the data file after its records were listed. Each read thus checks
+ * that the record found at the listed offset is still the one of the class file, and the class file is
+ * read from the jar otherwise.
+ * </p>
+ */
+class ClasspathJarCache implements SuffixConstants {
+
+	static final String CACHE_LOCATION_PROPERTY = "jdt.compiler.binaryCache"; //$NON-NLS-1$
+	static final String CACHE_MAX_SIZE_PROPERTY = "jdt.compiler.binaryCache.maxSize"; //$NON-NLS-1$
+	private static final int SIGNATURE = 0x4A434348; // JCCH
+	private static final int DATA_SIGNATURE = 0x4A434344; // JCCD
+	private static final int RECORD_SIGNATURE = 0x4A434352; // JCCR
+	private static final int VERSION = 2;
+	private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF"; //$NON-NLS-1$
+	private static final long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+
+	File cacheFile;
+	File dataFile;
+	String jarPath;
+	long jarLength;
+	long jarLastModified;
+	long maxSize;
+
+	Hashtable packages; // package name -> package name, see ClasspathJar.isPackage()
+	HashSet classFileNames;
+	byte[] manifest; // null if the jar has no manifest
+	boolean dirty; // whether the index file must be written
+
+	private HashMap offsets; // class file name -> Long, offset of the start of its record in the data file
+	private HashSet usedNames = new HashSet(); // names of the class files used since the cache was last saved
+	private long dataSize; // size of the valid records of the data file
+	private boolean needsCompaction; // the data file is too big or has an invalid record
+	private RandomAccessFile data; // opened on the data file the first time bytes are read or appended
+
+/**
+ * Answers the cache of the given jar, or null if the cache is disabled or the jar is not a file.
+ * The cache answers nothing until it is either read from disk or filled from the jar.
+ */
+static ClasspathJarCache forJar(File jar, String jarPath) {
+	String location = System.getProperty(CACHE_LOCATION_PROPERTY);
+	if (location == null || location.length() == 0 || !jar.isFile())
+		return null;
+	File directory = new File(location);
+	if (!directory.isDirectory() && !directory.mkdirs())
+		return null;
+	ClasspathJarCache cache = new ClasspathJarCache();
+	cache.jarPath = jarPath;
+	cache.jarLength = jar.length();
+	cache.jarLastModified = jar.lastModified();
+	String fileName = fileName(jarPath);
+	cache.cacheFile = new File(directory, fileName + ".cache"); //$NON-NLS-1$
+	cache.dataFile = new File(directory, fileName + ".data"); //$NON-NLS-1$
+	cache.maxSize = DEFAULT_MAX_SIZE;
+	String maxSize = System.getProperty(CACHE_MAX_SIZE_PROPERTY);
+	if (maxSize != null) {
+		try {
+			cache.maxSize = Long.parseLong(maxSize);
+		} catch (NumberFormatException e) {
+			// use the default size
+		}
+	}
+	return cache;
+}
+
+private static String fileName(String jarPath) {
+	try {
+		byte[] hash = MessageDigest.getInstance("SHA-1").digest(jarPath.getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+		StringBuffer fileName = new StringBuffer(hash.length * 2);
+		for (int i = 0, length = hash.length; i < length; i++) {
+			fileName.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+			fileName.append(Character.forDigit(hash[i] & 0xF, 16));
+		}
+		return fileName.toString();
+	} catch (NoSuchAlgorithmException e) {
+		return Integer.toHexString(jarPath.hashCode());
+	} catch (IOException e) {
+		return Integer.toHexString(jarPath.hashCode());
+	}
+}
+
+/**
+ * Fills the cache from the entries of the given jar, remembering its packages, class file names and manifest.
+ */
+synchronized void fill(ZipFile zipFile) throws IOException {
+	this.packages = new Hashtable(41);
+	this.packages.put(Util.EMPTY_STRING, Util.EMPTY_STRING);
+	this.classFileNames = new HashSet();
+	this.manifest = null;
+	for (Enumeration e = zipFile.entries(); e.hasMoreElements(); ) {
+		ZipEntry entry = (ZipEntry) e.nextElement();
+		String fileName = entry.getName();
+		if (fileName.endsWith(SUFFIX_STRING_class))
+			this.classFileNames.add(fileName);
+		else if (fileName.equals(MANIFEST_NAME) && !entry.isDirectory())
+			this.manifest = Util.getZipEntryByteContent(entry, zipFile);
+
+		// add the package name & all of its parent packages
+		int last = fileName.lastIndexOf('/');
+		while (last > 0) {
+			String packageName = fileName.substring(0, last);
+			if (this.packages.containsKey(packageName))
+				break;
+			this.packages.put(packageName, packageName);
+			last = packageName.lastIndexOf('/');
+		}
+	}
+	// the data file was written for another version of the jar
+	closeData();
+	this.dataFile.delete();
+	this.offsets = new HashMap();
+	this.dataSize = 0;
+	this.dirty = true;
+}
+
+/**
+ * Answers whether the class file with the given name exists in the jar.
+ */
+boolean containsClassFile(String qualifiedBinaryFileName) {
+	return this.classFileNames.contains(qualifiedBinaryFileName);
+}
+
+/**
+ * Answers the bytes of the given class file read from the data file, or null if they have not been cached yet.
+ */
+synchronized byte[] getClassFileBytes(String qualifiedBinaryFileName) {
+	Long offset = (Long) this.offsets.get(qualifiedBinaryFileName);
+	if (offset == null)
+		return null;
+	try {
+		byte[] bytes = readBytes(qualifiedBinaryFileName, offset.longValue());
+		this.usedNames.add(qualifiedBinaryFileName);
+		return bytes;
+	} catch (IOException e) {
+		// the class file is read from the jar instead, e.g. since another compilation rewrote the data file
+		this.offsets.remove(qualifiedBinaryFileName);
+		return null;
+	}
+}
+
+private byte[] readBytes(String qualifiedBinaryFileName, long recordOffset) throws IOException {
+	// the data file may have been rewritten since the offsets were read, so the record must still be the one of the class file
+	RandomAccessFile file = openData();
+	file.seek(recordOffset);
+	if (file.readInt() != RECORD_SIGNATURE)
+		throw new IOException("Invalid record"); //$NON-NLS-1$
+	byte[] name = new byte[file.readUnsignedShort()];
+	file.readFully(name);
+	if (!qualifiedBinaryFileName.equals(new String(name, "UTF-8"))) //$NON-NLS-1$
+		throw new IOException("Record of another class file"); //$NON-NLS-1$
+	int length = file.readInt();
+	if (length < 0 || file.getFilePointer() + length > file.length())
+		throw new IOException("Truncated record"); //$NON-NLS-1$
+	byte[] bytes = new byte[length];
+	file.readFully(bytes);
+	return bytes;
+}
+
+/**
+ * Appends the bytes of the given class file to the data file, unless the data file is full.
+ * The data file is locked while the record is appended, so that the records of compilations
+ * using the same cache concurrently do not overlap.
+ */
+synchronized void putClassFileBytes(String qualifiedBinaryFileName, byte[] bytes) {
+	this.usedNames.add(qualifiedBinaryFileName);
+	if (this.offsets.containsKey(qualifiedBinaryFileName))
+		return;
+	byte[] name;
+	try {
+		name = qualifiedBinaryFileName.getBytes("UTF-8"); //$NON-NLS-1$
+	} catch (IOException e) {
+		return;
+	}
+	int recordLength = 4 + 2 + name.length + 4 + bytes.length;
+	if (this.dataSize + recordLength > this.maxSize) {
+		this.needsCompaction = true; // evict the class files not used by this compilation when saved
+		return;
+	}
+	ByteArrayOutputStream record = new ByteArrayOutputStream(recordLength);
+	DataOutputStream out = new DataOutputStream(record);
+	FileLock lock = null;
+	try {
+		out.writeInt(RECORD_SIGNATURE);
+		out.writeShort(name.length);
+		out.write(name);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		RandomAccessFile file = openData();
+		lock = file.getChannel().lock();
+		long position = file.length();
+		if (position == 0) {
+			writeDataHeader(file);
+			position = file.length();
+		}
+		file.seek(position);
+		file.write(record.toByteArray());
+		this.offsets.put(qualifiedBinaryFileName, new Long(position));
+		this.dataSize = position + recordLength;
+	} catch (IOException e) {
+		// the cache is only an optimization, the class file is read from the jar next time
+	} finally {
+		if (lock != null) {
+			try {
+				lock.release();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
+
+/**
+ * Reads the index file, and the names and offsets of the class files in the data file.
+ * Answers false if there is no index file or if it was not written for the current jar.
+ */
+synchronized boolean read() {
+	if (!this.cacheFile.isFile())
+		return false;
+	DataInputStream in = null;
+	try {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.cacheFile), 32768));
+		if (in.readInt() != SIGNATURE || !readHeader(in))
+			return false;
+
+		int size = in.readInt();
+		Hashtable newPackages = new Hashtable(size * 2 + 1);
+		for (int i = 0; i < size; i++) {
+			String packageName = in.readUTF();
+			newPackages.put(packageName, packageName);
+		}
+		size = in.readInt();
+		HashSet newClassFileNames = new HashSet(size * 2 + 1);
+		for (int i = 0; i < size; i++)
+			newClassFileNames.add(in.readUTF());
+		byte[] newManifest = null;
+		if (in.readBoolean()) {
+			newManifest = new byte[in.readInt()];
+			in.readFully(newManifest);
+		}
+
+		this.packages = newPackages;
+		this.classFileNames = newClassFileNames;
+		this.manifest = newManifest;
+		this.dirty = false;
+	} catch (IOException e) {
+		// truncated or otherwise unusable cache file, will be rewritten
+		return false;
+	} finally {
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	readOffsets();
+	return true;
+}
+
+/*
+ * Reads the names of the class files in the data file and remembers the offsets of their records.
+ * Only the headers of the records are read, the bytes are skipped.
+ */
+private void readOffsets() {
+	this.offsets = new HashMap();
+	this.dataSize = 0;
+	if (!this.dataFile.isFile())
+		return;
+	DataInputStream in = null;
+	try {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.dataFile), 8192));
+		if (in.readInt() != DATA_SIGNATURE || !readHeader(in)) {
+			// written for another version of the jar, start a new one
+			in.close();
+			in = null;
+			this.dataFile.delete();
+			return;
+		}
+		long position = this.dataSize = dataHeaderLength();
+		long fileLength = this.dataFile.length();
+		while (position < fileLength) {
+			if (in.readInt() != RECORD_SIGNATURE) {
+				this.needsCompaction = true; // discard the records which follow an invalid one
+				break;
+			}
+			byte[] name = new byte[in.readUnsignedShort()];
+			in.readFully(name);
+			int length = in.readInt();
+			long offset = position + 4 + 2 + name.length;
+			if (length < 0 || offset + 4 + length > fileLength) {
+				this.needsCompaction = true;
+				break;
+			}
+			this.offsets.put(new String(name, "UTF-8"), new Long(position)); //$NON-NLS-1$
+			if (in.skipBytes(length) != length)
+				throw new IOException("Truncated record"); //$NON-NLS-1$
+			position = this.dataSize = offset + 4 + length;
+		}
+	} catch (IOException e) {
+		this.needsCompaction = true; // e.g. a truncated record
+	} finally {
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	if (this.dataSize > this.maxSize)
+		this.needsCompaction = true;
+}
+
+private boolean readHeader(DataInputStream in) throws IOException {
+	return in.readInt() == VERSION
+		&& this.jarPath.equals(in.readUTF())
+		&& in.readLong() == this.jarLength
+		&& in.readLong() == this.jarLastModified;
+}
+
+private void writeHeader(DataOutputStream out) throws IOException {
+	out.writeInt(VERSION);
+	out.writeUTF(this.jarPath);
+	out.writeLong(this.jarLength);
+	out.writeLong(this.jarLastModified);
+}
+
+private byte[] dataHeader() throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DataOutputStream out = new DataOutputStream(bytes);
+	out.writeInt(DATA_SIGNATURE);
+	writeHeader(out);
+	out.close();
+	return bytes.toByteArray();
+}
+
+private long dataHeaderLength() throws IOException {
+	return dataHeader().length;
+}
+
+private void writeDataHeader(RandomAccessFile file) throws IOException {
+	file.seek(0);
+	file.write(dataHeader());
+}
+
+private RandomAccessFile openData() throws IOException {
+	if (this.data == null) {
+		RandomAccessFile file = new RandomAccessFile(this.dataFile, "rw"); //$NON-NLS-1$
+		// another compilation may have rewritten the data file for another version of the jar
+		if (file.length() > 0 && !hasDataHeader(file)) {
+			file.close();
+			throw new IOException("Data file of another jar"); //$NON-NLS-1$
+		}
+		this.data = file;
+	}
+	return this.data;
+}
+
+private boolean hasDataHeader(RandomAccessFile file) throws IOException {
+	byte[] header = dataHeader();
+	if (file.length() < header.length)
+		return false;
+	byte[] fileHeader = new byte[header.length];
+	file.seek(0);
+	file.readFully(fileHeader);
+	return Arrays.equals(header, fileHeader);
+}
+
+private void closeData() {
+	if (this.data != null) {
+		try {
+			this.data.close();
+		} catch (IOException e) {
+			// ignore
+		}
+		this.data = null;
+	}
+}
+
+/**
+ * Writes the index file if the cache was filled from the jar, and rewrites the data file with only
+ * the class files used since the last save if it became too big.
+ * Files are written to a temporary file first and then renamed, so that concurrent
+ * compilations never read a partially written cache.
+ */
+synchronized void save() {
+	if (this.dirty)
+		writeIndex();
+	if (this.needsCompaction)
+		compactData();
+	this.usedNames = new HashSet();
+}
+
+/**
+ * Releases the data file, the cache can still be used afterwards.
+ */
+synchronized void close() {
+	closeData();
+}
+
+private void writeIndex() {
+	File tempFile = null;
+	DataOutputStream out = null;
+	try {
+		tempFile = File.createTempFile("jar", ".tmp", this.cacheFile.getParentFile()); //$NON-NLS-1$ //$NON-NLS-2$
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 32768));
+		out.writeInt(SIGNATURE);
+		writeHeader(out);
+
+		out.writeInt(this.packages.size());
+		for (Enumeration e = this.packages.keys(); e.hasMoreElements(); )
+			out.writeUTF((String) e.nextElement());
+		out.writeInt(this.classFileNames.size());
+		for (Iterator i = this.classFileNames.iterator(); i.hasNext(); )
+			out.writeUTF((String) i.next());
+		out.writeBoolean(this.manifest != null);
+		if (this.manifest != null) {
+			out.writeInt(this.manifest.length);
+			out.write(this.manifest);
+		}
+		out.close();
+		out = null;
+
+		if (rename(tempFile, this.cacheFile)) {
+			tempFile = null;
+			this.dirty = false;
+		}
+	} catch (IOException e) {
+		// the cache is only an optimization, the next compilation will try again
+	} finally {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		if (tempFile != null)
+			tempFile.delete();
+	}
+}
+
+/*
+ * Rewrites the data file with the class files used since the last save, which evicts the others.
+ */
+private void compactData() {
+	File tempFile = null;
+	DataOutputStream out = null;
+	HashMap newOffsets = new HashMap();
+	long position = 0;
+	try {
+		tempFile = File.createTempFile("jar", ".tmp", this.dataFile.getParentFile()); //$NON-NLS-1$ //$NON-NLS-2$
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 32768));
+		byte[] header = dataHeader();
+		out.write(header);
+		position = header.length;
+		for (Iterator i = this.usedNames.iterator(); i.hasNext(); ) {
+			String fileName = (String) i.next();
+			Long offset = (Long) this.offsets.get(fileName);
+			if (offset == null) continue; // not in the data file, e.g. because it was full
+			byte[] bytes;
+			try {
+				bytes = readBytes(fileName, offset.longValue());
+			} catch (IOException e) {
+				continue; // the data file was rewritten by another compilation
+			}
+			byte[] name = fileName.getBytes("UTF-8"); //$NON-NLS-1$
+			if (position + 4 + 2 + name.length + 4 + bytes.length > this.maxSize) continue;
+			out.writeInt(RECORD_SIGNATURE);
+			out.writeShort(name.length);
+			out.write(name);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			newOffsets.put(fileName, new Long(position));
+			position += 4 + 2 + name.length + 4 + bytes.length;
+		}
+		out.close();
+		out = null;
+
+		closeData();
+		if (rename(tempFile, this.dataFile)) {
+			tempFile = null;
+			this.offsets = newOffsets;
+			this.dataSize = position;
+			this.needsCompaction = false;
+		} else {
+			this.offsets = new HashMap();
+			this.dataSize = this.maxSize; // cannot replace the data file, stop appending to it
+		}
+	} catch (IOException e) {
+		// the cache is only an optimization, the next compilation will try again
+	} finally {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		if (tempFile != null)
+			tempFile.delete();
+	}
+}
+
+private static boolean rename(File tempFile, File file) {
+	if (tempFile.renameTo(file))
+		return true;
+	file.delete();
+	return tempFile.renameTo(file);
+}
+}
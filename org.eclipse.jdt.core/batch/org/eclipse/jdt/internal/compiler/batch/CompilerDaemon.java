@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.compiler.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Long running batch compiler, which compiles the requests it reads from its standard input.
+ * Between requests, the daemon keeps the jars of the classpath open together with their packages
+ * and the class files read from them, so that a compilation only pays for what changed since the
+ * previous one. A jar whose size or modification time changed is reopened. The jars and the class
+ * files are kept by the daemon instance only, and the least recently used ones are dropped past
+ * <code>jdt.compiler.daemon.maxJars</code> jars and <code>jdt.compiler.daemon.maxReadersSize</code> bytes
+ * of class files.
+ * <p>
+ * Usage: <code>java org.eclipse.jdt.internal.compiler.batch.CompilerDaemon</code>.
+ * Requests are read from the standard input, answered on the standard output, and compiled one at a
+ * time. The daemon does not accept requests from any other channel, so that only the process which
+ * started it can make it compile, write files or run annotation processors.
+ * </p>
+ * <p>
+ * A request is a line holding the arguments of the batch compiler, quoted as on a command line
+ * (see {@link Main#tokenize(String)}). Relative paths are resolved against the working directory of the
+ * daemon. The answer holds each line the compiler printed on its standard output prefixed with
+ * <code>out:</code>, each line it printed on its error output prefixed with <code>err:</code>, and a last line
+ * <code>exit:0</code> if the compilation succeeded or <code>exit:1</code> otherwise. The request
+ * <code>shutdown</code> stops the daemon.
+ * </p>
+ */
+public class CompilerDaemon {
+
+	static final String SHUTDOWN = "shutdown"; //$NON-NLS-1$
+	static final String OUT_PREFIX = "out:"; //$NON-NLS-1$
+	static final String ERR_PREFIX = "err:"; //$NON-NLS-1$
+	static final String EXIT_PREFIX = "exit:"; //$NON-NLS-1$
+
+	volatile boolean shutdown;
+	ClasspathJar.SharedJarTable sharedJars = new ClasspathJar.SharedJarTable();
+
+public static void main(String[] argv) {
+	if (argv.length != 0) {
+		System.err.println("Usage: CompilerDaemon"); //$NON-NLS-1$
+		System.exit(-1);
+	}
+	CompilerDaemon daemon = new CompilerDaemon();
+	try {
+		daemon.serve(System.in, System.out);
+	} catch (IOException e) {
+		e.printStackTrace();
+		System.exit(-1);
+	} finally {
+		daemon.shutdown();
+	}
+	System.exit(0);
+}
+
+/**
+ * Compiles the given request and answers the lines to send back.
+ */
+public synchronized String compile(String request) {
+	StringWriter outWriter = new StringWriter();
+	StringWriter errWriter = new StringWriter();
+	boolean success;
+	try {
+		Main main = new Main(new PrintWriter(outWriter), new PrintWriter(errWriter), false/*systemExit*/, null/*options*/, null/*progress*/);
+		main.sharedJars = this.sharedJars;
+		success = main.compile(Main.tokenize(request));
+	} catch (RuntimeException e) {
+		// do not let a broken request stop the daemon
+		e.printStackTrace(new PrintWriter(errWriter, true));
+		success = false;
+	} finally {
+		// no jar is in use between compilations
+		this.sharedJars.trim();
+	}
+	StringBuffer answer = new StringBuffer();
+	appendLines(answer, OUT_PREFIX, outWriter.toString());
+	appendLines(answer, ERR_PREFIX, errWriter.toString());
+	answer.append(EXIT_PREFIX).append(success ? '0' : '1').append('\n');
+	return answer.toString();
+}
+
+private static void appendLines(StringBuffer buffer, String prefix, String text) {
+	BufferedReader reader = new BufferedReader(new StringReader(text));
+	try {
+		String line;
+		while ((line = reader.readLine()) != null)
+			buffer.append(prefix).append(line).append('\n');
+	} catch (IOException e) {
+		// cannot happen on a string
+	}
+}
+
+/**
+ * Answers the requests read from the given input on the given output until the input is
+ * exhausted or the daemon is shut down.
+ */
+public void serve(InputStream input, OutputStream output) throws IOException {
+	BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8")); //$NON-NLS-1$
+	PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, "UTF-8")); //$NON-NLS-1$
+	String request;
+	while (!this.shutdown && (request = reader.readLine()) != null) {
+		request = request.trim();
+		if (request.length() == 0)
+			continue;
+		if (request.equals(SHUTDOWN)) {
+			shutdown();
+			break;
+		}
+		writer.print(compile(request));
+		writer.flush();
+	}
+}
+
+/**
+ * Answers the number of jars kept open for the next compilations.
+ */
+public int getSharedJarCount() {
+	synchronized (this.sharedJars) {
+		return this.sharedJars.jars.size();
+	}
+}
+
+/**
+ * Answers the size in bytes of the class files kept for the next compilations.
+ */
+public long getSharedClassFilesSize() {
+	synchronized (this.sharedJars) {
+		return this.sharedJars.readersSize;
+	}
+}
+
+/**
+ * Stops the daemon once the current request is compiled, and closes the jars it kept open.
+ */
+public synchronized void shutdown() {
+	this.shutdown = true;
+	this.sharedJars.closeAll();
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,6 +18,7 @@
 package org.eclipse.jdt.internal.compiler.batch;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -32,6 +33,7 @@ import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.text.DateFormat;
 import java.text.MessageFormat;
@@ -71,6 +73,7 @@ import org.eclipse.jdt.internal.compiler.env.AccessRuleSet;
 import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
 import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
 import org.eclipse.jdt.internal.compiler.impl.CompilerStats;
+import org.eclipse.jdt.internal.compiler.impl.CompilerStatsReport;
 import org.eclipse.jdt.internal.compiler.lookup.LookupEnvironment;
 import org.eclipse.jdt.internal.compiler.lookup.ReferenceBinding;
 import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
@@ -666,6 +669,21 @@ public class Main implements ProblemSeverities, SuffixConstants {
 			this.printlnErr(this.main.bind("configure.incorrectVMVersionforAPT")); //$NON-NLS-1$
 		}
 
+		/**
+		 *
+		 */
+		public void logNoStatsReportCreated(String fileName, IOException e) {
+			if ((this.tagBits & Logger.XML) != 0) {
+				this.parameters.put(Logger.MESSAGE, this.main.bind("output.noStatsReportCreated", //$NON-NLS-1$
+					fileName,
+					e.getMessage()));
+				printTag(Logger.ERROR_TAG, this.parameters, true, true);
+			}
+			this.printlnErr(this.main.bind("output.noStatsReportCreated", //$NON-NLS-1$
+				fileName,
+				e.getMessage()));
+		}
+
 		/**
 		 *
 		 */
@@ -1311,6 +1329,10 @@ public class Main implements ProblemSeverities, SuffixConstants {
 	public int globalProblemsCount;
 	public int globalTasksCount;
 	public int globalWarningsCount;
+	// writes the class files in the background, null if they are written by the compiling thread
+	private WriteManager writeManager;
+	// jars kept open across compilations by a compiler daemon, null if the jars are only used by this compilation
+	ClasspathJar.SharedJarTable sharedJars;
 
 	private File javaHomeCache;
 
@@ -1321,6 +1343,7 @@ public class Main implements ProblemSeverities, SuffixConstants {
 
 	public Logger logger;
 	public int maxProblems;
+	public String statsReport; // JSON file receiving the statistics of each compiled unit
 	public Map options;
 	protected PrintWriter out;
 	public boolean proceed = true;
@@ -1745,6 +1768,7 @@ public void configure(String[] argv) {
 	final int INSIDE_S_start = 19;
 	final int INSIDE_CLASS_NAMES = 20;
 	final int INSIDE_WARNINGS_PROPERTIES = 21;
+	final int INSIDE_STATS = 22;
 
 	final int DEFAULT = 0;
 	ArrayList bootclasspaths = new ArrayList(DEFAULT_SIZE_CLASSPATH);
@@ -1906,6 +1930,13 @@ public void configure(String[] argv) {
 					mode = INSIDE_LOG;
 					continue;
 				}
+				if (currentArg.equals("-stats")) { //$NON-NLS-1$
+					if (this.statsReport != null)
+						throw new IllegalArgumentException(
+							this.bind("configure.duplicateStats", currentArg)); //$NON-NLS-1$
+					mode = INSIDE_STATS;
+					continue;
+				}
 				if (currentArg.equals("-repeat")) { //$NON-NLS-1$
 					if (this.maxRepetition > 0)
 						throw new IllegalArgumentException(
@@ -2573,6 +2604,10 @@ public void configure(String[] argv) {
 				initializeWarnings(currentArg);
 				mode = DEFAULT;
 				continue;
+			case INSIDE_STATS :
+				this.statsReport = currentArg;
+				mode = DEFAULT;
+				continue;
 		}
 
 		// default is input directory, if no custom destination path exists
@@ -2942,6 +2977,12 @@ public File getJavaHome() {
 }
 
 public FileSystem getLibraryAccess() {
+	if (this.sharedJars != null) {
+		for (int i = 0, length = this.checkedClasspaths.length; i < length; i++) {
+			if (this.checkedClasspaths[i] instanceof ClasspathJar)
+				((ClasspathJar) this.checkedClasspaths[i]).sharedJars = this.sharedJars;
+		}
+	}
 	return new FileSystem(this.checkedClasspaths, this.filenames);
 }
 
@@ -3688,6 +3729,15 @@ public void outputClassFiles(CompilationResult unitResult) {
 				System.arraycopy(SuffixConstants.SUFFIX_class, 0, relativeName, length, 6);
 				CharOperation.replace(relativeName, '/', File.separatorChar);
 				String relativeStringName = new String(relativeName);
+				if (this.writeManager != null) {
+					// logged and counted once written
+					this.writeManager.write(
+						generateClasspathStructure,
+						currentDestinationPath,
+						relativeStringName,
+						classFile);
+					continue;
+				}
 				try {
 					if (this.compilerOptions.verbose)
 						this.out.println(
@@ -3712,9 +3762,55 @@ public void outputClassFiles(CompilationResult unitResult) {
 				}
 			}
 			this.batchCompiler.lookupEnvironment.releaseClassFiles(classFiles);
+			if (this.writeManager != null)
+				logWrites(this.writeManager.getDoneWrites());
+		}
+	}
+}
+/*
+ * Logs and counts the class files written by the write manager, and reports the ones it failed to write.
+ */
+private void logWrites(WriteManager.Write[] writes) {
+	for (int i = 0, length = writes.length; i < length; i++) {
+		WriteManager.Write write = writes[i];
+		if (write.exception != null) {
+			this.logger.logNoClassFileCreated(write.outputPath, write.relativeFileName, write.exception);
+			continue;
 		}
+		if (this.compilerOptions.verbose)
+			this.out.println(
+				Messages.bind(
+					Messages.compilation_write,
+					new String[] {
+						String.valueOf(this.exportedClassFilesCounter+1),
+						write.relativeFileName
+					}));
+		this.logger.logClassFile(
+			write.generatePackagesStructure,
+			write.outputPath,
+			write.relativeFileName);
+		this.exportedClassFilesCounter++;
 	}
 }
+/*
+ * The output jar replaces the -d output directory. A single jar cannot hold the class files
+ * of several output directories, so reject the source files and the source folders of the
+ * classpath that have their own output directory.
+ */
+private void checkOutputJarDestinations(String outputJar) {
+	if (this.destinationPaths != null) {
+		for (int i = 0, length = this.destinationPaths.length; i < length; i++)
+			checkOutputJarDestination(outputJar, this.destinationPaths[i]);
+	}
+	for (int i = 0, length = this.checkedClasspaths.length; i < length; i++) {
+		if (this.checkedClasspaths[i] instanceof ClasspathLocation)
+			checkOutputJarDestination(outputJar, ((ClasspathLocation) this.checkedClasspaths[i]).destinationPath);
+	}
+}
+private void checkOutputJarDestination(String outputJar, String destination) {
+	if (destination != null && destination != NONE && !destination.equals(this.destinationPath))
+		throw new IllegalArgumentException(this.bind("configure.outputJarDestinations", outputJar, destination)); //$NON-NLS-1$
+}
 /*
  *  Low-level API performing the actual compilation
  */
@@ -3739,6 +3835,28 @@ public void performCompilation() {
 	// temporary code to allow the compiler to revert to a single thread
 	String setting = System.getProperty("jdt.compiler.useSingleThread"); //$NON-NLS-1$
 	this.batchCompiler.useSingleThread = setting != null && setting.equals("true"); //$NON-NLS-1$
+	setting = System.getProperty("jdt.compiler.parseThreads"); //$NON-NLS-1$
+	if (setting != null) {
+		try {
+			this.batchCompiler.parseThreads = Integer.parseInt(setting);
+		} catch (NumberFormatException e) {
+			// ignore and keep parsing method bodies on the processing thread
+		}
+	}
+	int outputThreads = 0;
+	setting = System.getProperty("jdt.compiler.outputThreads"); //$NON-NLS-1$
+	if (setting != null) {
+		try {
+			outputThreads = Integer.parseInt(setting);
+		} catch (NumberFormatException e) {
+			// ignore and keep writing class files on the compiling thread
+		}
+	}
+	String outputJar = System.getProperty("jdt.compiler.outputJar"); //$NON-NLS-1$
+	if (outputJar != null)
+		checkOutputJarDestinations(outputJar);
+	if (outputThreads > 0 || outputJar != null)
+		this.writeManager = new WriteManager(outputThreads, outputJar);
 
 	if (this.compilerOptions.complianceLevel >= ClassFileConstants.JDK1_6
 			&& this.compilerOptions.processAnnotations) {
@@ -3756,12 +3874,21 @@ public void performCompilation() {
 	// set the non-externally configurable options.
 	this.compilerOptions.verbose = this.verbose;
 	this.compilerOptions.produceReferenceInfo = this.produceRefInfo;
+	CompilerStatsReport report = null;
+	if (this.statsReport != null)
+		this.batchCompiler.statsListener = report = new CompilerStatsReport();
 	try {
 		this.logger.startLoggingSources();
 		this.batchCompiler.compile(getCompilationUnits());
 	} finally {
+		if (this.writeManager != null) {
+			logWrites(this.writeManager.finish());
+			this.writeManager = null;
+		}
 		this.logger.endLoggingSources();
 	}
+	if (report != null)
+		writeStatsReport(report);
 
 	if (this.extraProblems != null) {
 		loggingExtraProblems();
@@ -3775,6 +3902,26 @@ public void performCompilation() {
 	// cleanup
 	environment.cleanup();
 }
+/*
+ * Writes the statistics of the compiled units to the -stats file, overwriting those of a previous repetition.
+ */
+protected void writeStatsReport(CompilerStatsReport report) {
+	Writer writer = null;
+	try {
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.statsReport), Util.UTF_8));
+		report.writeJSON(writer);
+	} catch (IOException e) {
+		this.logger.logNoStatsReportCreated(this.statsReport, e);
+	} finally {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
 protected void loggingExtraProblems() {
 	this.logger.loggingExtraProblems(this);
 }
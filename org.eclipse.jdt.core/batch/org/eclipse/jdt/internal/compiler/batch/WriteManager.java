@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.compiler.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.util.Util;
+
+/**
+ * Writes the class files produced by the batch compiler on a pool of writing threads, so that
+ * the compiler does not wait for the file system. Each output directory is created once, and
+ * each class file is written with a single channel write.
+ * <p>
+ * Class files that are written in a package structure can instead be stored in a jar file.
+ * The jar is written by a single thread, so that its entries come in the order of the writes.
+ * </p><p>
+ * The class files waiting to be written are bounded in size: {@link #write(boolean, String, String, ClassFile)}
+ * waits when they exceed {@link #MAX_PENDING_BYTES}. The writing threads do not report anything. The writes
+ * that are done, whether they succeeded or failed, are collected so that the compiling thread can log and
+ * count them (see {@link #getDoneWrites()}). A class file stored in the jar is only done once the jar is closed.
+ * </p>
+ */
+public class WriteManager implements Runnable {
+
+	public static final int MAX_PENDING_BYTES = 16 * 1024 * 1024;
+
+	/*
+	 * A class file to write
+	 */
+	public static class Write {
+		public boolean generatePackagesStructure;
+		public String outputPath;
+		public String relativeFileName;
+		// the failure of the write, null if the class file was written
+		public IOException exception;
+		byte[] bytes;
+
+		Write(boolean generatePackagesStructure, String outputPath, String relativeFileName, byte[] bytes) {
+			this.generatePackagesStructure = generatePackagesStructure;
+			this.outputPath = outputPath;
+			this.relativeFileName = relativeFileName;
+			this.bytes = bytes;
+		}
+	}
+
+	private Thread[] writingThreads;
+	private LinkedList pendingWrites = new LinkedList();
+	private int pendingBytes = 0;
+	private boolean finishing = false;
+	private ArrayList doneWrites = new ArrayList();
+
+	// the output directories already created
+	private HashSet createdDirectories = new HashSet();
+
+	private String jarPath;
+	private ZipOutputStream jar;
+	private IOException jarException;
+	// the writes stored in the jar, which are done once the jar is closed
+	private ArrayList jarWrites = new ArrayList();
+
+/**
+ * Creates a manager writing class files with the given number of threads. If the given jar path is not null,
+ * the class files written in a package structure are stored in this jar instead, using a single thread.
+ */
+public WriteManager(int threadCount, String jarPath) {
+	this.jarPath = jarPath;
+	if (jarPath != null || threadCount < 1)
+		threadCount = 1;
+	synchronized (this) {
+		this.writingThreads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			this.writingThreads[i] = new Thread(this, "Compiler Writing Task"); //$NON-NLS-1$
+			this.writingThreads[i].setDaemon(true);
+			this.writingThreads[i].start();
+		}
+	}
+}
+
+/**
+ * Queues the given class file to be written. The bytes of the class file are copied, so that the class
+ * file can be reused as soon as this method returns. Waits if too many bytes are waiting to be written.
+ */
+public synchronized void write(boolean generatePackagesStructure, String outputPath, String relativeFileName, ClassFile classFile) {
+	byte[] bytes = new byte[classFile.headerOffset + classFile.contentsOffset];
+	System.arraycopy(classFile.header, 0, bytes, 0, classFile.headerOffset);
+	System.arraycopy(classFile.contents, 0, bytes, classFile.headerOffset, classFile.contentsOffset);
+	while (this.pendingBytes > MAX_PENDING_BYTES && !this.pendingWrites.isEmpty()) {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			// ignore
+		}
+	}
+	this.pendingWrites.addLast(new Write(generatePackagesStructure, outputPath, relativeFileName, bytes));
+	this.pendingBytes += bytes.length;
+	notifyAll();
+}
+
+/**
+ * Returns the writes done since the last call, in the order they were done, and forgets them.
+ */
+public synchronized Write[] getDoneWrites() {
+	int size = this.doneWrites.size();
+	Write[] result = new Write[size];
+	if (size > 0) {
+		this.doneWrites.toArray(result);
+		this.doneWrites.clear();
+	}
+	return result;
+}
+
+/**
+ * Waits until all the queued class files are written, then stops the writing threads and closes the jar.
+ * Returns the writes done since the last call to {@link #getDoneWrites()}.
+ */
+public Write[] finish() {
+	Thread[] threads;
+	synchronized (this) {
+		this.finishing = true;
+		notifyAll();
+		threads = this.writingThreads;
+	}
+	for (int i = 0, length = threads.length; i < length; i++) {
+		try {
+			threads[i].join();
+		} catch (InterruptedException e) {
+			// ignore
+		}
+	}
+	synchronized (this) {
+		if (this.jar != null) {
+			IOException exception = null;
+			try {
+				this.jar.close();
+			} catch (IOException e) {
+				exception = e;
+			}
+			this.jar = null;
+			for (int i = 0, size = this.jarWrites.size(); i < size; i++) {
+				Write write = (Write) this.jarWrites.get(i);
+				if (write.exception == null)
+					write.exception = exception;
+				this.doneWrites.add(write);
+			}
+			this.jarWrites.clear();
+		}
+	}
+	return getDoneWrites();
+}
+
+public void run() {
+	while (true) {
+		Write next;
+		synchronized (this) {
+			while (this.pendingWrites.isEmpty()) {
+				if (this.finishing) return;
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}
+			next = (Write) this.pendingWrites.removeFirst();
+			this.pendingBytes -= next.bytes.length;
+			notifyAll(); // wake up the compiling thread if it waits for space
+		}
+		boolean toJar = this.jarPath != null && next.generatePackagesStructure;
+		try {
+			if (toJar) {
+				writeToJar(next);
+			} else {
+				writeToDisk(next);
+			}
+		} catch (IOException e) {
+			next.exception = e;
+		}
+		next.bytes = null;
+		synchronized (this) {
+			if (toJar && next.exception == null)
+				this.jarWrites.add(next);
+			else
+				this.doneWrites.add(next);
+		}
+	}
+}
+
+private void writeToDisk(Write write) throws IOException {
+	char fileSeparatorChar = File.separatorChar;
+	String outputPath = write.outputPath.replace('/', fileSeparatorChar);
+	String relativeFileName = write.relativeFileName.replace('/', fileSeparatorChar);
+	if (!write.generatePackagesStructure) {
+		// write in the output directory, which must exist
+		int separatorIndex = relativeFileName.lastIndexOf(fileSeparatorChar);
+		if (separatorIndex != -1)
+			relativeFileName = relativeFileName.substring(separatorIndex + 1);
+	}
+	String fileName = outputPath.endsWith(File.separator)
+		? outputPath + relativeFileName
+		: outputPath + File.separator + relativeFileName;
+	if (write.generatePackagesStructure) {
+		int separatorIndex = fileName.lastIndexOf(fileSeparatorChar);
+		String directory = fileName.substring(0, separatorIndex);
+		boolean created;
+		synchronized (this.createdDirectories) {
+			created = this.createdDirectories.contains(directory);
+		}
+		if (!created) {
+			fileName = Util.buildAllDirectoriesInto(write.outputPath, write.relativeFileName);
+			synchronized (this.createdDirectories) {
+				this.createdDirectories.add(directory);
+			}
+		}
+	}
+	FileOutputStream stream = new FileOutputStream(fileName);
+	try {
+		FileChannel channel = stream.getChannel();
+		ByteBuffer buffer = ByteBuffer.wrap(write.bytes);
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	} finally {
+		stream.close();
+	}
+}
+
+private void writeToJar(Write write) throws IOException {
+	if (this.jar == null) {
+		if (this.jarException != null)
+			throw this.jarException;
+		try {
+			File jarFile = new File(this.jarPath);
+			File parent = jarFile.getParentFile();
+			if (parent != null)
+				parent.mkdirs();
+			this.jar = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jarFile)));
+		} catch (IOException e) {
+			this.jarException = e; // report the same failure for all the class files of the jar
+			throw e;
+		}
+	}
+	ZipEntry entry = new ZipEntry(write.relativeFileName.replace(File.separatorChar, '/'));
+	this.jar.putNextEntry(entry);
+	this.jar.write(write.bytes);
+	this.jar.closeEntry();
+}
+
+public String toString() {
+	return "Write manager (" + this.writingThreads.length + " threads" //$NON-NLS-1$ //$NON-NLS-2$
+		+ (this.jarPath == null ? "" : ", jar " + this.jarPath) + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+}
+}
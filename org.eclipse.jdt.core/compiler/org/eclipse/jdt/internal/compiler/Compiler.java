@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -32,6 +32,7 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 	public ProblemReporter problemReporter;
 	protected PrintWriter out; // output for messages that are not sent to problemReporter
 	public CompilerStats stats;
+	public ICompilerStatsListener statsListener; // when set, the compiler measures each unit it compiles
 	public CompilationProgress progress;
 	public int remainingIterations = 1;
 
@@ -51,6 +52,10 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 	public int annotationProcessorStartIndex = 0;
 	public ReferenceBinding[] referenceBindings;
 	public boolean useSingleThread = true; // by default the compiler will not use worker threads to read/process/write
+	public int parseThreads = 0; // number of threads parsing method bodies ahead of processing when not using a single thread (0 or 1: none)
+	public int processQueueSize = ProcessTaskManager.getProcessedQueueSize(); // max number of processed units waiting to be accepted when not using a single thread
+	public long processQueueMemory = ProcessTaskManager.getProcessedQueueMemory(); // max bytes of class files waiting to be accepted when not using a single thread (0: no limit)
+	protected ParseTaskManager parseTaskManager;
 
 	// number of initial units parsed at once (-1: none)
 
@@ -351,6 +356,21 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 			Messages.bind(Messages.abort_againstSourceModel, new String[] { String.valueOf(sourceTypes[0].getName()), String.valueOf(sourceTypes[0].getFileName()) }));
 	}
 
+	/*
+	 * Completes the statistics of a processed unit with the class files it produced, and passes them to the stats listener.
+	 */
+	private void acceptUnitStats(CompilationResult result) {
+		CompilationUnitStats unitStats = result.stats;
+		if (unitStats == null) return;
+		unitStats.lineCount = result.lineSeparatorPositions.length;
+		ClassFile[] classFiles = result.getClassFiles();
+		unitStats.classFileCount = classFiles.length;
+		for (int i = 0, length = classFiles.length; i < length; i++)
+			unitStats.classFileBytes += classFiles[i].headerOffset + classFiles[i].contentsOffset;
+		result.stats = null; // release reference to the stats
+		this.statsListener.acceptUnitStats(unitStats);
+	}
+
 	protected synchronized void addCompilationUnit(
 		ICompilationUnit sourceUnit,
 		CompilationUnitDeclaration parsedUnit) {
@@ -476,6 +496,8 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 
 					reportWorked(1, i);
 					this.stats.lineCount += unit.compilationResult.lineSeparatorPositions.length;
+					if (this.statsListener != null)
+						acceptUnitStats(unit.compilationResult);
 					long acceptStart = System.currentTimeMillis();
 					this.requestor.acceptResult(unit.compilationResult.tagAsAccepted());
 					this.stats.generateTime += System.currentTimeMillis() - acceptStart; // record accept time as part of generation
@@ -489,11 +511,13 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 							}));
 				}
 			} else {
-				processingTask = new ProcessTaskManager(this);
+				if (this.parseThreads > 1)
+					this.parseTaskManager = new ParseTaskManager(this, this.parseThreads);
+				processingTask = new ProcessTaskManager(this, this.processQueueSize, this.processQueueMemory);
 				int acceptedCount = 0;
 				// process all units (some more could be injected in the loop by the lookup environment)
-				// the processTask can continue to process units until its fixed sized cache is full then it must wait
-				// for this this thread to accept the units as they appear (it only waits if no units are available)
+				// the processTask can continue to process units until its queue is full (by unit count or class file size)
+				// then it must wait for this thread to accept the units as they appear (it only waits if no units are available)
 				while (true) {
 					try {
 						unit = processingTask.removeNextUnit(); // waits if no units are in the processed queue
@@ -507,6 +531,8 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 					if (unit == null) break;
 					reportWorked(1, acceptedCount++);
 					this.stats.lineCount += unit.compilationResult.lineSeparatorPositions.length;
+					if (this.statsListener != null)
+						acceptUnitStats(unit.compilationResult);
 					this.requestor.acceptResult(unit.compilationResult.tagAsAccepted());
 					if (this.options.verbose)
 						this.out.println(
@@ -531,9 +557,15 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 				processingTask.shutdown();
 				processingTask = null;
 			}
+			if (this.parseTaskManager != null) {
+				this.parseTaskManager.shutdown();
+				this.parseTaskManager = null;
+			}
 			reset();
 			this.annotationProcessorStartIndex  = 0;
 			this.stats.endTime = System.currentTimeMillis();
+			if (this.statsListener != null)
+				this.statsListener.acceptCompilerStats(this.stats);
 		}
 		if (this.options.verbose) {
 			if (this.totalUnits > 1) {
@@ -685,6 +717,17 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 	public void initializeParser() {
 
 		this.parser = new Parser(this.problemReporter, this.options.parseLiteralExpressionsAsConstants);
+		this.parser.scanner.nameTable = new CharArrayInterningSet(this.lookupEnvironment.nameTable);
+	}
+
+	/**
+	 * Answer a new parser of the same kind as the one of this compiler, which reports its problems
+	 * to the given problem reporter. Used to parse method bodies on other threads (see ParseTaskManager).
+	 */
+	public Parser newParser(ProblemReporter reporter) {
+		Parser newParser = new Parser(reporter, this.options.parseLiteralExpressionsAsConstants);
+		newParser.scanner.nameTable = new CharArrayInterningSet(this.lookupEnvironment.nameTable); // local to the thread of the parser
+		return newParser;
 	}
 
 	/**
@@ -721,7 +764,13 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 				this.stats.parseTime += resolveStart - parseStart;
 				// initial type binding creation
 				this.lookupEnvironment.buildTypeBindings(parsedUnit, null /*no access restriction*/);
-				this.stats.resolveTime += System.currentTimeMillis() - resolveStart;
+				long resolveEnd = System.currentTimeMillis();
+				this.stats.resolveTime += resolveEnd - resolveStart;
+				if (this.statsListener != null) {
+					unitResult.stats = new CompilationUnitStats(unitResult.getFileName());
+					unitResult.stats.parseTime = resolveStart - parseStart;
+					unitResult.stats.resolveTime = resolveEnd - resolveStart;
+				}
 				addCompilationUnit(sourceUnits[i], parsedUnit);
 				ImportReference currentPackage = parsedUnit.currentPackage;
 				if (currentPackage != null) {
@@ -751,12 +800,25 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 	 */
 	public void process(CompilationUnitDeclaration unit, int i) {
 		this.lookupEnvironment.unitBeingCompleted = unit;
+		CompilationUnitStats unitStats = unit.compilationResult.stats;
+		long allocationStart = 0;
+		int bindingStart = 0;
+		if (unitStats != null) {
+			allocationStart = CompilationUnitStats.currentThreadAllocatedBytes();
+			bindingStart = this.lookupEnvironment.bindingCount;
+		}
 		long parseStart = System.currentTimeMillis();
 
-		this.parser.getMethodBodies(unit);
+		long unitParseTime = -1; // the time measured by the thread which parsed the unit, when parsed ahead
+		if (this.parseTaskManager != null)
+			unitParseTime = this.parseTaskManager.getMethodBodies(unit, i);
+		else
+			this.parser.getMethodBodies(unit);
 
 		long resolveStart = System.currentTimeMillis();
 		this.stats.parseTime += resolveStart - parseStart;
+		if (unitParseTime < 0)
+			unitParseTime = resolveStart - parseStart;
 
 		// fault in fields & methods
 		if (unit.scope != null)
@@ -787,7 +849,18 @@ public class Compiler implements ITypeRequestor, ProblemSeverities {
 		// finalize problems (suppressWarnings)
 		unit.finalizeProblems();
 
-		this.stats.generateTime += System.currentTimeMillis() - generateStart;
+		long generateEnd = System.currentTimeMillis();
+		this.stats.generateTime += generateEnd - generateStart;
+
+		if (unitStats != null) {
+			unitStats.parseTime += unitParseTime;
+			unitStats.resolveTime += analyzeStart - resolveStart;
+			unitStats.analyzeTime += generateStart - analyzeStart;
+			unitStats.generateTime += generateEnd - generateStart;
+			if (allocationStart >= 0)
+				unitStats.allocatedBytes = CompilationUnitStats.currentThreadAllocatedBytes() - allocationStart;
+			unitStats.bindingCount += this.lookupEnvironment.bindingCount - bindingStart;
+		}
 
 		// refresh the total number of units known at this stage
 		unit.compilationResult.totalUnitsKnown = this.totalUnits;
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.compiler;
+
+import org.eclipse.jdt.internal.compiler.impl.CompilationUnitStats;
+import org.eclipse.jdt.internal.compiler.impl.CompilerStats;
+
+/**
+ * A callback interface for receiving the statistics of a compilation, unit by unit.
+ * When a listener is set on a {@link Compiler}, the compiler measures each phase of
+ * each unit it compiles. Statistics are only collected when a listener is set.
+ * <p>
+ * The listener is notified on the thread which called {@link Compiler#compile(org.eclipse.jdt.internal.compiler.env.ICompilationUnit[])},
+ * even when the units are processed on another thread.
+ * </p>
+ */
+public interface ICompilerStatsListener {
+
+	/**
+	 * Accept the statistics of a unit, right before its result is given to the compiler requestor.
+	 */
+	public void acceptUnitStats(CompilationUnitStats unitStats);
+
+	/**
+	 * Accept the overall statistics of a compilation, once all its units have been accepted.
+	 */
+	public void acceptCompilerStats(CompilerStats compilerStats);
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jdt.internal.compiler;
+
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.impl.CompilationUnitStats;
+import org.eclipse.jdt.internal.compiler.parser.Parser;
+import org.eclipse.jdt.internal.compiler.problem.ProblemReporter;
+
+/**
+ * Parses the method bodies of the units to process on a pool of worker threads.
+ * Units are handled by windows: all the units of a window are parsed in parallel, each
+ * worker using its own parser and problem reporter, and the window is complete before
+ * any of its units gets resolved. Binding resolution, flow analysis and code generation
+ * thus keep running one unit at a time, in the order of the units to process, so that
+ * the problems and the class files that are produced do not depend on the thread count.
+ * <p>
+ * The time spent parsing each unit is measured by the thread which parsed it, so that the
+ * statistics of a unit do not include the time spent waiting for the rest of its window.
+ * </p>
+ */
+public class ParseTaskManager implements Runnable {
+
+	Compiler compiler;
+	private Thread[] parsingThreads;
+	private Parser[] parsers;
+	private ProblemReporter[] problemReporters;
+
+	// current window
+	int windowStart, windowEnd, nextUnitToParse, parsedCount;
+	CompilationUnitDeclaration[] units;
+	Throwable[] exceptions; // exception raised while parsing a unit, rethrown when the unit gets processed
+	long[] parseTimes; // time spent parsing each unit of the window
+	String[] parseThreads; // name of the thread which parsed each unit of the window
+	private Throwable caughtException;
+
+	static final int UNITS_PER_THREAD = 8; // do not waste memory by keeping too many method bodies in memory
+
+public ParseTaskManager(Compiler compiler, int threadCount) {
+	this.compiler = compiler;
+	this.windowStart = 0;
+	this.windowEnd = 0;
+	this.units = new CompilationUnitDeclaration[threadCount * UNITS_PER_THREAD];
+	this.exceptions = new Throwable[this.units.length];
+	this.parseTimes = new long[this.units.length];
+	this.parseThreads = new String[this.units.length];
+
+	// slot 0 is used by the thread which requests the method bodies, the others by the parsing threads
+	this.parsers = new Parser[threadCount];
+	this.problemReporters = new ProblemReporter[threadCount];
+	for (int i = 0; i < threadCount; i++) {
+		this.problemReporters[i] = new ProblemReporter(
+			compiler.problemReporter.policy,
+			compiler.options,
+			compiler.problemReporter.problemFactory);
+		this.parsers[i] = compiler.newParser(this.problemReporters[i]);
+	}
+
+	synchronized (this) {
+		this.parsingThreads = new Thread[threadCount - 1];
+		for (int i = threadCount - 1; --i >= 0;) {
+			this.parsingThreads[i] = new Thread(this, "Compiler Parsing Task #" + (i + 1)); //$NON-NLS-1$
+			this.parsingThreads[i].setDaemon(true);
+			this.parsingThreads[i].start();
+		}
+	}
+}
+
+/**
+ * Ensures the method bodies of the given unit have been parsed, and answers the time spent parsing them.
+ * If the unit is past the current window, the units starting at the given index are parsed in parallel
+ * and the call returns once they are all done.
+ * Any exception raised while parsing the unit is rethrown, as if the unit had been parsed by the caller.
+ */
+public long getMethodBodies(CompilationUnitDeclaration unit, int index) throws Error {
+	if (index < this.windowStart || index >= this.windowEnd) {
+		if (!parseWindow(unit, index)) {
+			// no parsing threads anymore or unit unknown to the compiler
+			return parseInCallerThread(unit);
+		}
+	}
+	int slot = index - this.windowStart;
+	if (this.units[slot] != unit)
+		return parseInCallerThread(unit);
+	this.units[slot] = null; // release reference to the parsed unit
+	CompilationUnitStats unitStats = unit.compilationResult.stats;
+	if (unitStats != null)
+		unitStats.parseThread = this.parseThreads[slot];
+	Throwable exception = this.exceptions[slot];
+	if (exception != null) {
+		this.exceptions[slot] = null;
+		if (exception instanceof Error)
+			throw (Error) exception;
+		throw (RuntimeException) exception;
+	}
+	return this.parseTimes[slot];
+}
+
+private long parseInCallerThread(CompilationUnitDeclaration unit) {
+	long start = System.currentTimeMillis();
+	this.compiler.parser.getMethodBodies(unit);
+	CompilationUnitStats unitStats = unit.compilationResult.stats;
+	if (unitStats != null)
+		unitStats.parseThread = Thread.currentThread().getName();
+	return System.currentTimeMillis() - start;
+}
+
+private boolean parseWindow(CompilationUnitDeclaration unit, int start) throws Error {
+	synchronized (this) {
+		if (this.parsingThreads == null) {
+			if (this.caughtException != null) {
+				// rethrow the caught exception from the parsingThreads in the main compiler thread
+				if (this.caughtException instanceof Error)
+					throw (Error) this.caughtException;
+				throw (RuntimeException) this.caughtException;
+			}
+			return false;
+		}
+
+		int length = 0;
+		this.units[length++] = unit; // may already have been removed from the units to process
+		synchronized (this.compiler) {
+			CompilationUnitDeclaration[] unitsToProcess = this.compiler.unitsToProcess;
+			if (unitsToProcess != null)
+				for (int i = start + 1, max = this.compiler.totalUnits; i < max && length < this.units.length; i++)
+					this.units[length++] = unitsToProcess[i];
+		}
+		for (int i = length; i < this.units.length; i++)
+			this.units[i] = null;
+		this.windowStart = start;
+		this.windowEnd = start + length;
+		this.nextUnitToParse = 0;
+		this.parsedCount = 0;
+		notifyAll(); // wake up the parsing threads
+	}
+
+	// parse units of the window in this thread as well
+	parseUnits(0);
+
+	synchronized (this) {
+		while (this.parsedCount < this.windowEnd - this.windowStart) {
+			try {
+				wait(250);
+			} catch (InterruptedException ignore) {
+				// ignore
+			}
+			if (this.caughtException != null) {
+				// rethrow the caught exception from the parsingThreads in the main compiler thread
+				if (this.caughtException instanceof Error)
+					throw (Error) this.caughtException;
+				throw (RuntimeException) this.caughtException;
+			}
+		}
+	}
+	return true;
+}
+
+private void parseUnits(int parserIndex) {
+	Parser parser = this.parsers[parserIndex];
+	while (true) {
+		int slot;
+		CompilationUnitDeclaration unit;
+		synchronized (this) {
+			if (this.nextUnitToParse >= this.windowEnd - this.windowStart) return;
+			slot = this.nextUnitToParse++;
+			unit = this.units[slot];
+		}
+		Throwable exception = null;
+		long start = System.currentTimeMillis();
+		try {
+			if (unit != null)
+				parser.getMethodBodies(unit);
+		} catch (Error e) {
+			exception = e;
+		} catch (RuntimeException e) {
+			exception = e;
+		} finally {
+			this.problemReporters[parserIndex].reset(); // release reference to the unit
+		}
+		long parseTime = System.currentTimeMillis() - start;
+		synchronized (this) {
+			this.exceptions[slot] = exception;
+			this.parseTimes[slot] = parseTime;
+			this.parseThreads[slot] = Thread.currentThread().getName();
+			if (++this.parsedCount == this.windowEnd - this.windowStart)
+				notifyAll(); // wake up the thread waiting for the window to complete
+		}
+	}
+}
+
+public void run() {
+	int parserIndex = -1;
+	synchronized (this) {
+		if (this.parsingThreads == null) return;
+		Thread current = Thread.currentThread();
+		for (int i = 0, length = this.parsingThreads.length; i < length; i++)
+			if (this.parsingThreads[i] == current)
+				parserIndex = i + 1;
+	}
+	try {
+		while (true) {
+			synchronized (this) {
+				while (this.parsingThreads != null && this.nextUnitToParse >= this.windowEnd - this.windowStart) {
+					try {
+						wait(250); // wait until a new window is available
+					} catch (InterruptedException e) { // ignore
+					}
+				}
+				if (this.parsingThreads == null) return;
+			}
+			parseUnits(parserIndex);
+		}
+	} catch (Error e) {
+		synchronized (this) {
+			this.caughtException = e;
+			shutdown();
+		}
+	} catch (RuntimeException e) {
+		synchronized (this) {
+			this.caughtException = e;
+			shutdown();
+		}
+	}
+}
+
+public synchronized void shutdown() {
+	this.parsingThreads = null; // mark the parse manager as shutting down so that the parsing threads stop
+	notifyAll();
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008 IBM Corporation and others.
+ * Copyright (c) 2008, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,9 +11,18 @@
 
 package org.eclipse.jdt.internal.compiler;
 
+import java.util.Iterator;
+
 import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
 import org.eclipse.jdt.internal.compiler.util.Messages;
 
+/**
+ * Processes the units to compile on a separate thread, ahead of the thread that accepts their results.
+ * Processed units wait in a queue until they are accepted. The queue is bounded by the number of units
+ * it holds and by the size of the class files these units retain, so that a slow acceptor (e.g. one
+ * writing class files to a slow disk) holds the processing thread back before memory runs out.
+ * The queue always accepts a unit when it is empty, whatever its size.
+ */
 public class ProcessTaskManager implements Runnable {
 
 	Compiler compiler;
@@ -23,20 +32,65 @@ public class ProcessTaskManager implements Runnable {
 	private Throwable caughtException;
 
 	// queue
-	volatile int currentIndex, availableIndex, size, sleepCount;
+	int currentIndex, availableIndex, count;
 	CompilationUnitDeclaration[] units;
+	long[] unitSizes;
+	long queuedSize, maxQueuedSize;
+
+	public static final int PROCESSED_QUEUE_SIZE = 64;
+	public static final long PROCESSED_QUEUE_MEMORY = 4 * 1024 * 1024;
+
+/**
+ * Answers the maximum number of processed units waiting to be accepted, as set by the
+ * <code>jdt.compiler.processQueueSize</code> system property, or {@link #PROCESSED_QUEUE_SIZE}.
+ */
+public static int getProcessedQueueSize() {
+	String setting = System.getProperty("jdt.compiler.processQueueSize"); //$NON-NLS-1$
+	if (setting != null) {
+		try {
+			return Integer.parseInt(setting);
+		} catch (NumberFormatException e) {
+			// ignore and keep the default queue size
+		}
+	}
+	return PROCESSED_QUEUE_SIZE;
+}
 
-	public static final int PROCESSED_QUEUE_SIZE = 12;
+/**
+ * Answers the maximum number of bytes of class files waiting to be accepted, as set by the
+ * <code>jdt.compiler.processQueueMemory</code> system property, or {@link #PROCESSED_QUEUE_MEMORY}.
+ */
+public static long getProcessedQueueMemory() {
+	String setting = System.getProperty("jdt.compiler.processQueueMemory"); //$NON-NLS-1$
+	if (setting != null) {
+		try {
+			return Long.parseLong(setting);
+		} catch (NumberFormatException e) {
+			// ignore and keep the default queue memory
+		}
+	}
+	return PROCESSED_QUEUE_MEMORY;
+}
 
 public ProcessTaskManager(Compiler compiler) {
+	this(compiler, getProcessedQueueSize(), getProcessedQueueMemory());
+}
+
+/**
+ * Creates a task manager whose queue holds at most the given number of processed units, and
+ * at most the given number of bytes of class files (unless it holds a single unit).
+ */
+public ProcessTaskManager(Compiler compiler, int queueSize, long queueMemory) {
 	this.compiler = compiler;
 	this.unitIndex = 0;
 
 	this.currentIndex = 0;
 	this.availableIndex = 0;
-	this.size = PROCESSED_QUEUE_SIZE;
-	this.sleepCount = 0; // 0 is no one, +1 is the processing thread & -1 is the writing/main thread
-	this.units = new CompilationUnitDeclaration[this.size];
+	this.count = 0;
+	this.units = new CompilationUnitDeclaration[queueSize > 0 ? queueSize : PROCESSED_QUEUE_SIZE];
+	this.unitSizes = new long[this.units.length];
+	this.queuedSize = 0;
+	this.maxQueuedSize = queueMemory > 0 ? queueMemory : Long.MAX_VALUE;
 
 	synchronized (this) {
 		this.processingThread = new Thread(this, "Compiler Processing Task"); //$NON-NLS-1$
@@ -45,67 +99,67 @@ public ProcessTaskManager(Compiler compiler) {
 	}
 }
 
+/*
+ * Answers the number of bytes of class files retained by the result of the given processed unit.
+ */
+static long retainedSize(CompilationUnitDeclaration unit) {
+	long size = 0;
+	for (Iterator iterator = unit.compilationResult.compiledTypes.values().iterator(); iterator.hasNext();) {
+		ClassFile classFile = (ClassFile) iterator.next();
+		size += classFile.headerOffset + classFile.contentsOffset;
+	}
+	return size;
+}
+
 // add unit to the queue - wait if no space is available
 private synchronized void addNextUnit(CompilationUnitDeclaration newElement) {
-	while (this.units[this.availableIndex] != null) {
-		//System.out.print('a');
-		//if (this.sleepCount < 0) throw new IllegalStateException(new Integer(this.sleepCount).toString());
-		this.sleepCount = 1;
+	long unitSize = retainedSize(newElement);
+	while (this.count > 0 && (this.count == this.units.length || this.queuedSize + unitSize > this.maxQueuedSize)) {
+		if (this.processingThread == null) return; // shut down
 		try {
-			wait(250);
+			wait();
 		} catch (InterruptedException ignore) {
 			// ignore
 		}
-		this.sleepCount = 0;
 	}
 
-	this.units[this.availableIndex++] = newElement;
-	if (this.availableIndex >= this.size)
+	this.units[this.availableIndex] = newElement;
+	this.unitSizes[this.availableIndex++] = unitSize;
+	if (this.availableIndex >= this.units.length)
 		this.availableIndex = 0;
-	if (this.sleepCount <= -1)
-		notify(); // wake up writing thread to accept next unit - could be the last one - must avoid deadlock
+	this.count++;
+	this.queuedSize += unitSize;
+	notifyAll(); // wake up writing thread to accept next unit
 }
 
 public CompilationUnitDeclaration removeNextUnit() throws Error {
-	CompilationUnitDeclaration next = null;
-	boolean yield = false;
 	synchronized (this) {
-		next = this.units[this.currentIndex];
-		if (next == null || this.caughtException != null) {
-			do {
-				if (this.processingThread == null) {
-					if (this.caughtException != null) {
-						// rethrow the caught exception from the processingThread in the main compiler thread
-						if (this.caughtException instanceof Error)
-							throw (Error) this.caughtException;
-						throw (RuntimeException) this.caughtException;
-					}
-					return null;
+		while (this.count == 0 || this.caughtException != null) {
+			if (this.processingThread == null) {
+				if (this.caughtException != null) {
+					// rethrow the caught exception from the processingThread in the main compiler thread
+					if (this.caughtException instanceof Error)
+						throw (Error) this.caughtException;
+					throw (RuntimeException) this.caughtException;
 				}
-				//System.out.print('r');
-				//if (this.sleepCount > 0) throw new IllegalStateException(new Integer(this.sleepCount).toString());
-				this.sleepCount = -1;
-				try {
-					wait(100);
-				} catch (InterruptedException ignore) {
-					// ignore
-				}
-				this.sleepCount = 0;
-				next = this.units[this.currentIndex];
-			} while (next == null);
+				return null;
+			}
+			try {
+				wait();
+			} catch (InterruptedException ignore) {
+				// ignore
+			}
 		}
 
-		this.units[this.currentIndex++] = null;
-		if (this.currentIndex >= this.size)
+		CompilationUnitDeclaration next = this.units[this.currentIndex];
+		this.units[this.currentIndex] = null;
+		this.queuedSize -= this.unitSizes[this.currentIndex++];
+		if (this.currentIndex >= this.units.length)
 			this.currentIndex = 0;
-		if (this.sleepCount >= 1 && ++this.sleepCount > 4) {
-			notify(); // wake up processing thread to add next unit but only after removing some elements first
-			yield = this.sleepCount > 8;
-		}
+		this.count--;
+		notifyAll(); // wake up processing thread to add next unit
+		return next;
 	}
-	if (yield)
-		Thread.yield();
-	return next;
 }
 
 public void run() {
@@ -119,6 +173,7 @@ public void run() {
 				this.unitToProcess = this.compiler.getUnitToProcess(this.unitIndex);
 				if (this.unitToProcess == null) {
 					this.processingThread = null;
+					notifyAll(); // wake up writing thread waiting for a unit
 					return;
 				}
 				index = this.unitIndex++;
@@ -145,12 +200,14 @@ public void run() {
 			synchronized (this) {
 				this.processingThread = null;
 				this.caughtException = e;
+				notifyAll();
 			}
 			return;
 		} catch (RuntimeException e) {
 			synchronized (this) {
 				this.processingThread = null;
 				this.caughtException = e;
+				notifyAll();
 			}
 			return;
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -34,6 +34,7 @@ public class ClassFileReader extends ClassFileStruct implements IBinaryType {
 	private AnnotationInfo[] annotations;
 	private FieldInfo[] fields;
 	private int fieldsCount;
+	private int fieldsOffset;
 
 	// initialized in case the .class file is a nested type
 	private InnerClassInfo innerInfo;
@@ -43,6 +44,7 @@ public class ClassFileReader extends ClassFileStruct implements IBinaryType {
 	private int interfacesCount;
 	private MethodInfo[] methods;
 	private int methodsCount;
+	private int methodsOffset;
 	private char[] signature;
 	private char[] sourceName;
 	private char[] sourceFileName;
@@ -251,30 +253,24 @@ public ClassFileReader(byte[] classFileBytes, char[] fileName, boolean fullyInit
 				readOffset += 2;
 			}
 		}
-		// Read the fields, use exception handlers to catch bad format
+		// Check and skip the fields and the methods, they are only decoded when asked for (see getFields() and getMethods())
+		boolean[] hasAnnotations = new boolean[1];
 		this.fieldsCount = u2At(readOffset);
 		readOffset += 2;
-		if (this.fieldsCount != 0) {
-			FieldInfo field;
-			this.fields = new FieldInfo[this.fieldsCount];
-			for (int i = 0; i < this.fieldsCount; i++) {
-				field = FieldInfo.createField(this.reference, this.constantPoolOffsets, readOffset);
-				this.fields[i] = field;
-				readOffset += field.sizeInBytes();
-			}
+		this.fieldsOffset = readOffset;
+		for (int i = 0; i < this.fieldsCount; i++) {
+			readOffset = skipMember(readOffset, hasAnnotations);
 		}
-		// Read the methods
 		this.methodsCount = u2At(readOffset);
 		readOffset += 2;
-		if (this.methodsCount != 0) {
-			this.methods = new MethodInfo[this.methodsCount];
-			boolean isAnnotationType = (this.accessFlags & ClassFileConstants.AccAnnotation) != 0;
-			for (int i = 0; i < this.methodsCount; i++) {
-				this.methods[i] = isAnnotationType
-					? AnnotationMethodInfo.createAnnotationMethod(this.reference, this.constantPoolOffsets, readOffset)
-					: MethodInfo.createMethod(this.reference, this.constantPoolOffsets, readOffset);
-				readOffset += this.methods[i].sizeInBytes();
-			}
+		this.methodsOffset = readOffset;
+		for (int i = 0; i < this.methodsCount; i++) {
+			readOffset = skipMember(readOffset, hasAnnotations);
+		}
+		if (hasAnnotations[0]) {
+			// annotations are not checked by skipMember(int, boolean[]), decode them now to report their format errors
+			decodeFields();
+			decodeMethods();
 		}
 
 		// Read the attributes
@@ -495,6 +491,24 @@ public char[] getEnclosingTypeName() {
  * @return org.eclipse.jdt.internal.compiler.api.IBinaryField[]
  */
 public IBinaryField[] getFields() {
+	if (this.fieldsCount == 0) return null;
+	return decodeFields();
+}
+/*
+ * Decodes the fields the first time they are needed.
+ * Synchronized since a reader can be shared by several compilers (see ClasspathJar).
+ * The structure of the fields was checked when the reader was created, so decoding them cannot fail.
+ */
+private synchronized FieldInfo[] decodeFields() {
+	if (this.fields == null && this.fieldsCount != 0) {
+		FieldInfo[] fieldInfos = new FieldInfo[this.fieldsCount];
+		int readOffset = this.fieldsOffset;
+		for (int i = 0; i < this.fieldsCount; i++) {
+			fieldInfos[i] = FieldInfo.createField(this.reference, this.constantPoolOffsets, readOffset);
+			readOffset += fieldInfos[i].sizeInBytes();
+		}
+		this.fields = fieldInfos;
+	}
 	return this.fields;
 }
 
@@ -611,6 +625,25 @@ public IBinaryNestedType[] getMemberTypes() {
  * @return org.eclipse.jdt.internal.compiler.api.env.IBinaryMethod[]
  */
 public IBinaryMethod[] getMethods() {
+	if (this.methodsCount == 0) return null;
+	return decodeMethods();
+}
+/*
+ * Decodes the methods the first time they are needed, see decodeFields().
+ */
+private synchronized MethodInfo[] decodeMethods() {
+	if (this.methods == null && this.methodsCount != 0) {
+		MethodInfo[] methodInfos = new MethodInfo[this.methodsCount];
+		boolean isAnnotationType = (this.accessFlags & ClassFileConstants.AccAnnotation) != 0;
+		int readOffset = this.methodsOffset;
+		for (int i = 0; i < this.methodsCount; i++) {
+			methodInfos[i] = isAnnotationType
+				? AnnotationMethodInfo.createAnnotationMethod(this.reference, this.constantPoolOffsets, readOffset)
+				: MethodInfo.createMethod(this.reference, this.constantPoolOffsets, readOffset);
+			readOffset += methodInfos[i].sizeInBytes();
+		}
+		this.methods = methodInfos;
+	}
 	return this.methods;
 }
 
@@ -884,6 +917,7 @@ public boolean hasStructuralChanges(byte[] newBytes, boolean orderRequired, bool
 		}
 
 		// fields
+		decodeFields();
 		FieldInfo[] otherFieldInfos = (FieldInfo[]) newClassFile.getFields();
 		int otherFieldInfosLength = otherFieldInfos == null ? 0 : otherFieldInfos.length;
 		boolean compareFields = true;
@@ -914,6 +948,7 @@ public boolean hasStructuralChanges(byte[] newBytes, boolean orderRequired, bool
 		}
 
 		// methods
+		decodeMethods();
 		MethodInfo[] otherMethodInfos = (MethodInfo[]) newClassFile.getMethods();
 		int otherMethodInfosLength = otherMethodInfos == null ? 0 : otherMethodInfos.length;
 		boolean compareMethods = true;
@@ -1108,6 +1143,8 @@ private boolean hasStructuralMethodChanges(MethodInfo currentMethodInfo, MethodI
  */
 private void initialize() throws ClassFormatException {
 	try {
+		decodeFields();
+		decodeMethods();
 		for (int i = 0, max = this.fieldsCount; i < max; i++) {
 			this.fields[i].initialize();
 		}
@@ -1185,6 +1222,43 @@ public boolean isNestedType() {
 	return this.innerInfo != null;
 }
 
+/**
+ * Answer the offset following the field_info or method_info structure starting at the given offset,
+ * after checking the constant pool entries read when the member is decoded: its name, its descriptor,
+ * the names of its attributes and its generic signature.
+ * Sets hasAnnotations[0] if the member has annotations attributes.
+ */
+private int skipMember(int offset, boolean[] hasAnnotations) throws ClassFormatException {
+	checkUtf8At(u2At(offset + 2), offset + 2);
+	checkUtf8At(u2At(offset + 4), offset + 4);
+	int attributesCount = u2At(offset + 6);
+	int readOffset = offset + 8;
+	for (int i = 0; i < attributesCount; i++) {
+		int utf8Offset = checkUtf8At(u2At(readOffset), readOffset);
+		switch (u1At(utf8Offset + 3)) {
+			case 'S' :
+				if (CharOperation.equals(AttributeNamesConstants.SignatureName, utf8At(utf8Offset + 3, u2At(utf8Offset + 1))))
+					checkUtf8At(u2At(readOffset + 6), readOffset + 6);
+				break;
+			case 'R' :
+				hasAnnotations[0] = true;
+		}
+		readOffset += (6 + u4At(readOffset + 2));
+		if (readOffset > this.reference.length)
+			throw new ClassFormatException(ClassFormatException.ErrTruncatedInput, readOffset);
+	}
+	return readOffset;
+}
+
+/*
+ * Answer the offset of the Utf8 constant pool entry at the given index.
+ */
+private int checkUtf8At(int index, int readOffset) throws ClassFormatException {
+	if (index <= 0 || index >= this.constantPoolCount || this.reference[this.constantPoolOffsets[index]] != ClassFileConstants.Utf8Tag)
+		throw new ClassFormatException(ClassFormatException.ErrBadConstantPoolIndex, readOffset);
+	return this.constantPoolOffsets[index];
+}
+
 /**
  * Answer the source file name attribute. Return null if there is no source file attribute for the receiver.
  *
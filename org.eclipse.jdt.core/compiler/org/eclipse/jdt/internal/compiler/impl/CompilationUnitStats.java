@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.compiler.impl;
+
+import java.lang.reflect.Method;
+
+/**
+ * The statistics of the compilation of a single unit, as given to an
+ * {@link org.eclipse.jdt.internal.compiler.ICompilerStatsListener}.
+ * Times are in milliseconds.
+ */
+public class CompilationUnitStats {
+
+	public char[] fileName;
+	public int lineCount;
+
+	// compile phases
+	public long parseTime;
+	public long resolveTime;
+	public long analyzeTime;
+	public long generateTime;
+
+	// number of bytes allocated by the thread which processed the unit, -1 if the VM cannot tell
+	public long allocatedBytes = -1;
+	// number of bindings created by the lookup environment while processing the unit
+	public int bindingCount;
+
+	public int classFileCount;
+	public long classFileBytes;
+
+	// name of the thread which parsed the method bodies of the unit, a parse thread or the processing thread,
+	// when the compiler parses ahead with several threads (see Compiler#parseThreads), null otherwise
+	public String parseThread;
+
+	// access to com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long), which 1.4 VMs lack
+	private static boolean AllocationInitialized;
+	private static Object ThreadBean;
+	private static Method GetThreadAllocatedBytes;
+	private static Method GetThreadId;
+
+public CompilationUnitStats(char[] fileName) {
+	this.fileName = fileName;
+}
+
+/**
+ * Answers the number of bytes allocated so far by the current thread, or -1 if the VM cannot tell.
+ */
+public static long currentThreadAllocatedBytes() {
+	synchronized (CompilationUnitStats.class) {
+		if (!AllocationInitialized) {
+			AllocationInitialized = true;
+			try {
+				Object threadBean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean", null).invoke(null, null); //$NON-NLS-1$ //$NON-NLS-2$
+				Class beanClass = Class.forName("com.sun.management.ThreadMXBean"); //$NON-NLS-1$
+				if (beanClass.isInstance(threadBean)) {
+					GetThreadAllocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", new Class[] { long.class }); //$NON-NLS-1$
+					GetThreadId = Thread.class.getMethod("getId", null); //$NON-NLS-1$
+					ThreadBean = threadBean;
+				}
+			} catch (Exception e) {
+				// not supported by this VM
+			} catch (LinkageError e) {
+				// not supported by this VM
+			}
+		}
+	}
+	if (ThreadBean == null) return -1;
+	try {
+		Object threadId = GetThreadId.invoke(Thread.currentThread(), null);
+		return ((Long) GetThreadAllocatedBytes.invoke(ThreadBean, new Object[] { threadId })).longValue();
+	} catch (Exception e) {
+		return -1;
+	}
+}
+
+/**
+ * Returns the time spent in all the phases of the unit
+ * @return the sum of the phase times
+ */
+public long elapsedTime() {
+	return this.parseTime + this.resolveTime + this.analyzeTime + this.generateTime;
+}
+
+public String toString() {
+	return new String(this.fileName) + ": " + elapsedTime() + " ms"; //$NON-NLS-1$ //$NON-NLS-2$
+}
+}
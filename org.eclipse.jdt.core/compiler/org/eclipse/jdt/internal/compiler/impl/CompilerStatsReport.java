@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.compiler.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.eclipse.jdt.internal.compiler.ICompilerStatsListener;
+
+/**
+ * A stats listener which collects the statistics of one or more compilations
+ * and writes them as a JSON document, the units taking the most time first:
+ * <pre>
+ * {
+ *   "compilations": 1, "elapsedTime": 1234, "lineCount": 5678, "unitCount": 2,
+ *   "parseTime": 100, "resolveTime": 400, "analyzeTime": 50, "generateTime": 200,
+ *   "allocatedBytes": 123456789, "bindingCount": 1234, "classFileCount": 3, "classFileBytes": 4567,
+ *   "units": [
+ *     { "file": "src/p/X.java", "lineCount": 12, "elapsedTime": 30, "parseTime": 2, "resolveTime": 20, ... },
+ *     ...
+ *   ]
+ * }
+ * </pre>
+ * Times are in milliseconds. The allocated bytes are -1 when the VM cannot measure them.
+ */
+public class CompilerStatsReport implements ICompilerStatsListener {
+
+	private ArrayList units = new ArrayList();
+	private int compilationCount;
+	private long elapsedTime;
+
+public synchronized void acceptCompilerStats(CompilerStats compilerStats) {
+	this.compilationCount++;
+	this.elapsedTime += compilerStats.elapsedTime();
+}
+
+public synchronized void acceptUnitStats(CompilationUnitStats unitStats) {
+	this.units.add(unitStats);
+}
+
+/**
+ * Answers the statistics of the units compiled so far, the units taking the most time first.
+ */
+public synchronized CompilationUnitStats[] getUnitStats() {
+	CompilationUnitStats[] result = new CompilationUnitStats[this.units.size()];
+	this.units.toArray(result);
+	Arrays.sort(result, new Comparator() {
+		public int compare(Object o1, Object o2) {
+			long time1 = ((CompilationUnitStats) o1).elapsedTime();
+			long time2 = ((CompilationUnitStats) o2).elapsedTime();
+			return time1 > time2 ? -1 : (time1 == time2 ? 0 : 1);
+		}
+	});
+	return result;
+}
+
+private static void appendString(StringBuffer buffer, char[] value) {
+	buffer.append('"');
+	for (int i = 0, length = value.length; i < length; i++) {
+		char c = value[i];
+		switch (c) {
+			case '"' :
+			case '\\' :
+				buffer.append('\\').append(c);
+				break;
+			case '\n' :
+				buffer.append("\\n"); //$NON-NLS-1$
+				break;
+			case '\r' :
+				buffer.append("\\r"); //$NON-NLS-1$
+				break;
+			case '\t' :
+				buffer.append("\\t"); //$NON-NLS-1$
+				break;
+			default :
+				if (c < 0x20) {
+					String hex = Integer.toHexString(c);
+					buffer.append("\\u"); //$NON-NLS-1$
+					for (int j = hex.length(); j < 4; j++)
+						buffer.append('0');
+					buffer.append(hex);
+				} else {
+					buffer.append(c);
+				}
+		}
+	}
+	buffer.append('"');
+}
+
+private static void appendValue(StringBuffer buffer, String name, long value) {
+	buffer.append('"').append(name).append("\": ").append(value); //$NON-NLS-1$
+}
+
+/**
+ * Writes the statistics collected so far as a JSON document.
+ */
+public void writeJSON(Writer writer) throws IOException {
+	CompilationUnitStats[] unitStats = getUnitStats();
+	long lineCount = 0, parseTime = 0, resolveTime = 0, analyzeTime = 0, generateTime = 0;
+	long allocatedBytes = 0, bindingCount = 0, classFileCount = 0, classFileBytes = 0;
+	for (int i = 0, length = unitStats.length; i < length; i++) {
+		CompilationUnitStats stats = unitStats[i];
+		lineCount += stats.lineCount;
+		parseTime += stats.parseTime;
+		resolveTime += stats.resolveTime;
+		analyzeTime += stats.analyzeTime;
+		generateTime += stats.generateTime;
+		if (allocatedBytes >= 0)
+			allocatedBytes = stats.allocatedBytes < 0 ? -1 : allocatedBytes + stats.allocatedBytes;
+		bindingCount += stats.bindingCount;
+		classFileCount += stats.classFileCount;
+		classFileBytes += stats.classFileBytes;
+	}
+	StringBuffer buffer = new StringBuffer(200 + unitStats.length * 300);
+	buffer.append("{\n  "); //$NON-NLS-1$
+	synchronized (this) {
+		appendValue(buffer, "compilations", this.compilationCount); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "elapsedTime", this.elapsedTime); //$NON-NLS-1$
+	}
+	buffer.append(", "); //$NON-NLS-1$
+	appendValue(buffer, "lineCount", lineCount); //$NON-NLS-1$
+	buffer.append(", "); //$NON-NLS-1$
+	appendValue(buffer, "unitCount", unitStats.length); //$NON-NLS-1$
+	buffer.append(",\n  "); //$NON-NLS-1$
+	appendValue(buffer, "parseTime", parseTime); //$NON-NLS-1$
+	buffer.append(", "); //$NON-NLS-1$
+	appendValue(buffer, "resolveTime", resolveTime); //$NON-NLS-1$
+	buffer.append(", "); //$NON-NLS-1$
+	appendValue(buffer, "analyzeTime", analyzeTime); //$NON-NLS-1$
+	buffer.append(", "); //$NON-NLS-1$
+	appendValue(buffer, "generateTime", generateTime); //$NON-NLS-1$
+	buffer.append(",\n  "); //$NON-NLS-1$
+	appendValue(buffer, "allocatedBytes", allocatedBytes); //$NON-NLS-1$
+	buffer.append(", "); //$NON-NLS-1$
+	appendValue(buffer, "bindingCount", bindingCount); //$NON-NLS-1$
+	buffer.append(", "); //$NON-NLS-1$
+	appendValue(buffer, "classFileCount", classFileCount); //$NON-NLS-1$
+	buffer.append(", "); //$NON-NLS-1$
+	appendValue(buffer, "classFileBytes", classFileBytes); //$NON-NLS-1$
+	buffer.append(",\n  \"units\": ["); //$NON-NLS-1$
+	for (int i = 0, length = unitStats.length; i < length; i++) {
+		CompilationUnitStats stats = unitStats[i];
+		buffer.append(i == 0 ? "\n    { " : ",\n    { "); //$NON-NLS-1$ //$NON-NLS-2$
+		buffer.append("\"file\": "); //$NON-NLS-1$
+		appendString(buffer, stats.fileName);
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "lineCount", stats.lineCount); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "elapsedTime", stats.elapsedTime()); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "parseTime", stats.parseTime); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "resolveTime", stats.resolveTime); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "analyzeTime", stats.analyzeTime); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "generateTime", stats.generateTime); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "allocatedBytes", stats.allocatedBytes); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "bindingCount", stats.bindingCount); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "classFileCount", stats.classFileCount); //$NON-NLS-1$
+		buffer.append(", "); //$NON-NLS-1$
+		appendValue(buffer, "classFileBytes", stats.classFileBytes); //$NON-NLS-1$
+		if (stats.parseThread != null) {
+			buffer.append(", \"parseThread\": "); //$NON-NLS-1$
+			appendString(buffer, stats.parseThread.toCharArray());
+		}
+		buffer.append(" }"); //$NON-NLS-1$
+		if (buffer.length() > 8192) {
+			writer.write(buffer.toString());
+			buffer.setLength(0);
+		}
+	}
+	buffer.append(unitStats.length == 0 ? "]\n}\n" : "\n  ]\n}\n"); //$NON-NLS-1$ //$NON-NLS-2$
+	writer.write(buffer.toString());
+	writer.flush();
+}
+}
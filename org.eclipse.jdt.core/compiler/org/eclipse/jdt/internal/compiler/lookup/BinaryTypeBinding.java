@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -147,7 +147,8 @@ protected BinaryTypeBinding() {
  * @param environment
  */
 public BinaryTypeBinding(PackageBinding packageBinding, IBinaryType binaryType, LookupEnvironment environment) {
-	this.compoundName = CharOperation.splitOn('/', binaryType.getName());
+	// share the names with the ones of the parsed units and of the other binary types
+	this.compoundName = environment.nameTable.intern(CharOperation.splitOn('/', binaryType.getName()));
 	computeId();
 
 	this.tagBits |= TagBits.IsBinaryBinding;
@@ -165,7 +166,7 @@ public BinaryTypeBinding(PackageBinding packageBinding, IBinaryType binaryType,
 		? null // is initialized in cachePartsFrom (called from LookupEnvironment.createBinaryTypeFrom())... must set to null so isGenericType() answers true
 		: Binding.NO_TYPE_VARIABLES;
 
-	this.sourceName = binaryType.getSourceName();
+	this.sourceName = environment.nameTable.intern(binaryType.getSourceName());
 	this.modifiers = binaryType.getModifiers();
 
 	if ((binaryType.getTagBits() & TagBits.HierarchyHasProblems) != 0)
@@ -416,7 +417,7 @@ private void createFields(IBinaryField[] iFields, long sourceLevel, char[][][] m
 					: this.environment.getTypeFromTypeSignature(new SignatureWrapper(fieldSignature), Binding.NO_TYPE_VARIABLES, this, missingTypeNames);
 				FieldBinding field =
 					new FieldBinding(
-						binaryField.getName(),
+						this.environment.nameTable.intern(binaryField.getName()),
 						type,
 						binaryField.getModifiers() | ExtraCompilerModifiers.AccUnresolved,
 						this,
@@ -582,7 +583,7 @@ private MethodBinding createMethod(IBinaryMethod method, long sourceLevel, char[
 
 	MethodBinding result = method.isConstructor()
 		? new MethodBinding(methodModifiers, parameters, exceptions, this)
-		: new MethodBinding(methodModifiers, method.getSelector(), returnType, parameters, exceptions, this);
+		: new MethodBinding(methodModifiers, this.environment.nameTable.intern(method.getSelector()), returnType, parameters, exceptions, this);
 	if (this.environment.globalOptions.storeAnnotations)
 		result.setAnnotations(
 			createAnnotations(method.getAnnotations(), this.environment, missingTypeNames),
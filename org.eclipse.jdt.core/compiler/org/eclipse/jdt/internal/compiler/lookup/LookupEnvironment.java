@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,6 +29,7 @@ import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
 import org.eclipse.jdt.internal.compiler.impl.ITypeRequestor;
 import org.eclipse.jdt.internal.compiler.problem.AbortCompilation;
 import org.eclipse.jdt.internal.compiler.problem.ProblemReporter;
+import org.eclipse.jdt.internal.compiler.util.CharArrayInterningSet;
 import org.eclipse.jdt.internal.compiler.util.HashtableOfPackage;
 import org.eclipse.jdt.internal.compiler.util.SimpleLookupTable;
 
@@ -49,6 +50,8 @@ public class LookupEnvironment implements ProblemReasons, TypeConstants {
 
 	public ProblemReporter problemReporter;
 	public ClassFilePool classFilePool;
+	public CharArrayInterningSet nameTable; // shares the identifiers of the parsed units and the names of the binary types
+	public int bindingCount; // number of type and method bindings created by this environment so far, for statistics
 	// indicate in which step on the compilation we are.
 	// step 1 : build the reference binding
 	// step 2 : conect the hierarchy (connect bindings)
@@ -110,6 +113,7 @@ public LookupEnvironment(ITypeRequestor typeRequestor, CompilerOptions globalOpt
 	this.accessRestrictions = new HashMap(3);
 	this.classFilePool = ClassFilePool.newInstance();
 	this.typesBeingConnected = new HashSet();
+	this.nameTable = new CharArrayInterningSet();
 }
 
 /**
@@ -657,8 +661,10 @@ public ArrayBinding createArrayType(TypeBinding leafComponentType, int dimension
 	length = arrayBindings.length;
 	while (++index < length) {
 		ArrayBinding currentBinding = arrayBindings[index];
-		if (currentBinding == null) // no matching array, but space left
+		if (currentBinding == null) { // no matching array, but space left
+			this.bindingCount++;
 			return arrayBindings[index] = new ArrayBinding(leafComponentType, dimensionCount, this);
+		}
 		if (currentBinding.leafComponentType == leafComponentType)
 			return currentBinding;
 	}
@@ -669,6 +675,7 @@ public ArrayBinding createArrayType(TypeBinding leafComponentType, int dimension
 		(arrayBindings = new ArrayBinding[length * 2]), 0,
 		length);
 	this.uniqueArrayBindings[dimIndex] = arrayBindings;
+	this.bindingCount++;
 	return arrayBindings[length] = new ArrayBinding(leafComponentType, dimensionCount, this);
 }
 public BinaryTypeBinding createBinaryTypeFrom(IBinaryType binaryType, PackageBinding packageBinding, AccessRestriction accessRestriction) {
@@ -677,6 +684,7 @@ public BinaryTypeBinding createBinaryTypeFrom(IBinaryType binaryType, PackageBin
 
 public BinaryTypeBinding createBinaryTypeFrom(IBinaryType binaryType, PackageBinding packageBinding, boolean needFieldsAndMethods, AccessRestriction accessRestriction) {
 	BinaryTypeBinding binaryBinding = new BinaryTypeBinding(packageBinding, binaryType, this);
+	this.bindingCount++;
 
 	// resolve any array bindings which reference the unresolvedType
 	ReferenceBinding cachedType = packageBinding.getType0(binaryBinding.compoundName[binaryBinding.compoundName.length - 1]);
@@ -791,6 +799,7 @@ public ParameterizedGenericMethodBinding createParameterizedGenericMethod(Method
 	}
 	// add new binding
 	ParameterizedGenericMethodBinding parameterizedGenericMethod = new ParameterizedGenericMethodBinding(genericMethod, rawType, this);
+	this.bindingCount++;
 	cachedInfo[index] = parameterizedGenericMethod;
 	return parameterizedGenericMethod;
 }
@@ -830,6 +839,7 @@ public ParameterizedGenericMethodBinding createParameterizedGenericMethod(Method
 	}
 	// add new binding
 	ParameterizedGenericMethodBinding parameterizedGenericMethod = new ParameterizedGenericMethodBinding(genericMethod, typeArguments, this);
+	this.bindingCount++;
 	cachedInfo[index] = parameterizedGenericMethod;
 	return parameterizedGenericMethod;
 }
@@ -968,6 +978,7 @@ public ParameterizedTypeBinding createParameterizedType(ReferenceBinding generic
 	}
 	// add new binding
 	ParameterizedTypeBinding parameterizedType = new ParameterizedTypeBinding(genericType,typeArguments, enclosingType, this);
+	this.bindingCount++;
 	cachedInfo[index] = parameterizedType;
 	return parameterizedType;
 }
@@ -1001,6 +1012,7 @@ public RawTypeBinding createRawType(ReferenceBinding genericType, ReferenceBindi
 	}
 	// add new binding
 	RawTypeBinding rawType = new RawTypeBinding(genericType, enclosingType, this);
+	this.bindingCount++;
 	cachedInfo[index] = rawType;
 	return rawType;
 
@@ -1047,6 +1059,7 @@ public WildcardBinding createWildcard(ReferenceBinding genericType, int rank, Ty
 	}
 	// add new binding
 	WildcardBinding wildcard = new WildcardBinding(genericType, rank, bound, otherBounds, boundKind, this);
+	this.bindingCount++;
 	cachedInfo[index] = wildcard;
 	return wildcard;
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.compiler.InvalidInputException;
 import org.eclipse.jdt.internal.compiler.CompilationResult;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
+import org.eclipse.jdt.internal.compiler.util.CharArrayInterningSet;
 import org.eclipse.jdt.internal.compiler.util.Util;
 
 /**
@@ -179,6 +180,9 @@ public class Scanner implements TerminalTokens {
 			}
 		}
 	}
+	// when not null, the identifiers that are not cached in charArray_length are shared through this set, local to the thread of the scanner
+	public CharArrayInterningSet nameTable;
+
 	/*static*/ int newEntry2 = 0,
 		newEntry3 = 0,
 		newEntry4 = 0,
@@ -415,6 +419,8 @@ public char[] getCurrentIdentifierSource() {
 	//return the token REAL source (aka unicodes are precomputed)
 	if (this.withoutUnicodePtr != 0) {
 		//0 is used as a fast test flag so the real first char is in position 1
+		if (this.nameTable != null)
+			return this.nameTable.intern(this.withoutUnicodeBuffer, 1, this.withoutUnicodePtr);
 		char[] result = new char[this.withoutUnicodePtr];
 		System.arraycopy(
 			this.withoutUnicodeBuffer,
@@ -440,6 +446,8 @@ public char[] getCurrentIdentifierSource() {
 		case 6 :
 			return optimizedCurrentTokenSource6();
 	}
+	if (this.nameTable != null)
+		return this.nameTable.intern(this.source, this.startPosition, length);
 	char[] result = new char[length];
 	System.arraycopy(this.source, this.startPosition, result, 0, length);
 	return result;
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.compiler.util;
+
+/**
+ * A set of char[] used to share one array between all the occurrences of a name,
+ * for example between the identifiers answered by the scanners of a compiler and the names
+ * of the binary types it reads. It uses linear probing to resolve collisions.
+ * <p>
+ * A set created without a shared set is synchronized, so that it can be shared by several threads.
+ * A set created with a shared set is local to one thread, for example to the scanner of a parser
+ * thread: it is not synchronized, and only interns its new names in the shared set, so that a name
+ * met again is answered without taking the lock of the shared set.
+ * </p>
+ * <p>
+ * The arrays answered by this set must never be modified. Since not all the names are interned,
+ * two names must still be compared with CharOperation.equals(char[], char[]), which first checks
+ * whether they are the same array.
+ * </p>
+ */
+public final class CharArrayInterningSet {
+
+	/**
+	 * Beyond this number of names, new names are no longer added to the set.
+	 */
+	public static final int MAX_SIZE = 1 << 20;
+
+	private char[][] values;
+	private int elementSize; // number of elements in the table
+	private int threshold;
+	private CharArrayInterningSet shared; // the set in which a local set interns its new names, null for a synchronized set
+
+public CharArrayInterningSet() {
+	this(1024);
+}
+
+public CharArrayInterningSet(int size) {
+	if (size < 3) size = 3;
+	this.elementSize = 0;
+	this.threshold = size + 1; // size is the expected number of elements
+	this.values = new char[2 * size + 1][];
+}
+
+/**
+ * Creates a set local to one thread, which interns its new names in the given shared set.
+ */
+public CharArrayInterningSet(CharArrayInterningSet shared) {
+	this(1024);
+	this.shared = shared;
+}
+
+/*
+ * Same hash code as CharOperation.hashCode(char[]), but computed on a range of an array.
+ */
+private static int hashCode(char[] array, int start, int length) {
+	int hash = length == 0 ? 31 : array[start];
+	if (length < 8) {
+		for (int i = length; --i > 0;)
+			hash = (hash * 31) + array[start + i];
+	} else {
+		// 8 characters is enough to compute a decent hash code, don't waste time examining every character
+		for (int i = length - 1, last = i > 16 ? i - 16 : 0; i > last; i -= 2)
+			hash = (hash * 31) + array[start + i];
+	}
+	return hash & 0x7FFFFFFF;
+}
+
+private static boolean equals(char[] name, char[] array, int start, int length) {
+	if (name.length != length) return false;
+	for (int i = length; --i >= 0;)
+		if (name[i] != array[start + i])
+			return false;
+	return true;
+}
+
+/**
+ * Answers the interned name equal to the given one, adding the given name to the set if needed.
+ */
+public char[] intern(char[] name) {
+	if (this.shared == null) {
+		synchronized (this) {
+			return internName(name);
+		}
+	}
+	return internName(name);
+}
+
+private char[] internName(char[] name) {
+	int length = this.values.length;
+	int nameLength = name.length;
+	int index = hashCode(name, 0, nameLength) % length;
+	char[] current;
+	while ((current = this.values[index]) != null) {
+		if (current == name || equals(current, name, 0, nameLength)) return current;
+		if (++index == length) index = 0;
+	}
+	if (this.shared != null)
+		name = this.shared.intern(name);
+	if (this.elementSize >= MAX_SIZE) return name;
+	this.values[index] = name;
+
+	// assumes the threshold is never equal to the size of the table
+	if (++this.elementSize > this.threshold) rehash();
+	return name;
+}
+
+/**
+ * Answers the interned name equal to the given range of the given array. A copy of the range
+ * is only created when the set does not contain such a name yet.
+ */
+public char[] intern(char[] array, int start, int nameLength) {
+	if (this.shared == null) {
+		synchronized (this) {
+			return internRange(array, start, nameLength);
+		}
+	}
+	return internRange(array, start, nameLength);
+}
+
+private char[] internRange(char[] array, int start, int nameLength) {
+	int length = this.values.length;
+	int index = hashCode(array, start, nameLength) % length;
+	char[] current;
+	while ((current = this.values[index]) != null) {
+		if (equals(current, array, start, nameLength)) return current;
+		if (++index == length) index = 0;
+	}
+	char[] name;
+	if (this.shared != null) {
+		name = this.shared.intern(array, start, nameLength);
+	} else {
+		name = new char[nameLength];
+		System.arraycopy(array, start, name, 0, nameLength);
+	}
+	if (this.elementSize >= MAX_SIZE) return name;
+	this.values[index] = name;
+
+	// assumes the threshold is never equal to the size of the table
+	if (++this.elementSize > this.threshold) rehash();
+	return name;
+}
+
+/**
+ * Replaces the segments of the given compound name with their interned names, and answers the compound name.
+ */
+public char[][] intern(char[][] compoundName) {
+	for (int i = 0, length = compoundName.length; i < length; i++)
+		compoundName[i] = intern(compoundName[i]);
+	return compoundName;
+}
+
+public int size() {
+	if (this.shared == null) {
+		synchronized (this) {
+			return this.elementSize;
+		}
+	}
+	return this.elementSize;
+}
+
+private void rehash() {
+	char[][] oldValues = this.values;
+	int newLength = oldValues.length * 2 + 1; // double the number of expected elements
+	char[][] newValues = new char[newLength][];
+	for (int i = oldValues.length; --i >= 0;) {
+		char[] name = oldValues[i];
+		if (name != null) {
+			int index = hashCode(name, 0, name.length) % newLength;
+			while (newValues[index] != null)
+				if (++index == newLength) index = 0;
+			newValues[index] = name;
+		}
+	}
+	this.values = newValues;
+	this.threshold = newLength / 2;
+}
+
+public String toString() {
+	return "Interned names (" + size() + " names)"; //$NON-NLS-1$ //$NON-NLS-2$
+}
+}
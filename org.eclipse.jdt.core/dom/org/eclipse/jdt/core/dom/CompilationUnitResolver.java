@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -34,6 +34,7 @@ import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
 import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
 import org.eclipse.jdt.internal.compiler.IErrorHandlingPolicy;
 import org.eclipse.jdt.internal.compiler.IProblemFactory;
+import org.eclipse.jdt.internal.compiler.ParseTaskManager;
 import org.eclipse.jdt.internal.compiler.ast.AbstractMethodDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
 import org.eclipse.jdt.internal.compiler.batch.FileSystem.Classpath;
@@ -336,6 +337,38 @@ class CompilationUnitResolver extends Compiler {
 	public void initializeParser() {
 		this.parser = new CommentRecorderParser(this.problemReporter, false);
 	}
+
+	/*
+	 * Method bodies of a batch of units can be parsed ahead on other threads (see ParseTaskManager).
+	 * Binding resolution, AST conversion and the requestor callbacks stay on the calling thread,
+	 * in the order of the units.
+	 */
+	void initializeParseThreads() {
+		String setting = System.getProperty("jdt.compiler.parseThreads"); //$NON-NLS-1$
+		if (setting != null) {
+			try {
+				this.parseThreads = Integer.parseInt(setting);
+			} catch (NumberFormatException e) {
+				// ignore and keep parsing method bodies on the calling thread
+			}
+		}
+	}
+
+	private void startParsingThreads() {
+		if (this.parseThreads > 1 && this.totalUnits > 1 && !this.options.ignoreMethodBodies)
+			this.parseTaskManager = new ParseTaskManager(this, this.parseThreads);
+	}
+
+	private void stopParsingThreads() {
+		if (this.parseTaskManager != null) {
+			this.parseTaskManager.shutdown();
+			this.parseTaskManager = null;
+		}
+	}
+
+	public Parser newParser(ProblemReporter reporter) {
+		return new CommentRecorderParser(reporter, false);
+	}
 	public void process(CompilationUnitDeclaration unit, int i) {
 		// don't resolve a second time the same unit (this would create the same binding twice)
 		char[] fileName = unit.compilationResult.getFileName();
@@ -577,6 +610,7 @@ class CompilationUnitResolver extends Compiler {
 					problemFactory,
 					monitor,
 					javaProject != null);
+			resolver.initializeParseThreads();
 			resolver.resolve(compilationUnits, bindingKeys, requestor, apiLevel, options, owner, flags);
 			if (NameLookup.VERBOSE) {
 				System.out.println(Thread.currentThread() + " TIME SPENT in NameLoopkup#seekTypesInSourcePackage: " + environment.nameLookup.timeSpentInSeekTypesInSourcePackage + "ms");  //$NON-NLS-1$ //$NON-NLS-2$
@@ -628,6 +662,7 @@ class CompilationUnitResolver extends Compiler {
 						problemFactory,
 						monitor,
 						false);
+				resolver.initializeParseThreads();
 				resolver.resolve(sourceUnits, encodings, bindingKeys, requestor, apiLevel, options, flags);
 				if (NameLookup.VERBOSE && (environment instanceof CancelableNameEnvironment)) {
 					CancelableNameEnvironment cancelableNameEnvironment = (CancelableNameEnvironment) environment;
@@ -850,6 +885,7 @@ class CompilationUnitResolver extends Compiler {
 			org.eclipse.jdt.internal.compiler.env.ICompilationUnit[] sourceUnits = new org.eclipse.jdt.internal.compiler.env.ICompilationUnit[length];
 			System.arraycopy(compilationUnits, 0, sourceUnits, 0, length);
 			beginToCompile(sourceUnits, bindingKeys);
+			startParsingThreads();
 			// process all units (some more could be injected in the loop by the lookup environment)
 			for (int i = 0; i < this.totalUnits; i++) {
 				if (resolvedRequestedSourcesAndKeys(i)) {
@@ -944,6 +980,7 @@ class CompilationUnitResolver extends Compiler {
 			this.handleInternalException(e, unit, null);
 			throw e; // rethrow
 		} finally {
+			stopParsingThreads();
 			// disconnect ourselves from ast requestor
 			astRequestor.compilationUnitResolver = null;
 		}
@@ -983,6 +1020,7 @@ class CompilationUnitResolver extends Compiler {
 				sourceUnits[count++] = new org.eclipse.jdt.internal.compiler.batch.CompilationUnit(contents, sourceUnitPath, encoding);
 			}
 			beginToCompile(sourceUnits, bindingKeys);
+			startParsingThreads();
 			// process all units (some more could be injected in the loop by the lookup environment)
 			for (int i = 0; i < this.totalUnits; i++) {
 				if (resolvedRequestedSourcesAndKeys(i)) {
@@ -1077,6 +1115,7 @@ class CompilationUnitResolver extends Compiler {
 			this.handleInternalException(e, unit, null);
 			throw e; // rethrow
 		} finally {
+			stopParsingThreads();
 			// disconnect ourselves from ast requestor
 			astRequestor.compilationUnitResolver = null;
 		}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -172,10 +172,13 @@ public class CompilationUnitProblemFinder extends Compiler {
 		CancelableProblemFactory problemFactory = null;
 		CompilationUnitProblemFinder problemFinder = null;
 		CompilationUnitDeclaration unit = null;
+		JavaModelManager.PerWorkingCopyInfo perWorkingCopyInfo = null;
+		IncrementalReconcileState.Edit edit = null;
 		try {
 			environment = new CancelableNameEnvironment(project, workingCopyOwner, monitor);
 			problemFactory = new CancelableProblemFactory(monitor);
-			CompilerOptions compilerOptions = getCompilerOptions(project.getOptions(true), creatingAST, ((reconcileFlags & ICompilationUnit.ENABLE_STATEMENTS_RECOVERY) != 0));
+			Map settings = project.getOptions(true);
+			CompilerOptions compilerOptions = getCompilerOptions(settings, creatingAST, ((reconcileFlags & ICompilationUnit.ENABLE_STATEMENTS_RECOVERY) != 0));
 			boolean ignoreMethodBodies = (reconcileFlags & ICompilationUnit.IGNORE_METHOD_BODIES) != 0;
 			compilerOptions.ignoreMethodBodies = ignoreMethodBodies;
 			problemFinder = new CompilationUnitProblemFinder(
@@ -188,10 +191,29 @@ public class CompilationUnitProblemFinder extends Compiler {
 			if (ignoreMethodBodies) {
 				analyzeAndGenerateCode = false;
 			}
+			int modelStamp = 0;
+			if (IncrementalReconcileState.ENABLED && parser != null && !creatingAST && analyzeAndGenerateCode) {
+				perWorkingCopyInfo = unitElement.getPerWorkingCopyInfo();
+				if (perWorkingCopyInfo != null)
+					modelStamp = JavaModelManager.getJavaModelManager().deltaState.getModelStamp();
+			}
+			boolean aborted = false;
 			try {
 				if (parser != null) {
 					problemFinder.parser = parser;
 					unit = parser.parseCompilationUnit(unitElement, true/*full parse*/, monitor);
+					if (perWorkingCopyInfo != null) {
+						IncrementalReconcileState previousState = perWorkingCopyInfo.reconcileState;
+						perWorkingCopyInfo.reconcileState = null;
+						if (unit != null && previousState != null && previousState.canReconcileIncrementally(settings, reconcileFlags, modelStamp)) {
+							edit = previousState.findEdit(unitElement.getContents(), unit, compilerOptions);
+							if (edit != null) {
+								// only resolve the edited method, the problems of the other ones are carried over
+								edit.pruneOtherMethods(unit);
+								IncrementalReconcileState.IncrementalReconcileCount++;
+							}
+						}
+					}
 					problemFinder.resolve(
 						unit,
 						unitElement,
@@ -207,11 +229,16 @@ public class CompilationUnitProblemFinder extends Compiler {
 							analyzeAndGenerateCode); // generate code
 				}
 			} catch (AbortCompilation e) {
+				aborted = true;
 				problemFinder.handleInternalException(e, unit);
 			}
 			if (unit != null) {
 				CompilationResult unitResult = unit.compilationResult;
 				CategorizedProblem[] unitProblems = unitResult.getProblems();
+				if (edit != null)
+					unitProblems = edit.mergeProblems(unitProblems, unitResult.getLineSeparatorPositions());
+				if (perWorkingCopyInfo != null && !aborted)
+					perWorkingCopyInfo.reconcileState = IncrementalReconcileState.create(unitElement.getContents(), unit, edit, unitProblems, settings, reconcileFlags, modelStamp);
 				int length = unitProblems == null ? 0 : unitProblems.length;
 				if (length > 0) {
 					CategorizedProblem[] categorizedProblems = new CategorizedProblem[length];
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -115,6 +115,23 @@ public class DeltaProcessingState implements IResourceChangeListener {
 	 */
 	private HashSet externalElementsToRefresh;
 
+	/*
+	 * A stamp that changes each time a Java element delta is fired.
+	 * Used to detect that the Java model changed since a working copy was last reconciled (see IncrementalReconcileState).
+	 */
+	private int modelStamp = 0;
+
+	public synchronized int getModelStamp() {
+		return this.modelStamp;
+	}
+
+	/*
+	 * Records that a Java element delta is being fired, and returns the new model stamp.
+	 */
+	public synchronized int modelChanged() {
+		return ++this.modelStamp;
+	}
+
 	/*
 	 * Need to clone defensively the listener information, in case some listener is reacting to some notification iteration by adding/changing/removing
 	 * any of the other (for example, if it deregisters itself).
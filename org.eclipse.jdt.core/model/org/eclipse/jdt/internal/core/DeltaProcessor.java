@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -628,6 +628,8 @@ public class DeltaProcessor {
 			int flags = IJavaElementDelta.F_CONTENT;
 			if (element instanceof JarPackageFragmentRoot){
 				flags |= IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED;
+				// the jar may have been rewritten with the same size and time, do not reuse its package index
+				this.manager.removeJarPackageIndexes(element.getPath());
 				// need also to reset project cache otherwise it will be out-of-date
 				// see bug https://bugs.eclipse.org/bugs/show_bug.cgi?id=162621
 				this.projectCachesToReset.add(element.getJavaProject());
@@ -1503,6 +1505,8 @@ public class DeltaProcessor {
 			// mark the operation stack has not modifying resources since resource deltas are being fired
 			JavaModelOperation.setAttribute(JavaModelOperation.HAS_MODIFIED_RESOURCE_ATTR, null);
 
+			this.state.modelChanged();
+
 			notifyListeners(deltaToNotify, ElementChangedEvent.POST_CHANGE, listeners, listenerMask, listenerCount);
 		}
 	}
@@ -1518,6 +1522,18 @@ public class DeltaProcessor {
 			System.out.println(deltaToNotify == null ? "<NONE>" : deltaToNotify.toString()); //$NON-NLS-1$
 		}
 		if (deltaToNotify != null) {
+			int modelStamp = this.state.modelChanged();
+			if (this.reconcileDeltas.size() == 1) {
+				// the reconcile state of a working copy stays valid if its own reconcile is the only change
+				Object workingCopy = this.reconcileDeltas.keySet().iterator().next();
+				if (workingCopy instanceof CompilationUnit) {
+					JavaModelManager.PerWorkingCopyInfo info = ((CompilationUnit) workingCopy).getPerWorkingCopyInfo();
+					IncrementalReconcileState reconcileState = info == null ? null : info.reconcileState;
+					if (reconcileState != null && reconcileState.modelStamp == modelStamp - 1)
+						reconcileState.modelStamp = modelStamp;
+				}
+			}
+
 			// flush now so as to keep listener reactions to post their own deltas for subsequent iteration
 			this.reconcileDeltas = new HashMap();
 
@@ -0,0 +1,550 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.core;
+
+import java.util.HashSet;
+import java.util.Map;
+
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+import org.eclipse.jdt.internal.compiler.ast.ASTNode;
+import org.eclipse.jdt.internal.compiler.ast.AbstractMethodDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.Annotation;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.FieldDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.ImportReference;
+import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.lookup.ExtraCompilerModifiers;
+import org.eclipse.jdt.internal.compiler.lookup.TypeConstants;
+import org.eclipse.jdt.internal.compiler.parser.Scanner;
+import org.eclipse.jdt.internal.compiler.parser.TerminalTokens;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblem;
+import org.eclipse.jdt.internal.compiler.problem.ProblemSeverities;
+import org.eclipse.jdt.internal.compiler.util.Util;
+
+/**
+ * The result of the last reconcile of a working copy, used to reconcile the next edit incrementally
+ * (see {@link CompilationUnitProblemFinder#process(CompilationUnit, org.eclipse.jdt.internal.compiler.SourceElementParser, org.eclipse.jdt.core.WorkingCopyOwner, java.util.HashMap, boolean, int, org.eclipse.core.runtime.IProgressMonitor)}).
+ * <p>
+ * When an edit lies inside the body of a single method and leaves all the other declarations in place,
+ * the bodies of the other methods cannot be affected by the edit. Their statements are then dropped
+ * from the new unit before it is resolved, so that only the edited method is resolved, analyzed and generated.
+ * The problems of the edited method come from this resolution, the other ones are carried over from the
+ * last reconcile, with their positions shifted by the length of the edit.
+ * </p><p>
+ * The problems that depend on the usage of a declaration in the whole unit (unused private members,
+ * unused imports and unnecessary <code>@SuppressWarnings</code>) cannot be computed from one method.
+ * The ones declared outside of the edited method are carried over as well, so an edit which may change
+ * them is reconciled fully: an edit that changes the references of the method body to the imports or to
+ * the private members of the unit, an edit in a private method or in a method of a private type, which may
+ * only be used by the other methods, or an edit in a type annotated with <code>@SuppressWarnings</code>.
+ * A full reconcile is also done after {@link #MAX_INCREMENTAL_RECONCILES} incremental ones, when the
+ * reconcile options change, or when a Java element delta other than the one of the working copy's own
+ * reconcile got fired in between.
+ * </p>
+ */
+public class IncrementalReconcileState {
+
+	/*
+	 * The system property that enables incremental reconciles.
+	 */
+	public static final String INCREMENTAL_RECONCILE_PROPERTY = "org.eclipse.jdt.core.reconcile.incremental"; //$NON-NLS-1$
+	public static boolean ENABLED = "true".equals(System.getProperty(INCREMENTAL_RECONCILE_PROPERTY)); //$NON-NLS-1$
+
+	static final int MAX_INCREMENTAL_RECONCILES = 10;
+
+	/*
+	 * The number of reconciles that only resolved the edited method (for tests).
+	 */
+	public static int IncrementalReconcileCount = 0;
+
+	private static final int[] NO_POSITIONS = new int[0];
+
+	/*
+	 * The contents of the working copy that was reconciled
+	 */
+	final char[] contents;
+
+	/*
+	 * The positions of the type, field and method declarations of the unit (see DeclarationCollector)
+	 */
+	final int[] positions;
+
+	/*
+	 * The problems found by the reconcile, sorted by position
+	 */
+	final CategorizedProblem[] problems;
+
+	final Map options;
+	final int reconcileFlags;
+
+	/*
+	 * The number of incremental reconciles since the last full reconcile
+	 */
+	final int incrementalReconciles;
+
+	/*
+	 * The model stamp when the reconcile started (see DeltaProcessingState#getModelStamp())
+	 */
+	volatile int modelStamp;
+
+	/*
+	 * An edit found inside the body of a method, and the method.
+	 */
+	static class Edit {
+		final IncrementalReconcileState previousState;
+		final AbstractMethodDeclaration method;
+		final int start, oldEnd, delta;
+		final int[] positions;
+
+		Edit(IncrementalReconcileState previousState, AbstractMethodDeclaration method, int start, int oldEnd, int delta, int[] positions) {
+			this.previousState = previousState;
+			this.method = method;
+			this.start = start;
+			this.oldEnd = oldEnd;
+			this.delta = delta;
+			this.positions = positions;
+		}
+
+		/*
+		 * Drops the bodies of all the methods of the given unit but the edited one.
+		 */
+		void pruneOtherMethods(CompilationUnitDeclaration unit) {
+			pruneMethods(unit.types);
+		}
+
+		private void pruneMethods(TypeDeclaration[] types) {
+			if (types == null) return;
+			for (int i = 0, length = types.length; i < length; i++) {
+				TypeDeclaration type = types[i];
+				AbstractMethodDeclaration[] methods = type.methods;
+				if (methods != null) {
+					for (int j = 0, methodsLength = methods.length; j < methodsLength; j++) {
+						AbstractMethodDeclaration method = methods[j];
+						if (method != this.method && hasBody(method)) {
+							method.statements = null;
+							method.ignoreFurtherInvestigation = true;
+						}
+					}
+				}
+				pruneMethods(type.memberTypes);
+			}
+		}
+
+		/*
+		 * Merges the problems found in the edited method with the problems of the last reconcile
+		 * found elsewhere. Both arrays are sorted by position, and so is the result.
+		 */
+		CategorizedProblem[] mergeProblems(CategorizedProblem[] newProblems, int[] lineEnds) {
+			int methodStart = this.method.declarationSourceStart;
+			int methodEnd = this.method.declarationSourceEnd;
+			int oldMethodEnd = methodEnd - this.delta;
+			CategorizedProblem[] oldProblems = this.previousState.problems;
+			int oldLength = oldProblems.length;
+			int newLength = newProblems == null ? 0 : newProblems.length;
+			CategorizedProblem[] result = new CategorizedProblem[oldLength + newLength];
+			int count = 0;
+			int oldIndex = 0, newIndex = 0;
+			while (true) {
+				CategorizedProblem oldProblem = null;
+				while (oldIndex < oldLength) {
+					CategorizedProblem problem = oldProblems[oldIndex];
+					int problemStart = problem.getSourceStart();
+					if (problemStart < methodStart || problemStart > oldMethodEnd || isMethodUsageProblem(problem)) {
+						oldProblem = problem;
+						break;
+					}
+					oldIndex++;
+				}
+				CategorizedProblem newProblem = null;
+				while (newIndex < newLength) {
+					CategorizedProblem problem = newProblems[newIndex];
+					int problemStart = problem.getSourceStart();
+					if (problemStart >= methodStart && problemStart <= methodEnd && !isMethodUsageProblem(problem)) {
+						newProblem = problem;
+						break;
+					}
+					newIndex++;
+				}
+				if (oldProblem == null && newProblem == null)
+					break;
+				if (newProblem == null || (oldProblem != null && shift(oldProblem.getSourceStart()) <= newProblem.getSourceStart())) {
+					result[count++] = shiftProblem(oldProblem, lineEnds);
+					oldIndex++;
+				} else {
+					result[count++] = newProblem;
+					newIndex++;
+				}
+			}
+			if (count < result.length)
+				System.arraycopy(result, 0, result = new CategorizedProblem[count], 0, count);
+			return result;
+		}
+
+		/*
+		 * Returns whether the given problem reports that the edited method is not used. Only the last reconcile
+		 * has seen the other methods which may use it, so this problem is carried over from the last reconcile.
+		 * The selector of the method precedes the edit, so the problem has the same position in both reconciles.
+		 */
+		private boolean isMethodUsageProblem(CategorizedProblem problem) {
+			int id = problem.getID();
+			return (id == IProblem.UnusedPrivateMethod || id == IProblem.UnusedPrivateConstructor)
+				&& problem.getSourceStart() == this.method.sourceStart;
+		}
+
+		private int shift(int position) {
+			return position >= this.oldEnd ? position + this.delta : position;
+		}
+
+		private CategorizedProblem shiftProblem(CategorizedProblem problem, int[] lineEnds) {
+			int start = problem.getSourceStart();
+			int end = problem.getSourceEnd();
+			if (start < this.oldEnd && end < this.oldEnd)
+				return problem;
+			int newStart = shift(start);
+			int line, column;
+			if (start >= this.oldEnd) {
+				line = Util.getLineNumber(newStart, lineEnds, 0, lineEnds.length-1);
+				column = Util.searchColumnNumber(lineEnds, line, newStart);
+			} else {
+				line = problem.getSourceLineNumber();
+				column = ((DefaultProblem) problem).column;
+			}
+			return new DefaultProblem(
+				problem.getOriginatingFileName(),
+				problem.getMessage(),
+				problem.getID(),
+				problem.getArguments(),
+				problem.isError() ? ProblemSeverities.Error : ProblemSeverities.Warning,
+				newStart,
+				shift(end),
+				line,
+				column);
+		}
+	}
+
+	/*
+	 * Collects the positions of the type, field and method declarations of a unit, and finds
+	 * the method whose body contains a given range.
+	 */
+	private static class DeclarationCollector {
+		int[] positions = new int[64];
+		int count = 0;
+		int start, end;
+		AbstractMethodDeclaration enclosingMethod;
+		TypeDeclaration[] enclosingTypes; // the types enclosing the method, outermost first
+		int bodyEndIndex = -1;
+		private TypeDeclaration[] typeStack = new TypeDeclaration[8];
+		private int typeDepth = 0;
+
+		DeclarationCollector(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		private void add(int position) {
+			if (this.count == this.positions.length)
+				System.arraycopy(this.positions, 0, this.positions = new int[this.count * 2], 0, this.count);
+			this.positions[this.count++] = position;
+		}
+
+		void collect(TypeDeclaration[] types) {
+			if (types == null) return;
+			for (int i = 0, length = types.length; i < length; i++) {
+				TypeDeclaration type = types[i];
+				if (this.typeDepth == this.typeStack.length)
+					System.arraycopy(this.typeStack, 0, this.typeStack = new TypeDeclaration[this.typeDepth * 2], 0, this.typeDepth);
+				this.typeStack[this.typeDepth++] = type;
+				add(type.declarationSourceStart);
+				add(type.bodyStart);
+				add(type.bodyEnd);
+				add(type.declarationSourceEnd);
+				FieldDeclaration[] fields = type.fields;
+				if (fields != null) {
+					for (int j = 0, fieldsLength = fields.length; j < fieldsLength; j++) {
+						add(fields[j].declarationSourceStart);
+						add(fields[j].declarationSourceEnd);
+					}
+				}
+				AbstractMethodDeclaration[] methods = type.methods;
+				if (methods != null) {
+					for (int j = 0, methodsLength = methods.length; j < methodsLength; j++) {
+						AbstractMethodDeclaration method = methods[j];
+						if (method.isClinit() || method.isDefaultConstructor()) continue; // no source
+						add(method.declarationSourceStart);
+						add(method.bodyStart);
+						// the body of a method starts after its '{' and ends before its '}'
+						if (hasBody(method) && method.bodyStart <= this.start && this.end <= method.bodyEnd + 1) {
+							this.enclosingMethod = method;
+							System.arraycopy(this.typeStack, 0, this.enclosingTypes = new TypeDeclaration[this.typeDepth], 0, this.typeDepth);
+							this.bodyEndIndex = this.count;
+						}
+						add(method.bodyEnd);
+						add(method.declarationSourceEnd);
+					}
+				}
+				collect(type.memberTypes);
+				this.typeStack[--this.typeDepth] = null;
+			}
+		}
+
+		int[] getPositions() {
+			if (this.count == 0) return NO_POSITIONS;
+			int[] result = new int[this.count];
+			System.arraycopy(this.positions, 0, result, 0, this.count);
+			return result;
+		}
+	}
+
+private IncrementalReconcileState(char[] contents, int[] positions, CategorizedProblem[] problems, Map options, int reconcileFlags, int incrementalReconciles, int modelStamp) {
+	this.contents = contents;
+	this.positions = positions;
+	this.problems = problems;
+	this.options = options;
+	this.reconcileFlags = reconcileFlags;
+	this.incrementalReconciles = incrementalReconciles;
+	this.modelStamp = modelStamp;
+}
+
+/*
+ * Returns the state of a reconcile that found the given problems in the given unit,
+ * or null if these problems cannot be carried over by the next reconcile.
+ * The given positions are the ones of the edit that was reconciled incrementally, if any.
+ */
+static IncrementalReconcileState create(char[] contents, CompilationUnitDeclaration unit, Edit edit, CategorizedProblem[] problems, Map options, int reconcileFlags, int modelStamp) {
+	if (problems == null) {
+		problems = new CategorizedProblem[0];
+	} else {
+		for (int i = 0, length = problems.length; i < length; i++) {
+			// only default problems can be copied with new positions
+			if (problems[i].getClass() != DefaultProblem.class)
+				return null;
+		}
+	}
+	int[] positions;
+	int incrementalReconciles;
+	if (edit != null) {
+		positions = edit.positions;
+		incrementalReconciles = edit.previousState.incrementalReconciles + 1;
+	} else {
+		DeclarationCollector collector = new DeclarationCollector(-1, -1);
+		collector.collect(unit.types);
+		positions = collector.getPositions();
+		incrementalReconciles = 0;
+	}
+	return new IncrementalReconcileState(contents, positions, problems, options, reconcileFlags, incrementalReconciles, modelStamp);
+}
+
+static boolean hasBody(AbstractMethodDeclaration method) {
+	return !method.isClinit()
+		&& !method.isDefaultConstructor()
+		&& !method.isAnnotationMethod()
+		&& (method.modifiers & ExtraCompilerModifiers.AccSemicolonBody) == 0;
+}
+
+/*
+ * Returns whether this state can be used to reconcile incrementally with the given options.
+ */
+boolean canReconcileIncrementally(Map newOptions, int newReconcileFlags, int newModelStamp) {
+	return this.modelStamp == newModelStamp
+		&& this.incrementalReconciles < MAX_INCREMENTAL_RECONCILES
+		&& this.reconcileFlags == newReconcileFlags
+		&& this.options.equals(newOptions);
+}
+
+/*
+ * Returns the edit between the reconciled contents and the given contents if it lies in the body
+ * of a single method, if the given unit has the same declarations as the reconciled one
+ * (once shifted by the edit), and if the edit cannot change the usage problems found outside
+ * of the method. Returns null otherwise.
+ */
+Edit findEdit(char[] newContents, CompilationUnitDeclaration unit, CompilerOptions options) {
+	char[] oldContents = this.contents;
+	int oldLength = oldContents.length;
+	int newLength = newContents.length;
+	int start = 0;
+	int max = Math.min(oldLength, newLength);
+	while (start < max && oldContents[start] == newContents[start])
+		start++;
+	if (start == oldLength && start == newLength)
+		return null; // no change: this is a forced reconcile
+	int oldEnd = oldLength;
+	int newEnd = newLength;
+	while (oldEnd > start && newEnd > start && oldContents[oldEnd-1] == newContents[newEnd-1]) {
+		oldEnd--;
+		newEnd--;
+	}
+
+	DeclarationCollector collector = new DeclarationCollector(start, newEnd);
+	collector.collect(unit.types);
+	if (collector.enclosingMethod == null)
+		return null;
+	int[] newPositions = collector.getPositions();
+	int[] oldPositions = this.positions;
+	int length = newPositions.length;
+	if (oldPositions.length != length)
+		return null;
+	int delta = newLength - oldLength;
+	for (int i = 0; i < length; i++) {
+		if (i == collector.bodyEndIndex - 1) {
+			// the edited body must have started before the edit
+			if (oldPositions[i] != newPositions[i] || oldPositions[i] > start)
+				return null;
+			continue;
+		}
+		if (i == collector.bodyEndIndex) {
+			// the edited body may have ended anywhere in the edit
+			if (oldPositions[i] + 1 < oldEnd)
+				return null;
+			continue;
+		}
+		int oldPosition = oldPositions[i];
+		int expected;
+		if (oldPosition < start) {
+			expected = oldPosition;
+		} else if (oldPosition >= oldEnd) {
+			expected = oldPosition + delta;
+		} else {
+			return null; // declaration changed by the edit
+		}
+		if (newPositions[i] != expected)
+			return null;
+	}
+	AbstractMethodDeclaration method = collector.enclosingMethod;
+	if (options.getSeverity(CompilerOptions.UnusedWarningToken) != ProblemSeverities.Ignore
+			&& isSuppressingWarnings(collector.enclosingTypes))
+		return null; // the edit may make a @SuppressWarnings of an enclosing type necessary or unnecessary
+	if (options.getSeverity(CompilerOptions.UnusedPrivateMember) != ProblemSeverities.Ignore
+			&& isPrivate(method, collector.enclosingTypes))
+		return null; // the edited method may only be used by the bodies of the other methods, which are dropped
+	HashSet usageNames = getUsageNames(unit, options);
+	if (usageNames != null) {
+		// the body started before the edit and ends after it (see DeclarationCollector), in both contents
+		String oldReferences = getReferences(oldContents, method.bodyStart, method.bodyEnd - delta, usageNames, options);
+		String newReferences = getReferences(newContents, method.bodyStart, method.bodyEnd, usageNames, options);
+		if (oldReferences == null || !oldReferences.equals(newReferences))
+			return null; // the edit may use or stop using an import or a private member
+	}
+	return new Edit(this, method, start, oldEnd, delta, newPositions);
+}
+
+private static boolean isPrivate(AbstractMethodDeclaration method, TypeDeclaration[] enclosingTypes) {
+	if ((method.modifiers & ClassFileConstants.AccPrivate) != 0)
+		return true;
+	for (int i = 0, length = enclosingTypes.length; i < length; i++) {
+		if ((enclosingTypes[i].modifiers & ClassFileConstants.AccPrivate) != 0)
+			return true;
+	}
+	return false;
+}
+
+private static boolean isSuppressingWarnings(TypeDeclaration[] types) {
+	for (int i = 0, length = types.length; i < length; i++) {
+		Annotation[] annotations = types[i].annotations;
+		if (annotations == null) continue;
+		for (int j = 0, annotationsLength = annotations.length; j < annotationsLength; j++) {
+			char[] name = annotations[j].type.getLastToken();
+			if (CharOperation.equals(name, TypeConstants.JAVA_LANG_SUPPRESSWARNINGS[2]))
+				return true;
+		}
+	}
+	return false;
+}
+
+/*
+ * Returns the names that may refer to the imports or to the private members of the given unit whose usage
+ * is checked, an empty set if any name may refer to an import, or null if no usage is checked.
+ */
+private static HashSet getUsageNames(CompilationUnitDeclaration unit, CompilerOptions options) {
+	boolean checkImports = options.getSeverity(CompilerOptions.UnusedImport) != ProblemSeverities.Ignore;
+	boolean checkPrivateMembers = options.getSeverity(CompilerOptions.UnusedPrivateMember) != ProblemSeverities.Ignore;
+	if (!checkImports && !checkPrivateMembers)
+		return null;
+	HashSet names = new HashSet();
+	if (checkImports && unit.imports != null) {
+		for (int i = 0, length = unit.imports.length; i < length; i++) {
+			ImportReference importReference = unit.imports[i];
+			if ((importReference.bits & ASTNode.OnDemand) != 0)
+				return new HashSet(); // any type name may come from this import
+			char[][] tokens = importReference.tokens;
+			names.add(new String(tokens[tokens.length - 1]));
+		}
+	}
+	if (checkPrivateMembers)
+		addPrivateMemberNames(unit.types, names);
+	return names;
+}
+
+private static void addPrivateMemberNames(TypeDeclaration[] types, HashSet names) {
+	if (types == null) return;
+	for (int i = 0, length = types.length; i < length; i++) {
+		TypeDeclaration type = types[i];
+		if ((type.modifiers & ClassFileConstants.AccPrivate) != 0)
+			names.add(new String(type.name));
+		FieldDeclaration[] fields = type.fields;
+		if (fields != null) {
+			for (int j = 0, fieldsLength = fields.length; j < fieldsLength; j++) {
+				if ((fields[j].modifiers & ClassFileConstants.AccPrivate) != 0)
+					names.add(new String(fields[j].name));
+			}
+		}
+		AbstractMethodDeclaration[] methods = type.methods;
+		if (methods != null) {
+			for (int j = 0, methodsLength = methods.length; j < methodsLength; j++) {
+				if ((methods[j].modifiers & ClassFileConstants.AccPrivate) != 0)
+					names.add(new String(methods[j].selector));
+			}
+		}
+		addPrivateMemberNames(type.memberTypes, names);
+	}
+}
+
+/*
+ * Returns the occurrences of the given names between the given positions of the given contents, each with
+ * the token before it and whether it is invoked, or of all the identifiers if the given set is empty.
+ * Returns null if the contents cannot be scanned.
+ */
+private static String getReferences(char[] contents, int start, int end, HashSet names, CompilerOptions options) {
+	Scanner scanner = new Scanner(false, false, false, options.sourceLevel, options.complianceLevel, null, null, false);
+	scanner.setSource(contents);
+	scanner.resetTo(start, end);
+	StringBuffer references = new StringBuffer();
+	int previousToken = TerminalTokens.TokenNameEOF;
+	boolean previousIsReference = false;
+	try {
+		int token;
+		while ((token = scanner.getNextToken()) != TerminalTokens.TokenNameEOF) {
+			if (previousIsReference && token == TerminalTokens.TokenNameLPAREN)
+				references.append('(');
+			previousIsReference = false;
+			if (token == TerminalTokens.TokenNameIdentifier) {
+				String name = new String(scanner.getCurrentIdentifierSource());
+				if (names.isEmpty() || names.contains(name)) {
+					references.append(';').append(previousToken).append(':').append(name);
+					previousIsReference = true;
+				}
+			}
+			previousToken = token;
+		}
+	} catch (InvalidInputException e) {
+		return null;
+	}
+	return references.toString();
+}
+
+public String toString() {
+	return "Incremental reconcile state (" + this.problems.length + " problems, " + this.incrementalReconciles + " incremental reconciles)"; //$NON-NLS-1$ //$NON-NLS-2$
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,8 +11,6 @@
 package org.eclipse.jdt.internal.core;
 
 import java.net.URL;
-import java.util.*;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
@@ -37,8 +35,6 @@ import org.eclipse.jdt.internal.core.util.Util;
  */
 public class JarPackageFragmentRoot extends PackageFragmentRoot {
 
-	private final static ArrayList EMPTY_LIST = new ArrayList();
-
 	/**
 	 * The path to the jar file
 	 * (a workspace relative path if the jar is internal,
@@ -68,24 +64,14 @@ public class JarPackageFragmentRoot extends PackageFragmentRoot {
 	 * Compute the package fragment children of this package fragment root.
 	 * These are all of the directory zip entries, and any directories implied
 	 * by the path of class files contained in the jar of this package fragment root.
+	 * The table of the entries of each package is the one of the package index of the jar,
+	 * shared with the other roots on the same jar (see JavaModelManager#getJarPackageIndex(JarPackageFragmentRoot)).
 	 */
 	protected boolean computeChildren(OpenableElementInfo info, IResource underlyingResource) throws JavaModelException {
-		HashtableOfArrayToObject rawPackageInfo = new HashtableOfArrayToObject();
+		HashtableOfArrayToObject rawPackageInfo = null;
 		IJavaElement[] children;
-		ZipFile jar = null;
 		try {
-			IJavaProject project = getJavaProject();
-			String sourceLevel = project.getOption(JavaCore.COMPILER_SOURCE, true);
-			String compliance = project.getOption(JavaCore.COMPILER_COMPLIANCE, true);
-			jar = getJar();
-
-			// always create the default package
-			rawPackageInfo.put(CharOperation.NO_STRINGS, new ArrayList[] { EMPTY_LIST, EMPTY_LIST });
-
-			for (Enumeration e= jar.entries(); e.hasMoreElements();) {
-				ZipEntry member= (ZipEntry) e.nextElement();
-				initRawPackageInfo(rawPackageInfo, member.getName(), member.isDirectory(), sourceLevel, compliance);
-			}
+			rawPackageInfo = JavaModelManager.getJavaModelManager().getJarPackageIndex(this).rawPackageInfo;
 
 			// loop through all of referenced packages, creating package fragments if necessary
 			// and cache the entry names in the rawPackageInfo table
@@ -101,13 +87,12 @@ public class JarPackageFragmentRoot extends PackageFragmentRoot {
 				// not a ZIP archive, leave the children empty
 				Util.log(IStatus.ERROR, "Invalid ZIP archive: " + toStringWithAncestors()); //$NON-NLS-1$
 				children = NO_ELEMENTS;
+				rawPackageInfo = new HashtableOfArrayToObject();
 			} else if (e instanceof JavaModelException) {
 				throw (JavaModelException)e;
 			} else {
 				throw new JavaModelException(e);
 			}
-		} finally {
-			JavaModelManager.getJavaModelManager().closeZipFile(jar);
 		}
 
 		info.setChildren(children);
@@ -211,48 +196,6 @@ public class JarPackageFragmentRoot extends PackageFragmentRoot {
 	public int hashCode() {
 		return this.jarPath.hashCode();
 	}
-	private void initRawPackageInfo(HashtableOfArrayToObject rawPackageInfo, String entryName, boolean isDirectory, String sourceLevel, String compliance) {
-		int lastSeparator = isDirectory ? entryName.length()-1 : entryName.lastIndexOf('/');
-		String[] pkgName = Util.splitOn('/', entryName, 0, lastSeparator);
-		String[] existing = null;
-		int length = pkgName.length;
-		int existingLength = length;
-		while (existingLength >= 0) {
-			existing = (String[]) rawPackageInfo.getKey(pkgName, existingLength);
-			if (existing != null) break;
-			existingLength--;
-		}
-		JavaModelManager manager = JavaModelManager.getJavaModelManager();
-		for (int i = existingLength; i < length; i++) {
-			if (Util.isValidFolderNameForPackage(pkgName[i], sourceLevel, compliance)) {
-				System.arraycopy(existing, 0, existing = new String[i+1], 0, i);
-				existing[i] = manager.intern(pkgName[i]);
-				rawPackageInfo.put(existing, new ArrayList[] { EMPTY_LIST, EMPTY_LIST });
-			} else {
-				// non-Java resource folder
-				if (!isDirectory) {
-					ArrayList[] children = (ArrayList[]) rawPackageInfo.get(existing);
-					if (children[1/*NON_JAVA*/] == EMPTY_LIST) children[1/*NON_JAVA*/] = new ArrayList();
-					children[1/*NON_JAVA*/].add(entryName);
-				}
-				return;
-			}
-		}
-		if (isDirectory)
-			return;
-
-		// add classfile info amongst children
-		ArrayList[] children = (ArrayList[]) rawPackageInfo.get(pkgName);
-		if (org.eclipse.jdt.internal.compiler.util.Util.isClassFileName(entryName)) {
-			if (children[0/*JAVA*/] == EMPTY_LIST) children[0/*JAVA*/] = new ArrayList();
-			String nameWithoutExtension = entryName.substring(lastSeparator + 1, entryName.length() - 6);
-			children[0/*JAVA*/].add(nameWithoutExtension);
-		} else {
-			if (children[1/*NON_JAVA*/] == EMPTY_LIST) children[1/*NON_JAVA*/] = new ArrayList();
-			children[1/*NON_JAVA*/].add(entryName);
-		}
-
-	}
 	/**
 	 * @see IPackageFragmentRoot
 	 */
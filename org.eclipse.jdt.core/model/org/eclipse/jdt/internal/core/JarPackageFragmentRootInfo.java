@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,5 +17,6 @@ import org.eclipse.jdt.internal.core.util.HashtableOfArrayToObject;
  */
 class JarPackageFragmentRootInfo extends PackageFragmentRootInfo {
 	// a map from package name (String[]) to a size-2 array of Array<String>, the first element being the .class file names, and the second element being the non-Java resource names
+	// (shared with the other roots on the same jar, thus it must not be modified, see JarPackageIndex#rawPackageInfo)
 	HashtableOfArrayToObject rawPackageInfo;
 }
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.core.util.HashtableOfArrayToObject;
+import org.eclipse.jdt.internal.core.util.Util;
+
+/**
+ * An immutable index of the packages of a jar and of the names of the entries they contain,
+ * as seen from a given source and compliance level (these levels decide which folders are packages).
+ * <p>
+ * Indexes are built once per jar and shared by all the projects that reference the jar
+ * (see {@link JavaModelManager#getJarPackageIndex(JarPackageFragmentRoot)}): the package fragment
+ * roots on the jar use its package table as their children, and looking up a package or a type
+ * in the jar does not need to open the jar's package fragments.
+ * </p>
+ */
+public class JarPackageIndex {
+
+	private static final ArrayList EMPTY_LIST = new ArrayList();
+
+	final String sourceLevel;
+	final String compliance;
+
+	/*
+	 * The size and modification time of the jar when the index was built.
+	 */
+	final long length;
+	final long lastModified;
+
+	/*
+	 * A map from package name (String[]) to a size-2 array of Array<String>, the first element being
+	 * the .class file names (without extension), and the second element being the non-Java resource names
+	 * (see JarPackageFragmentRootInfo#rawPackageInfo). It must not be modified.
+	 */
+	final HashtableOfArrayToObject rawPackageInfo;
+
+	/*
+	 * A map from package name (String[]) to the sorted names of the class files in this package
+	 * (String[], without the .class extension), computed on demand from the raw package info.
+	 */
+	private HashtableOfArrayToObject classFileNames;
+
+private JarPackageIndex(String sourceLevel, String compliance, long length, long lastModified, HashtableOfArrayToObject rawPackageInfo) {
+	this.sourceLevel = sourceLevel;
+	this.compliance = compliance;
+	this.length = length;
+	this.lastModified = lastModified;
+	this.rawPackageInfo = rawPackageInfo;
+}
+
+/**
+ * Builds the index of the given jar. The given file is the local file of the jar.
+ */
+static JarPackageIndex build(ZipFile jar, File file, String sourceLevel, String compliance) {
+	// read the stamps first so that a jar modified while it is indexed is indexed again next time
+	long length = file.length();
+	long lastModified = file.lastModified();
+	HashtableOfArrayToObject rawPackageInfo = new HashtableOfArrayToObject();
+
+	// always create the default package
+	rawPackageInfo.put(CharOperation.NO_STRINGS, new ArrayList[] { EMPTY_LIST, EMPTY_LIST });
+
+	for (Enumeration e = jar.entries(); e.hasMoreElements();) {
+		ZipEntry member = (ZipEntry) e.nextElement();
+		addEntry(rawPackageInfo, member.getName(), member.isDirectory(), sourceLevel, compliance);
+	}
+	return new JarPackageIndex(sourceLevel, compliance, length, lastModified, rawPackageInfo);
+}
+
+private static void addEntry(HashtableOfArrayToObject rawPackageInfo, String entryName, boolean isDirectory, String sourceLevel, String compliance) {
+	int lastSeparator = isDirectory ? entryName.length()-1 : entryName.lastIndexOf('/');
+	String[] pkgName = Util.splitOn('/', entryName, 0, lastSeparator);
+	String[] existing = null;
+	int length = pkgName.length;
+	int existingLength = length;
+	while (existingLength >= 0) {
+		existing = (String[]) rawPackageInfo.getKey(pkgName, existingLength);
+		if (existing != null) break;
+		existingLength--;
+	}
+	JavaModelManager manager = JavaModelManager.getJavaModelManager();
+	for (int i = existingLength; i < length; i++) {
+		if (Util.isValidFolderNameForPackage(pkgName[i], sourceLevel, compliance)) {
+			System.arraycopy(existing, 0, existing = new String[i+1], 0, i);
+			existing[i] = manager.intern(pkgName[i]);
+			rawPackageInfo.put(existing, new ArrayList[] { EMPTY_LIST, EMPTY_LIST });
+		} else {
+			// non-Java resource folder
+			if (!isDirectory) {
+				ArrayList[] children = (ArrayList[]) rawPackageInfo.get(existing);
+				if (children[1/*NON_JAVA*/] == EMPTY_LIST) children[1/*NON_JAVA*/] = new ArrayList();
+				children[1/*NON_JAVA*/].add(entryName);
+			}
+			return;
+		}
+	}
+	if (isDirectory)
+		return;
+
+	// add classfile info amongst children
+	ArrayList[] children = (ArrayList[]) rawPackageInfo.get(pkgName);
+	if (org.eclipse.jdt.internal.compiler.util.Util.isClassFileName(entryName)) {
+		if (children[0/*JAVA*/] == EMPTY_LIST) children[0/*JAVA*/] = new ArrayList();
+		String nameWithoutExtension = entryName.substring(lastSeparator + 1, entryName.length() - 6);
+		children[0/*JAVA*/].add(nameWithoutExtension);
+	} else {
+		if (children[1/*NON_JAVA*/] == EMPTY_LIST) children[1/*NON_JAVA*/] = new ArrayList();
+		children[1/*NON_JAVA*/].add(entryName);
+	}
+}
+
+private synchronized HashtableOfArrayToObject getClassFileNames() {
+	if (this.classFileNames == null) {
+		HashtableOfArrayToObject names = new HashtableOfArrayToObject(this.rawPackageInfo.size());
+		for (int i = 0, size = this.rawPackageInfo.keyTable.length; i < size; i++) {
+			String[] pkgName = (String[]) this.rawPackageInfo.keyTable[i];
+			if (pkgName == null) continue;
+			ArrayList classFiles = ((ArrayList[]) this.rawPackageInfo.valueTable[i])[0/*JAVA*/];
+			String[] sortedNames;
+			if (classFiles.isEmpty()) {
+				sortedNames = CharOperation.NO_STRINGS;
+			} else {
+				sortedNames = new String[classFiles.size()];
+				classFiles.toArray(sortedNames);
+				Arrays.sort(sortedNames);
+			}
+			names.put(pkgName, sortedNames);
+		}
+		this.classFileNames = names;
+	}
+	return this.classFileNames;
+}
+
+/**
+ * Returns whether the given package exists in the jar.
+ */
+boolean containsPackage(String[] pkgName) {
+	return this.rawPackageInfo.containsKey(pkgName);
+}
+
+/**
+ * Returns whether the given package of the jar contains a class file with the given name (without extension).
+ */
+boolean containsClassFile(String[] pkgName, String nameWithoutExtension) {
+	String[] names = (String[]) getClassFileNames().get(pkgName);
+	return names != null && Arrays.binarySearch(names, nameWithoutExtension) >= 0;
+}
+
+/**
+ * Returns the sorted names (without extension) of the class files in the given package,
+ * or <code>null</code> if the jar doesn't contain this package. The returned array must not be modified.
+ */
+String[] getClassFileNames(String[] pkgName) {
+	return (String[]) getClassFileNames().get(pkgName);
+}
+
+/**
+ * Returns the names of all the packages of the jar, including the default package.
+ */
+String[][] getPackageNames() {
+	String[][] result = new String[this.rawPackageInfo.size()][];
+	int index = 0;
+	for (int i = 0, tableLength = this.rawPackageInfo.keyTable.length; i < tableLength; i++) {
+		String[] pkgName = (String[]) this.rawPackageInfo.keyTable[i];
+		if (pkgName != null)
+			result[index++] = pkgName;
+	}
+	return result;
+}
+
+/**
+ * Returns whether this index was built for the given levels from the current content of the given file.
+ */
+boolean isUpToDate(File file, String source, String complianceLevel) {
+	return this.sourceLevel.equals(source)
+		&& this.compliance.equals(complianceLevel)
+		&& this.length == file.length()
+		&& this.lastModified == file.lastModified();
+}
+
+public String toString() {
+	return "Jar package index (" + this.rawPackageInfo.size() + " packages)"; //$NON-NLS-1$ //$NON-NLS-2$
+}
+}
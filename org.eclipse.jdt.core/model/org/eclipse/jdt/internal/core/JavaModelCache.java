@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -9,15 +9,22 @@
  *     IBM Corporation - initial API and implementation
  *******************************************************************************/
 package org.eclipse.jdt.internal.core;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Hashtable;
 
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.internal.core.util.LRUCache;
+import org.eclipse.jdt.internal.core.util.StripedHashtable;
 import org.eclipse.jdt.internal.core.util.Util;
 
 /**
  * The cache of java elements to their respective info.
+ * <p>
+ * Reading the cache is thread safe and only locks the cache that holds the kind of
+ * the given element, so that readers neither contend with each other on different kinds
+ * of elements nor with a thread opening elements of another kind. Modifying the cache must
+ * be done while holding the lock of the {@link JavaModelManager}: an overflowing cache closes
+ * the elements it evicts, which removes the infos of their children from the other caches.
+ * </p>
  */
 public class JavaModelCache {
 	public static boolean VERBOSE = false;
@@ -28,7 +35,7 @@ public class JavaModelCache {
 	public static final int DEFAULT_OPENABLE_SIZE = 250; // average 6629 bytes per openable (includes children) -> maximum size : 662900*BASE_VALUE bytes
 	public static final int DEFAULT_CHILDREN_SIZE = 250*20; // average 20 children per openable
 	public static final String RATIO_PROPERTY = "org.eclipse.jdt.core.javamodelcache.ratio"; //$NON-NLS-1$
-	
+
 	public static final Object NON_EXISTING_JAR_TYPE_INFO = new Object();
 
 	/*
@@ -39,12 +46,12 @@ public class JavaModelCache {
 	/**
 	 * Active Java Model Info
 	 */
-	protected Object modelInfo;
+	protected volatile Object modelInfo;
 
 	/**
 	 * Cache of open projects.
 	 */
-	protected HashMap projectCache;
+	protected Hashtable projectCache;
 
 	/**
 	 * Cache of open package fragment roots.
@@ -64,19 +71,19 @@ public class JavaModelCache {
 	/**
 	 * Cache of open children of openable Java Model Java elements
 	 */
-	protected Map childrenCache;
+	protected StripedHashtable childrenCache;
 
 	/*
 	 * Cache of open binary type (inside a jar) that have a non-open parent
 	 */
-	protected LRUCache jarTypeCache;
+	protected volatile LRUCache jarTypeCache;
 
 public JavaModelCache() {
 	// set the size of the caches in function of the maximum amount of memory available
 	double ratio = getMemoryRatio();
 	// adjust the size of the openable cache in function of the RATIO_PROPERTY property
 	double openableRatio = getOpenableRatio();
-	this.projectCache = new HashMap(DEFAULT_PROJECT_SIZE); // NB: Don't use a LRUCache for projects as they are constantly reopened (e.g. during delta processing)
+	this.projectCache = new Hashtable(DEFAULT_PROJECT_SIZE); // NB: Don't use a LRUCache for projects as they are constantly reopened (e.g. during delta processing)
 	if (VERBOSE) {
 		this.rootCache = new VerboseElementCache((int) (DEFAULT_ROOT_SIZE * ratio), "Root cache"); //$NON-NLS-1$
 		this.pkgCache = new VerboseElementCache((int) (DEFAULT_PKG_SIZE * ratio), "Package cache"); //$NON-NLS-1$
@@ -86,7 +93,7 @@ public JavaModelCache() {
 		this.pkgCache = new ElementCache((int) (DEFAULT_PKG_SIZE * ratio));
 		this.openableCache = new ElementCache((int) (DEFAULT_OPENABLE_SIZE * ratio * openableRatio));
 	}
-	this.childrenCache = new HashMap((int) (DEFAULT_CHILDREN_SIZE * ratio * openableRatio));
+	this.childrenCache = new StripedHashtable((int) (DEFAULT_CHILDREN_SIZE * ratio * openableRatio));
 	resetJarTypeCache();
 }
 
@@ -113,14 +120,24 @@ public Object getInfo(IJavaElement element) {
 		case IJavaElement.JAVA_PROJECT:
 			return this.projectCache.get(element);
 		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
-			return this.rootCache.get(element);
+			synchronized (this.rootCache) {
+				return this.rootCache.get(element);
+			}
 		case IJavaElement.PACKAGE_FRAGMENT:
-			return this.pkgCache.get(element);
+			synchronized (this.pkgCache) {
+				return this.pkgCache.get(element);
+			}
 		case IJavaElement.COMPILATION_UNIT:
 		case IJavaElement.CLASS_FILE:
-			return this.openableCache.get(element);
+			synchronized (this.openableCache) {
+				return this.openableCache.get(element);
+			}
 		case IJavaElement.TYPE:
-			Object result = this.jarTypeCache.get(element);
+			Object result;
+			LRUCache jarTypes = this.jarTypeCache;
+			synchronized (jarTypes) {
+				result = jarTypes.get(element);
+			}
 			if (result != null)
 				return result;
 			else
@@ -141,12 +158,18 @@ public IJavaElement getExistingElement(IJavaElement element) {
 		case IJavaElement.JAVA_PROJECT:
 			return element; // projectCache is a Hashtable and Hashtables don't support getKey(...)
 		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
-			return (IJavaElement) this.rootCache.getKey(element);
+			synchronized (this.rootCache) {
+				return (IJavaElement) this.rootCache.getKey(element);
+			}
 		case IJavaElement.PACKAGE_FRAGMENT:
-			return (IJavaElement) this.pkgCache.getKey(element);
+			synchronized (this.pkgCache) {
+				return (IJavaElement) this.pkgCache.getKey(element);
+			}
 		case IJavaElement.COMPILATION_UNIT:
 		case IJavaElement.CLASS_FILE:
-			return (IJavaElement) this.openableCache.getKey(element);
+			synchronized (this.openableCache) {
+				return (IJavaElement) this.openableCache.getKey(element);
+			}
 		case IJavaElement.TYPE:
 			return element; // jarTypeCache or childrenCache are Hashtables and Hashtables don't support getKey(...)
 		default:
@@ -175,14 +198,24 @@ protected Object peekAtInfo(IJavaElement element) {
 		case IJavaElement.JAVA_PROJECT:
 			return this.projectCache.get(element);
 		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
-			return this.rootCache.peek(element);
+			synchronized (this.rootCache) {
+				return this.rootCache.peek(element);
+			}
 		case IJavaElement.PACKAGE_FRAGMENT:
-			return this.pkgCache.peek(element);
+			synchronized (this.pkgCache) {
+				return this.pkgCache.peek(element);
+			}
 		case IJavaElement.COMPILATION_UNIT:
 		case IJavaElement.CLASS_FILE:
-			return this.openableCache.peek(element);
+			synchronized (this.openableCache) {
+				return this.openableCache.peek(element);
+			}
 		case IJavaElement.TYPE:
-			Object result = this.jarTypeCache.peek(element);
+			Object result;
+			LRUCache jarTypes = this.jarTypeCache;
+			synchronized (jarTypes) {
+				result = jarTypes.peek(element);
+			}
 			if (result != null)
 				return result;
 			else
@@ -192,8 +225,34 @@ protected Object peekAtInfo(IJavaElement element) {
 	}
 }
 
+/**
+ * Ensures that the cache holding the children of the element has room for the children
+ * of the given info, so that putting them does not close other children of the element.
+ * Must be called while holding the lock of the JavaModelManager.
+ */
+protected void ensureSpaceLimit(IJavaElement element, Object info) {
+	switch (element.getElementType()) {
+		case IJavaElement.JAVA_PROJECT:
+			synchronized (this.rootCache) {
+				this.rootCache.ensureSpaceLimit(info, element);
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			synchronized (this.pkgCache) {
+				this.pkgCache.ensureSpaceLimit(info, element);
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT:
+			synchronized (this.openableCache) {
+				this.openableCache.ensureSpaceLimit(info, element);
+			}
+			break;
+	}
+}
 /**
  * Remember the info for the element.
+ * Must be called while holding the lock of the JavaModelManager, after the space limit
+ * for its children was ensured (see {@link #ensureSpaceLimit(IJavaElement, Object)}).
  */
 protected void putInfo(IJavaElement element, Object info) {
 	switch (element.getElementType()) {
@@ -202,26 +261,40 @@ protected void putInfo(IJavaElement element, Object info) {
 			break;
 		case IJavaElement.JAVA_PROJECT:
 			this.projectCache.put(element, info);
-			this.rootCache.ensureSpaceLimit(info, element);
 			break;
 		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
-			this.rootCache.put(element, info);
-			this.pkgCache.ensureSpaceLimit(info, element);
+			synchronized (this.rootCache) {
+				this.rootCache.put(element, info);
+			}
 			break;
 		case IJavaElement.PACKAGE_FRAGMENT:
-			this.pkgCache.put(element, info);
-			this.openableCache.ensureSpaceLimit(info, element);
+			synchronized (this.pkgCache) {
+				this.pkgCache.put(element, info);
+			}
 			break;
 		case IJavaElement.COMPILATION_UNIT:
 		case IJavaElement.CLASS_FILE:
-			this.openableCache.put(element, info);
+			synchronized (this.openableCache) {
+				this.openableCache.put(element, info);
+			}
 			break;
 		default:
 			this.childrenCache.put(element, info);
 	}
 }
+/**
+ * Remember the info for the binary type (inside a jar) whose parent is not open.
+ * Must be called while holding the lock of the JavaModelManager.
+ */
+protected void putJarTypeInfo(IJavaElement type, Object info) {
+	LRUCache jarTypes = this.jarTypeCache;
+	synchronized (jarTypes) {
+		jarTypes.put(type, info);
+	}
+}
 /**
  * Removes the info of the element from the cache.
+ * Must be called while holding the lock of the JavaModelManager.
  */
 protected void removeInfo(JavaElement element) {
 	switch (element.getElementType()) {
@@ -230,19 +303,31 @@ protected void removeInfo(JavaElement element) {
 			break;
 		case IJavaElement.JAVA_PROJECT:
 			this.projectCache.remove(element);
-			this.rootCache.resetSpaceLimit((int) (DEFAULT_ROOT_SIZE * getMemoryRatio()), element);
+			synchronized (this.rootCache) {
+				this.rootCache.resetSpaceLimit((int) (DEFAULT_ROOT_SIZE * getMemoryRatio()), element);
+			}
 			break;
 		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
-			this.rootCache.remove(element);
-			this.pkgCache.resetSpaceLimit((int) (DEFAULT_PKG_SIZE * getMemoryRatio()), element);
+			synchronized (this.rootCache) {
+				this.rootCache.remove(element);
+			}
+			synchronized (this.pkgCache) {
+				this.pkgCache.resetSpaceLimit((int) (DEFAULT_PKG_SIZE * getMemoryRatio()), element);
+			}
 			break;
 		case IJavaElement.PACKAGE_FRAGMENT:
-			this.pkgCache.remove(element);
-			this.openableCache.resetSpaceLimit((int) (DEFAULT_OPENABLE_SIZE * getMemoryRatio() * getOpenableRatio()), element);
+			synchronized (this.pkgCache) {
+				this.pkgCache.remove(element);
+			}
+			synchronized (this.openableCache) {
+				this.openableCache.resetSpaceLimit((int) (DEFAULT_OPENABLE_SIZE * getMemoryRatio() * getOpenableRatio()), element);
+			}
 			break;
 		case IJavaElement.COMPILATION_UNIT:
 		case IJavaElement.CLASS_FILE:
-			this.openableCache.remove(element);
+			synchronized (this.openableCache) {
+				this.openableCache.remove(element);
+			}
 			break;
 		default:
 			this.childrenCache.remove(element);
@@ -261,16 +346,25 @@ public String toStringFillingRation(String prefix) {
 	buffer.append(this.projectCache.size());
 	buffer.append(" projects\n"); //$NON-NLS-1$
 	buffer.append(prefix);
-	buffer.append(this.rootCache.toStringFillingRation("Root cache")); //$NON-NLS-1$
+	synchronized (this.rootCache) {
+		buffer.append(this.rootCache.toStringFillingRation("Root cache")); //$NON-NLS-1$
+	}
 	buffer.append('\n');
 	buffer.append(prefix);
-	buffer.append(this.pkgCache.toStringFillingRation("Package cache")); //$NON-NLS-1$
+	synchronized (this.pkgCache) {
+		buffer.append(this.pkgCache.toStringFillingRation("Package cache")); //$NON-NLS-1$
+	}
 	buffer.append('\n');
 	buffer.append(prefix);
-	buffer.append(this.openableCache.toStringFillingRation("Openable cache")); //$NON-NLS-1$
+	synchronized (this.openableCache) {
+		buffer.append(this.openableCache.toStringFillingRation("Openable cache")); //$NON-NLS-1$
+	}
 	buffer.append('\n');
 	buffer.append(prefix);
-	buffer.append(this.jarTypeCache.toStringFillingRation("Jar type cache")); //$NON-NLS-1$
+	LRUCache jarTypes = this.jarTypeCache;
+	synchronized (jarTypes) {
+		buffer.append(jarTypes.toStringFillingRation("Jar type cache")); //$NON-NLS-1$
+	}
 	buffer.append('\n');
 	return buffer.toString();
 }
@@ -16,6 +16,7 @@
 package org.eclipse.jdt.internal.core;
 
 import java.io.*;
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.*;
@@ -1359,6 +1360,8 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 		int useCount = 0;
 		IProblemRequestor problemRequestor;
 		CompilationUnit workingCopy;
+		// the result of the last reconcile, if reconciling incrementally
+		volatile IncrementalReconcileState reconcileState;
 		public PerWorkingCopyInfo(CompilationUnit workingCopy, IProblemRequestor problemRequestor) {
 			this.workingCopy = workingCopy;
 			this.problemRequestor = problemRequestor;
@@ -1420,6 +1423,13 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 	 */
 	private ThreadLocal zipFiles = new ThreadLocal();
 
+	/*
+	 * The package indexes of the jars, shared by all the projects and package fragment roots referencing these jars
+	 * (a map from the local file of a jar and source and compliance levels to a SoftReference on a JarPackageIndex).
+	 * An index stays in this map as long as it is not garbage collected and its jar is not changed.
+	 */
+	private Map jarPackageIndexes = new HashMap();
+
 	private UserLibraryManager userLibraryManager;
 	
 	/*
@@ -1936,8 +1946,9 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 
 	/**
 	 *  Returns the info for the element.
+	 *  Not synchronized: the cache only locks the cache of the kind of the element (see JavaModelCache).
 	 */
-	public synchronized Object getInfo(IJavaElement element) {
+	public Object getInfo(IJavaElement element) {
 		HashMap tempCache = (HashMap)this.temporaryCache.get();
 		if (tempCache != null) {
 			Object result = tempCache.get(element);
@@ -1951,7 +1962,7 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 	/**
 	 *  Returns the existing element in the cache that is equal to the given element.
 	 */
-	public synchronized IJavaElement getExistingElement(IJavaElement element) {
+	public IJavaElement getExistingElement(IJavaElement element) {
 		return this.cache.getExistingElement(element);
 	}
 
@@ -2629,6 +2640,28 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 				&& (zipFile = zipCache.getCache(path)) != null) {
 			return zipFile;
 		}
+		File localFile = getLocalFile(path);
+
+		try {
+			if (ZIP_ACCESS_VERBOSE) {
+				System.out.println("(" + Thread.currentThread() + ") [JavaModelManager.getZipFile(IPath)] Creating ZipFile on " + localFile ); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			zipFile = new ZipFile(localFile);
+			if (zipCache != null) {
+				zipCache.setCache(path, zipFile);
+			}
+			return zipFile;
+		} catch (IOException e) {
+			addInvalidArchive(path);
+			throw new CoreException(new Status(IStatus.ERROR, JavaCore.PLUGIN_ID, -1, Messages.status_IOException, e));
+		}
+	}
+
+	/*
+	 * Returns the local file of the given archive path (a workspace path if the archive is internal,
+	 * or an OS path if it is external).
+	 */
+	private File getLocalFile(IPath path) throws CoreException {
 		File localFile = null;
 		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
 		IResource file = root.findMember(path);
@@ -2645,19 +2678,63 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 			// external resource -> it is ok to use toFile()
 			localFile= path.toFile();
 		}
+		return localFile;
+	}
 
+	/*
+	 * Returns the package index of the given jar for the source and compliance levels of its project.
+	 * The index is shared by all the projects that reference the jar with the same levels, and it is built
+	 * again if the jar changed since it was built.
+	 */
+	public JarPackageIndex getJarPackageIndex(JarPackageFragmentRoot root) throws CoreException {
+		IJavaProject project = root.getJavaProject();
+		String sourceLevel = project.getOption(JavaCore.COMPILER_SOURCE, true);
+		String compliance = project.getOption(JavaCore.COMPILER_COMPLIANCE, true);
+		IPath path = root.getPath();
+		File localFile = getLocalFile(path);
+		String key = localFile.getAbsolutePath() + '|' + sourceLevel + '|' + compliance;
+		JarPackageIndex index;
+		synchronized (this.jarPackageIndexes) {
+			SoftReference reference = (SoftReference) this.jarPackageIndexes.get(key);
+			index = reference == null ? null : (JarPackageIndex) reference.get();
+		}
+		if (index != null && index.isUpToDate(localFile, sourceLevel, compliance))
+			return index;
+
+		// build the index outside of the lock: another thread may build it at the same time, the last one wins
+		ZipFile jar = getZipFile(path);
 		try {
-			if (ZIP_ACCESS_VERBOSE) {
-				System.out.println("(" + Thread.currentThread() + ") [JavaModelManager.getZipFile(IPath)] Creating ZipFile on " + localFile ); //$NON-NLS-1$ //$NON-NLS-2$
+			index = JarPackageIndex.build(jar, localFile, sourceLevel, compliance);
+		} finally {
+			closeZipFile(jar);
+		}
+		synchronized (this.jarPackageIndexes) {
+			// forget the indexes that were garbage collected
+			for (Iterator iterator = this.jarPackageIndexes.values().iterator(); iterator.hasNext();) {
+				if (((SoftReference) iterator.next()).get() == null)
+					iterator.remove();
 			}
-			zipFile = new ZipFile(localFile);
-			if (zipCache != null) {
-				zipCache.setCache(path, zipFile);
+			this.jarPackageIndexes.put(key, new SoftReference(index));
+		}
+		return index;
+	}
+
+	/*
+	 * Forgets the package indexes of the given jar, e.g. because its content changed.
+	 * The stamps of the jar are not enough to tell, since a jar can be rewritten with the same size and time.
+	 */
+	void removeJarPackageIndexes(IPath path) {
+		String prefix;
+		try {
+			prefix = getLocalFile(path).getAbsolutePath() + '|';
+		} catch (CoreException e) {
+			return; // no index could be built either
+		}
+		synchronized (this.jarPackageIndexes) {
+			for (Iterator iterator = this.jarPackageIndexes.keySet().iterator(); iterator.hasNext();) {
+				if (((String) iterator.next()).startsWith(prefix))
+					iterator.remove();
 			}
-			return zipFile;
-		} catch (IOException e) {
-			addInvalidArchive(path);
-			throw new CoreException(new Status(IStatus.ERROR, JavaCore.PLUGIN_ID, -1, Messages.status_IOException, e));
 		}
 	}
 
@@ -3582,7 +3659,7 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 	 *  Returns the info for this element without
 	 *  disturbing the cache ordering.
 	 */
-	protected synchronized Object peekAtInfo(IJavaElement element) {
+	protected Object peekAtInfo(IJavaElement element) {
 		HashMap tempCache = (HashMap)this.temporaryCache.get();
 		if (tempCache != null) {
 			Object result = tempCache.get(element);
@@ -3610,31 +3687,37 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 			closeChildren(existingInfo);
 		}
 
-		// Need to put any JarPackageFragmentRoot in first.
-		// This is due to the way the LRU cache flushes entries.
-		// When a JarPackageFragment is flushed from the LRU cache, the entire
-		// jar is flushed by removing the JarPackageFragmentRoot and all of its
-		// children (see ElementCache.close()). If we flush the JarPackageFragment
-		// when its JarPackageFragmentRoot is not in the cache and the root is about to be
-		// added (during the 'while' loop), we will end up in an inconsistent state.
-		// Subsequent resolution against package in the jar would fail as a result.
+		// Ensure the space limits before putting any info.
+		// This is due to the way the LRU cache flushes entries: putting the children of an element
+		// (e.g. the packages of a JarPackageFragmentRoot) before the space limit for them is increased
+		// would flush other children of that element, leaving the cache in an inconsistent state.
 		// https://bugs.eclipse.org/bugs/show_bug.cgi?id=102422
-		// (theodora)
-		for(Iterator it = newElements.entrySet().iterator(); it.hasNext(); ) {
-			Map.Entry entry = (Map.Entry)it.next();
-			IJavaElement element = (IJavaElement)entry.getKey();
-			if (element instanceof JarPackageFragmentRoot) {
-				Object info = entry.getValue();
-				it.remove();
-				this.cache.putInfo(element, info);
+		Map.Entry[] entries = new Map.Entry[newElements.size()];
+		newElements.entrySet().toArray(entries);
+		for (int i = 0, length = entries.length; i < length; i++) {
+			this.cache.ensureSpaceLimit((IJavaElement) entries[i].getKey(), entries[i].getValue());
+		}
+
+		// Put the deepest infos first: as readers don't synchronize on this manager,
+		// they must not find the info of an element before the infos of its descendants.
+		Arrays.sort(entries, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				return depth((IJavaElement) ((Map.Entry) o2).getKey()) - depth((IJavaElement) ((Map.Entry) o1).getKey());
 			}
+		});
+		for (int i = 0, length = entries.length; i < length; i++) {
+			this.cache.putInfo((IJavaElement) entries[i].getKey(), entries[i].getValue());
 		}
+	}
 
-		Iterator iterator = newElements.entrySet().iterator();
-		while (iterator.hasNext()) {
-			Map.Entry entry = (Map.Entry) iterator.next();
-			this.cache.putInfo((IJavaElement) entry.getKey(), entry.getValue());
+	static int depth(IJavaElement element) {
+		int depth = 0;
+		IJavaElement parent = element.getParent();
+		while (parent != null) {
+			depth++;
+			parent = parent.getParent();
 		}
+		return depth;
 	}
 
 	private void closeChildren(Object info) {
@@ -3655,7 +3738,7 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 	 * Remember the info for the jar binary type
 	 */
 	protected synchronized void putJarTypeInfo(IJavaElement type, Object info) {
-		this.cache.jarTypeCache.put(type, info);
+		this.cache.putJarTypeInfo(type, info);
 	}
 
 	/**
@@ -5116,7 +5199,9 @@ public class JavaModelManager implements ISaveParticipant, IContentTypeChangeLis
 	}
 	
 	public Stats debugNewOpenableCacheStats() {
-		return this.cache.openableCache.new Stats();
+		synchronized (this.cache.openableCache) {
+			return this.cache.openableCache.new Stats();
+		}
 	}
 	
 	public int getOpenableCacheSize() {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -245,6 +245,18 @@ class JavaProjectElementInfo extends OpenableElementInfo {
 	}
 
 	private void initializePackageNames(IPackageFragmentRoot root, HashSetOfArray fragmentsCache) {
+		if (NameLookup.USE_JAR_INDEX && root instanceof JarPackageFragmentRoot && !root.isOpen()) {
+			// use the index shared with the other projects referencing this jar instead of computing the children of the root
+			try {
+				String[][] pkgNames = JavaModelManager.getJavaModelManager().getJarPackageIndex((JarPackageFragmentRoot) root).getPackageNames();
+				for (int i = 0, length = pkgNames.length; i < length; i++) {
+					fragmentsCache.add(pkgNames[i]);
+				}
+				return;
+			} catch (CoreException e) {
+				// fall back to the children of the root
+			}
+		}
 		IJavaElement[] frags = null;
 		try {
 			if (!root.isOpen()) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import java.io.File;
 import java.util.*;
 
 import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.IClasspathEntry;
@@ -108,7 +109,16 @@ public class NameLookup implements SuffixConstants {
 
 	public static boolean VERBOSE = false;
 
+	/**
+	 * The system property that enables looking up the types of jars in the package indexes
+	 * shared by all projects (see {@link JavaModelManager#getJarPackageIndex(JarPackageFragmentRoot)}),
+	 * instead of opening the package fragments of the jars.
+	 */
+	public static final String JAR_INDEX_PROPERTY = "org.eclipse.jdt.core.nameLookup.jarIndex"; //$NON-NLS-1$
+	public static boolean USE_JAR_INDEX = "true".equals(System.getProperty(JAR_INDEX_PROPERTY)); //$NON-NLS-1$
+
 	private static final IType[] NO_TYPES = {};
+	private static final Object NO_JAR_INDEX = new Object();
 
 	/**
 	 * The <code>IPackageFragmentRoot</code>'s associated
@@ -140,6 +150,12 @@ public class NameLookup implements SuffixConstants {
 	 */
 	protected HashMap typesInWorkingCopies;
 
+	/*
+	 * A map from the jar package fragment roots looked up so far to their JarPackageIndex
+	 * (or NO_JAR_INDEX if the index could not be built). Only used if USE_JAR_INDEX is set.
+	 */
+	private HashMap jarPackageIndexes;
+
 	public long timeSpentInSeekTypesInSourcePackage = 0;
 	public long timeSpentInSeekTypesInBinaryPackage = 0;
 
@@ -157,15 +173,10 @@ public class NameLookup implements SuffixConstants {
 			start = System.currentTimeMillis();
 		}
 		this.packageFragmentRoots = packageFragmentRoots;
-		if (workingCopies == null) {
-			this.packageFragments = packageFragments;
-		} else {
-			// clone tables as we're adding packages from working copies
-			try {
-				this.packageFragments = (HashtableOfArrayToObject) packageFragments.clone();
-			} catch (CloneNotSupportedException e1) {
-				// ignore (implementation of HashtableOfArrayToObject supports cloning)
-			}
+		this.packageFragments = packageFragments;
+		if (workingCopies != null) {
+			// the table is shared with the project and is only cloned if a package of a working copy is missing from it
+			// (see getWritablePackageFragments(...))
 			this.typesInWorkingCopies = new HashMap();
 			HashtableOfObjectToInt rootPositions = new HashtableOfObjectToInt();
 			for (int i = 0, length = packageFragmentRoots.length; i < length; i++) {
@@ -215,15 +226,16 @@ public class NameLookup implements SuffixConstants {
 				String[] pkgName = pkg.names;
 				Object existing = this.packageFragments.get(pkgName);
 				if (existing == null || existing == JavaProjectElementInfo.NO_ROOTS) {
-					this.packageFragments.put(pkgName, root);
+					HashtableOfArrayToObject fragments = getWritablePackageFragments(packageFragments);
+					fragments.put(pkgName, root);
 					// ensure super packages (see https://bugs.eclipse.org/bugs/show_bug.cgi?id=119161)
 					// are also in the map
-					JavaProjectElementInfo.addSuperPackageNames(pkgName, this.packageFragments);
+					JavaProjectElementInfo.addSuperPackageNames(pkgName, fragments);
 				} else {
 					if (existing instanceof PackageFragmentRoot) {
 						int exisitingPosition = rootPositions.get(existing);
 						if (rootPosition != exisitingPosition) { // if not equal
-							this.packageFragments.put(
+							getWritablePackageFragments(packageFragments).put(
 								pkgName,
 								exisitingPosition < rootPosition ?
 									new IPackageFragmentRoot[] {(PackageFragmentRoot) existing, root} :
@@ -253,7 +265,7 @@ public class NameLookup implements SuffixConstants {
 							System.arraycopy(roots, 0, newRoots, 0, insertionIndex);
 							newRoots[insertionIndex] = root;
 							System.arraycopy(roots, insertionIndex, newRoots, insertionIndex+1, rootLength-insertionIndex);
-							this.packageFragments.put(pkgName, newRoots);
+							getWritablePackageFragments(packageFragments).put(pkgName, newRoots);
 						}
 					}
 				}
@@ -266,6 +278,42 @@ public class NameLookup implements SuffixConstants {
         }
 	}
 
+	/*
+	 * Returns the table of package fragments of this name lookup, after cloning it
+	 * if it is still the given table shared with the project.
+	 */
+	private HashtableOfArrayToObject getWritablePackageFragments(HashtableOfArrayToObject sharedPackageFragments) {
+		if (this.packageFragments == sharedPackageFragments) {
+			try {
+				this.packageFragments = (HashtableOfArrayToObject) sharedPackageFragments.clone();
+			} catch (CloneNotSupportedException e) {
+				// ignore (implementation of HashtableOfArrayToObject supports cloning)
+			}
+		}
+		return this.packageFragments;
+	}
+
+	/*
+	 * Returns the shared package index of the given root if it is a jar and if USE_JAR_INDEX is set.
+	 * Returns null otherwise, or if the index could not be built.
+	 */
+	private JarPackageIndex getJarPackageIndex(IPackageFragmentRoot root) {
+		if (!USE_JAR_INDEX || !(root instanceof JarPackageFragmentRoot))
+			return null;
+		if (this.jarPackageIndexes == null)
+			this.jarPackageIndexes = new HashMap();
+		Object index = this.jarPackageIndexes.get(root);
+		if (index == null) {
+			try {
+				index = JavaModelManager.getJavaModelManager().getJarPackageIndex((JarPackageFragmentRoot) root);
+			} catch (CoreException e) {
+				index = NO_JAR_INDEX; // fall back to the package fragments of the jar
+			}
+			this.jarPackageIndexes.put(root, index);
+		}
+		return index == NO_JAR_INDEX ? null : (JarPackageIndex) index;
+	}
+
 	/**
 	 * Returns true if:<ul>
 	 *  <li>the given type is an existing class and the flag's <code>ACCEPT_CLASSES</code>
@@ -1011,9 +1059,15 @@ public class NameLookup implements SuffixConstants {
 		if (VERBOSE)
 			start = System.currentTimeMillis();
 		try {
+			JarPackageIndex jarIndex = getJarPackageIndex((IPackageFragmentRoot) pkg.getParent());
+			String[] pkgName = ((PackageFragment) pkg).names;
 			if (!partialMatch) {
 				// exact match
 				if (requestor.isCanceled()) return;
+				// the index tells whether the class file is missing without reading the jar
+				if (jarIndex != null && !jarIndex.containsClassFile(pkgName, name))
+					return;
+				// a class file of the jar is still read through the jar type cache, so that a corrupt one is not answered
 				ClassFile classFile =  new ClassFile((PackageFragment) pkg, name);
 				if (classFile.existsUsingJarTypeCache()) {
 					IType type = classFile.getType();
@@ -1022,13 +1076,17 @@ public class NameLookup implements SuffixConstants {
 					}
 				}
 			} else {
+				// with an index, only create the class files that match instead of opening the package
+				String[] classFileNames = jarIndex == null ? null : jarIndex.getClassFileNames(pkgName);
 				IJavaElement[] classFiles= null;
-				try {
-					classFiles= pkg.getChildren();
-				} catch (JavaModelException npe) {
-					return; // the package is not present
+				if (classFileNames == null) {
+					try {
+						classFiles= pkg.getChildren();
+					} catch (JavaModelException npe) {
+						return; // the package is not present
+					}
 				}
-				int length= classFiles.length;
+				int length= classFileNames != null ? classFileNames.length : classFiles.length;
 				String unqualifiedName = name;
 				int index = name.lastIndexOf('$');
 				if (index != -1) {
@@ -1041,11 +1099,12 @@ public class NameLookup implements SuffixConstants {
 				for (int i = 0; i < length; i++) {
 					if (requestor.isCanceled())
 						return;
-					IJavaElement classFile= classFiles[i];
 					// MatchName will never have the extension ".class" and the elementName always will.
-					String elementName = classFile.getElementName();
+					String elementName = classFileNames != null ? classFileNames[i] : classFiles[i].getElementName();
 					if (elementName.regionMatches(true /*ignore case*/, 0, name, 0, matchLength)) {
-						IType type = ((ClassFile) classFile).getType();
+						IType type = classFileNames != null
+							? new ClassFile((PackageFragment) pkg, elementName).getType()
+							: ((ClassFile) classFiles[i]).getType();
 						String typeName = type.getElementName();
 						if (typeName.length() > 0 && !Character.isDigit(typeName.charAt(0))) { //not an anonymous type
 							if (nameMatches(unqualifiedName, type, true/*partial match*/) && acceptType(type, acceptFlags, false/*not a source type*/))
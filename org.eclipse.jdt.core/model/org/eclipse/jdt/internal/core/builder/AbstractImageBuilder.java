@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,6 +20,7 @@ import org.eclipse.jdt.internal.compiler.Compiler;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
 import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
 import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.impl.CompilerStatsReport;
 import org.eclipse.jdt.internal.compiler.lookup.TypeConstants;
 import org.eclipse.jdt.internal.compiler.problem.*;
 import org.eclipse.jdt.internal.compiler.util.SimpleSet;
@@ -265,6 +266,8 @@ protected void addAllSourceFiles(final ArrayList sourceFiles) throws CoreExcepti
 
 protected void cleanUp() {
 	this.nameEnvironment.cleanup();
+	if (this.compiler != null && this.compiler.statsListener instanceof CompilerStatsReport)
+		writeStatsReport((CompilerStatsReport) this.compiler.statsListener);
 
 	this.javaBuilder = null;
 	this.nameEnvironment = null;
@@ -540,10 +543,21 @@ protected Compiler newCompiler() {
 	// temporary code to allow the compiler to revert to a single thread
 	String setting = System.getProperty("jdt.compiler.useSingleThread"); //$NON-NLS-1$
 	newCompiler.useSingleThread = setting != null && setting.equals("true"); //$NON-NLS-1$
+	setting = System.getProperty("jdt.compiler.parseThreads"); //$NON-NLS-1$
+	if (setting != null) {
+		try {
+			newCompiler.parseThreads = Integer.parseInt(setting);
+		} catch (NumberFormatException e) {
+			// ignore and keep parsing method bodies on the processing thread
+		}
+	}
 
 	// enable the compiler reference info support
 	options.produceReferenceInfo = true;
 
+	if (JavaBuilder.STATS_LOCATION != null)
+		newCompiler.statsListener = new CompilerStatsReport();
+
 	if (options.complianceLevel >= ClassFileConstants.JDK1_6
 			&& options.processAnnotations) {
 		// support for Java 6 annotation processors
@@ -553,6 +567,33 @@ protected Compiler newCompiler() {
 	return newCompiler;
 }
 
+/*
+ * Writes the statistics of the units compiled by this builder to a new file of the stats location, named after the project.
+ */
+protected void writeStatsReport(CompilerStatsReport report) {
+	File folder = new File(JavaBuilder.STATS_LOCATION);
+	folder.mkdirs();
+	String prefix = this.javaBuilder.currentProject.getName() + '-' + System.currentTimeMillis();
+	File file = new File(folder, prefix + ".json"); //$NON-NLS-1$
+	for (int i = 1; file.exists(); i++)
+		file = new File(folder, prefix + '-' + i + ".json"); //$NON-NLS-1$
+	Writer writer = null;
+	try {
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), org.eclipse.jdt.internal.compiler.util.Util.UTF_8));
+		report.writeJSON(writer);
+	} catch (IOException e) {
+		Util.log(e, "Could not write the compilation statistics to " + file); //$NON-NLS-1$
+	} finally {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
+
 protected CompilationParticipantResult[] notifyParticipants(SourceFile[] unitsAboutToCompile) {
 	CompilationParticipantResult[] results = new CompilationParticipantResult[unitsAboutToCompile.length];
 	for (int i = unitsAboutToCompile.length; --i >= 0;)
@@ -829,7 +870,8 @@ protected void writeClassFileContents(ClassFile classFile, IFile file, String qu
 //	InputStream input = new SequenceInputStream(
 //			new ByteArrayInputStream(classFile.header, 0, classFile.headerOffset),
 //			new ByteArrayInputStream(classFile.contents, 0, classFile.contentsOffset));
-	InputStream input = new ByteArrayInputStream(classFile.getBytes());
+	byte[] bytes = classFile.getBytes();
+	InputStream input = new ByteArrayInputStream(bytes);
 	if (file.exists()) {
 		// Deal with shared output folders... last one wins... no collision cases detected
 		if (JavaBuilder.DEBUG)
@@ -843,5 +885,7 @@ protected void writeClassFileContents(ClassFile classFile, IFile file, String qu
 			System.out.println("Writing new class file " + file.getName());//$NON-NLS-1$
 		file.create(input, IResource.FORCE | IResource.DERIVED, null);
 	}
+	// remember the contents so that the next incremental build can skip this class file if it doesn't change
+	this.newState.recordClassFile(file, State.hashClassFile(bytes));
 }
 }
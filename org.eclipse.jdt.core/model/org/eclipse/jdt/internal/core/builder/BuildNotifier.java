@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -31,13 +31,19 @@ protected int fixedWarningCount;
 protected int workDone;
 protected int totalWork;
 protected String previousSubtask;
+// the problem counters of the build cycle when this build started
+private int initialNewErrorCount;
+private int initialFixedErrorCount;
+private int initialNewWarningCount;
+private int initialFixedWarningCount;
 
+// the problem counters of the build cycle, guarded by BuildNotifier.class since projects may be built in parallel
 public static int NewErrorCount = 0;
 public static int FixedErrorCount = 0;
 public static int NewWarningCount = 0;
 public static int FixedWarningCount = 0;
 
-public static void resetProblemCounters() {
+public static synchronized void resetProblemCounters() {
 	NewErrorCount = 0;
 	FixedErrorCount = 0;
 	NewWarningCount = 0;
@@ -47,10 +53,12 @@ public static void resetProblemCounters() {
 public BuildNotifier(IProgressMonitor monitor, IProject project) {
 	this.monitor = monitor;
 	this.cancelling = false;
-	this.newErrorCount = NewErrorCount;
-	this.fixedErrorCount = FixedErrorCount;
-	this.newWarningCount = NewWarningCount;
-	this.fixedWarningCount = FixedWarningCount;
+	synchronized (BuildNotifier.class) {
+		this.newErrorCount = this.initialNewErrorCount = NewErrorCount;
+		this.fixedErrorCount = this.initialFixedErrorCount = FixedErrorCount;
+		this.newWarningCount = this.initialNewWarningCount = NewWarningCount;
+		this.fixedWarningCount = this.initialFixedWarningCount = FixedWarningCount;
+	}
 	this.workDone = 0;
 	this.totalWork = 1000000;
 }
@@ -102,10 +110,18 @@ public void compiled(SourceFile unit) {
 }
 
 public void done() {
-	NewErrorCount = this.newErrorCount;
-	FixedErrorCount = this.fixedErrorCount;
-	NewWarningCount = this.newWarningCount;
-	FixedWarningCount = this.fixedWarningCount;
+	// only add the problems counted by this build, other builds may have ended since it started
+	synchronized (BuildNotifier.class) {
+		NewErrorCount += this.newErrorCount - this.initialNewErrorCount;
+		FixedErrorCount += this.fixedErrorCount - this.initialFixedErrorCount;
+		NewWarningCount += this.newWarningCount - this.initialNewWarningCount;
+		FixedWarningCount += this.fixedWarningCount - this.initialFixedWarningCount;
+		// do not add them again if done() is called twice
+		this.initialNewErrorCount = this.newErrorCount;
+		this.initialFixedErrorCount = this.fixedErrorCount;
+		this.initialNewWarningCount = this.newWarningCount;
+		this.initialFixedWarningCount = this.fixedWarningCount;
+	}
 
 	updateProgress(1.0f);
 	subTask(Messages.build_done);
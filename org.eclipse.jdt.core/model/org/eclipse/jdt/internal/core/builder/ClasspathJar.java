@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -52,7 +52,10 @@ static SimpleSet findPackageSet(ClasspathJar jar) {
 	String zipFileName = jar.zipFilename;
 	long lastModified = jar.lastModified();
 	long fileSize = new File(zipFileName).length();
-	PackageCacheEntry cacheEntry = (PackageCacheEntry) PackageCache.get(zipFileName);
+	PackageCacheEntry cacheEntry;
+	synchronized (PackageCache) {
+		cacheEntry = (PackageCacheEntry) PackageCache.get(zipFileName);
+	}
 	if (cacheEntry != null && cacheEntry.lastModified == lastModified && cacheEntry.fileSize == fileSize)
 		return cacheEntry.packageSet;
 
@@ -72,7 +75,9 @@ static SimpleSet findPackageSet(ClasspathJar jar) {
 		}
 	}
 
-	PackageCache.put(zipFileName, new PackageCacheEntry(lastModified, fileSize, packageSet));
+	synchronized (PackageCache) {
+		PackageCache.put(zipFileName, new PackageCacheEntry(lastModified, fileSize, packageSet));
+	}
 	return packageSet;
 }
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -821,15 +821,23 @@ protected void writeClassFileContents(ClassFile classfile, IFile file, String qu
 	// Before writing out the class file, compare it to the previous file
 	// If structural changes occurred then add dependent source files
 	byte[] bytes = classfile.getBytes();
+	long hash = State.hashClassFile(bytes);
 	if (file.exists()) {
-		if (writeClassFileCheck(file, qualifiedFileName, bytes) || compilationUnit.updateClassFile) { // see 46093
+		if (!compilationUnit.updateClassFile && this.newState.isUnchangedClassFile(file, hash)) {
+			// same contents as when the builder last wrote it, so neither read nor rewrite it
+			if (JavaBuilder.DEBUG)
+				System.out.println("Skipped over class file with unchanged hash " + file.getName());//$NON-NLS-1$
+		} else if (writeClassFileCheck(file, qualifiedFileName, bytes) || compilationUnit.updateClassFile) { // see 46093
 			if (JavaBuilder.DEBUG)
 				System.out.println("Writing changed class file " + file.getName());//$NON-NLS-1$
 			if (!file.isDerived())
 				file.setDerived(true, null);
 			file.setContents(new ByteArrayInputStream(bytes), true, false, null);
-		} else if (JavaBuilder.DEBUG) {
-			System.out.println("Skipped over unchanged class file " + file.getName());//$NON-NLS-1$
+			this.newState.recordClassFile(file, hash);
+		} else {
+			if (JavaBuilder.DEBUG)
+				System.out.println("Skipped over unchanged class file " + file.getName());//$NON-NLS-1$
+			this.newState.recordClassFile(file, hash);
 		}
 	} else {
 		if (isTopLevelType)
@@ -838,6 +846,7 @@ protected void writeClassFileContents(ClassFile classfile, IFile file, String qu
 			System.out.println("Writing new class file " + file.getName());//$NON-NLS-1$
 		try {
 			file.create(new ByteArrayInputStream(bytes), IResource.FORCE | IResource.DERIVED, null);
+			this.newState.recordClassFile(file, hash);
 		} catch (CoreException e) {
 			if (e.getStatus().getCode() == IResourceStatus.CASE_VARIANT_EXISTS) {
 				IStatus status = e.getStatus();
@@ -863,6 +872,7 @@ protected void writeClassFileContents(ClassFile classfile, IFile file, String qu
 						boolean success = false;
 						try {
 							file.create(new ByteArrayInputStream(bytes), IResource.FORCE | IResource.DERIVED, null);
+							this.newState.recordClassFile(file, hash);
 							success = true;
 						} catch (CoreException ignored) {
 							// ignore the second exception
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.jdt.internal.core.builder;
 
 import org.eclipse.core.resources.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
 
 import org.eclipse.jdt.core.*;
 import org.eclipse.jdt.core.compiler.*;
@@ -19,6 +20,7 @@ import org.eclipse.jdt.internal.compiler.util.SimpleLookupTable;
 import org.eclipse.jdt.internal.core.*;
 import org.eclipse.jdt.internal.core.util.Messages;
 import org.eclipse.jdt.internal.core.util.Util;
+import org.osgi.framework.Version;
 
 import java.io.*;
 import java.util.*;
@@ -40,6 +42,24 @@ public static final String SOURCE_ID = "JDT"; //$NON-NLS-1$
 public static boolean DEBUG = false;
 public static boolean SHOW_STATS = false;
 
+/**
+ * Folder receiving the statistics of each compiled unit, one JSON file per build of a project,
+ * or <code>null</code> if the statistics are not collected.
+ * Set with the <code>org.eclipse.jdt.core.builder.statsLocation</code> system property.
+ */
+public static String STATS_LOCATION = System.getProperty("org.eclipse.jdt.core.builder.statsLocation"); //$NON-NLS-1$
+
+/**
+ * Whether the builder only locks the project it builds instead of the whole workspace,
+ * so that a workspace allowing concurrent builds can build independent projects at the same time.
+ * Projects depend on the projects on their classpath through their dynamic references,
+ * so a project is still built after its prerequisites.
+ * Set with the <code>org.eclipse.jdt.core.builder.parallel</code> system property, and ignored unless the
+ * resources plug-in is recent enough to build projects concurrently (see {@link #supportsProjectRules()}).
+ */
+public static boolean PARALLEL_BUILD = "true".equals(System.getProperty("org.eclipse.jdt.core.builder.parallel")) //$NON-NLS-1$ //$NON-NLS-2$
+	&& supportsProjectRules();
+
 /**
  * A list of project names that have been built.
  * This list is used to reset the JavaModel.existingExternalFiles cache when a build cycle begins
@@ -271,6 +291,29 @@ private void buildDeltas(SimpleLookupTable deltas) {
 	}
 }
 
+/**
+ * Answers whether the running resources plug-in honours the scheduling rules of the builders
+ * and runs the builds of independent projects concurrently, which requires version 3.13 or above.
+ * The manifest of JDT Core allows older versions, down to 3.3.
+ */
+public static boolean supportsProjectRules() {
+	ResourcesPlugin plugin = ResourcesPlugin.getPlugin();
+	if (plugin == null) return false; // not running in OSGi
+	Version version = plugin.getBundle().getVersion();
+	return version.compareTo(new Version(3, 13, 0)) >= 0;
+}
+
+/*
+ * Each project is built with its own name environment and compiler, and the builder only
+ * modifies the resources of its project (output folders, markers), so the project is enough
+ * when building in parallel.
+ */
+public ISchedulingRule getRule(int kind, Map args) {
+	if (PARALLEL_BUILD)
+		return getProject();
+	return super.getRule(kind, args);
+}
+
 protected void clean(IProgressMonitor monitor) throws CoreException {
 	this.currentProject = getProject();
 	if (this.currentProject == null || !this.currentProject.isAccessible()) return;
@@ -592,11 +635,13 @@ private int initializeBuilder(int kind, boolean forBuild) throws CoreException {
 
 		// Flush the existing external files cache if this is the beginning of a build cycle
 		String projectName = this.currentProject.getName();
-		if (builtProjects == null || builtProjects.contains(projectName)) {
-			JavaModel.flushExternalFileCache();
-			builtProjects = new ArrayList();
+		synchronized (JavaBuilder.class) { // projects may be built in parallel
+			if (builtProjects == null || builtProjects.contains(projectName)) {
+				JavaModel.flushExternalFileCache();
+				builtProjects = new ArrayList();
+			}
+			builtProjects.add(projectName);
 		}
-		builtProjects.add(projectName);
 	}
 
 	this.binaryLocationsPerProject = new SimpleLookupTable(3);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -23,7 +23,7 @@ private ProblemFactory(Locale locale) {
 	super(locale);
 }
 
-public static ProblemFactory getProblemFactory(Locale locale) {
+public static synchronized ProblemFactory getProblemFactory(Locale locale) {
 	ProblemFactory factory = (ProblemFactory) factories.get(locale);
 	if (factory == null)
 		factories.put(locale, factory = new ProblemFactory(locale));
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -240,7 +240,9 @@ public static char[][][] internQualifiedNames(char[][][] qualifiedNames, boolean
 		// InternedQualifiedNames[6] is for size 7
 		QualifiedNameSet internedNames = InternedQualifiedNames[qLength <= MaxQualifiedNames ? qLength - 1 : 0];
 		qualifiedName = internSimpleNames(qualifiedName, false);
-		keepers[index++] = internedNames.add(qualifiedName);
+		synchronized (internedNames) { // projects may be built in parallel
+			keepers[index++] = internedNames.add(qualifiedName);
+		}
 	}
 	if (length > index) {
 		if (index == 0) return EmptyQualifiedNames;
@@ -294,7 +296,9 @@ public static char[][] internSimpleNames(char[][] simpleNames, boolean removeWel
 		// InternedSimpleNames[1] is for size 1...
 		// InternedSimpleNames[29] is for size 29
 		NameSet internedNames = InternedSimpleNames[sLength < MaxSimpleNames ? sLength : 0];
-		keepers[index++] = internedNames.add(name);
+		synchronized (internedNames) { // projects may be built in parallel
+			keepers[index++] = internedNames.add(name);
+		}
 	}
 	if (length > index) {
 		if (index == 0) return EmptySimpleNames;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,12 +16,15 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.internal.compiler.env.AccessRuleSet;
 import org.eclipse.jdt.internal.compiler.env.AccessRule;
+import org.eclipse.jdt.internal.compiler.util.HashtableOfObjectToInt;
 import org.eclipse.jdt.internal.compiler.util.SimpleLookupTable;
 import org.eclipse.jdt.internal.core.ClasspathAccessRule;
 import org.eclipse.jdt.internal.core.JavaModelManager;
 
 import java.io.*;
 import java.util.*;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
 
 public class State {
 // NOTE: this state cannot contain types that are not defined in this project
@@ -33,6 +36,9 @@ ClasspathLocation[] binaryLocations;
 SimpleLookupTable references;
 // keyed by qualified type name "p1/p2/A", value is the project relative path which defines this type "src1/p1/p2/A.java"
 public SimpleLookupTable typeLocators;
+// keyed by the full path of a class file written by the builder (i.e. "/P/bin/p1/p2/A.class"), value is a long[] of
+// the hash of its contents and of its modification stamp once written (see isUnchangedClassFile(IFile, long))
+SimpleLookupTable classFileHashes;
 
 int buildNumber;
 long lastStructuralBuildTime;
@@ -44,7 +50,11 @@ private long previousStructuralBuildTime;
 private StringSet structurallyChangedTypes;
 public static int MaxStructurallyChangedTypes = 100; // keep track of ? structurally changed types, otherwise consider all to be changed
 
-public static final byte VERSION = 0x001A; // fix for 287164
+// references & type locators tables of a state read from disk, decoded the first time they are needed (see decodeTables())
+// a state which is only used to check the structural changes of a prereq project is never decoded
+private byte[] encodedTables;
+
+public static final byte VERSION = 0x001C; // hashes of the written class files
 
 static final byte SOURCE_FOLDER = 1;
 static final byte BINARY_FOLDER = 2;
@@ -64,6 +74,7 @@ protected State(JavaBuilder javaBuilder) {
 	this.binaryLocations = javaBuilder.nameEnvironment.binaryLocations;
 	this.references = new SimpleLookupTable(7);
 	this.typeLocators = new SimpleLookupTable(7);
+	this.classFileHashes = new SimpleLookupTable(7);
 
 	this.buildNumber = 0; // indicates a full build
 	this.lastStructuralBuildTime = computeStructuralBuildTime(javaBuilder.lastState == null ? 0 : javaBuilder.lastState.lastStructuralBuildTime);
@@ -78,6 +89,7 @@ long computeStructuralBuildTime(long previousTime) {
 }
 
 void copyFrom(State lastState) {
+	lastState.decodeTables();
 	this.knownPackageNames = null;
 	this.previousStructuralBuildTime = lastState.previousStructuralBuildTime;
 	this.structurallyChangedTypes = lastState.structurallyChangedTypes;
@@ -88,6 +100,7 @@ void copyFrom(State lastState) {
 	try {
 		this.references = (SimpleLookupTable) lastState.references.clone();
 		this.typeLocators = (SimpleLookupTable) lastState.typeLocators.clone();
+		this.classFileHashes = (SimpleLookupTable) lastState.classFileHashes.clone();
 	} catch (CloneNotSupportedException e) {
 		this.references = new SimpleLookupTable(lastState.references.elementSize);
 		Object[] keyTable = lastState.references.keyTable;
@@ -102,9 +115,69 @@ void copyFrom(State lastState) {
 		for (int i = 0, l = keyTable.length; i < l; i++)
 			if (keyTable[i] != null)
 				this.typeLocators.put(keyTable[i], valueTable[i]);
+
+		this.classFileHashes = new SimpleLookupTable(lastState.classFileHashes.elementSize);
+		keyTable = lastState.classFileHashes.keyTable;
+		valueTable = lastState.classFileHashes.valueTable;
+		for (int i = 0, l = keyTable.length; i < l; i++)
+			if (keyTable[i] != null)
+				this.classFileHashes.put(keyTable[i], valueTable[i]);
 	}
 }
+/*
+ * Decodes the references and type locators tables if the state was read from disk and they are not decoded yet.
+ * Synchronized since a state can be shared by several threads (e.g. builds of dependent projects); taking the lock
+ * on each call also publishes the decoded tables to the threads which did not decode them.
+ */
+private synchronized void decodeTables() {
+	byte[] tables = this.encodedTables;
+	if (tables == null) return;
+	try {
+		readTables(new DataInputStream(new ByteArrayInputStream(tables)));
+	} catch (IOException e) {
+		// cannot happen since the content of the tables was checked when the state was read
+		org.eclipse.jdt.internal.core.util.Util.log(e, "Error decoding last build state for project " + this.javaProjectName); //$NON-NLS-1$
+		this.references = new SimpleLookupTable(7);
+		this.typeLocators = new SimpleLookupTable(7);
+	}
+	this.encodedTables = null;
+}
+
+/*
+ * Returns a hash of the given class file contents, the CRC-32 and the Adler-32 checksums of the bytes.
+ */
+static long hashClassFile(byte[] bytes) {
+	CRC32 crc = new CRC32();
+	crc.update(bytes);
+	Adler32 adler = new Adler32();
+	adler.update(bytes);
+	return (crc.getValue() << 32) | adler.getValue();
+}
+
+/*
+ * Answers whether the given existing class file already has contents with the given hash, i.e. it was
+ * written by the builder with these contents and has not been modified since, neither in the workspace
+ * (same modification stamp) nor on disk behind the workspace's back (in sync with the file system).
+ * When true, writing the class file again would not change it, and comparing it with the new contents is useless.
+ */
+boolean isUnchangedClassFile(IFile file, long hash) {
+	long[] recorded = (long[]) this.classFileHashes.get(file.getFullPath().toString());
+	return recorded != null
+		&& recorded[0] == hash
+		&& recorded[1] == file.getModificationStamp()
+		&& recorded[1] != IResource.NULL_STAMP
+		&& file.isSynchronized(IResource.DEPTH_ZERO);
+}
+
+/*
+ * Records the hash of the contents of the given class file once written by the builder.
+ */
+void recordClassFile(IFile file, long hash) {
+	this.classFileHashes.put(file.getFullPath().toString(), new long[] {hash, file.getModificationStamp()});
+}
+
 public char[][] getDefinedTypeNamesFor(String typeLocator) {
+	decodeTables();
 	Object c = this.references.get(typeLocator);
 	if (c instanceof AdditionalTypeCollection)
 		return ((AdditionalTypeCollection) c).definedTypeNames;
@@ -112,6 +185,7 @@ public char[][] getDefinedTypeNamesFor(String typeLocator) {
 }
 
 public SimpleLookupTable getReferences() {
+	decodeTables();
 	return this.references;
 }
 
@@ -126,12 +200,14 @@ StringSet getStructurallyChangedTypes(State prereqState) {
 }
 
 public boolean isDuplicateLocator(String qualifiedTypeName, String typeLocator) {
+	decodeTables();
 	String existing = (String) this.typeLocators.get(qualifiedTypeName);
 	return existing != null && !existing.equals(typeLocator);
 }
 
 public boolean isKnownPackage(String qualifiedPackageName) {
 	if (this.knownPackageNames == null) {
+		decodeTables();
 		ArrayList names = new ArrayList(this.typeLocators.elementSize);
 		Object[] keyTable = this.typeLocators.keyTable;
 		for (int i = 0, l = keyTable.length; i < l; i++) {
@@ -156,10 +232,12 @@ public boolean isKnownPackage(String qualifiedPackageName) {
 }
 
 public boolean isKnownType(String qualifiedTypeName) {
+	decodeTables();
 	return this.typeLocators.containsKey(qualifiedTypeName);
 }
 
 boolean isSourceFolderEmpty(IContainer sourceFolder) {
+	decodeTables();
 	String sourceFolderName = sourceFolder.getProjectRelativePath().addTrailingSeparator().toString();
 	Object[] table = this.typeLocators.valueTable;
 	for (int i = 0, l = table.length; i < l; i++)
@@ -169,6 +247,7 @@ boolean isSourceFolderEmpty(IContainer sourceFolder) {
 }
 
 void record(String typeLocator, char[][][] qualifiedRefs, char[][] simpleRefs, char[][] rootRefs, char[] mainTypeName, ArrayList typeNames) {
+	decodeTables();
 	if (typeNames.size() == 1 && CharOperation.equals(mainTypeName, (char[]) typeNames.get(0))) {
 		this.references.put(typeLocator, new ReferenceCollection(qualifiedRefs, simpleRefs, rootRefs));
 	} else {
@@ -179,6 +258,7 @@ void record(String typeLocator, char[][][] qualifiedRefs, char[][] simpleRefs, c
 }
 
 void recordLocatorForType(String qualifiedTypeName, String typeLocator) {
+	decodeTables();
 	this.knownPackageNames = null;
 	// in the common case, the qualifiedTypeName is a substring of the typeLocator so share the char[] by using String.substring()
 	int start = typeLocator.indexOf(qualifiedTypeName, 0);
@@ -194,6 +274,7 @@ void recordStructuralDependency(IProject prereqProject, State prereqState) {
 }
 
 void removeLocator(String typeLocatorToRemove) {
+	decodeTables();
 	this.knownPackageNames = null;
 	this.references.removeKey(typeLocatorToRemove);
 	this.typeLocators.removeValue(typeLocatorToRemove);
@@ -215,6 +296,7 @@ void removePackage(IResourceDelta sourceDelta) {
 }
 
 void removeQualifiedTypeName(String qualifiedTypeNameToRemove) {
+	decodeTables();
 	this.knownPackageNames = null;
 	this.typeLocators.removeKey(qualifiedTypeNameToRemove);
 }
@@ -279,63 +361,33 @@ static State read(IProject project, DataInputStream in) throws IOException {
 	for (int i = 0; i < length; i++)
 		newState.structuralBuildTimes.put(in.readUTF(), new Long(in.readLong()));
 
-	String[] internedTypeLocators = new String[length = in.readInt()];
-	for (int i = 0; i < length; i++)
-		internedTypeLocators[i] = in.readUTF();
-
-	newState.typeLocators = new SimpleLookupTable(length = in.readInt());
+	newState.classFileHashes = new SimpleLookupTable(length = in.readInt());
 	for (int i = 0; i < length; i++)
-		newState.recordLocatorForType(in.readUTF(), internedTypeLocators[in.readInt()]);
-
-	char[][] internedRootNames = ReferenceCollection.internSimpleNames(readNames(in), false);
-	char[][] internedSimpleNames = ReferenceCollection.internSimpleNames(readNames(in), false);
-	char[][][] internedQualifiedNames = new char[length = in.readInt()][][];
-	for (int i = 0; i < length; i++) {
-		int qLength = in.readInt();
-		char[][] qName = new char[qLength][];
-		for (int j = 0; j < qLength; j++)
-			qName[j] = internedSimpleNames[in.readInt()];
-		internedQualifiedNames[i] = qName;
-	}
-	internedQualifiedNames = ReferenceCollection.internQualifiedNames(internedQualifiedNames, false);
-
-	newState.references = new SimpleLookupTable(length = in.readInt());
-	for (int i = 0; i < length; i++) {
-		String typeLocator = internedTypeLocators[in.readInt()];
-		ReferenceCollection collection = null;
-		switch (in.readByte()) {
-			case 1 :
-				char[][] additionalTypeNames = readNames(in);
-				char[][][] qualifiedNames = new char[in.readInt()][][];
-				for (int j = 0, m = qualifiedNames.length; j < m; j++)
-					qualifiedNames[j] = internedQualifiedNames[in.readInt()];
-				char[][] simpleNames = new char[in.readInt()][];
-				for (int j = 0, m = simpleNames.length; j < m; j++)
-					simpleNames[j] = internedSimpleNames[in.readInt()];
-				char[][] rootNames = new char[in.readInt()][];
-				for (int j = 0, m = rootNames.length; j < m; j++)
-					rootNames[j] = internedRootNames[in.readInt()];
-				collection = new AdditionalTypeCollection(additionalTypeNames, qualifiedNames, simpleNames, rootNames);
-				break;
-			case 2 :
-				char[][][] qNames = new char[in.readInt()][][];
-				for (int j = 0, m = qNames.length; j < m; j++)
-					qNames[j] = internedQualifiedNames[in.readInt()];
-				char[][] sNames = new char[in.readInt()][];
-				for (int j = 0, m = sNames.length; j < m; j++)
-					sNames[j] = internedSimpleNames[in.readInt()];
-				char[][] rNames = new char[in.readInt()][];
-				for (int j = 0, m = rNames.length; j < m; j++)
-					rNames[j] = internedRootNames[in.readInt()];
-				collection = new ReferenceCollection(qNames, sNames, rNames);
-		}
-		newState.references.put(typeLocator, collection);
-	}
+		newState.classFileHashes.put(in.readUTF(), new long[] {in.readLong(), in.readLong()});
+
+	// the references & type locators tables are only decoded when needed
+	byte[] tables = new byte[in.readInt()];
+	long checksum = in.readLong();
+	in.readFully(tables);
+	CRC32 checksumCalculator = new CRC32();
+	checksumCalculator.update(tables);
+	if (checksum != checksumCalculator.getValue())
+		throw new IOException("Corrupted references table"); //$NON-NLS-1$
+	newState.encodedTables = tables;
 	if (JavaBuilder.DEBUG)
 		System.out.println("Successfully read state for " + newState.javaProjectName); //$NON-NLS-1$
 	return newState;
 }
 
+private static int readCompactInt(DataInputStream in) throws IOException {
+	int value = 0;
+	for (int shift = 0; ; shift += 7) {
+		int b = in.readUnsignedByte();
+		value |= (b & 0x7F) << shift;
+		if ((b & 0x80) == 0) return value;
+	}
+}
+
 private static char[] readName(DataInputStream in) throws IOException {
 	int nLength = in.readInt();
 	char[] name = new char[nLength];
@@ -365,6 +417,54 @@ private static AccessRuleSet readRestriction(DataInputStream in) throws IOExcept
 	return new AccessRuleSet(accessRules, in.readByte(), manager.intern(in.readUTF()));
 }
 
+private void readTables(DataInputStream in) throws IOException {
+	int length;
+	String[] internedTypeLocators = new String[length = readCompactInt(in)];
+	for (int i = 0; i < length; i++)
+		internedTypeLocators[i] = in.readUTF();
+
+	SimpleLookupTable locators = new SimpleLookupTable(length = readCompactInt(in));
+	this.typeLocators = locators;
+	for (int i = 0; i < length; i++) {
+		String typeLocator = internedTypeLocators[readCompactInt(in)];
+		// the qualified type name is written as its position in the type locator when it is a substring of it
+		int start = readCompactInt(in);
+		String qualifiedTypeName = start == 0 ? in.readUTF() : typeLocator.substring(start - 1, start - 1 + readCompactInt(in));
+		locators.put(qualifiedTypeName, typeLocator);
+	}
+
+	char[][] internedNames = new char[length = readCompactInt(in)][];
+	for (int i = 0; i < length; i++)
+		internedNames[i] = in.readUTF().toCharArray();
+	internedNames = ReferenceCollection.internSimpleNames(internedNames, false);
+	char[][][] internedQualifiedNames = new char[length = readCompactInt(in)][][];
+	for (int i = 0; i < length; i++)
+		internedQualifiedNames[i] = readNames(in, internedNames);
+	internedQualifiedNames = ReferenceCollection.internQualifiedNames(internedQualifiedNames, true);
+
+	SimpleLookupTable refs = new SimpleLookupTable(length = readCompactInt(in));
+	this.references = refs;
+	for (int i = 0; i < length; i++) {
+		String typeLocator = internedTypeLocators[readCompactInt(in)];
+		char[][] additionalTypeNames = in.readBoolean() ? readNames(in, internedNames) : null;
+		char[][][] qualifiedNames = new char[readCompactInt(in)][][];
+		for (int j = 0, m = qualifiedNames.length; j < m; j++)
+			qualifiedNames[j] = internedQualifiedNames[readCompactInt(in)];
+		char[][] simpleNames = readNames(in, internedNames);
+		char[][] rootNames = readNames(in, internedNames);
+		refs.put(typeLocator, additionalTypeNames == null
+			? new ReferenceCollection(qualifiedNames, simpleNames, rootNames)
+			: new AdditionalTypeCollection(additionalTypeNames, qualifiedNames, simpleNames, rootNames));
+	}
+}
+
+private static char[][] readNames(DataInputStream in, char[][] internedNames) throws IOException {
+	char[][] names = new char[readCompactInt(in)][];
+	for (int i = 0, length = names.length; i < length; i++)
+		names[i] = internedNames[readCompactInt(in)];
+	return names;
+}
+
 void tagAsNoopBuild() {
 	this.buildNumber = -1; // tag the project since it has no source folders and can be skipped
 }
@@ -484,11 +584,62 @@ void write(DataOutputStream out) throws IOException {
 			System.out.println("structuralBuildNumbers table is inconsistent"); //$NON-NLS-1$
 	}
 
+/*
+ * Class file hashes table, without the class files that were deleted since they were written
+ * String		class file full path
+ * long		hash of the contents
+ * long		modification stamp
+*/
+	IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+	keyTable = this.classFileHashes.keyTable;
+	valueTable = this.classFileHashes.valueTable;
+	length = 0;
+	String[] existingClassFiles = new String[this.classFileHashes.elementSize];
+	for (int i = 0, l = keyTable.length; i < l; i++) {
+		if (keyTable[i] != null && root.getFile(new Path((String) keyTable[i])).exists())
+			existingClassFiles[length++] = (String) keyTable[i];
+	}
+	out.writeInt(length);
+	for (int i = 0; i < length; i++) {
+		long[] recorded = (long[]) this.classFileHashes.get(existingClassFiles[i]);
+		out.writeUTF(existingClassFiles[i]);
+		out.writeLong(recorded[0]);
+		out.writeLong(recorded[1]);
+	}
+
+/*
+ * int		length of the tables
+ * long		checksum of the tables
+ * byte[]	references & type locators tables, see writeTables(DataOutputStream)
+ */
+	byte[] tables = this.encodedTables;
+	if (tables == null) {
+		ByteArrayOutputStream tablesBytes = new ByteArrayOutputStream(this.references.elementSize * 64);
+		DataOutputStream tablesOut = new DataOutputStream(tablesBytes);
+		writeTables(tablesOut);
+		tablesOut.flush();
+		tables = tablesBytes.toByteArray();
+	} // else the tables were never decoded, so they are unchanged
+	CRC32 checksumCalculator = new CRC32();
+	checksumCalculator.update(tables);
+	out.writeInt(tables.length);
+	out.writeLong(checksumCalculator.getValue());
+	out.write(tables);
+}
+
+/*
+ * All the numbers are written with writeCompactInt(int, DataOutputStream)
+ */
+private void writeTables(DataOutputStream out) throws IOException {
+	int length;
+	Object[] keyTable;
+	Object[] valueTable;
+
 /*
  * String[]	Interned type locators
  */
-	out.writeInt(length = this.references.elementSize);
-	SimpleLookupTable internedTypeLocators = new SimpleLookupTable(length);
+	writeCompactInt(length = this.references.elementSize, out);
+	HashtableOfObjectToInt internedTypeLocators = new HashtableOfObjectToInt(length);
 	if (length > 0) {
 		keyTable = this.references.keyTable;
 		for (int i = 0, l = keyTable.length; i < l; i++) {
@@ -496,7 +647,7 @@ void write(DataOutputStream out) throws IOException {
 				length--;
 				String key = (String) keyTable[i];
 				out.writeUTF(key);
-				internedTypeLocators.put(key, new Integer(internedTypeLocators.elementSize));
+				internedTypeLocators.put(key, internedTypeLocators.elementSize);
 			}
 		}
 		if (JavaBuilder.DEBUG && length != 0)
@@ -505,19 +656,27 @@ void write(DataOutputStream out) throws IOException {
 
 /*
  * Type locators table
- * String		type name
  * int			interned locator id
+ * int			1 + start of the type name in the type locator, followed by its length, or 0 followed by the type name
  */
-	out.writeInt(length = this.typeLocators.elementSize);
+	writeCompactInt(length = this.typeLocators.elementSize, out);
 	if (length > 0) {
 		keyTable = this.typeLocators.keyTable;
 		valueTable = this.typeLocators.valueTable;
 		for (int i = 0, l = keyTable.length; i < l; i++) {
 			if (keyTable[i] != null) {
 				length--;
-				out.writeUTF((String) keyTable[i]);
-				Integer index = (Integer) internedTypeLocators.get(valueTable[i]);
-				out.writeInt(index.intValue());
+				String typeName = (String) keyTable[i];
+				String typeLocator = (String) valueTable[i];
+				writeCompactInt(internedTypeLocators.get(typeLocator), out);
+				int start = typeLocator.indexOf(typeName);
+				if (start >= 0) {
+					writeCompactInt(start + 1, out);
+					writeCompactInt(typeName.length(), out);
+				} else {
+					writeCompactInt(0, out);
+					out.writeUTF(typeName);
+				}
 			}
 		}
 		if (JavaBuilder.DEBUG && length != 0)
@@ -525,127 +684,66 @@ void write(DataOutputStream out) throws IOException {
 	}
 
 /*
- * char[][]	Interned root names
- * char[][][]	Interned qualified names
- * char[][]	Interned simple names
+ * char[][]	Interned names: simple, root & additional type names
+ * char[][][]	Interned qualified names, as arrays of interned names
  */
-	SimpleLookupTable internedRootNames = new SimpleLookupTable(3);
-	SimpleLookupTable internedQualifiedNames = new SimpleLookupTable(31);
-	SimpleLookupTable internedSimpleNames = new SimpleLookupTable(31);
+	HashtableOfObjectToInt internedNames = new HashtableOfObjectToInt(31);
+	HashtableOfObjectToInt internedQualifiedNames = new HashtableOfObjectToInt(31);
+	ArrayList names = new ArrayList();
+	ArrayList qualifiedNames = new ArrayList();
 	valueTable = this.references.valueTable;
 	for (int i = 0, l = valueTable.length; i < l; i++) {
 		if (valueTable[i] != null) {
 			ReferenceCollection collection = (ReferenceCollection) valueTable[i];
-			char[][] rNames = collection.rootReferences;
-			for (int j = 0, m = rNames.length; j < m; j++) {
-				char[] rName = rNames[j];
-				if (!internedRootNames.containsKey(rName)) // remember the names have been interned
-					internedRootNames.put(rName, new Integer(internedRootNames.elementSize));
-			}
+			if (collection instanceof AdditionalTypeCollection)
+				internNames(((AdditionalTypeCollection) collection).definedTypeNames, internedNames, names);
 			char[][][] qNames = collection.qualifiedNameReferences;
 			for (int j = 0, m = qNames.length; j < m; j++) {
 				char[][] qName = qNames[j];
 				if (!internedQualifiedNames.containsKey(qName)) { // remember the names have been interned
-					internedQualifiedNames.put(qName, new Integer(internedQualifiedNames.elementSize));
-					for (int k = 0, n = qName.length; k < n; k++) {
-						char[] sName = qName[k];
-						if (!internedSimpleNames.containsKey(sName)) // remember the names have been interned
-							internedSimpleNames.put(sName, new Integer(internedSimpleNames.elementSize));
-					}
+					internedQualifiedNames.put(qName, qualifiedNames.size());
+					qualifiedNames.add(qName);
+					internNames(qName, internedNames, names);
 				}
 			}
-			char[][] sNames = collection.simpleNameReferences;
-			for (int j = 0, m = sNames.length; j < m; j++) {
-				char[] sName = sNames[j];
-				if (!internedSimpleNames.containsKey(sName)) // remember the names have been interned
-					internedSimpleNames.put(sName, new Integer(internedSimpleNames.elementSize));
-			}
-		}
-	}
-	char[][] internedArray = new char[internedRootNames.elementSize][];
-	Object[] rootNames = internedRootNames.keyTable;
-	Object[] positions = internedRootNames.valueTable;
-	for (int i = positions.length; --i >= 0; ) {
-		if (positions[i] != null) {
-			int index = ((Integer) positions[i]).intValue();
-			internedArray[index] = (char[]) rootNames[i];
-		}
-	}
-	writeNames(internedArray, out);
-	// now write the interned simple names
-	internedArray = new char[internedSimpleNames.elementSize][];
-	Object[] simpleNames = internedSimpleNames.keyTable;
-	positions = internedSimpleNames.valueTable;
-	for (int i = positions.length; --i >= 0; ) {
-		if (positions[i] != null) {
-			int index = ((Integer) positions[i]).intValue();
-			internedArray[index] = (char[]) simpleNames[i];
-		}
-	}
-	writeNames(internedArray, out);
-	// now write the interned qualified names as arrays of interned simple names
-	char[][][] internedQArray = new char[internedQualifiedNames.elementSize][][];
-	Object[] qualifiedNames = internedQualifiedNames.keyTable;
-	positions = internedQualifiedNames.valueTable;
-	for (int i = positions.length; --i >= 0; ) {
-		if (positions[i] != null) {
-			int index = ((Integer) positions[i]).intValue();
-			internedQArray[index] = (char[][]) qualifiedNames[i];
-		}
-	}
-	out.writeInt(length = internedQArray.length);
-	for (int i = 0; i < length; i++) {
-		char[][] qName = internedQArray[i];
-		int qLength = qName.length;
-		out.writeInt(qLength);
-		for (int j = 0; j < qLength; j++) {
-			Integer index = (Integer) internedSimpleNames.get(qName[j]);
-			out.writeInt(index.intValue());
+			internNames(collection.simpleNameReferences, internedNames, names);
+			internNames(collection.rootReferences, internedNames, names);
 		}
 	}
+	writeCompactInt(length = names.size(), out);
+	for (int i = 0; i < length; i++)
+		out.writeUTF(new String((char[]) names.get(i)));
+	writeCompactInt(length = qualifiedNames.size(), out);
+	for (int i = 0; i < length; i++)
+		writeNames((char[][]) qualifiedNames.get(i), internedNames, out);
 
 /*
  * References table
  * int		interned locator id
- * ReferenceCollection
+ * boolean	whether additional type names follow
+ * int[]	ids of the additional type names, of the qualified names, of the simple names & of the root names
 */
-	out.writeInt(length = this.references.elementSize);
+	writeCompactInt(length = this.references.elementSize, out);
 	if (length > 0) {
 		keyTable = this.references.keyTable;
 		for (int i = 0, l = keyTable.length; i < l; i++) {
 			if (keyTable[i] != null) {
 				length--;
-				Integer index = (Integer) internedTypeLocators.get(keyTable[i]);
-				out.writeInt(index.intValue());
+				writeCompactInt(internedTypeLocators.get(keyTable[i]), out);
 				ReferenceCollection collection = (ReferenceCollection) valueTable[i];
 				if (collection instanceof AdditionalTypeCollection) {
-					out.writeByte(1);
-					AdditionalTypeCollection atc = (AdditionalTypeCollection) collection;
-					writeNames(atc.definedTypeNames, out);
+					out.writeBoolean(true);
+					writeNames(((AdditionalTypeCollection) collection).definedTypeNames, internedNames, out);
 				} else {
-					out.writeByte(2);
+					out.writeBoolean(false);
 				}
 				char[][][] qNames = collection.qualifiedNameReferences;
 				int qLength = qNames.length;
-				out.writeInt(qLength);
-				for (int j = 0; j < qLength; j++) {
-					index = (Integer) internedQualifiedNames.get(qNames[j]);
-					out.writeInt(index.intValue());
-				}
-				char[][] sNames = collection.simpleNameReferences;
-				int sLength = sNames.length;
-				out.writeInt(sLength);
-				for (int j = 0; j < sLength; j++) {
-					index = (Integer) internedSimpleNames.get(sNames[j]);
-					out.writeInt(index.intValue());
-				}
-				char[][] rNames = collection.rootReferences;
-				int rLength = rNames.length;
-				out.writeInt(rLength);
-				for (int j = 0; j < rLength; j++) {
-					index = (Integer) internedRootNames.get(rNames[j]);
-					out.writeInt(index.intValue());
-				}
+				writeCompactInt(qLength, out);
+				for (int j = 0; j < qLength; j++)
+					writeCompactInt(internedQualifiedNames.get(qNames[j]), out);
+				writeNames(collection.simpleNameReferences, internedNames, out);
+				writeNames(collection.rootReferences, internedNames, out);
 			}
 		}
 		if (JavaBuilder.DEBUG && length != 0)
@@ -653,6 +751,24 @@ void write(DataOutputStream out) throws IOException {
 	}
 }
 
+private static void internNames(char[][] names, HashtableOfObjectToInt internedNames, ArrayList namesList) {
+	for (int i = 0, length = names.length; i < length; i++) {
+		char[] name = names[i];
+		if (!internedNames.containsKey(name)) { // remember the names have been interned
+			internedNames.put(name, namesList.size());
+			namesList.add(name);
+		}
+	}
+}
+
+private static void writeCompactInt(int value, DataOutputStream out) throws IOException {
+	while ((value & ~0x7F) != 0) {
+		out.writeByte((value & 0x7F) | 0x80);
+		value >>>= 7;
+	}
+	out.writeByte(value);
+}
+
 private void writeName(char[] name, DataOutputStream out) throws IOException {
 	int nLength = name.length;
 	out.writeInt(nLength);
@@ -667,6 +783,13 @@ private void writeNames(char[][] names, DataOutputStream out) throws IOException
 		writeName(names[i], out);
 }
 
+private static void writeNames(char[][] names, HashtableOfObjectToInt internedNames, DataOutputStream out) throws IOException {
+	int length = names.length;
+	writeCompactInt(length, out);
+	for (int i = 0; i < length; i++)
+		writeCompactInt(internedNames.get(names[i]), out);
+}
+
 private void writeRestriction(AccessRuleSet accessRuleSet, DataOutputStream out) throws IOException {
 	if (accessRuleSet == null) {
 		out.writeInt(0);
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.core.util;
+
+import java.util.Hashtable;
+
+/**
+ * A thread safe hashtable split in a fixed number of segments, each of them being
+ * a <code>Hashtable</code> guarded by its own lock. Threads accessing keys that fall in
+ * different segments do not contend with each other.
+ */
+public class StripedHashtable {
+
+	private static final int SEGMENTS = 16; // must be a power of 2
+
+	private final Hashtable[] segments;
+
+public StripedHashtable(int initialCapacity) {
+	this.segments = new Hashtable[SEGMENTS];
+	int segmentCapacity = Math.max(initialCapacity / SEGMENTS, 1);
+	for (int i = 0; i < SEGMENTS; i++)
+		this.segments[i] = new Hashtable(segmentCapacity);
+}
+
+private Hashtable segmentFor(Object key) {
+	int hash = key.hashCode();
+	// spread the higher bits as element hash codes often differ in their higher bits only
+	hash ^= (hash >>> 16) ^ (hash >>> 8);
+	return this.segments[hash & (SEGMENTS - 1)];
+}
+
+public Object get(Object key) {
+	return segmentFor(key).get(key);
+}
+
+public Object put(Object key, Object value) {
+	return segmentFor(key).put(key, value);
+}
+
+public Object remove(Object key) {
+	return segmentFor(key).remove(key);
+}
+
+/**
+ * Answers the number of entries. The answer is approximate when other threads
+ * modify the table at the same time.
+ */
+public int size() {
+	int size = 0;
+	for (int i = 0; i < SEGMENTS; i++)
+		size += this.segments[i].size();
+	return size;
+}
+
+public String toString() {
+	return "StripedHashtable of size " + size(); //$NON-NLS-1$
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,8 @@
 package org.eclipse.jdt.internal.core.index;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.search.*;
@@ -20,6 +22,8 @@ import org.eclipse.jdt.internal.compiler.util.HashtableOfObject;
 import org.eclipse.jdt.internal.compiler.util.SimpleLookupTable;
 import org.eclipse.jdt.internal.compiler.util.SimpleSet;
 import org.eclipse.jdt.internal.compiler.util.SimpleSetOfCharArray;
+import org.eclipse.jdt.internal.compiler.parser.ScannerHelper;
+import org.eclipse.jdt.internal.core.search.indexing.IIndexConstants;
 
 public class DiskIndex {
 
@@ -32,11 +36,17 @@ private int[] chunkOffsets;
 private int documentReferenceSize; // 1, 2 or more bytes... depends on # of document names
 private int startOfCategoryTables;
 private HashtableOfIntValues categoryOffsets, categoryEnds;
+private HashtableOfIntValues nameTableOffsets; // category name -> offset of the name tables of the category, if any
 
 private int cacheUserCount;
 private String[][] cachedChunks; // decompressed chunks of document names
 private HashtableOfObject categoryTables; // category name -> HashtableOfObject(words -> int[] of document #'s) or offset if not read yet
-private char[] cachedCategoryName;
+private char[][] cachedCategoryNames; // names of the category tables kept between queries, most recently used first
+int categoryTableHits, categoryTableMisses; // statistics of the cached category tables
+int nameTableQueries; // number of queries answered with the name tables, see findNameTableEntries()
+private ByteBuffer mappedFile; // read-only mapping of the index file, the OS pages in the parts which are used
+private boolean canMapFile;
+private int mappedIndex; // used when reading from the mappedFile
 
 private static final int DEFAULT_BUFFER_SIZE = 2048;
 private static int BUFFER_READ_SIZE = DEFAULT_BUFFER_SIZE;
@@ -46,17 +56,32 @@ private int bufferIndex, bufferEnd; // used when reading from the file into the
 private int streamEnd; // used when writing data from the streamBuffer to the file
 char separator = Index.DEFAULT_SEPARATOR;
 
-public static final String SIGNATURE= "INDEX VERSION 1.126"; //$NON-NLS-1$
+public static final String SIGNATURE= "INDEX VERSION 1.128"; //$NON-NLS-1$
 private static final char[] SIGNATURE_CHARS = SIGNATURE.toCharArray();
 public static boolean DEBUG = false;
+// index files are not mapped on Windows since a mapped file cannot be deleted until the mapping is garbage collected
+public static boolean MAP_FILES = File.separatorChar == '/' && !"false".equals(System.getProperty("jdt.core.mapIndexFiles")); //$NON-NLS-1$ //$NON-NLS-2$
+// whether the name tables of the categories searched with camel case and pattern queries are written, see writeNameTables()
+public static boolean WRITE_NAME_TABLES = !"false".equals(System.getProperty("jdt.core.indexNameTables")); //$NON-NLS-1$ //$NON-NLS-2$
 
 private static final int RE_INDEXED = -1;
 private static final int DELETED = -2;
 
 private static final int CHUNK_SIZE = 100;
 
+// the arrays of document numbers with at least this many elements are written before their category table
+static final int LARGE_ARRAY_SIZE = 256;
+
+// the category tables kept between queries cannot have more words than this limit in total
+// in practice, some tables can be greater than 500K when they contain more than 10K elements
+private static final int MAX_CACHED_WORDS = 40000;
+private static final int MAX_CACHED_TABLES = 8;
+
 private static final SimpleSetOfCharArray INTERNED_CATEGORY_NAMES = new SimpleSetOfCharArray(20);
 
+private static final char[][] NAME_TABLE_CATEGORIES = { IIndexConstants.TYPE_DECL };
+private static final int MIN_NAME_TABLE_SIZE = 64; // smaller tables are scanned
+
 static class IntList {
 
 int size;
@@ -91,9 +116,12 @@ DiskIndex() {
 	this.cacheUserCount = -1;
 	this.cachedChunks = null;
 	this.categoryTables = null;
-	this.cachedCategoryName = null;
+	this.cachedCategoryNames = null;
 	this.categoryOffsets = null;
 	this.categoryEnds = null;
+	this.nameTableOffsets = null;
+	this.mappedFile = null;
+	this.canMapFile = MAP_FILES;
 }
 DiskIndex(IndexLocation location) throws IOException {
 	this();
@@ -102,71 +130,105 @@ DiskIndex(IndexLocation location) throws IOException {
 	}
 	this.indexLocation = location;
 }
-SimpleSet addDocumentNames(String substring, MemoryIndex memoryIndex) throws IOException {
-	// must skip over documents which have been added/changed/deleted in the memory index
+SimpleSet addDocumentNames(String substring, SimpleSet results, SimpleLookupTable excludedDocuments) throws IOException {
+	// must skip over documents which have been added/changed/deleted in the memory index or in a newer segment
+	// the given results (initialized if needed) are those of the older segments of the index, if any
 	String[] docNames = readAllDocumentNames();
-	SimpleSet results = new SimpleSet(docNames.length);
+	if (results == null)
+		results = new SimpleSet(docNames.length);
 	if (substring == null) {
-		if (memoryIndex == null) {
+		if (excludedDocuments == null) {
 			for (int i = 0, l = docNames.length; i < l; i++)
 				results.add(docNames[i]);
 		} else {
-			SimpleLookupTable docsToRefs = memoryIndex.docsToReferences;
 			for (int i = 0, l = docNames.length; i < l; i++) {
 				String docName = docNames[i];
-				if (!docsToRefs.containsKey(docName))
+				if (!excludedDocuments.containsKey(docName))
 					results.add(docName);
 			}
 		}
 	} else {
-		if (memoryIndex == null) {
+		if (excludedDocuments == null) {
 			for (int i = 0, l = docNames.length; i < l; i++)
 				if (docNames[i].startsWith(substring, 0))
 					results.add(docNames[i]);
 		} else {
-			SimpleLookupTable docsToRefs = memoryIndex.docsToReferences;
 			for (int i = 0, l = docNames.length; i < l; i++) {
 				String docName = docNames[i];
-				if (docName.startsWith(substring, 0) && !docsToRefs.containsKey(docName))
+				if (docName.startsWith(substring, 0) && !excludedDocuments.containsKey(docName))
 					results.add(docName);
 			}
 		}
 	}
 	return results;
 }
-private HashtableOfObject addQueryResult(HashtableOfObject results, char[] word, Object docs, MemoryIndex memoryIndex, boolean prevResults) throws IOException {
-	// must skip over documents which have been added/changed/deleted in the memory index
+void addDocumentNames(char[] categoryName, SimpleLookupTable documents) throws IOException {
+	// adds the names of the documents which have entries in the given category, or of all the documents if the category is null
+	if (categoryName == null) {
+		String[] docNames = readAllDocumentNames();
+		for (int i = 0, l = docNames.length; i < l; i++)
+			documents.put(docNames[i], null);
+		return;
+	}
+	if (this.categoryOffsets == null) return; // file is empty
+	HashtableOfObject wordsToDocNumbers = readCategoryTable(categoryName, true);
+	if (wordsToDocNumbers == null) return;
+	Object[] values = wordsToDocNumbers.valueTable;
+	for (int i = 0, l = values.length; i < l; i++) {
+		if (values[i] != null) {
+			int[] docNumbers = readDocumentNumbers(values[i]);
+			for (int j = 0, m = docNumbers.length; j < m; j++)
+				documents.put(readDocumentName(docNumbers[j]), null);
+		}
+	}
+}
+void addEntriesTo(MemoryIndex memoryIndex, char[] excludedCategory) throws IOException {
+	// replaces the entries of the documents of this index in the given memory index,
+	// the documents which only have entries in the excluded category are thus removed from the memory index
+	String[] docNames = readAllDocumentNames();
+	for (int i = 0, l = docNames.length; i < l; i++)
+		memoryIndex.remove(docNames[i]);
+	if (this.categoryOffsets == null) return; // file is empty
+
+	char[][] categoryNames = this.categoryOffsets.keyTable;
+	for (int i = 0, l = categoryNames.length; i < l; i++) {
+		char[] categoryName = categoryNames[i];
+		if (categoryName == null || CharOperation.equals(categoryName, excludedCategory)) continue;
+		HashtableOfObject wordsToDocNumbers = readCategoryTable(categoryName, true);
+		if (wordsToDocNumbers == null) continue;
+		char[][] words = wordsToDocNumbers.keyTable;
+		Object[] values = wordsToDocNumbers.valueTable;
+		for (int j = 0, m = words.length; j < m; j++) {
+			if (words[j] != null) {
+				int[] docNumbers = readDocumentNumbers(values[j]);
+				for (int k = 0, n = docNumbers.length; k < n; k++)
+					memoryIndex.addIndexEntry(categoryName, words[j], docNames[docNumbers[k]]);
+			}
+		}
+		this.categoryTables.put(categoryName, null); // flush cached table
+	}
+}
+private HashtableOfObject addQueryResult(HashtableOfObject results, char[] word, Object docs, SimpleLookupTable excludedDocuments, boolean prevResults) {
+	// must skip over documents which have been added/changed/deleted in the memory index or in a newer segment
+	// when their names are read, from this segment (see EntryResult#getDocumentNames(Index))
 	if (results == null)
 		results = new HashtableOfObject(13);
 	EntryResult result = prevResults ? (EntryResult) results.get(word) : null;
-	if (memoryIndex == null) {
-		if (result == null)
-			results.putUnsafely(word, new EntryResult(word, docs));
-		else
-			result.addDocumentTable(docs);
-	} else {
-		SimpleLookupTable docsToRefs = memoryIndex.docsToReferences;
-		if (result == null) result = new EntryResult(word, null);
-		int[] docNumbers = readDocumentNumbers(docs);
-		for (int i = 0, l = docNumbers.length; i < l; i++) {
-			String docName = readDocumentName(docNumbers[i]);
-			if (!docsToRefs.containsKey(docName))
-				result.addDocumentName(docName);
-		}
-		if (!result.isEmpty())
-			results.put(word, result);
-	}
+	if (result == null)
+		results.putUnsafely(word, new EntryResult(word, docs, this, excludedDocuments));
+	else
+		result.addDocumentTable(docs, this, excludedDocuments);
 	return results;
 }
-HashtableOfObject addQueryResults(char[][] categories, char[] key, int matchRule, MemoryIndex memoryIndex) throws IOException {
+HashtableOfObject addQueryResults(char[][] categories, char[] key, int matchRule, HashtableOfObject results, SimpleLookupTable excludedDocuments) throws IOException {
 	// assumes sender has called startQuery() & will call stopQuery() when finished
-	if (this.categoryOffsets == null) return null; // file is empty
+	// the given results (initialized if needed) are those of the older segments of the index, if any
+	// the tables of document numbers are kept with this segment and the given excluded documents, to read their names lazily
+	if (this.categoryOffsets == null) return results; // file is empty
 
-	HashtableOfObject results = null; // initialized if needed
-	
 	// No need to check the results table for duplicacy while processing the 
 	// first category table or if the first category tables doesn't have any results.
-	boolean prevResults = false;
+	boolean prevResults = results != null;
 	if (key == null) {
 		for (int i = 0, l = categories.length; i < l; i++) {
 			HashtableOfObject wordsToDocNumbers = readCategoryTable(categories[i], true); // cache if key is null since its a definite match
@@ -177,7 +239,7 @@ HashtableOfObject addQueryResults(char[][] categories, char[] key, int matchRule
 					results = new HashtableOfObject(wordsToDocNumbers.elementSize);
 				for (int j = 0, m = words.length; j < m; j++)
 					if (words[j] != null)
-						results = addQueryResult(results, words[j], values[j], memoryIndex, prevResults);
+						results = addQueryResult(results, words[j], values[j], excludedDocuments, prevResults);
 			}
 			prevResults = results != null;
 		}
@@ -187,15 +249,25 @@ HashtableOfObject addQueryResults(char[][] categories, char[] key, int matchRule
 		switch (matchRule) {
 			case SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE:
 				for (int i = 0, l = categories.length; i < l; i++) {
+					if (!isCategoryTableCached(categories[i]) && getMappedFile() != null) {
+						results = addMappedQueryResults(results, categories[i], key, false, excludedDocuments, prevResults);
+						prevResults = results != null;
+						continue;
+					}
 					HashtableOfObject wordsToDocNumbers = readCategoryTable(categories[i], false);
 					Object value;
 					if (wordsToDocNumbers != null && (value = wordsToDocNumbers.get(key)) != null)
-						results = addQueryResult(results, key, value, memoryIndex, prevResults);
+						results = addQueryResult(results, key, value, excludedDocuments, prevResults);
 					prevResults = results != null;
 				}
 				break;
 			case SearchPattern.R_PREFIX_MATCH | SearchPattern.R_CASE_SENSITIVE:
 				for (int i = 0, l = categories.length; i < l; i++) {
+					if (!isCategoryTableCached(categories[i]) && getMappedFile() != null) {
+						results = addMappedQueryResults(results, categories[i], key, true, excludedDocuments, prevResults);
+						prevResults = results != null;
+						continue;
+					}
 					HashtableOfObject wordsToDocNumbers = readCategoryTable(categories[i], false);
 					if (wordsToDocNumbers != null) {
 						char[][] words = wordsToDocNumbers.keyTable;
@@ -203,7 +275,7 @@ HashtableOfObject addQueryResults(char[][] categories, char[] key, int matchRule
 						for (int j = 0, m = words.length; j < m; j++) {
 							char[] word = words[j];
 							if (word != null && key[0] == word[0] && CharOperation.prefixEquals(key, word))
-								results = addQueryResult(results, word, values[j], memoryIndex, prevResults);
+								results = addQueryResult(results, word, values[j], excludedDocuments, prevResults);
 						}
 					}
 					prevResults = results != null;
@@ -211,6 +283,14 @@ HashtableOfObject addQueryResults(char[][] categories, char[] key, int matchRule
 				break;
 			default:
 				for (int i = 0, l = categories.length; i < l; i++) {
+					if (!isCategoryTableCached(categories[i]) && getMappedFile() != null) {
+						int[] entryNumbers = findNameTableEntries(categories[i], key, matchRule);
+						if (entryNumbers != null) {
+							results = addMappedQueryResults(results, categories[i], entryNumbers, key, matchRule, excludedDocuments, prevResults);
+							prevResults = results != null;
+							continue;
+						}
+					}
 					HashtableOfObject wordsToDocNumbers = readCategoryTable(categories[i], false);
 					if (wordsToDocNumbers != null) {
 						char[][] words = wordsToDocNumbers.keyTable;
@@ -218,7 +298,7 @@ HashtableOfObject addQueryResults(char[][] categories, char[] key, int matchRule
 						for (int j = 0, m = words.length; j < m; j++) {
 							char[] word = words[j];
 							if (word != null && Index.isMatch(key, word, matchRule))
-								results = addQueryResult(results, word, values[j], memoryIndex, prevResults);
+								results = addQueryResult(results, word, values[j], excludedDocuments, prevResults);
 						}
 					}
 					prevResults = results != null;
@@ -229,6 +309,202 @@ HashtableOfObject addQueryResults(char[][] categories, char[] key, int matchRule
 	if (results == null) return null;
 	return results;
 }
+private synchronized HashtableOfObject addMappedQueryResults(HashtableOfObject results, char[] categoryName, char[] key, boolean isPrefix, SimpleLookupTable excludedDocuments, boolean prevResults) throws IOException {
+	// the words of a category table are sorted and preceded by the offsets of their entries,
+	// so matching words are found with a binary search in the mapped file, without reading the whole table
+	int offset = this.categoryOffsets.get(categoryName);
+	if (offset == HashtableOfIntValues.NO_VALUE)
+		return results;
+
+	ByteBuffer buffer = this.mappedFile;
+	int size = buffer.getInt(offset);
+	int low = 0, high = size - 1;
+	while (low <= high) { // find the first word which is not smaller than the key
+		int mid = (low + high) >>> 1;
+		this.mappedIndex = buffer.getInt(offset + 4 + mid * 4);
+		if (CharOperation.compareTo(readMappedChars(buffer), key) < 0)
+			low = mid + 1;
+		else
+			high = mid - 1;
+	}
+	for (int i = low; i < size; i++) {
+		this.mappedIndex = buffer.getInt(offset + 4 + i * 4);
+		char[] word = readMappedChars(buffer);
+		if (isPrefix ? !CharOperation.prefixEquals(key, word) : !CharOperation.equals(key, word))
+			break;
+		results = addQueryResult(results, word, readMappedDocumentTable(buffer), excludedDocuments, prevResults);
+		prevResults = results != null;
+	}
+	return results;
+}
+private synchronized HashtableOfObject addMappedQueryResults(HashtableOfObject results, char[] categoryName, int[] entryNumbers, char[] key, int matchRule, SimpleLookupTable excludedDocuments, boolean prevResults) throws IOException {
+	// only the words of the given entries of the category table can match
+	ByteBuffer buffer = this.mappedFile;
+	int offset = this.categoryOffsets.get(categoryName);
+	for (int i = 0, length = entryNumbers.length; i < length; i++) {
+		this.mappedIndex = buffer.getInt(offset + 4 + entryNumbers[i] * 4);
+		char[] word = readMappedChars(buffer);
+		if (Index.isMatch(key, word, matchRule)) {
+			results = addQueryResult(results, word, readMappedDocumentTable(buffer), excludedDocuments, prevResults);
+			prevResults = results != null;
+		}
+	}
+	return results;
+}
+private synchronized int[] findNameTableEntries(char[] categoryName, char[] key, int matchRule) throws IOException {
+	// answers the entries of the category table which may match the given key, or null if the name tables
+	// of the category do not help for this query and the whole table must be scanned
+	int[] entries = readNameTableEntries(categoryName, key, matchRule);
+	if (entries != null)
+		this.nameTableQueries++;
+	return entries;
+}
+private int[] readNameTableEntries(char[] categoryName, char[] key, int matchRule) throws IOException {
+	// must be synchronized by the sender
+	if (key == null || key.length == 0 || this.nameTableOffsets == null) return null;
+	int offset = this.nameTableOffsets.get(categoryName);
+	if (offset == HashtableOfIntValues.NO_VALUE) return null;
+
+	ByteBuffer buffer = this.mappedFile;
+	int tableOffset = this.categoryOffsets.get(categoryName);
+	int size = buffer.getInt(offset);
+	int humpsOffset = offset + 4;
+	int lowerCaseOffset = humpsOffset + size * 4;
+	switch (matchRule) {
+		case SearchPattern.R_EXACT_MATCH :
+		case SearchPattern.R_PREFIX_MATCH :
+			return findNameTableEntries(buffer, tableOffset, lowerCaseOffset, size, toLowerCase(key, key.length), false, null);
+		case SearchPattern.R_PATTERN_MATCH :
+		case SearchPattern.R_PATTERN_MATCH | SearchPattern.R_CASE_SENSITIVE :
+			// the words must start with the characters which precede the first wild card
+			int length = 0;
+			while (length < key.length && key[length] != '*' && key[length] != '?')
+				length++;
+			if (length == 0) return null;
+			return findNameTableEntries(buffer, tableOffset, lowerCaseOffset, size, toLowerCase(key, length), false, null);
+		case SearchPattern.R_CAMELCASE_MATCH :
+		case SearchPattern.R_CAMELCASE_SAME_PART_COUNT_MATCH :
+		case SearchPattern.R_CAMELCASE_MATCH | SearchPattern.R_CASE_SENSITIVE :
+		case SearchPattern.R_CAMELCASE_SAME_PART_COUNT_MATCH | SearchPattern.R_CASE_SENSITIVE :
+			// a camel case match starts with the characters which precede the first upper case letter or digit of the key,
+			// and the humps of the key are the first humps of the word (see CharOperation#camelCaseMatch())
+			int start = 1;
+			while (start < key.length && !isCamelCaseJump(key[start]))
+				start++;
+			int[] entries = findNameTableEntries(buffer, tableOffset, lowerCaseOffset, size, toLowerCase(key, start), false, null);
+			char[] humps = humps(key);
+			if (humps.length == 0 || entries.length == 0) return entries; // the case insensitive prefix matches are included
+			int[] humpEntries = findNameTableEntries(buffer, tableOffset, humpsOffset, size, humps, true, null);
+			if (humpEntries.length >= entries.length) return entries;
+			if ((matchRule & SearchPattern.R_CASE_SENSITIVE) != 0) return humpEntries;
+			// the words which start with the key ignoring case also match
+			return findNameTableEntries(buffer, tableOffset, lowerCaseOffset, size, toLowerCase(key, key.length), false, humpEntries);
+	}
+	return null;
+}
+private int[] findNameTableEntries(ByteBuffer buffer, int tableOffset, int nameTableOffset, int size, char[] prefix, boolean useHumps, int[] otherEntries) throws IOException {
+	// the name table contains the entry numbers of the category table sorted by the humps or the lower case form of their word,
+	// so the entries whose humps or lower case word start with the given prefix are found with a binary search
+	int low = 0, high = size - 1;
+	while (low <= high) { // find the first entry whose name is not smaller than the prefix
+		int mid = (low + high) >>> 1;
+		if (CharOperation.compareTo(readMappedName(buffer, tableOffset, nameTableOffset, mid, useHumps), prefix) < 0)
+			low = mid + 1;
+		else
+			high = mid - 1;
+	}
+	int end = low;
+	while (end < size && CharOperation.prefixEquals(prefix, readMappedName(buffer, tableOffset, nameTableOffset, end, useHumps)))
+		end++;
+	int count = end - low;
+	int otherCount = otherEntries == null ? 0 : otherEntries.length;
+	int[] entries = new int[otherCount + count];
+	for (int i = 0; i < count; i++)
+		entries[i] = buffer.getInt(nameTableOffset + (low + i) * 4);
+	if (otherCount > 0) {
+		// remove the duplicates
+		System.arraycopy(otherEntries, 0, entries, count, otherCount);
+		java.util.Arrays.sort(entries);
+		int unique = 0;
+		for (int i = 0, length = entries.length; i < length; i++)
+			if (unique == 0 || entries[unique - 1] != entries[i])
+				entries[unique++] = entries[i];
+		if (unique < entries.length)
+			System.arraycopy(entries, 0, entries = new int[unique], 0, unique);
+	}
+	return entries;
+}
+private char[] readMappedName(ByteBuffer buffer, int tableOffset, int nameTableOffset, int index, boolean useHumps) throws IOException {
+	this.mappedIndex = buffer.getInt(tableOffset + 4 + buffer.getInt(nameTableOffset + index * 4) * 4);
+	char[] word = readMappedChars(buffer);
+	return useHumps ? humps(word) : toLowerCase(word, word.length);
+}
+private static boolean isCamelCaseJump(char c) {
+	// same as CharOperation#camelCaseMatch(): the characters of a pattern which are not matched with the next character of the name
+	if (c < ScannerHelper.MAX_OBVIOUS)
+		return (ScannerHelper.OBVIOUS_IDENT_CHAR_NATURES[c] & (ScannerHelper.C_UPPER_LETTER | ScannerHelper.C_DIGIT)) != 0;
+	return !Character.isJavaIdentifierPart(c) || Character.isUpperCase(c) || Character.isDigit(c);
+}
+private static char[] humps(char[] word) {
+	// same as CharOperation#camelCaseMatch(): the characters of a name which are never skipped when matching a camel case pattern
+	int length = word.length;
+	char[] humps = new char[length];
+	int count = 0;
+	for (int i = 0; i < length; i++) {
+		char c = word[i];
+		if (c < ScannerHelper.MAX_OBVIOUS) {
+			if ((ScannerHelper.OBVIOUS_IDENT_CHAR_NATURES[c] & (ScannerHelper.C_LOWER_LETTER | ScannerHelper.C_SPECIAL | ScannerHelper.C_DIGIT)) == 0)
+				humps[count++] = c;
+		} else if ((!Character.isJavaIdentifierPart(c) || Character.isUpperCase(c)) && !Character.isDigit(c)) {
+			humps[count++] = c;
+		}
+	}
+	if (count < length)
+		System.arraycopy(humps, 0, humps = new char[count], 0, count);
+	return humps;
+}
+private static char[] toLowerCase(char[] word, int length) {
+	char[] result = new char[length];
+	for (int i = 0; i < length; i++)
+		result[i] = ScannerHelper.toLowerCase(word[i]);
+	return result;
+}
+private static boolean hasNameTables(char[] categoryName) {
+	for (int i = 0, length = NAME_TABLE_CATEGORIES.length; i < length; i++)
+		if (CharOperation.equals(NAME_TABLE_CATEGORIES[i], categoryName))
+			return true;
+	return false;
+}
+private synchronized boolean isCategoryTableCached(char[] categoryName) {
+	return this.categoryTables != null && this.categoryTables.get(categoryName) != null;
+}
+private synchronized ByteBuffer getMappedFile() {
+	if (this.mappedFile == null && this.canMapFile) {
+		this.canMapFile = false; // only try once
+		File indexFile = this.indexLocation.getIndexFile();
+		if (indexFile == null) return null; // the index is not stored in a file of its own (e.g. it is a jar entry)
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(indexFile, "r"); //$NON-NLS-1$
+			FileChannel channel = file.getChannel();
+			this.mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // the mapping stays valid once the file is closed
+		} catch (IOException e) {
+			if (DEBUG)
+				System.out.println("Failed to map index " + this.indexLocation); //$NON-NLS-1$
+		} catch (IllegalArgumentException e) {
+			// file is too big to be mapped, keep reading it as a stream
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+	return this.mappedFile;
+}
 private void cacheDocumentNames() throws IOException {
 	// will need all document names so get them now
 	this.cachedChunks = new String[this.numberOfChunks][];
@@ -438,6 +714,7 @@ private void initializeFrom(DiskIndex diskIndex, File newIndexFile) throws IOExc
 	int size = diskIndex.categoryOffsets == null ? 8 : diskIndex.categoryOffsets.elementSize;
 	this.categoryOffsets = new HashtableOfIntValues(size);
 	this.categoryEnds = new HashtableOfIntValues(size);
+	this.nameTableOffsets = new HashtableOfIntValues(3);
 	this.categoryTables = new HashtableOfObject(size);
 	this.separator = diskIndex.separator;
 }
@@ -611,6 +888,8 @@ private synchronized HashtableOfObject readCategoryTable(char[] categoryName, bo
 	} else {
 		HashtableOfObject cachedTable = (HashtableOfObject) this.categoryTables.get(categoryName);
 		if (cachedTable != null) {
+			this.categoryTableHits++;
+			touchCachedCategory(categoryName);
 			if (readDocNumbers) { // must cache remaining document number arrays
 				Object[] arrayOffsets = cachedTable.valueTable;
 				for (int i = 0, l = arrayOffsets.length; i < l; i++)
@@ -621,6 +900,7 @@ private synchronized HashtableOfObject readCategoryTable(char[] categoryName, bo
 		}
 	}
 
+	this.categoryTableMisses++;
 	InputStream stream = this.indexLocation.getInputStream();
 	HashtableOfObject categoryTable = null;
 	char[][] matchingWords = null;
@@ -651,7 +931,8 @@ private synchronized HashtableOfObject readCategoryTable(char[] categoryName, bo
 			System.err.println("--------------------   END   --------------------"); //$NON-NLS-1$
 			throw oom;
 		}
-		int largeArraySize = 256;
+		for (int i = 0; i < size; i++)
+			readStreamInt(stream); // skip the offsets of the entries, only used to search the mapped file
 		for (int i = 0; i < size; i++) {
 			char[] word = readStreamChars(stream);
 			int arrayOffset = readStreamInt(stream);
@@ -661,7 +942,7 @@ private synchronized HashtableOfObject readCategoryTable(char[] categoryName, bo
 			//		256 if the array size >= 256 followed by another int which is the offset to the array (written prior to the table)
 			if (arrayOffset <= 0) {
 				categoryTable.putUnsafely(word, new int[] {-arrayOffset}); // store 1 element array by negating documentNumber
-			} else if (arrayOffset < largeArraySize) {
+			} else if (arrayOffset < LARGE_ARRAY_SIZE) {
 				categoryTable.putUnsafely(word, readStreamDocumentArray(stream, arrayOffset)); // read in-lined array providing size
 			} else {
 				arrayOffset = readStreamInt(stream); // read actual offset
@@ -675,10 +956,11 @@ private synchronized HashtableOfObject readCategoryTable(char[] categoryName, bo
 				categoryTable.putUnsafely(word, new Integer(arrayOffset)); // offset to array in the file
 			}
 		}
-		this.categoryTables.put(INTERNED_CATEGORY_NAMES.get(categoryName), categoryTable);
+		char[] internedName = INTERNED_CATEGORY_NAMES.get(categoryName);
+		this.categoryTables.put(internedName, categoryTable);
 		// cache the table as long as its not too big
-		// in practice, some tables can be greater than 500K when they contain more than 10K elements
-		this.cachedCategoryName = categoryTable.elementSize < 20000 ? categoryName : null;
+		if (categoryTable.elementSize < MAX_CACHED_WORDS / 2)
+			touchCachedCategory(internedName);
 	} catch (IOException ioe) {
 		this.streamBuffer = null;
 		throw ioe;
@@ -743,16 +1025,23 @@ synchronized String readDocumentName(int docNumber) throws IOException {
 			throw new IllegalArgumentException();
 		this.streamBuffer = new byte[numberOfBytes];
 		this.bufferIndex = 0;
-		InputStream file = this.indexLocation.getInputStream();
-		try {
-			file.skip(start);
-			if (file.read(this.streamBuffer, 0, numberOfBytes) != numberOfBytes)
-				throw new IOException();
-		} catch (IOException ioe) {
-			this.streamBuffer = null;
-			throw ioe;
-		} finally {
-			file.close();
+		ByteBuffer buffer = getMappedFile();
+		if (buffer != null) {
+			ByteBuffer chunkBuffer = buffer.duplicate();
+			chunkBuffer.position(start);
+			chunkBuffer.get(this.streamBuffer, 0, numberOfBytes);
+		} else {
+			InputStream file = this.indexLocation.getInputStream();
+			try {
+				file.skip(start);
+				if (file.read(this.streamBuffer, 0, numberOfBytes) != numberOfBytes)
+					throw new IOException();
+			} catch (IOException ioe) {
+				this.streamBuffer = null;
+				throw ioe;
+			} finally {
+				file.close();
+			}
 		}
 		int numberOfNames = isLastChunk ? this.sizeOfLastChunk : CHUNK_SIZE;
 		chunk = new String[numberOfNames];
@@ -772,6 +1061,11 @@ synchronized int[] readDocumentNumbers(Object arrayOffset) throws IOException {
 	if (arrayOffset instanceof int[])
 		return (int[]) arrayOffset;
 
+	ByteBuffer buffer = getMappedFile();
+	if (buffer != null) {
+		this.mappedIndex = ((Integer) arrayOffset).intValue();
+		return readMappedDocumentArray(buffer, readMappedInt(buffer));
+	}
 	InputStream stream = this.indexLocation.getInputStream();
 	try {
 		int offset = ((Integer) arrayOffset).intValue();
@@ -828,6 +1122,12 @@ private void readHeaderInfo(InputStream stream) throws IOException {
 	if (previousCategory != null) {
 		this.categoryEnds.put(previousCategory, this.headerInfoOffset); // cache end of the category table
 	}
+	size = readStreamInt(stream);
+	this.nameTableOffsets = new HashtableOfIntValues(size);
+	for (int i = 0; i < size; i++) {
+		char[] categoryName = INTERNED_CATEGORY_NAMES.get(readStreamChars(stream));
+		this.nameTableOffsets.put(categoryName, readStreamInt(stream)); // cache offset to the name tables
+	}
 	this.categoryTables = new HashtableOfObject(3);
 }
 synchronized void startQuery() {
@@ -839,16 +1139,127 @@ synchronized void stopQuery() {
 		this.cacheUserCount = -1;
 		this.cachedChunks = null;
 		if (this.categoryTables != null) {
-			if (this.cachedCategoryName == null) {
+			if (this.cachedCategoryNames == null) {
 				this.categoryTables = null;
-			} else if (this.categoryTables.elementSize > 1) {
+			} else {
+				// keep the most recently used tables as long as they are not too big in total
 				HashtableOfObject newTables = new HashtableOfObject(3);
-				newTables.put(this.cachedCategoryName, this.categoryTables.get(this.cachedCategoryName));
-				this.categoryTables = newTables;
+				int words = 0;
+				for (int i = 0, length = this.cachedCategoryNames.length; i < length; i++) {
+					char[] categoryName = this.cachedCategoryNames[i];
+					HashtableOfObject table = (HashtableOfObject) this.categoryTables.get(categoryName);
+					if (table == null) continue; // flushed table
+					if ((words += table.elementSize) > MAX_CACHED_WORDS) {
+						System.arraycopy(this.cachedCategoryNames, 0, this.cachedCategoryNames = new char[i][], 0, i);
+						break;
+					}
+					newTables.put(categoryName, table);
+				}
+				this.categoryTables = newTables.elementSize == 0 ? null : newTables;
 			}
 		}
 	}
 }
+private void touchCachedCategory(char[] categoryName) {
+	// moves the given category to the front of the most recently used categories
+	char[][] names = this.cachedCategoryNames;
+	if (names == null) {
+		this.cachedCategoryNames = new char[][] {categoryName};
+		return;
+	}
+	int length = names.length;
+	int index = 0;
+	while (index < length && !CharOperation.equals(names[index], categoryName))
+		index++;
+	if (index == length) { // new category
+		if (length < MAX_CACHED_TABLES)
+			System.arraycopy(names, 0, names = this.cachedCategoryNames = new char[length + 1][], 1, length);
+		else
+			System.arraycopy(names, 0, names, 1, length - 1); // forget the least recently used
+	} else if (index > 0) {
+		System.arraycopy(names, 0, names, 1, index);
+	}
+	names[0] = categoryName;
+}
+private char[] readMappedChars(ByteBuffer buffer) throws IOException {
+	// same encoding as readStreamChars()
+	int length = (buffer.get(this.mappedIndex++) & 0xFF) << 8;
+	length += buffer.get(this.mappedIndex++) & 0xFF;
+	char[] word = new char[length];
+	for (int i = 0; i < length; i++) {
+		byte b = buffer.get(this.mappedIndex++);
+		switch (b & 0xF0) {
+			case 0x00 :
+			case 0x10 :
+			case 0x20 :
+			case 0x30 :
+			case 0x40 :
+			case 0x50 :
+			case 0x60 :
+			case 0x70 :
+				word[i] = (char) b;
+				break;
+			case 0xC0 :
+			case 0xD0 :
+				char next = (char) buffer.get(this.mappedIndex++);
+				if ((next & 0xC0) != 0x80) {
+					throw new UTFDataFormatException();
+				}
+				char ch = (char) ((b & 0x1F) << 6);
+				ch |= next & 0x3F;
+				word[i] = ch;
+				break;
+			case 0xE0 :
+				char first = (char) buffer.get(this.mappedIndex++);
+				char second = (char) buffer.get(this.mappedIndex++);
+				if ((first & second & 0xC0) != 0x80) {
+					throw new UTFDataFormatException();
+				}
+				ch = (char) ((b & 0x0F) << 12);
+				ch |= ((first& 0x3F) << 6);
+				ch |= second & 0x3F;
+				word[i] = ch;
+				break;
+			default:
+				throw new UTFDataFormatException();
+		}
+	}
+	return word;
+}
+private int[] readMappedDocumentArray(ByteBuffer buffer, int arraySize) {
+	int[] indexes = new int[arraySize];
+	switch (this.documentReferenceSize) {
+		case 1 :
+			for (int i = 0; i < arraySize; i++)
+				indexes[i] = buffer.get(this.mappedIndex++) & 0xFF;
+			break;
+		case 2 :
+			for (int i = 0; i < arraySize; i++) {
+				indexes[i] = buffer.getShort(this.mappedIndex) & 0xFFFF;
+				this.mappedIndex += 2;
+			}
+			break;
+		default :
+			for (int i = 0; i < arraySize; i++)
+				indexes[i] = readMappedInt(buffer);
+			break;
+	}
+	return indexes;
+}
+private Object readMappedDocumentTable(ByteBuffer buffer) {
+	// same encoding as in readCategoryTable(): answer the document numbers or the offset of a large array of document numbers
+	int arrayOffset = readMappedInt(buffer);
+	if (arrayOffset <= 0)
+		return new int[] {-arrayOffset};
+	if (arrayOffset < LARGE_ARRAY_SIZE)
+		return readMappedDocumentArray(buffer, arrayOffset);
+	return new Integer(readMappedInt(buffer));
+}
+private int readMappedInt(ByteBuffer buffer) {
+	int val = buffer.getInt(this.mappedIndex);
+	this.mappedIndex += 4;
+	return val;
+}
 private void readStreamBuffer(InputStream stream) throws IOException {
 	// if we're about to read a known amount at the end of the existing buffer, but it does not completely fit
 	// so we need to shift the remaining bytes to be read, and fill the buffer from the stream
@@ -1069,13 +1480,12 @@ private void writeCategories(FileOutputStream stream) throws IOException {
 private void writeCategoryTable(char[] categoryName, HashtableOfObject wordsToDocs, FileOutputStream stream) throws IOException {
 	// the format of a category table is as follows:
 	// any document number arrays with >= 256 elements are written before the table (the offset to each array is remembered)
-	// then the number of word->int[] pairs in the table is written
-	// for each word -> int[] pair, the word is written followed by:
+	// then the number of word->int[] pairs in the table is written, followed by the file offset of each pair
+	// for each word -> int[] pair, in sorted word order, the word is written followed by:
 	//		an int <= 0 if the array size == 1
 	//		an int > 1 & < 256 for the size of the array if its > 1 & < 256, the document array follows immediately
 	//		256 if the array size >= 256 followed by another int which is the offset to the array (written prior to the table)
 
-	int largeArraySize = 256;
 	Object[] values = wordsToDocs.valueTable;
 	for (int i = 0, l = values.length; i < l; i++) {
 		Object o = values[i];
@@ -1083,7 +1493,7 @@ private void writeCategoryTable(char[] categoryName, HashtableOfObject wordsToDo
 			if (o instanceof IntList)
 				o = values[i] = ((IntList) values[i]).asArray();
 			int[] documentNumbers = (int[]) o;
-			if (documentNumbers.length >= largeArraySize) {
+			if (documentNumbers.length >= LARGE_ARRAY_SIZE) {
 				values[i] = new Integer(this.streamEnd);
 				writeDocumentNumbers(documentNumbers, stream);
 			}
@@ -1092,24 +1502,95 @@ private void writeCategoryTable(char[] categoryName, HashtableOfObject wordsToDo
 
 	this.categoryOffsets.put(categoryName, this.streamEnd); // remember the offset to the start of the table
 	this.categoryTables.put(categoryName, null); // flush cached table
-	writeStreamInt(stream, wordsToDocs.elementSize);
-	char[][] words = wordsToDocs.keyTable;
-	for (int i = 0, l = words.length; i < l; i++) {
-		Object o = values[i];
-		if (o != null) {
-			writeStreamChars(stream, words[i]);
-			if (o instanceof int[]) {
-				int[] documentNumbers = (int[]) o;
-				if (documentNumbers.length == 1)
-					writeStreamInt(stream, -documentNumbers[0]); // store an array of 1 element by negating the documentNumber (can be zero)
-				else
-					writeDocumentNumbers(documentNumbers, stream);
-			} else {
-				writeStreamInt(stream, largeArraySize); // mark to identify that an offset follows
-				writeStreamInt(stream, ((Integer) o).intValue()); // offset in the file of the array of document numbers
-			}
+
+	char[][] keys = wordsToDocs.keyTable;
+	char[][] words = new char[wordsToDocs.elementSize][];
+	int size = 0;
+	for (int i = 0, l = keys.length; i < l; i++)
+		if (values[i] != null)
+			words[size++] = keys[i];
+	if (size < words.length)
+		System.arraycopy(words, 0, words = new char[size][], 0, size);
+	Util.sort(words);
+	writeStreamInt(stream, size);
+	int entryOffset = this.streamEnd + size * 4;
+	for (int i = 0; i < size; i++) {
+		writeStreamInt(stream, entryOffset);
+		entryOffset += entrySize(words[i], wordsToDocs.get(words[i]));
+	}
+	for (int i = 0; i < size; i++) {
+		Object o = wordsToDocs.get(words[i]);
+		writeStreamChars(stream, words[i]);
+		if (o instanceof int[]) {
+			int[] documentNumbers = (int[]) o;
+			if (documentNumbers.length == 1)
+				writeStreamInt(stream, -documentNumbers[0]); // store an array of 1 element by negating the documentNumber (can be zero)
+			else
+				writeDocumentNumbers(documentNumbers, stream);
+		} else {
+			writeStreamInt(stream, LARGE_ARRAY_SIZE); // mark to identify that an offset follows
+			writeStreamInt(stream, ((Integer) o).intValue()); // offset in the file of the array of document numbers
 		}
 	}
+	if (WRITE_NAME_TABLES && size >= MIN_NAME_TABLE_SIZE && hasNameTables(categoryName))
+		writeNameTables(categoryName, words, stream);
+}
+private void writeNameTables(char[] categoryName, char[][] sortedWords, FileOutputStream stream) throws IOException {
+	// the name tables of a category follow its table: the number of entries is written, followed by the entry numbers
+	// sorted by the humps of their word, then by the entry numbers sorted by the lower case form of their word
+	// so that camel case, prefix and pattern queries only test the entries found with a binary search (see findNameTableEntries())
+	int size = sortedWords.length;
+	this.nameTableOffsets.put(categoryName, this.streamEnd); // remember the offset to the name tables
+	writeStreamInt(stream, size);
+
+	final char[][] names = new char[size][];
+	Integer[] entries = new Integer[size];
+	Util.Comparer comparer = new Util.Comparer() {
+		public int compare(Object a, Object b) {
+			return CharOperation.compareTo(names[((Integer) a).intValue()], names[((Integer) b).intValue()]);
+		}
+	};
+	for (int i = 0; i < size; i++) {
+		names[i] = humps(sortedWords[i]);
+		entries[i] = new Integer(i);
+	}
+	Util.sort(entries, comparer);
+	for (int i = 0; i < size; i++)
+		writeStreamInt(stream, entries[i].intValue());
+
+	for (int i = 0; i < size; i++) {
+		names[i] = toLowerCase(sortedWords[i], sortedWords[i].length);
+		entries[i] = new Integer(i);
+	}
+	Util.sort(entries, comparer);
+	for (int i = 0; i < size; i++)
+		writeStreamInt(stream, entries[i].intValue());
+}
+private int entrySize(char[] word, Object documentNumbers) {
+	// number of bytes used by writeCategoryTable() to write the word -> int[] pair
+	int size = 2;
+	for (int i = 0, l = word.length; i < l; i++) {
+		int ch = word[i];
+		if ((ch & 0x007F) == ch)
+			size++;
+		else if ((ch & 0x07FF) == ch)
+			size += 2;
+		else
+			size += 3;
+	}
+	if (!(documentNumbers instanceof int[]))
+		return size + 8; // offset to a large array
+	int length = ((int[]) documentNumbers).length;
+	if (length == 1)
+		return size + 4;
+	switch (this.documentReferenceSize) {
+		case 1 :
+			return size + 4 + length;
+		case 2 :
+			return size + 4 + length * 2;
+		default :
+			return size + 4 + length * 4;
+	}
 }
 private void writeDocumentNumbers(int[] documentNumbers, FileOutputStream stream) throws IOException {
 	// must store length as a positive int to detect in-lined array of 1 element
@@ -1185,6 +1666,16 @@ private void writeHeaderInfo(FileOutputStream stream) throws IOException {
 			writeStreamInt(stream, offsets[i]);
 		}
 	}
+	// followed by the offsets to the name tables
+	writeStreamInt(stream, this.nameTableOffsets.elementSize);
+	categoryNames = this.nameTableOffsets.keyTable;
+	offsets = this.nameTableOffsets.valueTable;
+	for (int i = 0, l = categoryNames.length; i < l; i++) {
+		if (categoryNames[i] != null) {
+			writeStreamChars(stream, categoryNames[i]);
+			writeStreamInt(stream, offsets[i]);
+		}
+	}
 	// ensure buffer is written to the stream
 	if (this.bufferIndex > 0) {
 		stream.write(this.streamBuffer, 0, this.bufferIndex);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,18 +11,25 @@
 package org.eclipse.jdt.internal.core.index;
 
 import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.util.SimpleLookupTable;
 import org.eclipse.jdt.internal.compiler.util.SimpleSet;
 
 public class EntryResult {
 
 private char[] word;
 private Object[] documentTables;
+private DiskIndex[] documentSegments; // for each table, the disk index or delta segment it was read from
+private SimpleLookupTable[] excludedDocuments; // for each table, the documents to skip, or null
 private SimpleSet documentNames;
 
 public EntryResult(char[] word, Object table) {
 	this.word = word;
 	if (table != null)
-		this.documentTables = new Object[] {table};
+		addDocumentTable(table, null, null);
+}
+EntryResult(char[] word, Object table, DiskIndex segment, SimpleLookupTable excluded) {
+	this.word = word;
+	addDocumentTable(table, segment, excluded);
 }
 public void addDocumentName(String documentName) {
 	if (this.documentNames == null)
@@ -30,35 +37,78 @@ public void addDocumentName(String documentName) {
 	this.documentNames.add(documentName);
 }
 public void addDocumentTable(Object table) {
+	addDocumentTable(table, null, null);
+}
+/*
+ * Adds a table of document numbers of the given segment (null for the disk index of the index).
+ * The names of its documents are read when they are asked for, skipping the given excluded documents.
+ */
+void addDocumentTable(Object table, DiskIndex segment, SimpleLookupTable excluded) {
 	if (this.documentTables != null) {
 		int length = this.documentTables.length;
 		System.arraycopy(this.documentTables, 0, this.documentTables = new Object[length + 1], 0, length);
+		System.arraycopy(this.documentSegments, 0, this.documentSegments = new DiskIndex[length + 1], 0, length);
+		System.arraycopy(this.excludedDocuments, 0, this.excludedDocuments = new SimpleLookupTable[length + 1], 0, length);
 		this.documentTables[length] = table;
+		this.documentSegments[length] = segment;
+		this.excludedDocuments[length] = excluded;
 	} else {
 		this.documentTables = new Object[] {table};
+		this.documentSegments = new DiskIndex[] {segment};
+		this.excludedDocuments = new SimpleLookupTable[] {excluded};
+	}
+}
+/*
+ * Answers the memory in bytes taken by this result, that is its word and the names of its documents,
+ * or the numbers of its documents as long as their names are not read.
+ * A table of document numbers not read from the disk index yet holds at least DiskIndex.LARGE_ARRAY_SIZE documents.
+ */
+synchronized int getMemorySize() {
+	int memory = 32 + 2 * this.word.length;
+	if (this.documentTables != null) {
+		for (int i = 0, l = this.documentTables.length; i < l; i++) {
+			Object table = this.documentTables[i];
+			memory += 4 * (table instanceof int[] ? ((int[]) table).length : DiskIndex.LARGE_ARRAY_SIZE);
+		}
+	}
+	if (this.documentNames != null) {
+		Object[] values = this.documentNames.values;
+		memory += 4 * values.length;
+		for (int i = 0, l = values.length; i < l; i++)
+			if (values[i] != null)
+				memory += 40 + 2 * ((String) values[i]).length();
 	}
+	return memory;
 }
 public char[] getWord() {
 	return this.word;
 }
-public String[] getDocumentNames(Index index) throws java.io.IOException {
+public synchronized String[] getDocumentNames(Index index) throws java.io.IOException {
+	// synchronized since the result of a query can be cached and shared (see Index#query(char[][], char[], int))
 	if (this.documentTables != null) {
 		int length = this.documentTables.length;
-		if (length == 1 && this.documentNames == null) { // have a single table
-			Object offset = this.documentTables[0];
-			int[] numbers = index.diskIndex.readDocumentNumbers(offset);
+		if (length == 1 && this.documentNames == null && this.excludedDocuments[0] == null) { // have a single table
+			DiskIndex segment = this.documentSegments[0] == null ? index.diskIndex : this.documentSegments[0];
+			int[] numbers = segment.readDocumentNumbers(this.documentTables[0]);
 			String[] names = new String[numbers.length];
 			for (int i = 0, l = numbers.length; i < l; i++)
-				names[i] = index.diskIndex.readDocumentName(numbers[i]);
+				names[i] = segment.readDocumentName(numbers[i]);
 			return names;
 		}
 
 		for (int i = 0; i < length; i++) {
-			Object offset = this.documentTables[i];
-			int[] numbers = index.diskIndex.readDocumentNumbers(offset);
-			for (int j = 0, k = numbers.length; j < k; j++)
-				addDocumentName(index.diskIndex.readDocumentName(numbers[j]));
+			DiskIndex segment = this.documentSegments[i] == null ? index.diskIndex : this.documentSegments[i];
+			SimpleLookupTable excluded = this.excludedDocuments[i];
+			int[] numbers = segment.readDocumentNumbers(this.documentTables[i]);
+			for (int j = 0, k = numbers.length; j < k; j++) {
+				String documentName = segment.readDocumentName(numbers[j]);
+				if (excluded == null || !excluded.containsKey(documentName))
+					addDocumentName(documentName);
+			}
 		}
+		this.documentTables = null; // the names were added once and for all
+		this.documentSegments = null;
+		this.excludedDocuments = null;
 	}
 
 	if (this.documentNames == null)
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,8 +15,10 @@ import java.io.*;
 import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.search.*;
 import org.eclipse.jdt.internal.compiler.util.HashtableOfObject;
+import org.eclipse.jdt.internal.compiler.util.SimpleLookupTable;
 import org.eclipse.jdt.internal.compiler.util.SimpleSet;
 import org.eclipse.jdt.internal.core.search.indexing.ReadWriteMonitor;
+import org.eclipse.jdt.internal.core.util.LRUCache;
 
 /**
  * An <code>Index</code> maps document names to their referenced words in various categories.
@@ -35,10 +37,144 @@ public ReadWriteMonitor monitor;
 static final char DEFAULT_SEPARATOR = '/';
 public char separator = DEFAULT_SEPARATOR;
 static final char JAR_SEPARATOR = IJavaSearchScope.JAR_FILE_ENTRY_SEPARATOR.charAt(0);
+static final EntryResult[] NO_ENTRY_RESULTS = new EntryResult[0];
 
 protected DiskIndex diskIndex;
 protected MemoryIndex memoryIndex;
 
+/**
+ * Maximum memory in bytes taken by the query results cached for all the indexes together, 0 to disable the cache.
+ */
+public static int QUERY_CACHE_MEMORY = 4 * 1024 * 1024;
+
+/*
+ * The delta segments saved since the disk index was last rewritten, oldest first, or null if none (see save()).
+ * Each segment is a small disk index holding the documents added/changed/deleted since the previous one.
+ * A document of a segment hides the same document in the older segments and in the disk index,
+ * until compact() merges the segments into the disk index.
+ */
+private DiskIndex[] deltaIndexes;
+private int[] deltaNumbers; // the numbers of the files of the delta segments, see getDeltaFile(File, int)
+private SimpleLookupTable[] segmentExclusions; // for each segment, the disk index first, the documents it must skip
+private SimpleLookupTable[] excludedDocuments; // same, including the documents of the memory index, flushed as soon as it changes
+
+// category of the entries recording the documents deleted in a delta segment
+static final char[] DELETED_DOCUMENTS = "deletedDocuments".toCharArray(); //$NON-NLS-1$
+
+/**
+ * Maximum number of delta segments of an index before it is compacted when the indexer is idle, 0 to always
+ * rewrite the disk index when saving. Saving rewrites the disk index once an index has twice as many segments.
+ */
+public static int MAX_DELTA_SEGMENTS = 4;
+/**
+ * Maximum number of documents changed since the last save to write them in a delta segment.
+ */
+public static int MAX_DELTA_DOCUMENTS = 1000;
+/**
+ * Minimum size in bytes of a disk index to write the changes in delta segments, smaller indexes are rewritten.
+ */
+public static int MIN_SEGMENTED_INDEX_SIZE = 1024 * 1024;
+static {
+	MAX_DELTA_SEGMENTS = getIntProperty("org.eclipse.jdt.core.index.maxDeltaSegments", MAX_DELTA_SEGMENTS); //$NON-NLS-1$
+	MAX_DELTA_DOCUMENTS = getIntProperty("org.eclipse.jdt.core.index.maxDeltaDocuments", MAX_DELTA_DOCUMENTS); //$NON-NLS-1$
+	MIN_SEGMENTED_INDEX_SIZE = getIntProperty("org.eclipse.jdt.core.index.minSegmentedIndexSize", MIN_SEGMENTED_INDEX_SIZE); //$NON-NLS-1$
+}
+
+/*
+ * The results of the recent queries of all the indexes, the least recently used are dropped past QUERY_CACHE_MEMORY.
+ * The results of an index are flushed as soon as it changes.
+ */
+private static QueryCache QUERY_CACHE;
+private int cachedQueries; // number of results of this index in the query cache
+private int queryCacheHits, queryCacheMisses;
+
+static {
+	QUERY_CACHE_MEMORY = getIntProperty("org.eclipse.jdt.core.index.queryCacheMemory", QUERY_CACHE_MEMORY); //$NON-NLS-1$
+	if (QUERY_CACHE_MEMORY > 0)
+		QUERY_CACHE = new QueryCache(QUERY_CACHE_MEMORY);
+}
+
+/*
+ * The key of a query in the query cache
+ */
+static class QueryKey {
+	Index index;
+	char[][] categories;
+	char[] key;
+	int matchRule;
+	int hashCode;
+
+	QueryKey(Index index, char[][] categories, char[] key, int matchRule) {
+		this.index = index;
+		this.categories = categories;
+		this.key = key;
+		this.matchRule = matchRule;
+		this.hashCode = CharOperation.hashCode(key == null ? CharOperation.NO_CHAR : key) + 31 * matchRule + categories.length + 17 * System.identityHashCode(index);
+	}
+	public boolean equals(Object object) {
+		if (!(object instanceof QueryKey)) return false;
+		QueryKey other = (QueryKey) object;
+		return this.index == other.index
+			&& this.matchRule == other.matchRule
+			&& CharOperation.equals(this.key, other.key)
+			&& CharOperation.equals(this.categories, other.categories);
+	}
+	public int hashCode() {
+		return this.hashCode;
+	}
+}
+
+/*
+ * The query cache shared by all the indexes, which charges each result by its memory (see EntryResult#getMemorySize())
+ * and counts the results cached for each index.
+ * Note: all accesses must be synchronized on the cache
+ */
+static class QueryCache extends LRUCache {
+	QueryCache(int memory) {
+		super(memory);
+	}
+	/*
+	 * Charges again the given cached results if their memory changed since they were cached,
+	 * e.g. since the document names of some entries were read.
+	 */
+	void charge(QueryKey queryKey, EntryResult[] results) {
+		LRUCacheEntry entry = (LRUCacheEntry) this.entryTable.get(queryKey);
+		if (entry != null && entry.space != spaceFor(results))
+			put(queryKey, results);
+	}
+	public void flush() {
+		for (LRUCacheEntry entry = this.entryQueue; entry != null; entry = entry.next)
+			((QueryKey) entry.key).index.cachedQueries = 0;
+		super.flush();
+	}
+	void flush(Index index) {
+		if (index.cachedQueries == 0) return;
+		for (LRUCacheEntry entry = this.entryQueue; entry != null;) {
+			LRUCacheEntry next = entry.next;
+			if (((QueryKey) entry.key).index == index)
+				privateRemoveEntry(entry, false);
+			entry = next;
+		}
+	}
+	protected void privateAddEntry(LRUCacheEntry entry, boolean shuffle) {
+		super.privateAddEntry(entry, shuffle);
+		if (!shuffle)
+			((QueryKey) entry.key).index.cachedQueries++;
+	}
+	protected void privateRemoveEntry(LRUCacheEntry entry, boolean shuffle) {
+		super.privateRemoveEntry(entry, shuffle);
+		if (!shuffle)
+			((QueryKey) entry.key).index.cachedQueries--;
+	}
+	protected int spaceFor(Object value) {
+		EntryResult[] results = (EntryResult[]) value;
+		int memory = 64; // the key and the array
+		for (int i = 0, l = results.length; i < l; i++)
+			memory += results[i].getMemorySize();
+		return memory;
+	}
+}
+
 /**
  * Mask used on match rule for indexing.
  */
@@ -51,6 +187,17 @@ static final int MATCH_RULE_INDEX_MASK =
 	SearchPattern.R_CAMELCASE_MATCH |
 	SearchPattern.R_CAMELCASE_SAME_PART_COUNT_MATCH;
 
+private static int getIntProperty(String name, int defaultValue) {
+	String value = System.getProperty(name);
+	if (value != null) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			// ignore and use the default value
+		}
+	}
+	return defaultValue;
+}
 public static boolean isMatch(char[] pattern, char[] word, int matchRule) {
 	if (pattern == null) return true;
 	int patternLength = pattern.length;
@@ -95,11 +242,28 @@ public Index(IndexLocation location, String containerPath, boolean reuseExisting
 	this.memoryIndex = new MemoryIndex();
 	this.diskIndex = new DiskIndex(location);
 	this.diskIndex.initialize(reuseExistingFile);
-	if (reuseExistingFile) this.separator = this.diskIndex.separator;
+	if (reuseExistingFile) {
+		this.separator = this.diskIndex.separator;
+		readSegments();
+	} else {
+		deleteSegments(getIndexFile());
+	}
 }
 public void addIndexEntry(char[] category, char[] key, String containerRelativePath) {
+	flushQueryCache();
 	this.memoryIndex.addIndexEntry(category, key, containerRelativePath);
 }
+/**
+ * Merges the delta segments into the disk index.
+ * Note: must own the write lock of the monitor
+ */
+public void compact() throws IOException {
+	if (this.deltaIndexes == null) return;
+
+	this.diskIndex.separator = this.separator;
+	flushQueryCache(); // the results refer to the document numbers of the segments
+	mergeSegments(null);
+}
 public String containerRelativePath(String documentPath) {
 	int index = documentPath.indexOf(IJavaSearchScope.JAR_FILE_ENTRY_SEPARATOR);
 	if (index == -1) {
@@ -116,11 +280,114 @@ public IndexLocation getIndexLocation() {
 	return this.diskIndex == null ? null : this.diskIndex.indexLocation;
 }
 public long getIndexLastModified() {
-	return this.diskIndex == null? -1 : this.diskIndex.indexLocation.lastModified();
+	if (this.diskIndex == null) return -1;
+	File indexFile;
+	if (this.deltaIndexes != null && (indexFile = getIndexFile()) != null)
+		return getSegmentsFile(indexFile).lastModified(); // rewritten each time a delta segment is saved
+	return this.diskIndex.indexLocation.lastModified();
+}
+/**
+ * Drops the results of the queries of this index from the query cache,
+ * and the documents of the memory index which the segments must skip.
+ */
+public void flushQueryCache() {
+	this.excludedDocuments = null;
+	// the results are only cached by queries, which cannot run while the index changes (see monitor)
+	if (QUERY_CACHE != null && this.cachedQueries > 0) {
+		synchronized (QUERY_CACHE) {
+			QUERY_CACHE.flush(this);
+		}
+	}
+}
+/**
+ * Drops the results of the queries of all the indexes from the query cache.
+ */
+public static void flushQueryCaches() {
+	if (QUERY_CACHE != null) {
+		synchronized (QUERY_CACHE) {
+			QUERY_CACHE.flush();
+		}
+	}
+}
+/**
+ * Returns the hit and miss counts of the query cache and of the category tables cached by the disk index,
+ * and the number of queries which the disk index answered with its name tables.
+ */
+public String getCacheStatistics() {
+	StringBuffer buffer = new StringBuffer("query cache: "); //$NON-NLS-1$
+	if (QUERY_CACHE == null) {
+		buffer.append("disabled"); //$NON-NLS-1$
+	} else {
+		synchronized (QUERY_CACHE) {
+			buffer.append(this.queryCacheHits).append(" hits, "); //$NON-NLS-1$
+			buffer.append(this.queryCacheMisses).append(" misses, "); //$NON-NLS-1$
+			buffer.append(this.cachedQueries).append(" results, "); //$NON-NLS-1$
+			buffer.append(QUERY_CACHE.getCurrentSpace()).append(" bytes for all indexes"); //$NON-NLS-1$
+		}
+	}
+	DiskIndex disk = this.diskIndex;
+	if (disk != null) {
+		synchronized (disk) {
+			buffer.append(" - category tables: "); //$NON-NLS-1$
+			buffer.append(disk.categoryTableHits).append(" hits, "); //$NON-NLS-1$
+			buffer.append(disk.categoryTableMisses).append(" misses"); //$NON-NLS-1$
+			buffer.append(" - name tables: "); //$NON-NLS-1$
+			buffer.append(disk.nameTableQueries).append(" queries"); //$NON-NLS-1$
+		}
+	}
+	return buffer.toString();
+}
+/*
+ * Answers the documents each segment must skip, the disk index first, since they were added/changed/deleted
+ * in a newer segment or in the memory index. Null tables mean that the segment is read as is.
+ * The tables are kept by the entry results until the names of their documents are read (see EntryResult),
+ * so they are not changed afterwards: a change of the memory index flushes them (see flushQueryCache()).
+ */
+private synchronized SimpleLookupTable[] getExcludedDocuments() {
+	SimpleLookupTable changedDocuments = this.memoryIndex.hasChanged() ? this.memoryIndex.docsToReferences : null;
+	if (this.segmentExclusions == null)
+		return new SimpleLookupTable[] {changedDocuments};
+	if (this.excludedDocuments == null) {
+		int length = this.segmentExclusions.length;
+		SimpleLookupTable[] tables = new SimpleLookupTable[length];
+		for (int i = 0; i < length; i++) {
+			SimpleLookupTable segmentExclusion = this.segmentExclusions[i];
+			if (changedDocuments == null) {
+				tables[i] = segmentExclusion.elementSize == 0 ? null : segmentExclusion;
+			} else if (segmentExclusion.elementSize == 0) {
+				tables[i] = changedDocuments;
+			} else {
+				SimpleLookupTable table = new SimpleLookupTable(segmentExclusion.elementSize + changedDocuments.elementSize);
+				addKeys(segmentExclusion, table);
+				addKeys(changedDocuments, table);
+				tables[i] = table;
+			}
+		}
+		this.excludedDocuments = tables;
+	}
+	return this.excludedDocuments;
+}
+private static void addKeys(SimpleLookupTable source, SimpleLookupTable destination) {
+	Object[] keys = source.keyTable;
+	for (int i = 0, l = keys.length; i < l; i++)
+		if (keys[i] != null)
+			destination.put(keys[i], null);
 }
 public boolean hasChanged() {
 	return this.memoryIndex.hasChanged();
 }
+/**
+ * Answers whether changes were saved in delta segments, which are not merged into the disk index yet.
+ */
+public boolean hasDeltaSegments() {
+	return this.deltaIndexes != null;
+}
+/**
+ * Answers whether the delta segments should be merged into the disk index (see compact()).
+ */
+public boolean needsCompaction() {
+	return this.deltaIndexes != null && this.deltaIndexes.length >= MAX_DELTA_SEGMENTS;
+}
 /**
  * Returns the entries containing the given key in a group of categories, or null if no matches are found.
  * The matchRule dictates whether its an exact, prefix or pattern match, as well as case sensitive or insensitive.
@@ -135,37 +402,61 @@ public EntryResult[] query(char[][] categories, char[] key, int matchRule) throw
 		}
 	}
 
-	HashtableOfObject results;
 	int rule = matchRule & MATCH_RULE_INDEX_MASK;
-	if (this.memoryIndex.hasChanged()) {
-		results = this.diskIndex.addQueryResults(categories, key, rule, this.memoryIndex);
+	QueryKey queryKey = null;
+	if (QUERY_CACHE != null) {
+		queryKey = new QueryKey(this, (char[][]) categories.clone(), key == null ? null : (char[]) key.clone(), rule);
+		synchronized (QUERY_CACHE) {
+			EntryResult[] cachedResults = (EntryResult[]) QUERY_CACHE.get(queryKey);
+			if (cachedResults != null) {
+				this.queryCacheHits++;
+				QUERY_CACHE.charge(queryKey, cachedResults);
+				return cachedResults.length == 0 ? null : cachedResults;
+			}
+			this.queryCacheMisses++;
+		}
+	}
+
+	SimpleLookupTable[] excluded = getExcludedDocuments();
+	HashtableOfObject results = this.diskIndex.addQueryResults(categories, key, rule, null, excluded[0]);
+	DiskIndex[] deltas = this.deltaIndexes;
+	if (deltas != null)
+		for (int i = 0, length = deltas.length; i < length; i++)
+			results = deltas[i].addQueryResults(categories, key, rule, results, excluded[i + 1]);
+	if (this.memoryIndex.hasChanged())
 		results = this.memoryIndex.addQueryResults(categories, key, rule, results);
+	EntryResult[] entryResults;
+	if (results == null) {
+		entryResults = NO_ENTRY_RESULTS;
 	} else {
-		results = this.diskIndex.addQueryResults(categories, key, rule, null);
+		entryResults = new EntryResult[results.elementSize];
+		int count = 0;
+		Object[] values = results.valueTable;
+		for (int i = 0, l = values.length; i < l; i++) {
+			EntryResult result = (EntryResult) values[i];
+			if (result != null)
+				entryResults[count++] = result;
+		}
 	}
-	if (results == null) return null;
-
-	EntryResult[] entryResults = new EntryResult[results.elementSize];
-	int count = 0;
-	Object[] values = results.valueTable;
-	for (int i = 0, l = values.length; i < l; i++) {
-		EntryResult result = (EntryResult) values[i];
-		if (result != null)
-			entryResults[count++] = result;
+	if (queryKey != null) {
+		synchronized (QUERY_CACHE) {
+			QUERY_CACHE.put(queryKey, entryResults);
+		}
 	}
-	return entryResults;
+	return entryResults.length == 0 ? null : entryResults;
 }
 /**
  * Returns the document names that contain the given substring, if null then returns all of them.
  */
 public String[] queryDocumentNames(String substring) throws IOException {
-	SimpleSet results;
-	if (this.memoryIndex.hasChanged()) {
-		results = this.diskIndex.addDocumentNames(substring, this.memoryIndex);
+	SimpleLookupTable[] excluded = getExcludedDocuments();
+	SimpleSet results = this.diskIndex.addDocumentNames(substring, null, excluded[0]);
+	DiskIndex[] deltas = this.deltaIndexes;
+	if (deltas != null)
+		for (int i = 0, length = deltas.length; i < length; i++)
+			results = deltas[i].addDocumentNames(substring, results, excluded[i + 1]);
+	if (this.memoryIndex.hasChanged())
 		this.memoryIndex.addDocumentNames(substring, results);
-	} else {
-		results = this.diskIndex.addDocumentNames(substring, null);
-	}
 	if (results.elementSize == 0) return null;
 
 	String[] documentNames = new String[results.elementSize];
@@ -177,6 +468,7 @@ public String[] queryDocumentNames(String substring) throws IOException {
 	return documentNames;
 }
 public void remove(String containerRelativePath) {
+	flushQueryCache();
 	this.memoryIndex.remove(containerRelativePath);
 }
 /**
@@ -185,9 +477,12 @@ public void remove(String containerRelativePath) {
  * @throws IOException
  */
 public void reset() throws IOException {
+	flushQueryCache();
 	this.memoryIndex = new MemoryIndex();
 	this.diskIndex = new DiskIndex(this.diskIndex.indexLocation);
 	this.diskIndex.initialize(false/*do not reuse the index file*/);
+	setDeltaIndexes(null, null);
+	deleteSegments(getIndexFile());
 }
 public void save() throws IOException {
 	// must own the write lock of the monitor
@@ -195,18 +490,200 @@ public void save() throws IOException {
 
 	int numberOfChanges = this.memoryIndex.docsToReferences.elementSize;
 	this.diskIndex.separator = this.separator;
-	this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
+	flushQueryCache(); // the results refer to the document numbers of the previous disk index
+	if (shouldSaveDelta(numberOfChanges))
+		saveDelta();
+	else if (this.deltaIndexes != null)
+		mergeSegments(this.memoryIndex);
+	else
+		this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
 	this.memoryIndex = new MemoryIndex();
 	if (numberOfChanges > 1000)
 		System.gc(); // reclaim space if the MemoryIndex was very BIG
 }
+private boolean shouldSaveDelta(int numberOfChanges) {
+	// rewriting a big disk index costs much more than writing the few documents which changed
+	if (MAX_DELTA_SEGMENTS <= 0 || numberOfChanges > MAX_DELTA_DOCUMENTS) return false;
+	if (this.deltaIndexes != null && this.deltaIndexes.length >= 2 * MAX_DELTA_SEGMENTS) return false; // compaction is late
+	File indexFile = getIndexFile();
+	return indexFile != null && indexFile.length() >= MIN_SEGMENTED_INDEX_SIZE;
+}
+private void saveDelta() throws IOException {
+	File indexFile = getIndexFile();
+	int length = this.deltaIndexes == null ? 0 : this.deltaIndexes.length;
+	int number = length == 0 ? 1 : this.deltaNumbers[length - 1] + 1;
+
+	// record the deleted documents in the segment, since it must hide them in the older segments
+	// the entries are added to a copy, so that the memory index is unchanged if the segment cannot be written
+	MemoryIndex changes = this.memoryIndex.copy();
+	Object[] paths = changes.docsToReferences.keyTable;
+	Object[] referenceTables = changes.docsToReferences.valueTable;
+	SimpleSet deletedDocuments = new SimpleSet(3);
+	for (int i = 0, l = paths.length; i < l; i++)
+		if (paths[i] != null && referenceTables[i] == null)
+			deletedDocuments.add(paths[i]);
+	Object[] deleted = deletedDocuments.values;
+	for (int i = 0, l = deleted.length; i < l; i++)
+		if (deleted[i] != null)
+			changes.addIndexEntry(DELETED_DOCUMENTS, DELETED_DOCUMENTS, (String) deleted[i]);
+
+	File deltaFile = getDeltaFile(indexFile, number);
+	DiskIndex delta = new DiskIndex(new FileIndexLocation(deltaFile));
+	delta.initialize(false);
+	delta.separator = this.separator;
+	DiskIndex[] deltas = new DiskIndex[length + 1];
+	int[] numbers = new int[length + 1];
+	if (length > 0) {
+		System.arraycopy(this.deltaIndexes, 0, deltas, 0, length);
+		System.arraycopy(this.deltaNumbers, 0, numbers, 0, length);
+	}
+	numbers[length] = number;
+	try {
+		deltas[length] = delta.mergeWith(changes);
+		writeSegmentsFile(indexFile, numbers);
+	} catch (IOException e) {
+		deltaFile.delete();
+		throw e;
+	}
+	setDeltaIndexes(deltas, numbers);
+}
+private void mergeSegments(MemoryIndex changes) throws IOException {
+	// merges the delta segments, then the given changes, into the disk index
+	MemoryIndex segmentChanges = new MemoryIndex();
+	for (int i = 0, length = this.deltaIndexes.length; i < length; i++)
+		this.deltaIndexes[i].addEntriesTo(segmentChanges, DELETED_DOCUMENTS);
+	if (changes != null)
+		segmentChanges.addChanges(changes);
+	this.diskIndex = this.diskIndex.mergeWith(segmentChanges);
+	setDeltaIndexes(null, null);
+	deleteSegments(getIndexFile());
+}
+private void setDeltaIndexes(DiskIndex[] deltas, int[] numbers) throws IOException {
+	this.deltaIndexes = deltas;
+	this.deltaNumbers = numbers;
+	this.segmentExclusions = null;
+	this.excludedDocuments = null;
+	if (deltas == null) return;
+
+	// each segment skips the documents of the newer segments, and the documents deleted in the segment itself
+	int length = deltas.length;
+	SimpleLookupTable[] exclusions = new SimpleLookupTable[length + 1];
+	SimpleLookupTable newerDocuments = new SimpleLookupTable(3);
+	for (int i = length; i >= 0; i--) {
+		SimpleLookupTable table = new SimpleLookupTable(newerDocuments.elementSize + 3);
+		addKeys(newerDocuments, table);
+		if (i > 0) {
+			deltas[i - 1].addDocumentNames(DELETED_DOCUMENTS, table);
+			deltas[i - 1].addDocumentNames(null, newerDocuments);
+		}
+		exclusions[i] = table;
+	}
+	this.segmentExclusions = exclusions;
+}
+private void readSegments() throws IOException {
+	File indexFile = getIndexFile();
+	if (indexFile == null) return;
+	File segmentsFile = getSegmentsFile(indexFile);
+	if (!segmentsFile.exists()) return;
+
+	int[] numbers = readSegmentsFile(segmentsFile, indexFile);
+	if (numbers == null) { // the disk index was rewritten since the segments were saved
+		deleteSegments(indexFile);
+		return;
+	}
+	int length = numbers.length;
+	if (length == 0) return;
+	DiskIndex[] deltas = new DiskIndex[length];
+	for (int i = 0; i < length; i++) {
+		File deltaFile = getDeltaFile(indexFile, numbers[i]);
+		if (!deltaFile.exists())
+			throw new IOException("Missing index segment " + deltaFile); //$NON-NLS-1$
+		deltas[i] = new DiskIndex(new FileIndexLocation(deltaFile));
+		deltas[i].initialize(true);
+	}
+	setDeltaIndexes(deltas, numbers);
+}
+private static int[] readSegmentsFile(File segmentsFile, File indexFile) throws IOException {
+	// answers null if the disk index does not have the length and time stamp recorded with the segments
+	DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentsFile)));
+	try {
+		long length = stream.readLong();
+		long lastModified = stream.readLong();
+		if (indexFile != null && (length != indexFile.length() || lastModified != indexFile.lastModified()))
+			return null;
+		int[] numbers = new int[stream.readInt()];
+		for (int i = 0, l = numbers.length; i < l; i++)
+			numbers[i] = stream.readInt();
+		return numbers;
+	} finally {
+		stream.close();
+	}
+}
+private static void writeSegmentsFile(File indexFile, int[] numbers) throws IOException {
+	// the file is written next to its final location then renamed, so that it is never partially written
+	File segmentsFile = getSegmentsFile(indexFile);
+	File tempFile = new File(segmentsFile.getPath() + ".tmp"); //$NON-NLS-1$
+	DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+	try {
+		stream.writeLong(indexFile.length());
+		stream.writeLong(indexFile.lastModified());
+		stream.writeInt(numbers.length);
+		for (int i = 0, l = numbers.length; i < l; i++)
+			stream.writeInt(numbers[i]);
+	} finally {
+		stream.close();
+	}
+	if ((segmentsFile.exists() && !segmentsFile.delete()) || !tempFile.renameTo(segmentsFile)) {
+		tempFile.delete();
+		throw new IOException("Failed to rename index segments file " + segmentsFile); //$NON-NLS-1$
+	}
+}
+/**
+ * Deletes the delta segments of the given index file, if any.
+ */
+public static void deleteSegments(File indexFile) {
+	if (indexFile == null) return;
+	File segmentsFile = getSegmentsFile(indexFile);
+	if (!segmentsFile.exists()) return;
+	int[] numbers = null;
+	try {
+		numbers = readSegmentsFile(segmentsFile, null);
+	} catch (IOException e) {
+		// the files of the segments cannot be found, they are overwritten when new segments are saved
+	}
+	segmentsFile.delete(); // delete it first, so that the segments are never read again
+	if (numbers != null)
+		for (int i = 0, l = numbers.length; i < l; i++)
+			getDeltaFile(indexFile, numbers[i]).delete();
+}
+/**
+ * Answers the index file that the given file is a delta segment of, or null if it is not a file of a delta segment.
+ */
+public static String getSegmentedIndexPath(String fileName) {
+	int index = fileName.lastIndexOf(".delta"); //$NON-NLS-1$
+	return index == -1 ? null : fileName.substring(0, index);
+}
+private static File getSegmentsFile(File indexFile) {
+	return new File(indexFile.getPath() + ".deltas"); //$NON-NLS-1$
+}
+private static File getDeltaFile(File indexFile, int number) {
+	return new File(indexFile.getPath() + ".delta" + number); //$NON-NLS-1$
+}
 public void startQuery() {
 	if (this.diskIndex != null)
 		this.diskIndex.startQuery();
+	DiskIndex[] deltas = this.deltaIndexes;
+	if (deltas != null)
+		for (int i = 0, length = deltas.length; i < length; i++)
+			deltas[i].startQuery();
 }
 public void stopQuery() {
 	if (this.diskIndex != null)
 		this.diskIndex.stopQuery();
+	DiskIndex[] deltas = this.deltaIndexes;
+	if (deltas != null)
+		for (int i = 0, length = deltas.length; i < length; i++)
+			deltas[i].stopQuery();
 }
 public String toString() {
 	return "Index for " + this.containerPath; //$NON-NLS-1$
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -62,6 +62,39 @@ void addIndexEntry(char[] category, char[] key, String documentName) {
 
 	existingWords.add(this.allWords.add(key));
 }
+void addChanges(MemoryIndex memoryIndex) {
+	// the documents added/changed/deleted in the given memory index replace the ones of this index
+	Object[] paths = memoryIndex.docsToReferences.keyTable;
+	Object[] referenceTables = memoryIndex.docsToReferences.valueTable;
+	for (int i = 0, l = paths.length; i < l; i++) {
+		String path = (String) paths[i];
+		if (path == null) continue;
+		remove(path);
+		HashtableOfObject categoryToWords = (HashtableOfObject) referenceTables[i];
+		if (categoryToWords != null) {
+			char[][] categories = categoryToWords.keyTable;
+			Object[] wordSets = categoryToWords.valueTable;
+			for (int j = 0, m = categories.length; j < m; j++) {
+				if (categories[j] != null) {
+					char[][] words = ((SimpleWordSet) wordSets[j]).words;
+					for (int k = 0, n = words.length; k < n; k++)
+						if (words[k] != null)
+							addIndexEntry(categories[j], words[k], path);
+				}
+			}
+		}
+	}
+}
+MemoryIndex copy() {
+	// the copy shares the word sets of the documents with this index, entries can only be added to the deleted documents of the copy
+	MemoryIndex copy = new MemoryIndex();
+	try {
+		copy.docsToReferences = (SimpleLookupTable) this.docsToReferences.clone();
+	} catch (CloneNotSupportedException e) {
+		copy.addChanges(this);
+	}
+	return copy;
+}
 HashtableOfObject addQueryResults(char[][] categories, char[] key, int matchRule, HashtableOfObject results) {
 	// assumed the disk index already skipped over documents which have been added/changed/deleted
 	// results maps a word -> EntryResult
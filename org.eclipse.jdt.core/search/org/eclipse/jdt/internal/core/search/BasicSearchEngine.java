@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -64,6 +64,12 @@ public class BasicSearchEngine {
 	 */
 	public static boolean VERBOSE = false;
 
+	/**
+	 * Whether the index matches are located while the indexes are still being queried,
+	 * so that the first matches are reported as soon as possible.
+	 */
+	public static boolean STREAMING = "true".equals(System.getProperty("org.eclipse.jdt.core.search.streaming")); //$NON-NLS-1$ //$NON-NLS-2$
+
 	/*
 	 * Creates a new search basic engine.
 	 */
@@ -210,6 +216,10 @@ public class BasicSearchEngine {
 					if (monitor != null) monitor.subTask(Messages.bind(Messages.engine_searching_indexing, new String[] {participant.getDescription()}));
 					participant.beginSearching();
 					requestor.enterParticipant(participant);
+					if (STREAMING) {
+						findStreamedMatches(pattern, participant, scope, requestor, monitor);
+						continue;
+					}
 					PathCollector pathCollector = new PathCollector();
 					indexManager.performConcurrentJob(
 						new PatternSearchJob(pattern, participant, scope, pathCollector),
@@ -241,6 +251,72 @@ public class BasicSearchEngine {
 				monitor.done();
 		}
 	}
+	/*
+	 * Locates the matches of the given participant while its indexes are queried: the working copies
+	 * are searched first, then each group of paths collected since the previous group.
+	 * The Java search participant locates all the groups with the same match locator, which reports the
+	 * package declarations once all the groups are located. Other participants locate each group on its own.
+	 * As for a search which is not streamed, the index query and the location of the matches each take half
+	 * of the work of the participant. The number of documents to locate is not known when the location starts.
+	 */
+	private void findStreamedMatches(SearchPattern pattern, SearchParticipant participant, IJavaSearchScope scope, SearchRequestor requestor, IProgressMonitor monitor) throws CoreException {
+		StreamingPathCollector pathCollector = new StreamingPathCollector(pattern, participant, scope, monitor==null ? null : new SubProgressMonitor(monitor, 50));
+		HashMap workingCopyDocuments = MatchLocator.workingCopiesThatCanSeeFocus(getWorkingCopies(), pattern, participant);
+		SearchDocument[] workingCopyMatches = new SearchDocument[workingCopyDocuments.size()];
+		org.eclipse.jdt.core.ICompilationUnit[] workingCopies = new org.eclipse.jdt.core.ICompilationUnit[workingCopyMatches.length];
+		int index = 0;
+		for (Iterator iterator = workingCopyDocuments.values().iterator(); iterator.hasNext();) {
+			SearchDocument document = (SearchDocument) iterator.next();
+			pathCollector.exclude(document.getPath()); // working copies take precedence over corresponding compilation units
+			workingCopies[index] = ((MatchLocator.WorkingCopyDocument) document).workingCopy;
+			workingCopyMatches[index++] = document;
+		}
+		MatchLocator locator = null;
+		if (participant.getClass() == JavaSearchParticipant.class) {
+			locator = new MatchLocator(pattern, requestor, scope, monitor==null ? null : new SubProgressMonitor(monitor, 50));
+			if (locator.patternLocator == null) return; // as in MatchLocator#locateMatches(SearchDocument[])
+		}
+		pathCollector.start();
+		try {
+			if (monitor != null) monitor.subTask(Messages.bind(Messages.engine_searching_matching, new String[] {participant.getDescription()}));
+			if (locator != null)
+				locator.startLocating(workingCopies, IProgressMonitor.UNKNOWN);
+			if (workingCopyMatches.length > 0)
+				locateMatches(workingCopyMatches, locator, pattern, participant, scope, requestor, monitor);
+			String[] paths;
+			while ((paths = pathCollector.nextPaths(monitor)) != null) {
+				if (monitor != null && monitor.isCanceled()) throw new OperationCanceledException();
+				int pathsLength = paths.length;
+				SearchDocument[] indexMatches = new SearchDocument[pathsLength];
+				for (int j = 0; j < pathsLength; j++) {
+					indexMatches[j] = participant.getDocument(paths[j]);
+				}
+				locateMatches(indexMatches, locator, pattern, participant, scope, requestor, monitor);
+			}
+			if (locator != null)
+				locator.finishLocating();
+			if (monitor != null) {
+				if (monitor.isCanceled()) throw new OperationCanceledException();
+				if (locator == null)
+					monitor.worked(50);
+			}
+		} finally {
+			pathCollector.stop();
+			if (locator != null)
+				locator.stopLocating();
+		}
+	}
+	/*
+	 * Locates the matches of a group of documents with the given match locator, or with the given participant
+	 * if there is no match locator.
+	 */
+	private void locateMatches(SearchDocument[] documents, MatchLocator locator, SearchPattern pattern, SearchParticipant participant, IJavaSearchScope scope, SearchRequestor requestor, IProgressMonitor monitor) throws CoreException {
+		if (locator != null)
+			locator.locateMatchesOf(documents);
+		else
+			participant.locateMatches(documents, pattern, scope, requestor, monitor==null ? null : new SubProgressMonitor(monitor, 0));
+	}
+
 	/**
 	 * Returns a new default Java search participant.
 	 *
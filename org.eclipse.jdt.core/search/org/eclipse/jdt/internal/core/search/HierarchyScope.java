@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -426,6 +426,14 @@ public class HierarchyScope extends AbstractSearchScope implements SuffixConstan
 	protected void initialize() throws JavaModelException {
 		initialize(null);
 	}
+	/**
+	 * Computes the hierarchy of this scope now if it is not computed yet or needs a refresh, instead of
+	 * the first time the scope is queried, e.g. before several threads query it at the same time.
+	 */
+	public void initializeIfNeeded(IProgressMonitor progressMonitor) throws JavaModelException {
+		if (this.needsRefresh)
+			initialize(progressMonitor);
+	}
 	protected void initialize(IProgressMonitor progressMonitor) throws JavaModelException {
 		this.resourcePaths = new HashSet();
 		this.elements = new IResource[5];
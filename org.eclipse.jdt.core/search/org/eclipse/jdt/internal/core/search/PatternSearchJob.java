@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -108,6 +108,8 @@ public boolean search(Index index, IProgressMonitor progressMonitor) {
 		long start = System.currentTimeMillis();
 		MatchLocator.findIndexMatches(this.pattern, index, this.requestor, this.participant, this.scope, progressMonitor);
 		this.executionTime += System.currentTimeMillis() - start;
+		if (JobManager.VERBOSE)
+			Util.verbose("-> " + index + " - " + index.getCacheStatistics()); //$NON-NLS-1$ //$NON-NLS-2$
 		return COMPLETE;
 	} catch (IOException e) {
 		if (e instanceof java.io.EOFException)
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.core.search;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.jdt.core.search.IJavaSearchScope;
+import org.eclipse.jdt.core.search.SearchParticipant;
+import org.eclipse.jdt.core.search.SearchPattern;
+import org.eclipse.jdt.internal.compiler.env.AccessRuleSet;
+import org.eclipse.jdt.internal.core.JavaModelManager;
+
+/**
+ * Collects the resource paths of the index matches of a pattern on a thread of its own,
+ * so that the searching thread can locate the matches of the paths collected so far
+ * while the indexes are still being queried (see {@link #nextPaths(IProgressMonitor)}).
+ * <p>
+ * Each path is answered once. The paths that were excluded (for example the paths of
+ * the working copies that are searched separately) are never answered.
+ * </p>
+ * <p>
+ * The progress of the index query is recorded on the querying thread, and reported to the
+ * given progress monitor on the searching thread (see {@link #nextPaths(IProgressMonitor)}).
+ * </p>
+ */
+public class StreamingPathCollector extends IndexQueryRequestor implements Runnable {
+
+	/*
+	 * The progress monitor of the index query, which answers whether the search was canceled
+	 * and records the progress of the query until the searching thread reports it
+	 */
+	class QueryMonitor extends NullProgressMonitor {
+		public void beginTask(String name, int totalWork) {
+			synchronized (StreamingPathCollector.this) {
+				if (StreamingPathCollector.this.queryWork == NOT_BEGUN)
+					StreamingPathCollector.this.queryWork = totalWork;
+			}
+		}
+		public void internalWorked(double work) {
+			synchronized (StreamingPathCollector.this) {
+				StreamingPathCollector.this.queryWorked += work;
+			}
+		}
+		public boolean isCanceled() {
+			return StreamingPathCollector.this.isCanceled();
+		}
+		public void subTask(String name) {
+			synchronized (StreamingPathCollector.this) {
+				StreamingPathCollector.this.querySubTask = name;
+			}
+		}
+		public void worked(int work) {
+			internalWorked(work);
+		}
+	}
+
+	static final int NOT_BEGUN = -2; // IProgressMonitor.UNKNOWN is -1
+
+	private SearchPattern pattern;
+	private SearchParticipant participant;
+	private IJavaSearchScope scope;
+	private IProgressMonitor monitor; // the progress monitor of the searching thread, given the progress of the index query
+	private Thread thread;
+
+	private HashSet paths = new HashSet(5); // paths already collected or excluded
+	private ArrayList pendingPaths = new ArrayList(); // paths not answered yet
+	private boolean done = false;
+	private boolean canceled = false;
+	private RuntimeException exception;
+
+	// progress of the index query not reported yet
+	int queryWork = NOT_BEGUN;
+	double queryWorked;
+	String querySubTask;
+	private boolean progressBegun = false;
+
+public StreamingPathCollector(SearchPattern pattern, SearchParticipant participant, IJavaSearchScope scope, IProgressMonitor monitor) {
+	this.pattern = pattern;
+	this.participant = participant;
+	this.scope = scope;
+	this.monitor = monitor;
+}
+
+/* (non-Javadoc)
+ * @see IndexQueryRequestor#acceptIndexMatch(String, SearchPattern, SearchParticipant, AccessRuleSet)
+ */
+public synchronized boolean acceptIndexMatch(String documentPath, SearchPattern indexRecord, SearchParticipant searchParticipant, AccessRuleSet access) {
+	if (this.canceled) return false;
+	if (this.paths.add(documentPath)) {
+		if (this.pendingPaths.isEmpty())
+			notifyAll(); // wake up the searching thread
+		this.pendingPaths.add(documentPath);
+	}
+	return true;
+}
+
+/**
+ * Excludes the given path from the collected paths. Must be called before the collector is started.
+ */
+public synchronized void exclude(String documentPath) {
+	this.paths.add(documentPath);
+}
+
+/**
+ * Starts querying the indexes on a thread of its own.
+ */
+public void start() {
+	this.thread = new Thread(this, "Java indexes query"); //$NON-NLS-1$
+	this.thread.setDaemon(true);
+	this.thread.start();
+}
+
+public void run() {
+	try {
+		JavaModelManager.getIndexManager().performConcurrentJob(
+			new PatternSearchJob(this.pattern, this.participant, this.scope, this),
+			IJavaSearchConstants.WAIT_UNTIL_READY_TO_SEARCH,
+			new QueryMonitor());
+	} catch (OperationCanceledException e) {
+		// the searching thread reports the cancelation
+	} catch (RuntimeException e) {
+		synchronized (this) {
+			this.exception = e;
+		}
+	} finally {
+		synchronized (this) {
+			this.done = true;
+			notifyAll();
+		}
+	}
+}
+
+/**
+ * Returns the paths collected since the last call, waiting until at least one path is collected.
+ * Returns null once all the indexes have been queried and all the paths have been answered.
+ * Meanwhile, reports the progress of the index query to the progress monitor of this collector.
+ *
+ * @exception OperationCanceledException if the given monitor is canceled while waiting
+ */
+public String[] nextPaths(IProgressMonitor progressMonitor) {
+	while (true) {
+		String[] result = null;
+		synchronized (this) {
+			if (this.pendingPaths.isEmpty() && !this.done) {
+				if (progressMonitor != null && progressMonitor.isCanceled()) {
+					this.canceled = true;
+					throw new OperationCanceledException();
+				}
+				try {
+					wait(100); // check regularly whether the search was canceled
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}
+			int size = this.pendingPaths.size();
+			if (size > 0) {
+				result = new String[size];
+				this.pendingPaths.toArray(result);
+				this.pendingPaths.clear();
+			} else if (this.done && this.exception != null) {
+				throw this.exception;
+			}
+		}
+		reportProgress();
+		if (result != null)
+			return result;
+		synchronized (this) {
+			if (this.done && this.pendingPaths.isEmpty())
+				return null;
+		}
+	}
+}
+
+/*
+ * Reports the progress of the index query recorded since the last call to the progress monitor
+ * of this collector. Must be called by the searching thread, outside of the lock of this collector.
+ */
+private void reportProgress() {
+	if (this.monitor == null) return;
+	int work;
+	double worked;
+	String subTask;
+	synchronized (this) {
+		work = this.queryWork;
+		worked = this.queryWorked;
+		subTask = this.querySubTask;
+		this.queryWorked = 0;
+		this.querySubTask = null;
+	}
+	if (work == NOT_BEGUN) return;
+	if (!this.progressBegun) {
+		this.monitor.beginTask("", work); //$NON-NLS-1$
+		this.progressBegun = true;
+	}
+	if (subTask != null)
+		this.monitor.subTask(subTask);
+	if (worked > 0)
+		this.monitor.internalWorked(worked);
+}
+
+/**
+ * Stops querying the indexes if needed, and waits until the querying thread is done.
+ * Must be called by the searching thread: it reports the end of the index query to the progress monitor of this collector.
+ */
+public void stop() {
+	synchronized (this) {
+		if (!this.done)
+			this.canceled = true;
+	}
+	if (this.thread != null) {
+		try {
+			this.thread.join();
+		} catch (InterruptedException e) {
+			// ignore
+		}
+		this.thread = null;
+	}
+	reportProgress();
+	if (this.monitor != null) {
+		if (!this.progressBegun) {
+			this.monitor.beginTask("", 1); //$NON-NLS-1$
+			this.progressBegun = true;
+		}
+		this.monitor.done();
+	}
+}
+
+synchronized boolean isCanceled() {
+	return this.canceled || (this.monitor != null && this.monitor.isCanceled());
+}
+
+public String toString() {
+	return "Streaming path collector for " + this.pattern; //$NON-NLS-1$
+}
+}
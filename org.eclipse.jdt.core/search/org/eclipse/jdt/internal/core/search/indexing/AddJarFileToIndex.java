@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -44,6 +44,7 @@ class AddJarFileToIndex extends IndexRequest {
 	IFile resource;
 	Scanner scanner;
 	private IndexLocation indexFileURL;
+	private IndexLocation sharedIndexLocation; // where to publish the index once built, null if not shared
 
 	public AddJarFileToIndex(IFile resource, IndexLocation indexFile, IndexManager manager) {
 		super(resource.getFullPath(), manager);
@@ -91,6 +92,17 @@ class AddJarFileToIndex extends IndexRequest {
 				return true;
 			}
 
+			// reuse the index of an identical jar from the shared index directory if any
+			IndexLocation sharedIndex = this.manager.computeSharedIndexLocation(getLocalFile());
+			if (sharedIndex != null) {
+				if (this.manager.addSharedIndex(this.containerPath, sharedIndex) != null) {
+					if (JobManager.VERBOSE)
+						org.eclipse.jdt.internal.core.util.Util.verbose("-> no indexing required (shared index exists) for " + this.containerPath); //$NON-NLS-1$
+					return true;
+				}
+				this.sharedIndexLocation = sharedIndex;
+			}
+
 			index = this.manager.getIndexForUpdate(this.containerPath, true, /*reuse index file*/ true /*create if none*/);
 			if (index == null) {
 				if (JobManager.VERBOSE)
@@ -188,6 +200,8 @@ class AddJarFileToIndex extends IndexRequest {
 								+ zip.getName() + " (" //$NON-NLS-1$
 								+ (System.currentTimeMillis() - initialTime) + "ms)"); //$NON-NLS-1$
 							this.manager.saveIndex(index); // to ensure its placed into the saved state
+							if (this.sharedIndexLocation != null)
+								this.manager.writeSharedIndex(index, this.sharedIndexLocation);
 							return true;
 						}
 					}
@@ -226,6 +240,8 @@ class AddJarFileToIndex extends IndexRequest {
 					}
 				}
 				this.manager.saveIndex(index);
+				if (this.sharedIndexLocation != null)
+					this.manager.writeSharedIndex(index, this.sharedIndexLocation);
 				if (JobManager.VERBOSE)
 					org.eclipse.jdt.internal.core.util.Util.verbose("-> done indexing of " //$NON-NLS-1$
 						+ zip.getName() + " (" //$NON-NLS-1$
@@ -248,6 +264,17 @@ class AddJarFileToIndex extends IndexRequest {
 		}
 		return true;
 	}
+	/*
+	 * Returns the jar file in the local file system, or null if it is not local.
+	 */
+	private File getLocalFile() {
+		if (this.resource != null) {
+			IPath location = this.resource.getLocation();
+			return location == null ? null : location.toFile();
+		}
+		// external file -> it is ok to use toFile()
+		return this.containerPath.toFile();
+	}
 	public String getJobFamily() {
 		if (this.resource != null)
 			return super.getJobFamily();
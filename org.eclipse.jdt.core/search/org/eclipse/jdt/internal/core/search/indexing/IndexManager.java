@@ -12,6 +12,8 @@ package org.eclipse.jdt.internal.core.search.indexing;
 
 import java.io.*;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.zip.CRC32;
 
@@ -48,6 +50,8 @@ public class IndexManager extends JobManager implements IIndexConstants {
 
 	/* need to save ? */
 	private boolean needToSave = false;
+	/* need to merge the delta segments of some indexes ? */
+	private boolean needToCompact = false;
 	private IPath javaPluginLocation = null;
 
 	/* can only replace a current state if its less than the new one */
@@ -67,6 +71,16 @@ public class IndexManager extends JobManager implements IIndexConstants {
 	private SimpleLookupTable participantsContainers = null;
 	private boolean participantUpdated = false;
 
+	// directory shared between workspaces where the indexes of jars are stored by content (see computeSharedIndexLocation(File))
+	public static final String SHARED_INDEX_LOCATION_PROPERTY = "org.eclipse.jdt.core.sharedIndexLocation"; //$NON-NLS-1$
+	// set to "true" to only read indexes from the shared directory, e.g. when it is populated by a build server
+	public static final String SHARED_INDEX_READ_ONLY_PROPERTY = "org.eclipse.jdt.core.sharedIndexLocation.readOnly"; //$NON-NLS-1$
+	private SimpleSet unreadableSharedIndexes = new SimpleSet(3);
+	private SimpleLookupTable sharedIndexNames = new SimpleLookupTable(); // jar path|length|modification time -> shared index file name
+
+	// number of threads indexing in parallel, requests on the same index are always performed in order
+	public static final String INDEXER_THREADS_PROPERTY = "org.eclipse.jdt.core.indexerThreads"; //$NON-NLS-1$
+
 	// Debug
 	public static boolean DEBUG = false;
 
@@ -152,6 +166,96 @@ public synchronized IndexLocation computeIndexLocation(IPath containerPath) {
 	}
 	return indexLocation;
 }
+/**
+ * Returns the location of the index of the given jar in the shared index directory,
+ * or <code>null</code> if no shared directory is configured or the jar cannot be read.
+ * The index file is named after a digest of the central directory of the jar, which lists
+ * the name, size, CRC and time stamp of each entry, so that identical jars stored at different
+ * locations, or used by different workspaces, share the same index file.
+ * The name is remembered for as long as the jar keeps the same size and modification time.
+ */
+public IndexLocation computeSharedIndexLocation(File jarFile) {
+	File directory = getSharedIndexesDirectory();
+	if (directory == null || jarFile == null) return null;
+
+	String key = jarFile.getPath() + '|' + jarFile.length() + '|' + jarFile.lastModified();
+	String fileName;
+	synchronized (this) {
+		fileName = (String) this.sharedIndexNames.get(key);
+	}
+	if (fileName == null) {
+		try {
+			fileName = computeSharedIndexName(jarFile);
+		} catch (IOException e) {
+			fileName = null;
+		}
+		if (fileName == null) {
+			if (VERBOSE)
+				Util.verbose("-> cannot compute shared index name for " + jarFile); //$NON-NLS-1$
+			return null;
+		}
+		synchronized (this) {
+			this.sharedIndexNames.put(key, fileName);
+		}
+		if (VERBOSE)
+			Util.verbose("-> shared index name for " + jarFile + " is " + fileName); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+	return new FileIndexLocation(new File(directory, fileName));
+}
+/*
+ * Digests the central directory of the given zip file, which is located through the end of central
+ * directory record at the end of the file. Only these few blocks are read: the entries are neither
+ * opened nor enumerated.
+ * Answers null if the file is not a zip file or uses the zip64 format.
+ */
+private static String computeSharedIndexName(File jarFile) throws IOException {
+	MessageDigest digest;
+	try {
+		digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+	} catch (NoSuchAlgorithmException e) {
+		return null;
+	}
+	RandomAccessFile file = new RandomAccessFile(jarFile, "r"); //$NON-NLS-1$
+	try {
+		long fileLength = file.length();
+		int tailLength = (int) Math.min(fileLength, 22 + 0xFFFF); // end record + longest zip comment
+		byte[] tail = new byte[tailLength];
+		file.seek(fileLength - tailLength);
+		file.readFully(tail);
+		int end = tailLength - 22;
+		while (end >= 0 && (tail[end] != 0x50 || tail[end + 1] != 0x4b || tail[end + 2] != 0x05 || tail[end + 3] != 0x06))
+			end--;
+		if (end < 0) return null;
+		long directorySize = readInt(tail, end + 12);
+		long directoryOffset = readInt(tail, end + 16);
+		if (directoryOffset == 0xFFFFFFFFL || directoryOffset + directorySize > fileLength - tailLength + end) return null;
+
+		// an index written with another format is never reused
+		digest.update(DiskIndex.SIGNATURE.getBytes("UTF-8")); //$NON-NLS-1$
+		digest.update(tail, end, tailLength - end);
+		byte[] buffer = new byte[8192];
+		file.seek(directoryOffset);
+		while (directorySize > 0) {
+			int read = file.read(buffer, 0, (int) Math.min(buffer.length, directorySize));
+			if (read < 0) return null;
+			digest.update(buffer, 0, read);
+			directorySize -= read;
+		}
+	} finally {
+		file.close();
+	}
+	byte[] hash = digest.digest();
+	StringBuffer fileName = new StringBuffer(hash.length * 2 + 6);
+	for (int i = 0, length = hash.length; i < length; i++) {
+		fileName.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+		fileName.append(Character.forDigit(hash[i] & 0xF, 16));
+	}
+	fileName.append(".index"); //$NON-NLS-1$
+	return fileName.toString();
+}
+private static long readInt(byte[] bytes, int offset) {
+	return (bytes[offset] & 0xFFL) | (bytes[offset + 1] & 0xFFL) << 8 | (bytes[offset + 2] & 0xFFL) << 16 | (bytes[offset + 3] & 0xFFL) << 24;
+}
 public void deleteIndexFiles() {
 	if (DEBUG)
 		Util.verbose("Deleting index files"); //$NON-NLS-1$
@@ -164,7 +268,10 @@ private void deleteIndexFiles(SimpleSet pathsToKeep) {
 
 	for (int i = 0, l = indexesFiles.length; i < l; i++) {
 		String fileName = indexesFiles[i].getAbsolutePath();
-		if (pathsToKeep != null && pathsToKeep.includes(new FileIndexLocation(indexesFiles[i]))) continue;
+		String segmentedIndexPath = Index.getSegmentedIndexPath(fileName);
+		if (segmentedIndexPath != null) // the files of the delta segments of an index are kept with the index
+			fileName = segmentedIndexPath;
+		if (pathsToKeep != null && pathsToKeep.includes(new FileIndexLocation(new File(fileName)))) continue;
 		String suffix = ".index"; //$NON-NLS-1$
 		if (fileName.regionMatches(true, fileName.length() - suffix.length(), suffix, 0, suffix.length())) {
 			if (VERBOSE || DEBUG)
@@ -335,6 +442,7 @@ public Index[] getIndexes(IndexLocation[] locations, IProgressMonitor progressMo
 							Util.verbose("Change in javaLikeNames - removing index file for " + containerPath ); //$NON-NLS-1$
 						indexFile.delete();
 					}
+					Index.deleteSegments(indexFile);
 					this.indexes.put(indexLocation, null);
 					rebuildIndex(indexLocation, containerPath);
 					index = null;
@@ -413,6 +521,24 @@ private IPath getJavaPluginWorkingLocation() {
 private File getSavedIndexesDirectory() {
 	return new File(getJavaPluginWorkingLocation().toOSString());
 }
+/*
+ * Returns the directory of the indexes shared by content, or null if none is configured.
+ * The system property is read on each call so that the directory can be changed without restarting.
+ */
+private File getSharedIndexesDirectory() {
+	String location = System.getProperty(SHARED_INDEX_LOCATION_PROPERTY);
+	if (location == null || location.length() == 0) return null;
+	File directory = new File(location);
+	if (!directory.isDirectory() && (isSharedIndexesReadOnly() || !directory.mkdirs())) {
+		if (VERBOSE)
+			Util.verbose("-> cannot use shared index location " + location); //$NON-NLS-1$
+		return null;
+	}
+	return directory;
+}
+private boolean isSharedIndexesReadOnly() {
+	return "true".equals(System.getProperty(SHARED_INDEX_READ_ONLY_PROPERTY)); //$NON-NLS-1$
+}
 /*
  * see https://bugs.eclipse.org/bugs/show_bug.cgi?id=286379
  * Returns true if there is a change in javaLikeNames since it
@@ -531,6 +657,46 @@ synchronized boolean addIndex(IPath containerPath, IndexLocation indexFile) {
 	return true;
 }
 
+/*
+ * Copies the given index from the shared index directory to the index location of the given jar,
+ * and answers the index read from this copy.
+ * Each jar gets its own copy so that the document paths of its index are built from its own path,
+ * and the copy can be updated or deleted with the jar without affecting the other jars
+ * or workspaces which use the same shared index.
+ * Answers null if the shared index cannot be read, in which case it is not tried again until it is written.
+ */
+Index addSharedIndex(IPath containerPath, IndexLocation sharedLocation) {
+	IndexLocation indexLocation;
+	synchronized (this) {
+		if (this.unreadableSharedIndexes.includes(sharedLocation) || !sharedLocation.exists()) return null;
+		indexLocation = computeIndexLocation(containerPath);
+		if (getIndex(indexLocation) != null || indexLocation.equals(sharedLocation)) return null;
+	}
+	File sharedFile = sharedLocation.getIndexFile();
+	File indexFile = indexLocation.getIndexFile();
+	if (sharedFile == null || indexFile == null) return null;
+	String containerPathString = containerPath.getDevice() == null ? containerPath.toString() : containerPath.toOSString();
+	Index index = null;
+	try {
+		Index.deleteSegments(indexFile);
+		copyFile(sharedFile, indexFile);
+		index = new Index(indexLocation, containerPathString, true /*reuse index file*/);
+	} catch (IOException e) {
+		if (VERBOSE)
+			Util.verbose("-> cannot reuse shared index: " + sharedLocation + " path: " + containerPathString); //$NON-NLS-1$ //$NON-NLS-2$
+		indexFile.delete();
+		synchronized (this) {
+			this.unreadableSharedIndexes.add(sharedLocation);
+		}
+		return null;
+	}
+	synchronized (this) {
+		this.indexes.put(indexLocation, index);
+		updateIndexState(indexLocation, SAVED_STATE);
+	}
+	return index;
+}
+
 /**
  * Index the content of the given source folder.
  */
@@ -544,11 +710,20 @@ public void indexSourceFolder(JavaProject javaProject, IPath sourceFolder, char[
 
 	request(new AddFolderToIndex(sourceFolder, project, inclusionPatterns, exclusionPatterns, this));
 }
+/**
+ * Index requests on different containers can be performed in parallel as they modify different indexes.
+ */
+protected Object jobKey(IJob job) {
+	if (job instanceof IndexRequest)
+		return ((IndexRequest) job).containerPath;
+	return null; // e.g. jobs requested by clients
+}
 public synchronized void jobWasCancelled(IPath containerPath) {
 	IndexLocation indexLocation = computeIndexLocation(containerPath);
 	Index index = getIndex(indexLocation);
 	if (index != null) {
 		index.monitor = null;
+		index.flushQueryCache();
 		this.indexes.removeKey(indexLocation);
 	}
 	updateIndexState(indexLocation, UNKNOWN_STATE);
@@ -567,6 +742,21 @@ protected synchronized void moveToNextJob() {
  */
 protected void notifyIdle(long idlingTime){
 	if (idlingTime > 1000 && this.needToSave) saveIndexes();
+	if (idlingTime > 1000 && this.needToCompact) compactIndexes();
+}
+/**
+ * Answers the number of indexing threads, as specified by the INDEXER_THREADS_PROPERTY system property.
+ */
+protected int processingThreadsCount() {
+	String property = System.getProperty(INDEXER_THREADS_PROPERTY);
+	if (property != null) {
+		try {
+			return Integer.parseInt(property);
+		} catch (NumberFormatException e) {
+			Util.log(e, "Could not parse value for " + INDEXER_THREADS_PROPERTY + ": " + property); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+	return 1;
 }
 /**
  * Name of the background process
@@ -662,6 +852,7 @@ public synchronized void removeIndex(IPath containerPath) {
 	File indexFile = null;
 	if (index != null) {
 		index.monitor = null;
+		index.flushQueryCache();
 		indexFile = index.getIndexFile();
 	}
 	if (indexFile == null)
@@ -673,6 +864,7 @@ public synchronized void removeIndex(IPath containerPath) {
 		if (DEBUG)
 			Util.verbose("removing index file " + indexFile); //$NON-NLS-1$
 		indexFile.delete();
+		Index.deleteSegments(indexFile);
 	}
 	this.indexes.removeKey(indexLocation);
 	updateIndexState(indexLocation, null);
@@ -695,6 +887,7 @@ public synchronized void removeIndexPath(IPath path) {
 		if (indexLocation.startsWith(path)) {
 			Index index = (Index) valueTable[i];
 			index.monitor = null;
+			index.flushQueryCache();
 			if (locations == null)
 				locations = new IndexLocation[max];
 			locations[count++] = indexLocation;
@@ -704,6 +897,7 @@ public synchronized void removeIndexPath(IPath path) {
 				if (DEBUG)
 					Util.verbose("removing index file " + indexLocation); //$NON-NLS-1$
 				indexLocation.delete();
+				Index.deleteSegments(indexLocation.getIndexFile());
 			}
 		} else {
 			max--;
@@ -763,6 +957,7 @@ public void removeSourceFolderFromIndex(JavaProject javaProject, IPath sourceFol
  */
 public synchronized void reset() {
 	super.reset();
+	Index.flushQueryCaches();
 	if (this.indexes != null) {
 		this.indexes = new SimpleLookupTable();
 		this.indexStates = null;
@@ -805,13 +1000,15 @@ public void saveIndex(Index index) throws IOException {
 		if (VERBOSE)
 			Util.verbose("-> saving index " + index.getIndexLocation()); //$NON-NLS-1$
 		index.save();
+		if (index.needsCompaction())
+			this.needToCompact = true; // merge the delta segments when the indexer is idle
 	}
 	synchronized (this) {
 		IPath containerPath = new Path(index.containerPath);
 		if (this.jobEnd > this.jobStart) {
 			for (int i = this.jobEnd; i > this.jobStart; i--) { // skip the current job
 				IJob job = this.awaitingJobs[i];
-				if (job instanceof IndexRequest)
+				if (job instanceof IndexRequest && !isExecuting(job)) // skip the jobs performed in parallel as well
 					if (((IndexRequest) job).containerPath.equals(containerPath)) return;
 			}
 		}
@@ -870,6 +1067,44 @@ public void saveIndexes() {
 	}
 	this.needToSave = !allSaved;
 }
+/**
+ * Merges the delta segments of the cached indexes which have too many segments into their disk index
+ * (see Index#compact()), so that saving an index does not rewrite its whole file.
+ */
+public void compactIndexes() {
+	ArrayList toCompact = new ArrayList();
+	synchronized(this) {
+		Object[] valueTable = this.indexes.valueTable;
+		for (int i = 0, l = valueTable.length; i < l; i++) {
+			Index index = (Index) valueTable[i];
+			if (index != null && index.needsCompaction())
+				toCompact.add(index);
+		}
+	}
+
+	boolean allCompacted = true;
+	for (int i = 0, length = toCompact.size(); i < length; i++) {
+		Index index = (Index) toCompact.get(i);
+		ReadWriteMonitor monitor = index.monitor;
+		if (monitor == null) continue; // index got deleted since acquired
+		try {
+			monitor.enterWrite(); // ask permission to write
+			if (index.monitor == null) continue; // index got deleted while waiting
+			if (VERBOSE)
+				Util.verbose("-> compacting index " + index.getIndexLocation()); //$NON-NLS-1$
+			index.compact();
+		} catch (IOException e) {
+			if (VERBOSE) {
+				Util.verbose("-> got the following exception while compacting:", System.err); //$NON-NLS-1$
+				e.printStackTrace();
+			}
+			allCompacted = false;
+		} finally {
+			monitor.exitWrite();
+		}
+	}
+	this.needToCompact = !allCompacted;
+}
 public void scheduleDocumentIndexing(final SearchDocument searchDocument, IPath container, final IndexLocation indexLocation, final SearchParticipant searchParticipant) {
 	request(new IndexRequest(container, this) {
 		public boolean execute(IProgressMonitor progressMonitor) {
@@ -1155,4 +1390,56 @@ private void writeSavedIndexNamesFile() {
 		}
 	}
 }
+/**
+ * Publishes the given index of a jar in the shared index directory, unless this directory is read-only.
+ * The file is first written next to its final location then renamed, so that other workspaces
+ * never read a partially written index.
+ * Note: must have permission to write from the write monitor
+ */
+void writeSharedIndex(Index index, IndexLocation sharedLocation) {
+	File indexFile = index.getIndexFile();
+	File sharedFile = sharedLocation.getIndexFile();
+	if (indexFile == null || sharedFile == null || !indexFile.exists() || indexFile.equals(sharedFile)) return;
+	if (index.hasDeltaSegments()) return; // the index file alone does not hold all the entries
+	File directory = getSharedIndexesDirectory();
+	if (directory == null || isSharedIndexesReadOnly() || !directory.canWrite()) return;
+
+	File tempFile = null;
+	try {
+		tempFile = File.createTempFile("index", ".tmp", sharedFile.getParentFile()); //$NON-NLS-1$ //$NON-NLS-2$
+		copyFile(indexFile, tempFile);
+		if (tempFile.renameTo(sharedFile)) {
+			tempFile = null;
+			synchronized (this) {
+				this.unreadableSharedIndexes.remove(sharedLocation);
+			}
+			if (VERBOSE)
+				Util.verbose("-> shared index " + sharedFile + " for " + index.containerPath); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	} catch (IOException e) {
+		if (VERBOSE) {
+			Util.verbose("-> failed to share index " + indexFile + " for " + index.containerPath); //$NON-NLS-1$ //$NON-NLS-2$
+			e.printStackTrace();
+		}
+	} finally {
+		if (tempFile != null)
+			tempFile.delete(); // another workspace may have shared the same index in the meantime
+	}
+}
+private static void copyFile(File source, File destination) throws IOException {
+	InputStream input = new BufferedInputStream(new FileInputStream(source));
+	try {
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(destination));
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				output.write(buffer, 0, read);
+		} finally {
+			output.close();
+		}
+	} finally {
+		input.close();
+	}
+}
 }
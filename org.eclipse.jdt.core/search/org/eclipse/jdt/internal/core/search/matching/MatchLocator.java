@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -99,6 +99,23 @@ static {
 	}
 }
 
+/**
+ * Number of threads locating the matches in chunks of possible matches (see {@link MatchLocatorPool}),
+ * or 1 to locate them on the searching thread.
+ * Set with the <code>org.eclipse.jdt.core.search.matchLocatorThreads</code> system property.
+ */
+public static int LOCATOR_THREADS = 1;
+static {
+	String threads = System.getProperty("org.eclipse.jdt.core.search.matchLocatorThreads"); //$NON-NLS-1$
+	if (threads != null) {
+		try {
+			LOCATOR_THREADS = Integer.parseInt(threads);
+		} catch (NumberFormatException e) {
+			// ignore and locate the matches on the searching thread
+		}
+	}
+}
+
 // permanent state
 public SearchPattern pattern;
 public PatternLocator patternLocator;
@@ -144,7 +161,13 @@ SimpleLookupTable bindings;
 // Cache for method handles
 HashSet methodHandles;
 
+// the threads locating the matches when they are located in parallel
+MatchLocatorPool locatorPool;
+
 private final boolean searchPackageDeclaration;
+// the projects whose package declarations are searched, and the participant of the located documents
+private IJavaProject[] javaModelProjects;
+private SearchParticipant searchParticipant;
 
 public static class WorkingCopyDocument extends JavaSearchDocument {
 	public org.eclipse.jdt.core.ICompilationUnit workingCopy;
@@ -205,9 +228,9 @@ public static void setFocus(SearchPattern pattern, IJavaElement focus) {
 }
 
 /*
- * Returns the working copies that can see the given focus.
+ * Returns the documents of the working copies that can see the given focus, keyed by their path.
  */
-private static HashMap workingCopiesThatCanSeeFocus(org.eclipse.jdt.core.ICompilationUnit[] copies, SearchPattern pattern, SearchParticipant participant) {
+public static HashMap workingCopiesThatCanSeeFocus(org.eclipse.jdt.core.ICompilationUnit[] copies, SearchPattern pattern, SearchParticipant participant) {
 	if (copies == null) return new HashMap();
 	HashMap result = new HashMap();
 	for (int i=0, length = copies.length; i<length; i++) {
@@ -1118,6 +1141,10 @@ protected void locateMatches(JavaProject javaProject, PossibleMatchSet matchSet,
 		this.progressWorked += expected-length;
 		this.progressMonitor.worked( expected-length);
 	}
+	if (this.locatorPool != null) {
+		this.locatorPool.locateMatches(javaProject, possibleMatches);
+		return;
+	}
 	// locate matches (processed matches are limited to avoid problem while using VM default memory heap size)
 	for (int index = 0; index < length;) {
 		int max = Math.min(MAX_AT_ONCE, length - index);
@@ -1132,23 +1159,12 @@ protected void locateMatches(JavaProject javaProject, PossibleMatchSet matchSet,
 public void locateMatches(SearchDocument[] searchDocuments) throws CoreException {
 	if (this.patternLocator == null) return;
 	int docsLength = searchDocuments.length;
-	int progressLength = docsLength;
 	if (BasicSearchEngine.VERBOSE) {
 		System.out.println("Locating matches in documents ["); //$NON-NLS-1$
 		for (int i = 0; i < docsLength; i++)
 			System.out.println("\t" + searchDocuments[i]); //$NON-NLS-1$
 		System.out.println("]"); //$NON-NLS-1$
 	}
-	IJavaProject[] javaModelProjects = null;
-	if (this.searchPackageDeclaration) {
-		javaModelProjects = JavaModelManager.getJavaModelManager().getJavaModel().getJavaProjects();
-		progressLength += javaModelProjects.length;
-	}
-
-	// init infos for progress increasing
-	int n = progressLength<1000 ? Math.min(Math.max(progressLength/200+1, 2),4) : 5 *(progressLength/1000);
-	this.progressStep = progressLength < n ? 1 : progressLength / n; // step should not be 0
-	this.progressWorked = 0;
 
 	// extract working copies
 	ArrayList copies = new ArrayList();
@@ -1158,120 +1174,173 @@ public void locateMatches(SearchDocument[] searchDocuments) throws CoreException
 			copies.add(((WorkingCopyDocument)document).workingCopy);
 		}
 	}
-	int copiesLength = copies.size();
-	this.workingCopies = new org.eclipse.jdt.core.ICompilationUnit[copiesLength];
-	copies.toArray(this.workingCopies);
+	org.eclipse.jdt.core.ICompilationUnit[] copiesArray = new org.eclipse.jdt.core.ICompilationUnit[copies.size()];
+	copies.toArray(copiesArray);
 
-	JavaModelManager manager = JavaModelManager.getJavaModelManager();
-	this.bindings = new SimpleLookupTable();
 	try {
-		// optimize access to zip files during search operation
-		manager.cacheZipFiles(this);
-
-		// initialize handle factory (used as a cache of handles so as to optimize space)
-		if (this.handleFactory == null)
-			this.handleFactory = new HandleFactory();
-
-		if (this.progressMonitor != null) {
-			this.progressMonitor.beginTask("", searchDocuments.length); //$NON-NLS-1$
-		}
-
-		// initialize pattern for polymorphic search (i.e. method reference pattern)
-		this.patternLocator.initializePolymorphicSearch(this);
-
-		JavaProject previousJavaProject = null;
-		PossibleMatchSet matchSet = new PossibleMatchSet();
-		Util.sort(searchDocuments, new Util.Comparer() {
-			public int compare(Object a, Object b) {
-				return ((SearchDocument)a).getPath().compareTo(((SearchDocument)b).getPath());
-			}
-		});
-		int displayed = 0; // progress worked displayed
-		String previousPath = null;
-		SearchParticipant searchParticipant = null;
-		for (int i = 0; i < docsLength; i++) {
-			if (this.progressMonitor != null && this.progressMonitor.isCanceled()) {
-				throw new OperationCanceledException();
-			}
-
-			// skip duplicate paths
-			SearchDocument searchDocument = searchDocuments[i];
-			if (searchParticipant == null) {
-				searchParticipant = searchDocument.getParticipant();
-			}
-			searchDocuments[i] = null; // free current document
-			String pathString = searchDocument.getPath();
-			if (i > 0 && pathString.equals(previousPath)) {
-				if (this.progressMonitor != null) {
-					this.progressWorked++;
-					if ((this.progressWorked%this.progressStep)==0) this.progressMonitor.worked(this.progressStep);
-				}
-				displayed++;
-				continue;
-			}
-			previousPath = pathString;
+		startLocating(copiesArray, docsLength);
+		locateMatchesOf(searchDocuments);
+		finishLocating();
+	} finally {
+		stopLocating();
+	}
+}
+/**
+ * Prepares this locator to locate the matches of one or more groups of documents (see {@link #locateMatchesOf(SearchDocument[])}),
+ * in which the given working copies take precedence over their compilation units. The given number of documents is only used
+ * to report progress, it is {@link IProgressMonitor#UNKNOWN} if the documents are not known yet.
+ * {@link #stopLocating()} must be called once done, even if this method fails.
+ */
+public void startLocating(org.eclipse.jdt.core.ICompilationUnit[] copies, int documentCount) throws CoreException {
+	int progressLength = documentCount == IProgressMonitor.UNKNOWN ? 0 : documentCount;
+	this.javaModelProjects = null;
+	if (this.searchPackageDeclaration) {
+		this.javaModelProjects = JavaModelManager.getJavaModelManager().getJavaModel().getJavaProjects();
+		progressLength += this.javaModelProjects.length;
+	}
+	this.searchParticipant = null;
 
-			Openable openable;
-			org.eclipse.jdt.core.ICompilationUnit workingCopy = null;
-			if (searchDocument instanceof WorkingCopyDocument) {
-				workingCopy = ((WorkingCopyDocument)searchDocument).workingCopy;
-				openable = (Openable) workingCopy;
-			} else {
-				openable = this.handleFactory.createOpenable(pathString, this.scope);
+	// init infos for progress increasing
+	int n = progressLength<1000 ? Math.min(Math.max(progressLength/200+1, 2),4) : 5 *(progressLength/1000);
+	this.progressStep = progressLength < n ? 1 : progressLength / n; // step should not be 0
+	this.progressWorked = 0;
+
+	this.workingCopies = copies;
+
+	this.bindings = new SimpleLookupTable();
+
+	// optimize access to zip files during search operation
+	JavaModelManager.getJavaModelManager().cacheZipFiles(this);
+
+	// initialize handle factory (used as a cache of handles so as to optimize space)
+	if (this.handleFactory == null)
+		this.handleFactory = new HandleFactory();
+
+	if (this.progressMonitor != null) {
+		this.progressMonitor.beginTask("", documentCount); //$NON-NLS-1$
+	}
+
+	// initialize pattern for polymorphic search (i.e. method reference pattern)
+	this.patternLocator.initializePolymorphicSearch(this);
+
+	// subclasses may rely on locating the matches on the searching thread
+	if (LOCATOR_THREADS > 1 && getClass() == MatchLocator.class)
+		this.locatorPool = new MatchLocatorPool(this, LOCATOR_THREADS);
+}
+/**
+ * Locates the matches in the given group of documents once {@link #startLocating(org.eclipse.jdt.core.ICompilationUnit[], int)}
+ * was called. The documents of different groups must have different paths.
+ */
+public void locateMatchesOf(SearchDocument[] searchDocuments) throws CoreException {
+	int docsLength = searchDocuments.length;
+	JavaProject previousJavaProject = null;
+	PossibleMatchSet matchSet = new PossibleMatchSet();
+	Util.sort(searchDocuments, new Util.Comparer() {
+		public int compare(Object a, Object b) {
+			return ((SearchDocument)a).getPath().compareTo(((SearchDocument)b).getPath());
+		}
+	});
+	int displayed = 0; // progress worked displayed
+	String previousPath = null;
+	for (int i = 0; i < docsLength; i++) {
+		if (this.progressMonitor != null && this.progressMonitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+
+		// skip duplicate paths
+		SearchDocument searchDocument = searchDocuments[i];
+		if (this.searchParticipant == null) {
+			this.searchParticipant = searchDocument.getParticipant();
+		}
+		searchDocuments[i] = null; // free current document
+		String pathString = searchDocument.getPath();
+		if (i > 0 && pathString.equals(previousPath)) {
+			if (this.progressMonitor != null) {
+				this.progressWorked++;
+				if ((this.progressWorked%this.progressStep)==0) this.progressMonitor.worked(this.progressStep);
 			}
-			if (openable == null) {
-				if (this.progressMonitor != null) {
-					this.progressWorked++;
-					if ((this.progressWorked%this.progressStep)==0) this.progressMonitor.worked(this.progressStep);
-				}
-				displayed++;
-				continue; // match is outside classpath
-			}
-
-			// create new parser and lookup environment if this is a new project
-			IResource resource = null;
-			JavaProject javaProject = (JavaProject) openable.getJavaProject();
-			resource = workingCopy != null ? workingCopy.getResource() : openable.getResource();
-			if (resource == null)
-				resource = javaProject.getProject(); // case of a file in an external jar or external folder
-			if (!javaProject.equals(previousJavaProject)) {
-				// locate matches in previous project
-				if (previousJavaProject != null) {
-					try {
-						locateMatches(previousJavaProject, matchSet, i-displayed);
-						displayed = i;
-					} catch (JavaModelException e) {
-						// problem with classpath in this project -> skip it
-					}
-					matchSet.reset();
-				}
-				previousJavaProject = javaProject;
+			displayed++;
+			continue;
+		}
+		previousPath = pathString;
+
+		Openable openable;
+		org.eclipse.jdt.core.ICompilationUnit workingCopy = null;
+		if (searchDocument instanceof WorkingCopyDocument) {
+			workingCopy = ((WorkingCopyDocument)searchDocument).workingCopy;
+			openable = (Openable) workingCopy;
+		} else {
+			openable = this.handleFactory.createOpenable(pathString, this.scope);
+		}
+		if (openable == null) {
+			if (this.progressMonitor != null) {
+				this.progressWorked++;
+				if ((this.progressWorked%this.progressStep)==0) this.progressMonitor.worked(this.progressStep);
 			}
-			matchSet.add(new PossibleMatch(this, resource, openable, searchDocument,this.pattern.mustResolve));
+			displayed++;
+			continue; // match is outside classpath
 		}
 
-		// last project
-		if (previousJavaProject != null) {
-			try {
-				locateMatches(previousJavaProject, matchSet, docsLength-displayed);
-			} catch (JavaModelException e) {
-				// problem with classpath in last project -> ignore
+		// create new parser and lookup environment if this is a new project
+		IResource resource = null;
+		JavaProject javaProject = (JavaProject) openable.getJavaProject();
+		resource = workingCopy != null ? workingCopy.getResource() : openable.getResource();
+		if (resource == null)
+			resource = javaProject.getProject(); // case of a file in an external jar or external folder
+		if (!javaProject.equals(previousJavaProject)) {
+			// locate matches in previous project
+			if (previousJavaProject != null) {
+				try {
+					locateMatches(previousJavaProject, matchSet, i-displayed);
+					displayed = i;
+				} catch (JavaModelException e) {
+					// problem with classpath in this project -> skip it
+				}
+				matchSet.reset();
 			}
+			previousJavaProject = javaProject;
 		}
+		matchSet.add(new PossibleMatch(this, resource, openable, searchDocument,this.pattern.mustResolve));
+	}
 
-		if (this.searchPackageDeclaration) {
-			locatePackageDeclarations(searchParticipant, javaModelProjects);
+	// last project
+	if (previousJavaProject != null) {
+		try {
+			locateMatches(previousJavaProject, matchSet, docsLength-displayed);
+		} catch (JavaModelException e) {
+			// problem with classpath in last project -> ignore
 		}
+	}
+}
+/**
+ * Reports the matches that are not reported yet once all the groups of documents are located, and
+ * locates the package declarations.
+ */
+public void finishLocating() throws CoreException {
+	if (this.locatorPool != null)
+		this.locatorPool.finish();
 
-	} finally {
-		if (this.progressMonitor != null)
-			this.progressMonitor.done();
-		if (this.nameEnvironment != null)
-			this.nameEnvironment.cleanup();
-		manager.flushZipFiles(this);
-		this.bindings = null;
+	if (this.searchPackageDeclaration) {
+		locatePackageDeclarations(this.searchParticipant, this.javaModelProjects);
 	}
 }
+/**
+ * Releases the resources used to locate matches since {@link #startLocating(org.eclipse.jdt.core.ICompilationUnit[], int)}.
+ */
+public void stopLocating() {
+	if (this.locatorPool != null) {
+		this.locatorPool.shutdown();
+		this.locatorPool = null;
+	}
+	if (this.progressMonitor != null)
+		this.progressMonitor.done();
+	if (this.nameEnvironment != null)
+		this.nameEnvironment.cleanup();
+	JavaModelManager.getJavaModelManager().flushZipFiles(this);
+	this.bindings = null;
+	this.javaModelProjects = null;
+	this.searchParticipant = null;
+}
 /**
  * Locates the package declarations corresponding to this locator's pattern.
  */
@@ -1722,6 +1791,16 @@ public SearchParticipant getParticipant() {
 	return this.currentPossibleMatch.document.getParticipant();
 }
 
+/*
+ * Reports the progress of the given number of possible matches located by another thread.
+ */
+void worked(int count) {
+	if (this.progressMonitor == null) return;
+	for (int i = 0; i < count; i++) {
+		this.progressWorked++;
+		if ((this.progressWorked%this.progressStep)==0) this.progressMonitor.worked(this.progressStep);
+	}
+}
 protected void report(SearchMatch match) throws CoreException {
 	if (match == null) {
 		if (BasicSearchEngine.VERBOSE) {
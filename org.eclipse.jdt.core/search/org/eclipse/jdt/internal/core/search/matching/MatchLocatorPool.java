@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.core.search.matching;
+
+import java.util.ArrayList;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.search.SearchMatch;
+import org.eclipse.jdt.core.search.SearchRequestor;
+import org.eclipse.jdt.internal.compiler.util.SimpleLookupTable;
+import org.eclipse.jdt.internal.core.JavaModelManager;
+import org.eclipse.jdt.internal.core.JavaProject;
+import org.eclipse.jdt.internal.core.search.HierarchyScope;
+import org.eclipse.jdt.internal.core.util.HandleFactory;
+
+/**
+ * Locates the matches of a match locator in chunks of possible matches on several threads.
+ * <p>
+ * Each thread uses its own match locator, thus its own parser, lookup environment and handle factory.
+ * The matches found in a chunk are reported to the requestor of the match locator by the searching thread,
+ * in the order of the chunks, as soon as all the previous chunks are done. The requestor thus receives
+ * the matches in the same order as when the chunks are located one after the other.
+ * </p>
+ */
+public class MatchLocatorPool {
+
+	/*
+	 * A chunk of possible matches of a project to locate
+	 */
+	static class Task extends SearchRequestor {
+		JavaProject project;
+		PossibleMatch[] possibleMatches;
+		ArrayList matches = new ArrayList();
+		boolean done;
+		CoreException exception;
+		RuntimeException runtimeException;
+
+		Task(JavaProject project, PossibleMatch[] possibleMatches) {
+			this.project = project;
+			this.possibleMatches = possibleMatches;
+		}
+
+		public void acceptSearchMatch(SearchMatch match) {
+			this.matches.add(match);
+		}
+	}
+
+	/*
+	 * The progress monitor of the worker locators, which answers whether the search was canceled
+	 */
+	class CancelMonitor extends NullProgressMonitor {
+		public boolean isCanceled() {
+			synchronized (MatchLocatorPool.this) {
+				return MatchLocatorPool.this.canceled;
+			}
+		}
+	}
+
+	MatchLocator locator;
+	private Thread[] threads;
+	private ArrayList pendingTasks = new ArrayList(); // tasks not taken by a worker yet
+	private ArrayList tasks = new ArrayList(); // tasks whose matches were not reported yet, in order
+	boolean canceled = false;
+	private boolean finishing = false;
+
+/**
+ * Creates a pool of the given number of threads locating the matches of the given locator.
+ */
+public MatchLocatorPool(MatchLocator locator, int threadCount) {
+	this.locator = locator;
+	if (locator.scope instanceof HierarchyScope) {
+		// the workers share the scope, so do not let them compute its hierarchy lazily at the same time
+		try {
+			((HierarchyScope) locator.scope).initializeIfNeeded(locator.progressMonitor);
+		} catch (JavaModelException e) {
+			// the scope is left without hierarchy, as when it fails to initialize lazily
+		}
+	}
+	this.threads = new Thread[threadCount];
+	for (int i = 0; i < threadCount; i++) {
+		this.threads[i] = new Thread(new Runnable() {
+			public void run() {
+				work();
+			}
+		}, "Match Locator #" + i); //$NON-NLS-1$
+		this.threads[i].setDaemon(true);
+		this.threads[i].start();
+	}
+}
+
+/**
+ * Queues the given possible matches of the given project to be located in chunks, then reports the
+ * matches of the chunks that are done. Waits if too many chunks are not reported yet.
+ */
+public void locateMatches(JavaProject project, PossibleMatch[] possibleMatches) throws CoreException {
+	int length = possibleMatches.length;
+	int threadCount = this.threads.length;
+	int chunkSize = Math.max(1, Math.min(MatchLocator.MAX_AT_ONCE / threadCount, (length + threadCount - 1) / threadCount));
+	for (int index = 0; index < length;) {
+		int max = Math.min(chunkSize, length - index);
+		PossibleMatch[] chunk = new PossibleMatch[max];
+		System.arraycopy(possibleMatches, index, chunk, 0, max);
+		index += max;
+		synchronized (this) {
+			// limit the chunks waiting to be reported, since they keep their matches in memory
+			while (this.tasks.size() >= 2 * threadCount && !((Task) this.tasks.get(0)).done) {
+				checkCanceled();
+				waitForTask();
+			}
+			Task task = new Task(project, chunk);
+			this.tasks.add(task);
+			this.pendingTasks.add(task);
+			notifyAll();
+		}
+		reportDoneTasks(false);
+	}
+}
+
+/**
+ * Waits until all the queued chunks are located, and reports their matches.
+ */
+public void finish() throws CoreException {
+	reportDoneTasks(true);
+}
+
+/**
+ * Stops the threads of this pool. The chunks that are not located yet are forgotten.
+ */
+public void shutdown() {
+	synchronized (this) {
+		this.finishing = true;
+		if (!this.tasks.isEmpty())
+			this.canceled = true;
+		this.pendingTasks.clear();
+		notifyAll();
+	}
+	for (int i = 0, length = this.threads.length; i < length; i++) {
+		try {
+			this.threads[i].join();
+		} catch (InterruptedException e) {
+			// ignore
+		}
+	}
+}
+
+/*
+ * Reports the matches of the chunks that are done, stopping at the first chunk that is not done,
+ * or waiting for all the chunks if requested.
+ */
+private void reportDoneTasks(boolean waitForAll) throws CoreException {
+	while (true) {
+		Task task;
+		synchronized (this) {
+			if (this.tasks.isEmpty()) return;
+			task = (Task) this.tasks.get(0);
+			while (!task.done) {
+				if (!waitForAll) return;
+				checkCanceled();
+				waitForTask();
+			}
+			this.tasks.remove(0);
+		}
+		SearchRequestor requestor = this.locator.requestor;
+		for (int i = 0, size = task.matches.size(); i < size; i++)
+			requestor.acceptSearchMatch((SearchMatch) task.matches.get(i));
+		this.locator.worked(task.possibleMatches.length);
+		if (task.runtimeException != null)
+			throw task.runtimeException;
+		if (task.exception != null && !(task.exception instanceof JavaModelException))
+			throw task.exception; // as when locating sequentially, problems with the classpath of a project are ignored
+	}
+}
+
+private void checkCanceled() {
+	if (this.locator.progressMonitor != null && this.locator.progressMonitor.isCanceled()) {
+		this.canceled = true;
+		throw new OperationCanceledException();
+	}
+}
+
+private void waitForTask() {
+	try {
+		wait(100); // check regularly whether the search was canceled
+	} catch (InterruptedException e) {
+		// ignore
+	}
+}
+
+/*
+ * Locates the queued chunks with a match locator of its own.
+ */
+void work() {
+	MatchLocator worker = new MatchLocator(this.locator.pattern, null, this.locator.scope, new CancelMonitor());
+	worker.workingCopies = this.locator.workingCopies;
+	worker.handleFactory = new HandleFactory();
+	worker.bindings = new SimpleLookupTable();
+	worker.progressStep = 1;
+	JavaModelManager manager = JavaModelManager.getJavaModelManager();
+	manager.cacheZipFiles(worker);
+	try {
+		// the searching thread already initialized the polymorphic search
+		if (worker.patternLocator != null)
+			worker.patternLocator.copyPolymorphicSearch(this.locator.patternLocator);
+		while (true) {
+			Task task;
+			synchronized (this) {
+				while (this.pendingTasks.isEmpty()) {
+					if (this.finishing) return;
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+				task = (Task) this.pendingTasks.remove(0);
+			}
+			try {
+				worker.requestor = task;
+				worker.locateMatches(task.project, task.possibleMatches, 0, task.possibleMatches.length);
+			} catch (CoreException e) {
+				task.exception = e;
+			} catch (OperationCanceledException e) {
+				// the searching thread reports the cancelation
+			} catch (RuntimeException e) {
+				task.runtimeException = e;
+			} finally {
+				worker.patternLocator.clear();
+				synchronized (this) {
+					task.done = true;
+					notifyAll();
+				}
+			}
+		}
+	} finally {
+		if (worker.nameEnvironment != null)
+			worker.nameEnvironment.cleanup();
+		manager.flushZipFiles(worker);
+	}
+}
+
+public String toString() {
+	return "Match locator pool (" + this.threads.length + " threads)"; //$NON-NLS-1$ //$NON-NLS-2$
+}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -89,6 +89,10 @@ public void initializePolymorphicSearch(MatchLocator locator) {
 		System.out.println("Time to initialize polymorphic search: "+(System.currentTimeMillis()-start)); //$NON-NLS-1$
 	}
 }
+public void copyPolymorphicSearch(PatternLocator initializedLocator) {
+	// only read once initialized, so it can be shared
+	this.allSuperDeclaringTypeNames = ((MethodLocator) initializedLocator).allSuperDeclaringTypeNames;
+}
 /*
  * Return whether a type name is in pattern all super declaring types names.
  */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -176,6 +176,14 @@ protected TypeBinding getTypeNameBinding(int index) {
 public void initializePolymorphicSearch(MatchLocator locator) {
 	// default is to do nothing
 }
+/**
+ * Initializes this search pattern so that polymorphic search can be performed, using the state computed by
+ * the given locator of the same pattern in {@link #initializePolymorphicSearch(MatchLocator)} instead of
+ * computing it again.
+ */
+public void copyPolymorphicSearch(PatternLocator initializedLocator) {
+	// default is to do nothing
+}
 public int match(Annotation node, MatchingNodeSet nodeSet) {
 	// each subtype should override if needed
 	return IMPOSSIBLE_MATCH;
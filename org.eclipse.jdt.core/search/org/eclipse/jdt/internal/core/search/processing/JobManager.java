@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.jdt.internal.core.search.processing;
 
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.internal.compiler.util.SimpleSet;
 import org.eclipse.jdt.internal.core.util.Messages;
 import org.eclipse.jdt.internal.core.util.Util;
 
@@ -21,12 +22,16 @@ public abstract class JobManager implements Runnable {
 	protected IJob[] awaitingJobs = new IJob[10];
 	protected int jobStart = 0;
 	protected int jobEnd = -1;
-	protected boolean executing = false;
 
 	/* background processing */
 	protected Thread processingThread;
 	protected Job progressJob;
 
+	/* additional threads executing jobs in parallel with the processing thread, null if none (see processingThreadsCount()) */
+	private Thread[] workerThreads;
+	/* job executed by each processing thread, the processing thread uses slot 0 */
+	private IJob[] executingJobs = new IJob[1];
+
 	/* counter indicating whether job execution is enabled or not, disabled if <= 0
 	    it cannot go beyond 1 */
 	private int enableCount = 1;
@@ -75,22 +80,26 @@ public abstract class JobManager implements Runnable {
 
 		try {
 			IJob currentJob;
-			// cancel current job if it belongs to the given family
+			IJob[] currentJobs;
+			// cancel current jobs if they belong to the given family
 			synchronized(this){
-				currentJob = currentJob();
+				currentJobs = (IJob[]) this.executingJobs.clone();
 				disable();
 			}
-			if (currentJob != null && (jobFamily == null || currentJob.belongsTo(jobFamily))) {
-				currentJob.cancel();
+			for (int i = 0, length = currentJobs.length; i < length; i++) {
+				currentJob = currentJobs[i];
+				if (currentJob != null && (jobFamily == null || currentJob.belongsTo(jobFamily))) {
+					currentJob.cancel();
 
-				// wait until current active job has finished
-				while (this.processingThread != null && this.executing){
-					try {
-						if (VERBOSE)
-							Util.verbose("-> waiting end of current background job - " + currentJob); //$NON-NLS-1$
-						Thread.sleep(50);
-					} catch(InterruptedException e){
-						// ignore
+					// wait until current active job has finished
+					while (this.processingThread != null && isExecuting(currentJob)){
+						try {
+							if (VERBOSE)
+								Util.verbose("-> waiting end of current background job - " + currentJob); //$NON-NLS-1$
+							Thread.sleep(50);
+						} catch(InterruptedException e){
+							// ignore
+						}
 					}
 				}
 			}
@@ -126,11 +135,56 @@ public abstract class JobManager implements Runnable {
 			Util.verbose("ENABLING  background indexing"); //$NON-NLS-1$
 		notifyAll(); // wake up the background thread if it is waiting (context must be synchronized)
 	}
+	/**
+	 * Answers whether the given job is being executed by one of the processing threads.
+	 */
+	protected synchronized boolean isExecuting(IJob job) {
+		for (int i = 0, length = this.executingJobs.length; i < length; i++)
+			if (this.executingJobs[i] == job) return true;
+		return false;
+	}
 	protected synchronized boolean isJobWaiting(IJob request) {
-		for (int i = this.jobEnd; i > this.jobStart; i--) // don't check job at jobStart, as it may have already started
-			if (request.equals(this.awaitingJobs[i])) return true;
+		for (int i = this.jobEnd; i > this.jobStart; i--) { // don't check job at jobStart, as it may have already started
+			IJob job = this.awaitingJobs[i];
+			if (request.equals(job) && !isExecuting(job)) return true;
+		}
 		return false;
 	}
+	/**
+	 * Answers the key of the data (e.g. an index) modified by the given job, or <code>null</code>
+	 * if the job must be executed alone. Jobs with different keys can be executed in parallel
+	 * by the processing threads, while jobs with the same key are executed in the order they were requested.
+	 * Note: only used if there is more than one processing thread.
+	 */
+	protected Object jobKey(IJob job) {
+		return null;
+	}
+	/**
+	 * Removes the given job from the queue once it has been executed.
+	 */
+	protected synchronized void jobCompleted(IJob job) {
+		for (int i = 0, length = this.executingJobs.length; i < length; i++) {
+			if (this.executingJobs[i] == job) {
+				this.executingJobs[i] = null;
+				break;
+			}
+		}
+		if (this.jobStart <= this.jobEnd && this.awaitingJobs[this.jobStart] == job) {
+			moveToNextJob();
+		} else {
+			// executed in parallel with an earlier job, remove it and shift the earlier jobs
+			for (int i = this.jobStart + 1; i <= this.jobEnd; i++) {
+				if (this.awaitingJobs[i] == job) {
+					System.arraycopy(this.awaitingJobs, this.jobStart, this.awaitingJobs, this.jobStart + 1, i - this.jobStart);
+					this.awaitingJobs[this.jobStart] = null;
+					moveToNextJob();
+					break;
+				}
+			}
+			// job not found if it was discarded while executing
+		}
+		notifyAll(); // wake up the processing threads waiting for this job to complete
+	}
 	/**
 	 * Advance to the next available job, once the current one has been completed.
 	 * Note: clients awaiting until the job count is zero are still waiting at this point.
@@ -146,6 +200,39 @@ public abstract class JobManager implements Runnable {
 			}
 		}
 	}
+	/**
+	 * Answers the next job to be executed by the processing thread at the given slot and marks it as executing,
+	 * or null if no job can be started. With a single processing thread, this is the first job in the queue.
+	 * Otherwise a job can start if no earlier job has the same key (see jobKey(IJob)) and no earlier job
+	 * must be executed alone. A job which must be executed alone only starts once no other job is executing.
+	 */
+	private synchronized IJob nextJob(int slot) {
+		if (this.enableCount <= 0 || slot >= this.executingJobs.length) return null;
+		if (this.executingJobs.length == 1) {
+			IJob job = currentJob();
+			if (job != null && this.executingJobs[0] == null)
+				return this.executingJobs[0] = job;
+			return null;
+		}
+		SimpleSet earlierKeys = null;
+		for (int i = this.jobStart; i <= this.jobEnd; i++) {
+			IJob job = this.awaitingJobs[i];
+			Object key = jobKey(job);
+			if (key == null) {
+				// jobs after this one must wait until it is completed
+				if (i > this.jobStart || isExecuting(job)) return null;
+				for (int j = 0, length = this.executingJobs.length; j < length; j++)
+					if (this.executingJobs[j] != null) return null;
+				return this.executingJobs[slot] = job;
+			}
+			if (earlierKeys == null) earlierKeys = new SimpleSet();
+			if (earlierKeys.includes(key)) continue;
+			if (!isExecuting(job))
+				return this.executingJobs[slot] = job;
+			earlierKeys.add(key);
+		}
+		return null;
+	}
 	/**
 	 * When idle, give chance to do something
 	 */
@@ -213,10 +300,14 @@ public abstract class JobManager implements Runnable {
 							// use local variable to avoid potential NPE (see bug 20435 NPE when searching java method
 							// and bug 42760 NullPointerException in JobManager when searching)
 							Thread t = this.processingThread;
+							Thread[] workers = this.workerThreads;
 							int originalPriority = t == null ? -1 : t.getPriority();
 							try {
 								if (t != null)
 									t.setPriority(Thread.currentThread().getPriority());
+								if (workers != null)
+									for (int i = 0, length = workers.length; i < length; i++)
+										workers[i].setPriority(Thread.currentThread().getPriority());
 								synchronized(this) {
 									this.awaitingClients++;
 								}
@@ -267,6 +358,10 @@ public abstract class JobManager implements Runnable {
 								}
 								if (t != null && originalPriority > -1 && t.isAlive())
 									t.setPriority(originalPriority);
+								if (workers != null && originalPriority > -1)
+									for (int i = 0, length = workers.length; i < length; i++)
+										if (workers[i].isAlive())
+											workers[i].setPriority(originalPriority);
 							}
 						} finally {
 							if (subProgress != null)
@@ -283,6 +378,12 @@ public abstract class JobManager implements Runnable {
 		}
 		return status;
 	}
+	/**
+	 * Answers the number of threads executing the jobs in parallel, 1 by default.
+	 */
+	protected int processingThreadsCount() {
+		return 1;
+	}
 	public abstract String processName();
 
 	public synchronized void request(IJob job) {
@@ -308,7 +409,7 @@ public abstract class JobManager implements Runnable {
 			Util.verbose("REQUEST   background job - " + job); //$NON-NLS-1$
 			Util.verbose("AWAITING JOBS count: " + awaitingJobsCount()); //$NON-NLS-1$
 		}
-		notifyAll(); // wake up the background thread if it is waiting
+		notifyAll(); // wake up the background threads if they are waiting
 	}
 	/**
 	 * Flush current state
@@ -321,16 +422,38 @@ public abstract class JobManager implements Runnable {
 			discardJobs(null); // discard all jobs
 		} else {
 			/* initiate background processing */
-			this.processingThread = new Thread(this, processName());
-			this.processingThread.setDaemon(true);
-			// less prioritary by default, priority is raised if clients are actively waiting on it
-			this.processingThread.setPriority(Thread.NORM_PRIORITY-1);
-			// https://bugs.eclipse.org/bugs/show_bug.cgi?id=296343
-			// set the context loader to avoid leaking the current context loader
-			this.processingThread.setContextClassLoader(this.getClass().getClassLoader());
+			int threadsCount = Math.max(1, processingThreadsCount());
+			this.executingJobs = new IJob[threadsCount];
+			this.processingThread = newProcessingThread(this);
+			if (threadsCount > 1) {
+				this.workerThreads = new Thread[threadsCount - 1];
+				for (int i = 0; i < threadsCount - 1; i++) {
+					final int slot = i + 1;
+					this.workerThreads[i] = newProcessingThread(new Runnable() {
+						public void run() {
+							runWorker(slot);
+						}
+					});
+				}
+			} else {
+				this.workerThreads = null;
+			}
 			this.processingThread.start();
+			if (this.workerThreads != null)
+				for (int i = 0, length = this.workerThreads.length; i < length; i++)
+					this.workerThreads[i].start();
 		}
 	}
+	private Thread newProcessingThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, processName());
+		thread.setDaemon(true);
+		// less prioritary by default, priority is raised if clients are actively waiting on it
+		thread.setPriority(Thread.NORM_PRIORITY-1);
+		// https://bugs.eclipse.org/bugs/show_bug.cgi?id=296343
+		// set the context loader to avoid leaking the current context loader
+		thread.setContextClassLoader(this.getClass().getClassLoader());
+		return thread;
+	}
 	/**
 	 * Infinite loop performing resource indexing
 	 */
@@ -370,7 +493,12 @@ public abstract class JobManager implements Runnable {
 						if (this.processingThread == null) continue;
 
 						// must check for new job inside this sync block to avoid timing hole
-						if ((job = currentJob()) == null) {
+						if ((job = nextJob(0)) == null && currentJob() != null) {
+							// the next jobs wait for the ones executed by the worker threads
+							this.wait();
+							continue;
+						}
+						if (job == null) {
 							if (this.progressJob != null) {
 								this.progressJob.cancel();
 								this.progressJob = null;
@@ -395,7 +523,6 @@ public abstract class JobManager implements Runnable {
 						Util.verbose("STARTING background job - " + job); //$NON-NLS-1$
 					}
 					try {
-						this.executing = true;
 						if (this.progressJob == null) {
 							this.progressJob = new ProgressJob(Messages.bind(Messages.jobmanager_indexing, "", "")); //$NON-NLS-1$ //$NON-NLS-2$
 							this.progressJob.setPriority(Job.LONG);
@@ -404,11 +531,15 @@ public abstract class JobManager implements Runnable {
 						}
 						/*boolean status = */job.execute(null);
 						//if (status == FAILED) request(job);
+					} catch (RuntimeException e) {
+						if (this.workerThreads == null || this.processingThread == null) throw e;
+						// as in runWorker(int), only drop the failed job when jobs are executed in parallel
+						Util.log(e, "Background Indexer Crash Recovery"); //$NON-NLS-1$
+						job.cancel();
 					} finally {
-						this.executing = false;
 						if (VERBOSE)
 							Util.verbose("FINISHED background job - " + job); //$NON-NLS-1$
-						moveToNextJob();
+						jobCompleted(job);
 						if (this.awaitingClients == 0)
 							Thread.sleep(50);
 					}
@@ -439,6 +570,51 @@ public abstract class JobManager implements Runnable {
 			throw e;
 		}
 	}
+	/*
+	 * Loop performing the jobs which can be executed in parallel with the ones of the processing thread
+	 */
+	void runWorker(int slot) {
+		Thread current = Thread.currentThread();
+		while (true) {
+			IJob job;
+			synchronized (this) {
+				if (this.processingThread == null || this.workerThreads == null || this.workerThreads[slot - 1] != current)
+					return; // shutting down or replaced by a new worker
+				if ((job = nextJob(slot)) == null) {
+					try {
+						this.wait(); // wait until a new job is posted or a job is completed
+					} catch (InterruptedException e) {
+						// ignore
+					}
+					continue;
+				}
+			}
+			if (VERBOSE)
+				Util.verbose("STARTING background job - " + job); //$NON-NLS-1$
+			try {
+				job.execute(null);
+			} catch (RuntimeException e) {
+				if (this.processingThread != null) { // if not shutting down
+					Util.log(e, "Background Indexer Crash Recovery"); //$NON-NLS-1$
+
+					// only drop the failed job: the jobs queued for the other threads are not affected,
+					// and cancelling the job lets its data be recomputed (e.g. its index is rebuilt)
+					job.cancel();
+				}
+			} finally {
+				if (VERBOSE)
+					Util.verbose("FINISHED background job - " + job); //$NON-NLS-1$
+				jobCompleted(job);
+			}
+			if (this.awaitingClients == 0) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}
+		}
+	}
 	/**
 	 * Stop background processing, and wait until the current job is completed before returning
 	 */
@@ -450,14 +626,19 @@ public abstract class JobManager implements Runnable {
 		disable();
 		discardJobs(null); // will wait until current executing job has completed
 		Thread thread = this.processingThread;
+		Thread[] workers = this.workerThreads;
 		try {
 			if (thread != null) { // see http://bugs.eclipse.org/bugs/show_bug.cgi?id=31858
 				synchronized (this) {
-					this.processingThread = null; // mark the job manager as shutting down so that the thread will stop by itself
-					notifyAll(); // ensure its awake so it can be shutdown
+					this.processingThread = null; // mark the job manager as shutting down so that the threads will stop by themselves
+					this.workerThreads = null;
+					notifyAll(); // ensure they are awake so they can be shutdown
 				}
-				// in case processing thread is handling a job
+				// in case processing threads are handling a job
 				thread.join();
+				if (workers != null)
+					for (int i = 0, length = workers.length; i < length; i++)
+						workers[i].join();
 			}
 			Job job = this.progressJob;
 			if (job != null) {